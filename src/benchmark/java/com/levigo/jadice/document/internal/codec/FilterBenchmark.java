@@ -0,0 +1,162 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCII85;
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCIIHex;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.levigo.jadice.document.internal.codec.tiff.TIFF;
+import com.levigo.jadice.document.internal.codec.tiff.TIFFHorizontalPredictorInputStream;
+import com.levigo.jadice.document.internal.codec.tiff.TIFFPredictorInputStream;
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+/**
+ * Simple throughput benchmarks for the decoders. They are not part of the test suite: compile them
+ * using the <code>benchmark</code> profile, e.g. <code>mvn -Pbenchmark test-compile</code>, and run
+ * this class on the test class path, passing the names of the benchmarks to run or nothing to run
+ * all of them.
+ */
+public final class FilterBenchmark {
+  private static final int ROUNDS = 5;
+
+  private interface Benchmark {
+    void run() throws IOException;
+  }
+
+  private FilterBenchmark() {
+    // no instantiation -- only static methods
+  }
+
+  public static void main(String[] args) throws IOException {
+    final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+    benchmarks.put("ascii", FilterBenchmark::ascii);
+    benchmarks.put("tiff", FilterBenchmark::tiffPredictor);
+    benchmarks.put("ccitt", FilterBenchmark::ccittFax);
+
+    final Collection<String> names = args.length > 0 ? Arrays.asList(args) : benchmarks.keySet();
+    for (final String name : names) {
+      final Benchmark benchmark = benchmarks.get(name);
+      if (benchmark == null) {
+        System.err.println("Unknown benchmark " + name + ", expected one of " + benchmarks.keySet());
+        continue;
+      }
+      System.out.println(name);
+      benchmark.run();
+    }
+  }
+
+  /**
+   * {@link ASCII85InputStream} and {@link ASCIIHexInputStream}
+   */
+  private static void ascii() throws IOException {
+    final int size = 16 * 1024 * 1024;
+    final byte[] data = new byte[size];
+    new Random(4711).nextBytes(data);
+
+    final byte[] ascii85 = encodeASCII85(data, 64);
+    final byte[] asciiHex = encodeASCIIHex(data, 32);
+
+    for (int i = 0; i < ROUNDS; i++) {
+      long start = System.nanoTime();
+      drain(new ASCII85InputStream(new ByteArraySeekableInputStream(ascii85)));
+      final long ascii85Time = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      drain(new ASCIIHexInputStream(new ByteArraySeekableInputStream(asciiHex)));
+      final long asciiHexTime = System.nanoTime() - start;
+
+      System.out.printf("ASCII85: %7.1f MB/s   ASCIIHex: %7.1f MB/s%n", throughput(size, ascii85Time),
+          throughput(size, asciiHexTime));
+    }
+  }
+
+  /**
+   * {@link TIFFHorizontalPredictorInputStream} compared with {@link TIFFPredictorInputStream}
+   */
+  private static void tiffPredictor() throws IOException {
+    // 16 bit CMYK, 8 bit RGB and 1 bit gray
+    tiffPredictor(16, 4, 2500, 800);
+    tiffPredictor(8, 3, 5000, 800);
+    tiffPredictor(1, 1, 20000, 800);
+  }
+
+  private static void tiffPredictor(int bpc, int colors, int columns, int rows) throws IOException {
+    final int bytesPerRow = (columns * colors * bpc + 7) / 8;
+    final byte[] data = new byte[bytesPerRow * rows];
+    new Random(4711).nextBytes(data);
+
+    for (int i = 0; i < 2 * ROUNDS; i++) {
+      long start = System.nanoTime();
+      drain(new TIFFPredictorInputStream(new ByteArraySeekableInputStream(data), TIFF.PREDICTOR_HORIZONTAL_DIFFERENCING,
+          colors, bytesPerRow, new Dimension(columns, rows)));
+      final long oldTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      drain(new TIFFHorizontalPredictorInputStream(new ByteArraySeekableInputStream(data), colors, bpc, columns));
+      final long newTime = System.nanoTime() - start;
+
+      System.out.printf("bpc=%2d colors=%d: TIFFPredictorInputStream %7.1f MB/s   "
+          + "TIFFHorizontalPredictorInputStream %7.1f MB/s%n", bpc, colors, throughput(data.length, oldTime),
+          throughput(data.length, newTime));
+    }
+  }
+
+  /**
+   * {@link CCITTFaxInputStream} decoding a multi-page scan in each of the coding schemes
+   */
+  private static void ccittFax() throws IOException {
+    final int columns = 1728;
+    final int rows = 2200;
+    final int pages = 20;
+
+    final Random random = new Random(4711);
+    final boolean[][][] scan = new boolean[pages][][];
+    for (int i = 0; i < pages; i++)
+      scan[i] = CCITTFaxEncoder.page(random, columns, rows);
+
+    final int[] schemes = {
+        -1, 0, 4
+    };
+    final byte[][][] encoded = new byte[schemes.length][pages][];
+    for (int s = 0; s < schemes.length; s++)
+      for (int i = 0; i < pages; i++) {
+        final CCITTFaxEncoder encoder = new CCITTFaxEncoder(schemes[s], columns);
+        for (final boolean[] row : scan[i])
+          encoder.encodeRow(row);
+        encoded[s][i] = encoder.finish();
+      }
+
+    final long size = (long) pages * rows * (columns / 8);
+    for (int round = 0; round < ROUNDS; round++) {
+      final StringBuilder sb = new StringBuilder();
+      for (int s = 0; s < schemes.length; s++) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < pages; i++)
+          drain(new CCITTFaxInputStream(new ByteArraySeekableInputStream(encoded[s][i]), schemes[s], columns, 0,
+              false, false, true, false));
+        final long time = System.nanoTime() - start;
+        sb.append(String.format("K=%2d: %6.1f pages/s %7.1f MB/s   ", schemes[s], pages / (time / 1e9),
+            throughput(size, time)));
+      }
+      System.out.println(sb);
+    }
+  }
+
+  private static double throughput(long size, long nanos) {
+    return size / (1024.0 * 1024.0) / (nanos / 1e9);
+  }
+
+  private static void drain(SeekableInputStream s) throws IOException {
+    final byte[] buffer = new byte[8192];
+    while (s.read(buffer) > 0) {
+      // just decode
+    }
+  }
+}
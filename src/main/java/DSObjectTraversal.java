@@ -1,3 +1,14 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 import com.levigo.jadice.format.pdf.internal.ReferenceResolver;
 import com.levigo.jadice.format.pdf.internal.objects.DSArray;
 import com.levigo.jadice.format.pdf.internal.objects.DSBoolean;
@@ -11,48 +22,284 @@
 import com.levigo.jadice.format.pdf.internal.objects.DSReal;
 import com.levigo.jadice.format.pdf.internal.objects.DSReference;
 import com.levigo.jadice.format.pdf.internal.objects.DSStream;
-
+import com.levigo.jadice.format.pdf.internal.parsing.IObjectLocator;
+import com.levigo.jadice.format.pdf.internal.parsing.IObjectLocator.Location;
+
+/**
+ * Walks a graph of {@link DSObject}s, calling the visitor methods for every object. The walk uses
+ * an explicit stack, so arbitrarily deep graphs don't overflow the call stack, and every indirect
+ * object is resolved and traversed at most once per {@link #traverse(DSObject)}, so cyclic graphs
+ * (<code>/Parent</code> links, self-referencing annotations) terminate. Further references to it
+ * are reported by {@link #alreadyVisited(DSReference, int)}. Visitors may start nested traversals.
+ * <p>
+ * References are resolved according to the {@link Resolution}: either inline, depth first, or
+ * level by level in batches, which allows resolving them in file order or in parallel. The visitor
+ * methods are always called on the thread calling {@link #traverse(DSObject)}.
+ */
 public abstract class DSObjectTraversal {
+
+  /**
+   * How references are resolved.
+   */
+  public enum Resolution {
+    /**
+     * resolve each reference as it is visited and traverse the object right away
+     */
+    INLINE,
+    /**
+     * collect the references to be resolved while traversing one level and resolve them after the
+     * level is complete, in file offset order if an {@link IObjectLocator} is set
+     */
+    BATCHED,
+    /**
+     * like {@link #BATCHED}, but resolve the references of a level in parallel on a
+     * {@link ForkJoinPool}. The resolver must be thread safe. This has no effect with the
+     * {@link com.levigo.jadice.format.pdf.internal.DefaultReferenceResolver}, which synchronizes on
+     * the parser: use it with resolvers that can actually resolve concurrently.
+     */
+    PARALLEL
+  }
+
+  /**
+   * A set of object and generation number pairs, open addressing without boxing.
+   */
+  private static final class ReferenceSet {
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] objectNumbers = newTable(64);
+    private int[] generationNumbers = new int[64];
+    private int size;
+
+    private static long[] newTable(int capacity) {
+      final long[] t = new long[capacity];
+      Arrays.fill(t, FREE);
+      return t;
+    }
+
+    /**
+     * @return <code>true</code> if the pair wasn't contained yet
+     */
+    boolean add(long objectNumber, int generationNumber) {
+      if (size * 2 >= objectNumbers.length)
+        rehash();
+      final int mask = objectNumbers.length - 1;
+      for (int slot = hash(objectNumber, generationNumber) & mask;; slot = slot + 1 & mask) {
+        if (objectNumbers[slot] == FREE) {
+          objectNumbers[slot] = objectNumber;
+          generationNumbers[slot] = generationNumber;
+          size++;
+          return true;
+        }
+        if (objectNumbers[slot] == objectNumber && generationNumbers[slot] == generationNumber)
+          return false;
+      }
+    }
+
+    private void rehash() {
+      final long[] oldObjectNumbers = objectNumbers;
+      final int[] oldGenerationNumbers = generationNumbers;
+      objectNumbers = newTable(oldObjectNumbers.length * 2);
+      generationNumbers = new int[oldObjectNumbers.length * 2];
+      size = 0;
+      for (int i = 0; i < oldObjectNumbers.length; i++)
+        if (oldObjectNumbers[i] != FREE)
+          add(oldObjectNumbers[i], oldGenerationNumbers[i]);
+    }
+
+    private static int hash(long objectNumber, int generationNumber) {
+      final long h = (objectNumber * 31 + generationNumber) * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ h >>> 32);
+    }
+  }
+
+  /**
+   * A reference waiting to be resolved in batch mode.
+   */
+  private static final class Pending {
+    final DSReference reference;
+    final long offset;
+    DSObject resolved;
+
+    Pending(DSReference reference, long offset) {
+      this.reference = reference;
+      this.offset = offset;
+    }
+  }
+
+  /**
+   * Stack entries besides plain objects to visit.
+   */
+  private static final class Entry {
+    final DSNameObject key;
+    final DSObject value;
+
+    Entry(DSNameObject key, DSObject value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private static final class Item {
+    final int index;
+    final DSObject item;
+
+    Item(int index, DSObject item) {
+      this.index = index;
+      this.item = item;
+    }
+  }
+
+  private static final class Leave {
+    final DSObject object;
+
+    Leave(DSObject object) {
+      this.object = object;
+    }
+  }
+
+  /**
+   * The state of one {@link #traverse(DSObject)}.
+   */
+  private static final class Walk {
+    final ReferenceSet visited = new ReferenceSet();
+    int resolvingDepth;
+  }
+
+  private static final Object LEAVE_REFERENCE = new Object();
+
   private final ReferenceResolver resolver;
-  private int resolvingDepth;
+
+  private Resolution resolution = Resolution.INLINE;
+  private IObjectLocator locator;
+  private ForkJoinPool pool;
 
   public DSObjectTraversal(final ReferenceResolver resolver) {
     this.resolver = resolver;
   }
 
+  /**
+   * @param resolution how references are resolved, {@link Resolution#INLINE} by default
+   */
+  public void setResolution(Resolution resolution) {
+    this.resolution = resolution;
+  }
+
+  public Resolution getResolution() {
+    return resolution;
+  }
+
+  /**
+   * @param locator the locator used to resolve batched references in file offset order, or
+   *                <code>null</code> to resolve them in object number order
+   */
+  public void setObjectLocator(IObjectLocator locator) {
+    this.locator = locator;
+  }
+
+  /**
+   * @param pool the pool used for {@link Resolution#PARALLEL}, the common pool by default
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
   public void traverse(DSObject object) {
+    final Walk w = new Walk();
 
+    if (resolution == Resolution.INLINE) {
+      walk(w, object, null);
+      return;
+    }
+
+    List<Pending> batch = new ArrayList<>();
+    walk(w, object, batch);
+    while (!batch.isEmpty()) {
+      resolve(batch);
+      w.resolvingDepth++;
+      final List<Pending> next = new ArrayList<>();
+      for (final Pending p : batch)
+        walk(w, p.resolved, next);
+      batch = next;
+    }
+  }
+
+  /**
+   * Traverse the given object. Objects referenced are traversed right away, or added to the
+   * pending batch if there is one.
+   */
+  private void walk(Walk w, DSObject root, List<Pending> batch) {
+    final Deque<Object> stack = new ArrayDeque<>();
+    if (root != null)
+      stack.push(root);
+
+    while (!stack.isEmpty()) {
+      final Object top = stack.pop();
+
+      if (top instanceof Entry) {
+        final Entry e = (Entry) top;
+        visitEntry(e.key, e.value);
+        if (e.value != null)
+          stack.push(e.value);
+      } else if (top instanceof Item) {
+        final Item i = (Item) top;
+        visitItem(i.index, i.item);
+        if (i.item != null)
+          stack.push(i.item);
+      } else if (top instanceof Leave) {
+        final DSObject o = ((Leave) top).object;
+        if (o instanceof DSDictionary)
+          visitLeave((DSDictionary) o);
+        else if (o instanceof DSArray)
+          visitLeave((DSArray) o);
+        else
+          visitLeave((DSStream) o);
+      } else if (top == LEAVE_REFERENCE) {
+        w.resolvingDepth--;
+      } else {
+        visitObject(w, (DSObject) top, stack, batch);
+      }
+    }
+  }
+
+  private void visitObject(Walk w, DSObject object, Deque<Object> stack, List<Pending> batch) {
     if (object instanceof DSDictionary) {
       final DSDictionary dict = (DSDictionary) object;
       visitEnter(dict);
-
-      dict.forEach(e -> {
-        visitEntry(e.getKey(), e.getValue());
-        traverse(e.getValue());
-      });
-
-      visitLeave(dict);
+      stack.push(new Leave(dict));
+
+      // push the entries in reverse to visit them in order
+      final List<Entry> entries = new ArrayList<>(dict.size());
+      for (final Map.Entry<DSNameObject, DSObject> e : dict)
+        entries.add(new Entry(e.getKey(), e.getValue()));
+      for (int i = entries.size() - 1; i >= 0; i--)
+        stack.push(entries.get(i));
     } else if (object instanceof DSStream) {
       visitEnter((DSStream) object);
-      traverse(((DSStream) object).getDictionary());
-      visitLeave((DSStream) object);
+      stack.push(new Leave(object));
+      stack.push(((DSStream) object).getDictionary());
     } else if (object instanceof DSArray) {
       final DSArray array = (DSArray) object;
       visitEnter(array);
+      stack.push(new Leave(array));
 
-      for (int i = 0; i < array.size(); i++) {
-        final DSObject item = array.get(i);
-        visitItem(i, item);
-        traverse(item);
-      }
-
-      visitLeave(array);
+      for (int i = array.size() - 1; i >= 0; i--)
+        stack.push(new Item(i, array.get(i)));
     } else if (object instanceof DSReference) {
-      final boolean resolveAndTraverse = visitReference((DSReference) object, resolvingDepth);
+      final DSReference ref = (DSReference) object;
+      final boolean resolveAndTraverse = visitReference(ref, w.resolvingDepth);
       if (resolveAndTraverse) {
-        resolvingDepth++;
-        traverse(resolver.resolve(object));
-        resolvingDepth--;
+        if (!w.visited.add(ref.getReferencedObjectNumber(), ref.getReferencedGenerationNumber())) {
+          alreadyVisited(ref, w.resolvingDepth);
+        } else if (batch != null) {
+          batch.add(new Pending(ref, offsetOf(ref)));
+        } else {
+          final DSObject resolved = resolver.resolve(ref);
+          if (resolved != null) {
+            w.resolvingDepth++;
+            stack.push(LEAVE_REFERENCE);
+            stack.push(resolved);
+          }
+        }
       }
     } else if (object instanceof DSBoolean) {
       visit((DSBoolean) object);
@@ -71,6 +318,36 @@ public void traverse(DSObject object) {
     }
   }
 
+  /**
+   * @return the file offset of the referenced object, or of the object stream containing it, used
+   *         to order batches
+   */
+  private long offsetOf(DSReference ref) {
+    if (locator == null)
+      return ref.getReferencedObjectNumber();
+    Location location = locator.locate(ref);
+    if (location != null && location.isNested())
+      location = locator.locate(location.getSurroundingObjectNumber(), 0);
+    return location != null ? location.getOffset() : Long.MAX_VALUE;
+  }
+
+  private void resolve(List<Pending> batch) {
+    batch.sort(Comparator.comparingLong(p -> p.offset));
+
+    if (resolution == Resolution.PARALLEL && batch.size() > 1) {
+      final ForkJoinPool p = pool != null ? pool : ForkJoinPool.commonPool();
+      p.submit(() -> IntStream.range(0, batch.size()).parallel().forEach(
+          i -> batch.get(i).resolved = resolver.resolve(batch.get(i).reference))).join();
+    } else {
+      for (final Pending p : batch)
+        p.resolved = resolver.resolve(p.reference);
+    }
+
+    for (final Iterator<Pending> i = batch.iterator(); i.hasNext(); )
+      if (i.next().resolved == null)
+        i.remove();
+  }
+
   public void visitEnter(final DSStream object) {
   }
 
@@ -105,11 +382,23 @@ public void visitLeave(DSDictionary dictionary) {
    * @param reference
    * @param depth     the number of {@link DSReference references} resolved to get to this object
    * @return {@link true} if the reference shall be resolved and the object the reference is pointing to, shall be traversed.
+   * Each object is traversed once per {@link #traverse(DSObject)} only.
    */
   public boolean visitReference(DSReference reference, final int depth) {
     return false;
   }
 
+  /**
+   * Called instead of traversing the object again if {@link #visitReference(DSReference, int)}
+   * asked for a reference to an object already traversed.
+   *
+   * @param reference the reference
+   * @param depth     the number of {@link DSReference references} resolved to get to this object
+   */
+  public void alreadyVisited(DSReference reference, final int depth) {
+
+  }
+
   public void visit(DSBoolean object) {
 
   }
@@ -75,6 +75,11 @@ public boolean visitReference(final DSReference reference, final int depth) {
     return !maxDepthReached;
   }
 
+  @Override
+  public void alreadyVisited(final DSReference reference, final int depth) {
+    println("(already visited)");
+  }
+
   @Override
   public void visit(final DSBoolean object) {
     println("" + object.getValue());
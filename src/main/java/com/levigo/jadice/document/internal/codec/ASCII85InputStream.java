@@ -2,6 +2,7 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import com.levigo.jadice.document.io.SeekableInputStream;
 
@@ -10,31 +11,58 @@
  * class {@link java.io.InputStream}) and does on the fly ASCII85 decoding. Handling is identical
  * with any other {@link java.io.InputStream} except that the only source is only another
  * {@link java.io.InputStream}
+ * <p>
+ * The encoded data is read in chunks and decoded using a lookup table. White-space is ignored,
+ * decoding ends at the <code>~</code> of the <code>~&gt;</code> end-of-data marker or at the end of
+ * the source.
  */
-// FIXME: in some cases (I don't know when and how) there are errors
-// at the end of decoding (in the cases that I know there are
-// missing 0x00 characters at the end
 public class ASCII85InputStream extends SeekableInputStream {
 
+  private static final int CHUNK_SIZE = 4096;
+
+  // character classes. Digits are represented by their value 0..84
+  private static final byte WHITESPACE = -1;
+  private static final byte ZERO_GROUP = -2;
+  private static final byte END_OF_DATA = -3;
+  private static final byte INVALID = -4;
+
+  private static final byte[] CHARACTER_CLASS = new byte[256];
+
+  static {
+    Arrays.fill(CHARACTER_CLASS, INVALID);
+    for (int c = '!'; c <= 'u'; c++)
+      CHARACTER_CLASS[c] = (byte) (c - '!');
+    for (final int c : new int[]{0, '\t', '\n', '\f', '\r', ' '})
+      CHARACTER_CLASS[c] = WHITESPACE;
+    CHARACTER_CLASS['z'] = ZERO_GROUP;
+    CHARACTER_CLASS['~'] = END_OF_DATA;
+  }
+
   private final SeekableInputStream stream;
+  private final boolean propagateClose;
+
   /**
-   * <code>decodedBuffer</code> will contain an array of 4 int with already decoded data. The values
-   * will be returned by <code>read()</code>. The current position in the buffer is stored in
-   * <code>resultBufferPos</code>
-   *
-   * @see #decBufPos
-   * @see #read()
+   * encoded data read from the source
    */
-  int[] decBuf = new int[4];
+  private final byte[] input = new byte[CHUNK_SIZE];
+  private int inputPos;
+  private int inputLimit;
+
   /**
-   * <code>resultBufferPos</code> holds the current position in the buffer of decoded data (
-   * <code>resultBuffer</code>).<br>
-   * the initial value is <code>decodedBuffer.length</code> to force the filling of the buffer
-   *
-   * @see #decBuf
+   * the current, incomplete group of five
    */
-  int decBufPos = decBuf.length;
-  int decBufSize = 0;
+  private long tuple;
+  private int tupleCount;
+
+  /**
+   * the decoded bytes of the last group which didn't fit into the caller's buffer
+   */
+  private final byte[] decBuf = new byte[4];
+  private int decBufPos;
+  private int decBufSize;
+
+  private final byte[] singleByte = new byte[1];
+  private byte[] skipBuffer;
   private long streamPos;
   private boolean eof = false;
 
@@ -45,26 +73,16 @@ public class ASCII85InputStream extends SeekableInputStream {
    * @param stream the source stream
    */
   public ASCII85InputStream(SeekableInputStream stream) {
-    this.stream = stream;
+    this(stream, false);
   }
 
   /**
-   * Decode the passed int[] into the destination array. The int[] array has to be of size 5. The
-   * destination array must be of size 4.
-   *
-   * @param toDecode the int[5] of data to decode
-   * @param dst      the int[4] into which to decode
+   * @param stream         the source stream
+   * @param propagateClose whether to close the source stream when this stream is closed
    */
-  private void decode(int[] toDecode, int[] dst) {
-    long tempValue = 0;
-    for (int i = 0; i < 5; ++i) {
-      tempValue = (tempValue * 85) + (toDecode[i] - '!');
-    }
-
-    // place the decoded data into the result array
-    for (int i = 0; i < 4; ++i) {
-      dst[i] = (int) ((tempValue >> ((3 - i) * 8)) & 0x000000ff);
-    }
+  public ASCII85InputStream(SeekableInputStream stream, boolean propagateClose) {
+    this.stream = stream;
+    this.propagateClose = propagateClose;
   }
 
   /**
@@ -75,118 +93,122 @@ private void decode(int[] toDecode, int[] dst) {
    */
   @Override
   public int read() throws IOException {
+    if (decBufPos < decBufSize) {
+      bitOffset = 0;
+      streamPos++;
+      return decBuf[decBufPos++] & 0xff;
+    }
+    return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+  }
 
-    // if (eof == true && this.lastGroupSize >= 0) {
-    // if (decBufPos <= lastGroupSize)
-    // return decBuf[decBufPos++];
-    // else
-    // return -1;
-    // }
+  /**
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    } else if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) > b.length) || ((off + len) < 0)) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
+    }
+    bitOffset = 0;
 
-    if (decBufPos >= decBufSize) {
+    int n = 0;
+    while (n < len && decBufPos < decBufSize)
+      b[off + n++] = decBuf[decBufPos++];
 
-      if (eof == true) {
-        return -1;
+    while (n < len && !eof) {
+      if (inputPos == inputLimit && !fillInput()) {
+        // end of source without end-of-data marker: treat it like one
+        n += finish(b, off + n, len - n);
+        break;
       }
 
-      final int[] buf = new int[5];
-
-      int numRead = 0;
-
-      int c = 0;
-
-      decBufSize = 4;
-
-      // read until either an EOF is read or the buffer is filled
-      while (!eof && c >= 0 && numRead < 5) {
-        c = stream.read();
-
-        if ((c == 10) // Newline
-            || (c == 13) // carriage return
-            || (c == 32)) { // whitespace
-
-          // this token is a whitespace. ASCII85 ignores whitespaces
+      final byte[] in = input;
+      final int limit = inputLimit;
+      int p = inputPos;
+      while (p < limit && n < len) {
+        final int c = CHARACTER_CLASS[in[p++] & 0xff];
+        if (c >= 0) {
+          tuple = tuple * 85 + c;
+          if (++tupleCount == 5) {
+            n += emit(tuple, 4, b, off + n, len - n);
+            tuple = 0;
+            tupleCount = 0;
+          }
+        } else if (c == WHITESPACE) {
           continue;
-
-        } else if (c == 'z') {
-          if (numRead > 0) {
+        } else if (c == ZERO_GROUP) {
+          if (tupleCount > 0) {
+            inputPos = p;
             throw new IOException("the encoded stream (ASCII85) is corrupt. There is a 'z' in a Group of five");
           }
-
-          buf[0] = buf[1] = buf[2] = buf[3] = buf[4] = 0x21;
-          numRead = 5;
-
-        } else if (c == 0x7e) { // represents: ~
-          /*
-           * End of ASCII85 Stream data. this Part fixes the bugs #1323 and #2235 As the stream now
-           * returns only the last bytes that have been compressed
-           */
-          buf[numRead++] = 0x7e;
-          eof = true;
-
-          if (numRead > 1 && numRead <= 5) {
-            /*
-             * decreasing decBufSize by 2 as the last numRead increment was the read of the ~ sign
-             * which hasn't to be counted
-             */
-            decBufSize = numRead - 2;
-
-            for (int i = numRead; i < 5; i++) {
-
-              buf[i] = 0x21; // represents: !
-
-            }
-
-            numRead = 5;
-          } else {
-            return -1;
-          }
+          n += emit(0, 4, b, off + n, len - n);
+        } else if (c == END_OF_DATA) {
+          inputPos = p;
+          n += finish(b, off + n, len - n);
+          break;
         } else {
-          // check for consitency
-          if (c < '!' || c > 'u') {
-            throw new IOException("corrupt ASCII85 data. Cause: byte out of range: " + c);
-          }
-          buf[numRead++] = c;
+          inputPos = p;
+          throw new IOException("corrupt ASCII85 data. Cause: byte out of range: " + (in[p - 1] & 0xff));
         }
       }
-      decode(buf, decBuf);
-      decBufPos = 0;
+      if (!eof)
+        inputPos = p;
     }
-    bitOffset = 0;
-    streamPos++;
 
-    return decBuf[decBufPos++];
+    streamPos += n;
+    return n == 0 ? -1 : n;
   }
 
   /**
-   * @see java.io.InputStream#read(byte[], int, int)
+   * Decode the final, partial group and mark the end of data.
+   *
+   * @return the number of bytes written into the buffer
    */
-  @Override
-  public int read(byte[] b, int off, int len) throws IOException {
-    if (b == null) {
-      throw new NullPointerException();
-    } else if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) > b.length) || ((off + len) < 0)) {
-      throw new IndexOutOfBoundsException();
-    } else if (len == 0) {
+  private int finish(byte[] b, int off, int len) {
+    eof = true;
+    if (tupleCount < 2)
+      // a single digit doesn't encode anything
       return 0;
-    }
 
-    // FIXME this implementation is very slow. we should try to directly
-    // access
-    // the data in the decoded buffer
-    int i = 0;
-    for (; i < len; i++) {
-      final int c = read();
-      if (c >= 0) {
-        b[off + i] = (byte) c;
-      } else if (i == 0) {
-        return -1;
-      } else {
-        return i;
-      }
+    // pad with the highest digit so that truncation yields the encoded bytes
+    long value = tuple;
+    for (int i = tupleCount; i < 5; i++)
+      value = value * 85 + 84;
+    return emit(value, tupleCount - 1, b, off, len);
+  }
+
+  /**
+   * Write the first <code>count</code> bytes of the given group value into the buffer. Bytes not
+   * fitting into the buffer are retained for subsequent reads.
+   *
+   * @return the number of bytes written into the buffer
+   */
+  private int emit(long value, int count, byte[] b, int off, int len) {
+    if (len >= count) {
+      for (int i = 0; i < count; i++)
+        b[off + i] = (byte) (value >>> (3 - i) * 8);
+      return count;
     }
 
-    return i;
+    for (int i = 0; i < count; i++)
+      decBuf[i] = (byte) (value >>> (3 - i) * 8);
+    System.arraycopy(decBuf, 0, b, off, len);
+    decBufPos = len;
+    decBufSize = count;
+    return len;
+  }
+
+  private boolean fillInput() throws IOException {
+    final int read = stream.read(input, 0, input.length);
+    if (read <= 0)
+      return false;
+    inputPos = 0;
+    inputLimit = read;
+    return true;
   }
 
   /**
@@ -235,25 +257,36 @@ public void seek(long pos) throws IOException {
     }
     bitOffset = 0;
 
-    long i = 0;
     if (pos < streamPos) {
       stream.seek(0);
       streamPos = 0;
+      inputPos = inputLimit = 0;
+      tuple = 0;
+      tupleCount = 0;
       decBufPos = 0;
       decBufSize = 0;
       eof = false;
-    } else {
-      i = streamPos;
     }
 
-    for (; i < pos; i++) {
-      read();
+    if (pos > streamPos) {
+      if (skipBuffer == null)
+        skipBuffer = new byte[CHUNK_SIZE];
+      while (streamPos < pos && read(skipBuffer, 0, (int) Math.min(skipBuffer.length, pos - streamPos)) > 0) {
+        // just decode up to the requested position
+      }
     }
     streamPos = pos;
   }
 
   @Override
   public long getSizeEstimate() {
-    return decBuf.length + stream.getSizeEstimate();
+    return input.length + stream.getSizeEstimate();
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (propagateClose)
+      stream.close();
   }
 }
@@ -2,6 +2,7 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import com.levigo.jadice.document.io.SeekableInputStream;
 
@@ -9,10 +10,50 @@
  * <code>ASCIIHexInputStream</code> is an on the fly ASCII hex decoder. ASCII-Hex is a really simple
  * format which simply consists of Hex pairs, each identifying one byte value.
  * <code>ASCIIHexInputStream</code> behaves like any other {@link InputStream}
+ * <p>
+ * The encoded data is read in chunks and decoded using a lookup table.
  */
 public class ASCIIHexInputStream extends SeekableInputStream {
 
+  private static final int CHUNK_SIZE = 4096;
+
+  // character classes. Hex digits are represented by their value 0..15
+  private static final byte WHITESPACE = -1;
+  private static final byte END_OF_DATA = -2;
+  private static final byte INVALID = -3;
+
+  private static final byte[] CHARACTER_CLASS = new byte[256];
+
+  static {
+    Arrays.fill(CHARACTER_CLASS, INVALID);
+    for (int c = '0'; c <= '9'; c++)
+      CHARACTER_CLASS[c] = (byte) (c - '0');
+    for (int c = 'a'; c <= 'f'; c++)
+      CHARACTER_CLASS[c] = (byte) (c - 'a' + 0xa);
+    for (int c = 'A'; c <= 'F'; c++)
+      CHARACTER_CLASS[c] = (byte) (c - 'A' + 0xa);
+    for (final int c : new int[]{0, '\t', '\n', '\f', '\r', ' '})
+      CHARACTER_CLASS[c] = WHITESPACE;
+    CHARACTER_CLASS['>'] = END_OF_DATA;
+  }
+
   private final SeekableInputStream stream;
+  private final boolean propagateClose;
+
+  /**
+   * encoded data read from the source
+   */
+  private final byte[] input = new byte[CHUNK_SIZE];
+  private int inputPos;
+  private int inputLimit;
+
+  /**
+   * the pending high nibble or <code>-1</code>
+   */
+  private int highNibble = -1;
+
+  private final byte[] singleByte = new byte[1];
+  private byte[] skipBuffer;
   private long streamPos;
   private boolean atEOF;
 
@@ -20,7 +61,16 @@ public class ASCIIHexInputStream extends SeekableInputStream {
    * @param stream the source
    */
   public ASCIIHexInputStream(SeekableInputStream stream) {
+    this(stream, false);
+  }
+
+  /**
+   * @param stream         the source
+   * @param propagateClose whether to close the source when this stream is closed
+   */
+  public ASCIIHexInputStream(SeekableInputStream stream, boolean propagateClose) {
     this.stream = stream;
+    this.propagateClose = propagateClose;
   }
 
   /**
@@ -31,55 +81,18 @@ public ASCIIHexInputStream(SeekableInputStream stream) {
    */
   @Override
   public int read() throws IOException {
-    final int hi = fetchNibble();
-
-    // if highByte already is EOF return EOF
-    if (hi < 0)
-      return -1;
-
-    int lo = fetchNibble();
-
-    // if lowByte is EOF, but we need it for decoding set it to 0
-    if (lo < 0)
-      lo = 0;
-
-    streamPos++;
-    return (hi << 4) | lo;
-  }
-
-  private final int fetchNibble() throws IOException {
-    if (atEOF)
-      return -1;
-
-    do {
-      final int r = stream.read();
-      switch (r){
-        case 0x0:
-        case ' ':
-        case '\r':
-        case '\n':
-        case '\t':
-          continue; // skip whitespace
-
-        case '>':
-        case -1:
-          // Remember EOF condition, so that subsequent reads don't read beyond it.
-          atEOF = true;
-          return -1;
-
-        default:
-          if ((r >= '0' && r <= '9'))
-            return r - '0';
-          if ((r >= 'a' && r <= 'f'))
-            return r - 'a' + 0xa;
-          if ((r >= 'A' && r <= 'F'))
-            return r - 'A' + 0xa;
-
-          throw new IOException(
-              "Invalid character in ASCIIHexDecode stream '" + ((char) r) + "' (" + Integer.toString(r) + ") at " + (
-                  stream.getStreamPosition() - 1));
+    // fast path: a pair of hex digits within the current chunk
+    if (highNibble < 0 && inputPos + 1 < inputLimit && !atEOF) {
+      final int hi = CHARACTER_CLASS[input[inputPos] & 0xff];
+      final int lo = CHARACTER_CLASS[input[inputPos + 1] & 0xff];
+      if ((hi | lo) >= 0) {
+        inputPos += 2;
+        bitOffset = 0;
+        streamPos++;
+        return hi << 4 | lo;
       }
-    } while (true);
+    }
+    return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
   }
 
   /**
@@ -102,29 +115,84 @@ public int read(byte[] b, int off, int len) throws IOException {
     } else if (len == 0) {
       return 0;
     }
+    bitOffset = 0;
 
-    int c = read();
-    if (c == -1) {
-      return -1;
-    }
-    b[off] = (byte) c;
-
-    int i = 1;
+    int n = 0;
+    while (n < len && !atEOF) {
+      if (inputPos == inputLimit && !fillInput()) {
+        n += finish(b, off + n);
+        break;
+      }
 
-    // catch the IOException, return the already read values
-    try {
-      for (; i < len; i++) {
-        c = read();
-        if (c == -1) {
+      final byte[] in = input;
+      final int limit = inputLimit;
+      int p = inputPos;
+      int hi = highNibble;
+      boolean invalid = false;
+      boolean endOfData = false;
+      while (p < limit && n < len) {
+        final int c = CHARACTER_CLASS[in[p++] & 0xff];
+        if (c >= 0) {
+          if (hi < 0) {
+            hi = c;
+          } else {
+            b[off + n++] = (byte) (hi << 4 | c);
+            hi = -1;
+          }
+        } else if (c == END_OF_DATA) {
+          endOfData = true;
+          break;
+        } else if (c != WHITESPACE) {
+          // leave the invalid character in place. If some data has already been decoded, return
+          // it. The next read will fail.
+          p--;
+          invalid = true;
           break;
         }
+      }
+      highNibble = hi;
+      inputPos = p;
 
-        b[off + i] = (byte) c;
+      if (invalid) {
+        if (n > 0)
+          break;
+        final int r = in[p] & 0xff;
+        throw new IOException("Invalid character in ASCIIHexDecode stream '" + ((char) r) + "' (" + r + ") at "
+            + (stream.getStreamPosition() - (limit - p)));
+      }
+      if (endOfData) {
+        n += finish(b, off + n);
+        break;
       }
-    } catch (final IOException ee) {
-      // just return the alread read values
     }
-    return i;
+
+    streamPos += n;
+    return n == 0 ? -1 : n;
+  }
+
+  /**
+   * Decode a trailing high nibble and mark the end of data.
+   *
+   * @return the number of bytes written into the buffer
+   */
+  private int finish(byte[] b, int off) {
+    atEOF = true;
+    if (highNibble < 0)
+      return 0;
+
+    // if the low nibble is missing, it is assumed to be 0
+    b[off] = (byte) (highNibble << 4);
+    highNibble = -1;
+    return 1;
+  }
+
+  private boolean fillInput() throws IOException {
+    final int read = stream.read(input, 0, input.length);
+    if (read <= 0)
+      return false;
+    inputPos = 0;
+    inputLimit = read;
+    return true;
   }
 
   @Override
@@ -151,12 +219,18 @@ public void seek(long pos) throws IOException {
       // backwards seek -> we have to start all over
       stream.seek(0);
       streamPos = 0;
+      inputPos = inputLimit = 0;
+      highNibble = -1;
       atEOF = false;
     }
 
-    while (streamPos < pos)
-      if (read() < 0)
-        break;
+    if (pos > streamPos) {
+      if (skipBuffer == null)
+        skipBuffer = new byte[CHUNK_SIZE];
+      while (streamPos < pos && read(skipBuffer, 0, (int) Math.min(skipBuffer.length, pos - streamPos)) > 0) {
+        // just decode up to the requested position
+      }
+    }
 
     streamPos = pos;
   }
@@ -166,4 +240,11 @@ public long getSizeEstimate() {
     return stream.getSizeEstimate();
   }
 
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (propagateClose)
+      stream.close();
+  }
+
 }
@@ -0,0 +1,761 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+/**
+ * This class implements a stream filter for decoding CCITT Group 3 (one- and two-dimensional, ITU-T
+ * T.4) and Group 4 (ITU-T T.6) facsimile data, as used by the PDF <code>CCITTFaxDecode</code>
+ * filter. The decoded data consists of packed rows of 1-bit pixels, each row padded to a full byte.
+ * <p>
+ * Codes are decoded by table lookup. Rows are decoded on demand, one at a time, directly into a
+ * packed row buffer. The only state kept between rows are the changing elements of the reference
+ * row, held in an array which is reused for every row. Seeking backwards requires decoding to be
+ * restarted from the start of the data; seeking forward decodes the rows in between.
+ */
+public final class CCITTFaxInputStream extends SeekableInputStream implements DecodeBudget.Metered {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CCITTFaxInputStream.class);
+
+  /**
+   * the default number of pixels per row
+   */
+  public static final int DEFAULT_COLUMNS = 1728;
+
+  /*
+   * The code tables of ITU-T T.4. Terminating codes are indexed by run length, make-up codes by run
+   * length / 64 - 1.
+   */
+  static final String[] WHITE_TERMINATING = {
+      "00110101", "000111", "0111", "1000", "1011", "1100", "1110", "1111", // 0-7
+      "10011", "10100", "00111", "01000", "001000", "000011", "110100", "110101", // 8-15
+      "101010", "101011", "0100111", "0001100", "0001000", "0010111", "0000011", "0000100", // 16-23
+      "0101000", "0101011", "0010011", "0100100", "0011000", "00000010", "00000011", "00011010", // 24-31
+      "00011011", "00010010", "00010011", "00010100", "00010101", "00010110", "00010111", "00101000", // 32-39
+      "00101001", "00101010", "00101011", "00101100", "00101101", "00000100", "00000101", "00001010", // 40-47
+      "00001011", "01010010", "01010011", "01010100", "01010101", "00100100", "00100101", "01011000", // 48-55
+      "01011001", "01011010", "01011011", "01001010", "01001011", "00110010", "00110011", "00110100" // 56-63
+  };
+
+  static final String[] WHITE_MAKEUP = {
+      "11011", "10010", "010111", "0110111", "00110110", "00110111", "01100100", "01100101", // 64-512
+      "01101000", "01100111", "011001100", "011001101", "011010010", "011010011", "011010100", // 576-960
+      "011010101", "011010110", "011010111", "011011000", "011011001", "011011010", "011011011", // 1024-1408
+      "010011000", "010011001", "010011010", "011000", "010011011" // 1472-1728
+  };
+
+  static final String[] BLACK_TERMINATING = {
+      "0000110111", "010", "11", "10", "011", "0011", "0010", "00011", // 0-7
+      "000101", "000100", "0000100", "0000101", "0000111", "00000100", "00000111", "000011000", // 8-15
+      "0000010111", "0000011000", "0000001000", "00001100111", "00001101000", "00001101100", // 16-21
+      "00000110111", "00000101000", "00000010111", "00000011000", "000011001010", "000011001011", // 22-27
+      "000011001100", "000011001101", "000001101000", "000001101001", "000001101010", "000001101011", // 28-33
+      "000011010010", "000011010011", "000011010100", "000011010101", "000011010110", "000011010111", // 34-39
+      "000001101100", "000001101101", "000011011010", "000011011011", "000001010100", "000001010101", // 40-45
+      "000001010110", "000001010111", "000001100100", "000001100101", "000001010010", "000001010011", // 46-51
+      "000000100100", "000000110111", "000000111000", "000000100111", "000000101000", "000001011000", // 52-57
+      "000001011001", "000000101011", "000000101100", "000001011010", "000001100110", "000001100111" // 58-63
+  };
+
+  static final String[] BLACK_MAKEUP = {
+      "0000001111", "000011001000", "000011001001", "000001011011", "000000110011", "000000110100", // 64-384
+      "000000110101", "0000001101100", "0000001101101", "0000001001010", "0000001001011", // 448-704
+      "0000001001100", "0000001001101", "0000001110010", "0000001110011", "0000001110100", // 768-1024
+      "0000001110101", "0000001110110", "0000001110111", "0000001010010", "0000001010011", // 1088-1344
+      "0000001010100", "0000001010101", "0000001011010", "0000001011011", "0000001100100", // 1408-1664
+      "0000001100101" // 1728
+  };
+
+  /**
+   * the make-up codes for runs of 1792 to 2560 pixels, common to both colors
+   */
+  static final String[] EXTENDED_MAKEUP = {
+      "00000001000", "00000001100", "00000001101", "000000010010", "000000010011", "000000010100", // 1792-2112
+      "000000010101", "000000010110", "000000010111", "000000011100", "000000011101", "000000011110", // 2176-2496
+      "000000011111" // 2560
+  };
+
+  static final String EOL = "000000000001";
+
+  /*
+   * The two-dimensional mode codes. Vertical modes are numbered by a1 - b1 + 3.
+   */
+  static final int MODE_PASS = 7;
+  static final int MODE_HORIZONTAL = 8;
+  static final int MODE_EXTENSION = 9;
+
+  static final String[] VERTICAL_MODES = {
+      "0000010", "000010", "010", "1", "011", "000011", "0000011" // VL3 - VR3
+  };
+  static final String PASS = "0001";
+  static final String HORIZONTAL = "001";
+  static final String EXTENSION = "0000001";
+
+  private static final int WHITE_BITS = 12;
+  private static final int BLACK_BITS = 13;
+  private static final int MODE_BITS = 7;
+
+  /*
+   * The lookup tables are indexed by the next bits of the data. Entries hold the value of the code
+   * (the run length or the mode) shifted left by 5 and the length of the code in the lower 5 bits,
+   * 0 for invalid codes. The value of EOL is -1.
+   */
+  private static final int[] WHITE_TABLE = new int[1 << WHITE_BITS];
+  private static final int[] BLACK_TABLE = new int[1 << BLACK_BITS];
+  private static final int[] MODE_TABLE = new int[1 << MODE_BITS];
+
+  static {
+    buildRunTable(WHITE_TABLE, WHITE_BITS, WHITE_TERMINATING, WHITE_MAKEUP);
+    buildRunTable(BLACK_TABLE, BLACK_BITS, BLACK_TERMINATING, BLACK_MAKEUP);
+    for (int i = 0; i < VERTICAL_MODES.length; i++)
+      addCode(MODE_TABLE, MODE_BITS, VERTICAL_MODES[i], i);
+    addCode(MODE_TABLE, MODE_BITS, PASS, MODE_PASS);
+    addCode(MODE_TABLE, MODE_BITS, HORIZONTAL, MODE_HORIZONTAL);
+    addCode(MODE_TABLE, MODE_BITS, EXTENSION, MODE_EXTENSION);
+  }
+
+  private static void buildRunTable(int[] table, int bits, String[] terminating, String[] makeup) {
+    for (int i = 0; i < terminating.length; i++)
+      addCode(table, bits, terminating[i], i);
+    for (int i = 0; i < makeup.length; i++)
+      addCode(table, bits, makeup[i], (i + 1) * 64);
+    for (int i = 0; i < EXTENDED_MAKEUP.length; i++)
+      addCode(table, bits, EXTENDED_MAKEUP[i], 1792 + i * 64);
+    addCode(table, bits, EOL, -1);
+  }
+
+  private static void addCode(int[] table, int bits, String code, int value) {
+    final int length = code.length();
+    final int first = Integer.parseInt(code, 2) << bits - length;
+    for (int i = first; i < first + (1 << bits - length); i++) {
+      if (table[i] != 0)
+        throw new IllegalStateException("Ambiguous code " + code);
+      table[i] = value << 5 | length;
+    }
+  }
+
+  /*
+   * The results of decoding a row.
+   */
+  private static final int ROW_COMPLETE = 0;
+  private static final int ROW_EOL = 1;
+  private static final int ROW_INVALID = 2;
+
+  private static final int WHITE = 0;
+  private static final int BLACK = 1;
+
+  private static final int INPUT_SIZE = 4096;
+
+  // decode parameters
+  private final int k;
+  private final int columns;
+  private final int rows;
+  private final boolean encodedByteAlign;
+  private final boolean endOfBlock;
+  private final byte whiteByte;
+
+  private SeekableInputStream stream;
+  private final boolean propagateClose;
+
+  // compressed data
+  private final byte[] input = new byte[INPUT_SIZE];
+  private int inputPos;
+  private int inputLimit;
+  private long srcPosition = 0;
+  private boolean srcEOF;
+
+  // the bit reader
+  private long bitBuffer;
+  private int bitCount;
+  /**
+   * the number of zero bits appended to the buffer after the end of the data
+   */
+  private int paddingBits;
+
+  /**
+   * the changing elements of the reference row and of the row being decoded, followed by three
+   * entries of {@link #columns}
+   */
+  private int[] referenceRow;
+  private int referenceCount;
+  private int[] codingRow;
+  private int codingCount;
+
+  /**
+   * the current row, packed
+   */
+  private final byte[] row;
+  /**
+   * the number of rows decoded so far
+   */
+  private int rowNumber;
+  private boolean endOfData;
+  private boolean eolSeen;
+  private boolean warned;
+
+  /**
+   * the position of the start of {@link #row}, -1 if no row has been decoded yet
+   */
+  private long rowPosition = -1;
+  private long currentPosition = 0;
+
+  private final byte[] singleByte = new byte[1];
+
+  private DecodeBudget.Meter meter;
+
+  /**
+   * Construct a CCITTFaxInputStream.
+   *
+   * @param in               the inputstream providing the encoded data
+   * @param k                the coding scheme: negative for pure two-dimensional (Group 4), 0 for
+   *                         pure one-dimensional (Group 3, 1-D) and positive for mixed one- and
+   *                         two-dimensional encoding (Group 3, 2-D)
+   * @param columns          the number of pixels per row
+   * @param rows             the number of rows or 0, if the number of rows is unknown
+   * @param encodedByteAlign whether each encoded row starts at a byte boundary
+   * @param blackIs1         whether black pixels are decoded to 1 bits
+   * @param endOfBlock       whether the data is terminated by an end-of-block pattern
+   * @param propagateClose   whether to close the given inputstream when this stream is closed
+   */
+  public CCITTFaxInputStream(SeekableInputStream in, int k, int columns, int rows, boolean encodedByteAlign,
+      boolean blackIs1, boolean endOfBlock, boolean propagateClose) {
+    if (in == null)
+      throw new IllegalArgumentException("no inputstream");
+    if (columns < 1)
+      throw new IllegalArgumentException("Invalid number of columns: " + columns);
+
+    stream = in;
+    this.k = k;
+    this.columns = columns;
+    this.rows = Math.max(rows, 0);
+    this.encodedByteAlign = encodedByteAlign;
+    this.endOfBlock = endOfBlock;
+    this.propagateClose = propagateClose;
+    whiteByte = blackIs1 ? 0 : (byte) 0xff;
+
+    row = new byte[(columns + 7) / 8];
+    referenceRow = new int[columns + 4];
+    codingRow = new int[columns + 4];
+    resetReferenceRow();
+  }
+
+  /**
+   * @return the number of bytes of a decoded row
+   */
+  public int getRowLength() {
+    return row.length;
+  }
+
+  @Override
+  public void setDecodeMeter(DecodeBudget.Meter meter) {
+    this.meter = meter;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b) throws IOException {
+    if (b == null || b.length == 0)
+      return 0;
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
+    }
+
+    int n = 0;
+    while (n < len) {
+      if (!seekRow(currentPosition))
+        break;
+      final int start = (int) (currentPosition - rowPosition);
+      final int count = Math.min(len - n, row.length - start);
+      System.arraycopy(row, start, b, off + n, count);
+      currentPosition += count;
+      n += count;
+    }
+
+    return n > 0 ? n : -1;
+  }
+
+  /**
+   * Make the row containing the given position the current one.
+   *
+   * @return <code>false</code> if the position is beyond the end of the data
+   */
+  private boolean seekRow(long pos) throws IOException {
+    if (rowPosition >= 0 && pos >= rowPosition && pos < rowPosition + row.length)
+      return true;
+    if (rowPosition >= 0 && pos < rowPosition)
+      restart();
+
+    final DecodeBudget.Meter m = meter;
+    if (m != null)
+      m.check();
+    final long token = m != null ? m.enter() : 0;
+    try {
+      while (rowPosition < 0 || pos >= rowPosition + row.length) {
+        if (!decodeRow())
+          return false;
+        rowPosition = rowPosition < 0 ? 0 : rowPosition + row.length;
+      }
+    } finally {
+      if (m != null)
+        m.exit(token);
+    }
+    if (m != null) {
+      try {
+        m.update(getConsumedPosition(), rowPosition + row.length);
+      } catch (final DecodeBudgetExceededException e) {
+        // don't hand out the row exceeding the budget
+        restart();
+        throw e;
+      }
+    }
+    return true;
+  }
+
+  private void restart() {
+    srcPosition = 0;
+    srcEOF = false;
+    inputPos = inputLimit = 0;
+    bitBuffer = 0;
+    bitCount = 0;
+    paddingBits = 0;
+    rowNumber = 0;
+    endOfData = false;
+    eolSeen = false;
+    rowPosition = -1;
+    resetReferenceRow();
+  }
+
+  /**
+   * @return the number of bytes of compressed data consumed so far
+   */
+  private long getConsumedPosition() {
+    return getBitPosition() / 8;
+  }
+
+  /**
+   * @return the number of bits of compressed data consumed so far
+   */
+  private long getBitPosition() {
+    return (srcPosition - (inputLimit - inputPos)) * 8 - (bitCount - paddingBits);
+  }
+
+  /**
+   * Decode the next row into {@link #row}.
+   *
+   * @return <code>false</code> if the end of the data has been reached
+   */
+  private boolean decodeRow() throws IOException {
+    if (endOfData || rows > 0 && rowNumber >= rows)
+      return false;
+
+    boolean twoDimensional;
+    if (k < 0) {
+      if (encodedByteAlign)
+        alignToByte();
+      if (peek(12) == 1) {
+        // EOFB: two EOLs
+        if (endOfBlock)
+          return endOfData();
+        do
+          consume(12);
+        while (peek(12) == 1);
+      }
+      twoDimensional = true;
+    } else {
+      // skip fill bits and EOLs, each followed by a tag bit in mixed mode
+      int eols = 0;
+      int tag = -1;
+      while (skipEOL()) {
+        eols++;
+        if (k > 0)
+          tag = readTag();
+      }
+      // RTC: six EOLs
+      if (eols > 1 && endOfBlock)
+        return endOfData();
+      if (encodedByteAlign && eols == 0)
+        alignToByte();
+      if (k > 0 && tag < 0)
+        tag = readTag();
+      twoDimensional = tag == 0;
+    }
+
+    if (isAtEnd())
+      return endOfData();
+
+    Arrays.fill(row, whiteByte);
+    codingCount = 0;
+    final long start = getBitPosition();
+    final int result = twoDimensional ? decode2D() : decode1D();
+    if (result == ROW_INVALID && getBitPosition() == start && k < 0)
+      // not even the first code is valid: trailing garbage rather than a damaged row
+      return endOfData();
+    if (result == ROW_EOL) {
+      if (k < 0)
+        // EOFB within a row
+        endOfData = true;
+    } else if (result == ROW_INVALID) {
+      if (!warned) {
+        LOGGER.warn("Invalid CCITT fax data in row " + rowNumber + ", the remainder of the row is left blank");
+        warned = true;
+      }
+      if (k >= 0) {
+        // resynchronize at the next EOL
+        while (peek(12) != 1 && !isAtEnd())
+          consume(1);
+      } else {
+        endOfData = true;
+      }
+    }
+
+    // the decoded row becomes the reference for the next one
+    final int[] swap = referenceRow;
+    referenceRow = codingRow;
+    codingRow = swap;
+    referenceCount = codingCount;
+    terminateReferenceRow();
+
+    rowNumber++;
+    return true;
+  }
+
+  /**
+   * Skip fill bits and an EOL, if there is one. With {@link #encodedByteAlign} an EOL ends at a
+   * byte boundary. The fill bits before it can't be told apart from the padding of the previous row
+   * followed by a row starting with a long white run, though. Therefore the remaining bits of the
+   * current byte are considered to be padding unless EOLs have been encountered before.
+   *
+   * @return whether an EOL has been skipped
+   */
+  private boolean skipEOL() throws IOException {
+    if (!encodedByteAlign) {
+      while (peek(12) == 0 && !isAtEnd())
+        consume(1);
+      if (peek(12) != 1)
+        return false;
+      consume(12);
+      return true;
+    }
+
+    if (!eolSeen)
+      alignToByte();
+
+    // the first byte boundary at least 12 bits ahead
+    int end = (bitCount - paddingBits) & 7;
+    while (end < 12)
+      end += 8;
+    while (true) {
+      final int bits = peek(end);
+      if (bits == 1) {
+        consume(end);
+        eolSeen = true;
+        return true;
+      }
+      if (bits != 0 || isAtEnd())
+        return false;
+      // all zeros: keep the last 11 bits, which may start an EOL ending at the next boundary
+      consume(end - 11);
+      end = 19;
+    }
+  }
+
+  private boolean endOfData() {
+    endOfData = true;
+    return false;
+  }
+
+  private void resetReferenceRow() {
+    referenceCount = 0;
+    terminateReferenceRow();
+  }
+
+  private void terminateReferenceRow() {
+    referenceRow[referenceCount] = columns;
+    referenceRow[referenceCount + 1] = columns;
+    referenceRow[referenceCount + 2] = columns;
+  }
+
+  /**
+   * Decode a one-dimensionally encoded row, consisting of alternating white and black runs.
+   */
+  private int decode1D() throws IOException {
+    int a0 = 0;
+    int color = WHITE;
+    while (a0 < columns) {
+      final int run = readRun(color);
+      if (run < 0)
+        return run == -1 ? ROW_EOL : ROW_INVALID;
+
+      final int a1 = Math.min(a0 + run, columns);
+      if (color == BLACK)
+        invert(a0, a1);
+      addChangingElement(a1);
+      a0 = a1;
+      color ^= 1;
+    }
+    return ROW_COMPLETE;
+  }
+
+  /**
+   * Decode a two-dimensionally encoded row relative to the reference row.
+   */
+  private int decode2D() throws IOException {
+    final int[] reference = referenceRow;
+    int a0 = -1;
+    int color = WHITE;
+    int b = 0;
+    while (a0 < columns) {
+      // b1: the first changing element on the reference row to the right of a0 and of the opposite
+      // color of a0, i.e. at an even index for white and an odd one for black
+      if (b > 0)
+        b--;
+      while (reference[b] <= a0 && reference[b] < columns)
+        b++;
+      if ((b & 1) != color)
+        b++;
+      final int b1 = reference[b];
+
+      final int entry = MODE_TABLE[peek(MODE_BITS)];
+      if (entry == 0)
+        return peek(12) == 1 ? ROW_EOL : ROW_INVALID;
+      consume(entry & 31);
+
+      final int start = Math.max(a0, 0);
+      final int mode = entry >> 5;
+      switch (mode){
+        case MODE_PASS:
+          final int b2 = reference[b + 1];
+          if (color == BLACK)
+            invert(start, b2);
+          a0 = b2;
+          break;
+
+        case MODE_HORIZONTAL:
+          final int run1 = readRun(color);
+          final int run2 = run1 < 0 ? run1 : readRun(color ^ 1);
+          if (run2 < 0)
+            return ROW_INVALID;
+          final int a1 = Math.min(start + run1, columns);
+          final int a2 = Math.min(a1 + run2, columns);
+          if (color == BLACK)
+            invert(start, a1);
+          else
+            invert(a1, a2);
+          addChangingElement(a1);
+          addChangingElement(a2);
+          a0 = a2;
+          break;
+
+        case MODE_EXTENSION:
+          // uncompressed mode isn't supported
+          return ROW_INVALID;
+
+        default:
+          final int v = Math.min(Math.max(b1 + mode - 3, start), columns);
+          if (color == BLACK)
+            invert(start, v);
+          addChangingElement(v);
+          a0 = v;
+          color ^= 1;
+          break;
+      }
+    }
+    return ROW_COMPLETE;
+  }
+
+  /**
+   * Record a changing element of the current row. A change back at the position of the previous
+   * one cancels it.
+   */
+  private void addChangingElement(int position) {
+    if (position >= columns)
+      return;
+    if (codingCount > 0 && codingRow[codingCount - 1] == position)
+      codingCount--;
+    else
+      codingRow[codingCount++] = position;
+  }
+
+  /**
+   * Invert the pixels <code>from</code> (inclusive) to <code>to</code> (exclusive) of the current
+   * row, which has been filled with white initially.
+   */
+  private void invert(int from, int to) {
+    if (from >= to)
+      return;
+    final int first = from >> 3;
+    final int last = (to - 1) >> 3;
+    final int firstMask = 0xff >>> (from & 7);
+    final int lastMask = 0xff << 7 - ((to - 1) & 7);
+    if (first == last) {
+      row[first] ^= firstMask & lastMask;
+    } else {
+      row[first] ^= firstMask;
+      for (int i = first + 1; i < last; i++)
+        row[i] ^= 0xff;
+      row[last] ^= lastMask;
+    }
+  }
+
+  /**
+   * Read a run, consisting of any number of make-up codes followed by a terminating code.
+   *
+   * @return the length of the run, -1 for an EOL (which is not consumed) or -2 for an invalid code
+   */
+  private int readRun(int color) throws IOException {
+    final int[] table = color == WHITE ? WHITE_TABLE : BLACK_TABLE;
+    final int bits = color == WHITE ? WHITE_BITS : BLACK_BITS;
+    int length = 0;
+    while (true) {
+      final int entry = table[peek(bits)];
+      if (entry == 0)
+        return -2;
+      final int run = entry >> 5;
+      if (run < 0)
+        return -1;
+      consume(entry & 31);
+      length += run;
+      if (run < 64)
+        return length;
+    }
+  }
+
+  /**
+   * Return the next <code>n</code> bits (at most 32) without consuming them. Beyond the end of the
+   * data zero bits are returned.
+   */
+  private int peek(int n) throws IOException {
+    if (bitCount < n)
+      fillBits();
+    return (int) (bitBuffer >>> bitCount - n) & (1 << n) - 1;
+  }
+
+  private void consume(int n) {
+    bitCount -= n;
+    if (bitCount < paddingBits)
+      paddingBits = bitCount;
+  }
+
+  private int readTag() throws IOException {
+    final int bit = peek(1);
+    consume(1);
+    return bit;
+  }
+
+  private void alignToByte() {
+    consume((bitCount - paddingBits) & 7);
+  }
+
+  /**
+   * @return whether there are no more bits which could start a code, i.e. only up to seven zero
+   *         bits remain
+   */
+  private boolean isAtEnd() throws IOException {
+    if (bitCount < 8)
+      fillBits();
+    final int remaining = bitCount - paddingBits;
+    return remaining < 8 && peek(remaining) == 0;
+  }
+
+  private void fillBits() throws IOException {
+    while (bitCount <= 56) {
+      if (inputPos == inputLimit && !fillInput()) {
+        // pad with zeros
+        bitBuffer <<= 8;
+        bitCount += 8;
+        paddingBits += 8;
+        continue;
+      }
+      bitBuffer = bitBuffer << 8 | input[inputPos++] & 0xff;
+      bitCount += 8;
+    }
+  }
+
+  private boolean fillInput() throws IOException {
+    if (srcEOF || stream == null)
+      return false;
+
+    final int read;
+    synchronized (stream) {
+      if (stream.getStreamPosition() != srcPosition)
+        stream.seek(srcPosition);
+      read = stream.read(input, 0, input.length);
+    }
+    if (read <= 0) {
+      srcEOF = true;
+      return false;
+    }
+
+    srcPosition += read;
+    inputPos = 0;
+    inputLimit = read;
+    return true;
+  }
+
+  /**
+   * Returns 0 after EOF has been reached, otherwise always return 1.
+   */
+  @Override
+  public int available() throws IOException {
+    checkClosed();
+    return endOfData && (rowPosition < 0 || currentPosition >= rowPosition + row.length) ? 0 : 1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (propagateClose && stream != null)
+      stream.close();
+    stream = null;
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return currentPosition;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return rows > 0 ? (long) rows * row.length : -1L;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Performance considerations: seeking backwards before the current row requires decoding to be
+   * re-started from position 0.
+   */
+  @Override
+  public void seek(long pos) throws IOException {
+    checkClosed();
+    if (pos < getFlushedPosition() || pos < 0)
+      throw new IndexOutOfBoundsException(
+          "Position to seek to (" + pos + ") is smaller than the flushed position or negative.");
+
+    bitOffset = 0;
+    currentPosition = pos;
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return rows > 0 ? (long) rows * row.length : (stream != null ? stream.getSizeEstimate() * 10 : 1024);
+  }
+}
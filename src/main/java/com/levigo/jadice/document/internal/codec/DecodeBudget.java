@@ -0,0 +1,284 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.levigo.jadice.document.internal.codec.DecodeBudgetExceededException.Limit;
+
+/**
+ * Limits the resources spent on decoding the streams of one document, in order to defend against
+ * decompression bombs and similar hostile input. The limits apply to every decoder of a stream
+ * individually and to all decoders of the document taken together:
+ * <ul>
+ * <li>the number of bytes a decoder produces,</li>
+ * <li>the ratio between the bytes a decoder produces and the bytes it consumes,</li>
+ * <li>the time spent decoding.</li>
+ * </ul>
+ * Decoders are bound to a budget by way of a {@link Meter}. A decoder exceeding a limit fails with a
+ * {@link DecodeBudgetExceededException}. The failure is final: the decoder drops the chunk which
+ * exceeded the limit and fails again on every further attempt to read from it. All limits are
+ * disabled by default.
+ * <p>
+ * Additionally, a {@link DecodeMemoryAccountant} shared between documents may be used to bound the
+ * memory held by fully decoded streams.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class DecodeBudget {
+
+  /**
+   * The number of bytes a decoder may produce before the expansion ratio is enforced. A decoder
+   * starting on a small amount of input has to produce output well in excess of the ratio.
+   */
+  public static final long EXPANSION_RATIO_GRACE = 1024 * 1024;
+
+  /**
+   * The nesting depth of metered decoding on the current thread. Decoders reading from other
+   * decoders must not count the same time twice.
+   */
+  private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+  /**
+   * the token of a nested decoder, whose time is counted by the outer one
+   */
+  private static final long NESTED = Long.MIN_VALUE;
+
+  /**
+   * Implemented by decoders which can be bound to a budget.
+   */
+  public interface Metered {
+    /**
+     * @param meter the meter to report to or <code>null</code> for unlimited decoding
+     */
+    void setDecodeMeter(Meter meter);
+  }
+
+  /**
+   * Binds a decoder to a budget. A meter is used by a single decoder and must not be shared.
+   */
+  public final class Meter {
+    private final String decoder;
+    private long consumed;
+    private long decoded;
+    private long time;
+    private DecodeBudgetExceededException exceeded;
+
+    Meter(String decoder) {
+      this.decoder = decoder;
+    }
+
+    /**
+     * Called by the decoder when it starts decoding a chunk.
+     *
+     * @return the token to be passed to {@link #exit(long)}
+     */
+    public long enter() {
+      return DEPTH.get()[0]++ == 0 ? System.nanoTime() : NESTED;
+    }
+
+    /**
+     * Called by the decoder when it has finished decoding a chunk, even if decoding failed.
+     *
+     * @param token the token returned by {@link #enter()}
+     */
+    public void exit(long token) {
+      DEPTH.get()[0]--;
+      if (token != NESTED) {
+        final long elapsed = System.nanoTime() - token;
+        time += elapsed;
+        documentTime.addAndGet(elapsed);
+      }
+    }
+
+    /**
+     * Called by the decoder before decoding a chunk.
+     *
+     * @throws DecodeBudgetExceededException if a limit has been exceeded before
+     */
+    public void check() throws DecodeBudgetExceededException {
+      if (exceeded != null)
+        throw new DecodeBudgetExceededException(exceeded.getLimit(), exceeded.getMessage());
+    }
+
+    /**
+     * Called by the decoder after decoding a chunk. Positions may move backwards if the decoder is
+     * restarted, only their maximum counts. If a limit has been exceeded, the decoder must drop the
+     * chunk. The meter remembers the exceeded limit, failing every further {@link #check()} and
+     * update.
+     *
+     * @param consumedPosition the number of bytes of input consumed so far
+     * @param decodedPosition  the number of bytes decoded so far
+     * @throws DecodeBudgetExceededException if a limit has been exceeded
+     */
+    public void update(long consumedPosition, long decodedPosition) throws DecodeBudgetExceededException {
+      check();
+      if (consumedPosition > consumed)
+        consumed = consumedPosition;
+      // a decoder reaching the end of its data is not stopped by the limits of the others
+      if (decodedPosition <= decoded)
+        return;
+      final long total = documentLength.addAndGet(decodedPosition - decoded);
+      decoded = decodedPosition;
+
+      if (decoded > maxStreamLength)
+        exceed(Limit.STREAM_LENGTH, decoder + " decoded more than " + maxStreamLength + " bytes");
+      if (decoded > EXPANSION_RATIO_GRACE && decoded > maxExpansionRatio * Math.max(consumed, 1))
+        exceed(Limit.EXPANSION_RATIO, decoder + " decoded " + decoded + " bytes from " + consumed + " bytes");
+      if (time > maxStreamTime)
+        exceed(Limit.STREAM_TIME,
+            decoder + " exceeded the decoding time of " + TimeUnit.NANOSECONDS.toMillis(maxStreamTime) + " ms");
+      if (total > maxDocumentLength)
+        exceed(Limit.DOCUMENT_LENGTH, "The document's streams decoded to more than " + maxDocumentLength + " bytes");
+      if (documentTime.get() > maxDocumentTime)
+        exceed(Limit.DOCUMENT_TIME,
+            "Decoding the document's streams exceeded " + TimeUnit.NANOSECONDS.toMillis(maxDocumentTime) + " ms");
+    }
+
+    /**
+     * @return whether a limit has been exceeded
+     */
+    public boolean isExceeded() {
+      return exceeded != null;
+    }
+
+    private void exceed(Limit limit, String message) throws DecodeBudgetExceededException {
+      exceeded = new DecodeBudgetExceededException(limit, message);
+      throw exceeded;
+    }
+  }
+
+  private final DecodeMemoryAccountant memoryAccountant;
+
+  private volatile long maxStreamLength = Long.MAX_VALUE;
+  private volatile double maxExpansionRatio = Double.POSITIVE_INFINITY;
+  private volatile long maxStreamTime = Long.MAX_VALUE;
+  private volatile long maxDocumentLength = Long.MAX_VALUE;
+  private volatile long maxDocumentTime = Long.MAX_VALUE;
+
+  private final AtomicLong documentLength = new AtomicLong();
+  private final AtomicLong documentTime = new AtomicLong();
+
+  /**
+   * Create a budget without limits and without a memory accountant.
+   */
+  public DecodeBudget() {
+    this((DecodeMemoryAccountant) null);
+  }
+
+  /**
+   * Create a budget without limits.
+   *
+   * @param memoryAccountant the accountant bounding the memory held by decoded streams or
+   *                         <code>null</code>
+   */
+  public DecodeBudget(DecodeMemoryAccountant memoryAccountant) {
+    this.memoryAccountant = memoryAccountant;
+  }
+
+  /**
+   * Create a fresh budget for another document, using the limits and the memory accountant of the
+   * given one.
+   */
+  public DecodeBudget(DecodeBudget template) {
+    this(template.memoryAccountant);
+    maxStreamLength = template.maxStreamLength;
+    maxExpansionRatio = template.maxExpansionRatio;
+    maxStreamTime = template.maxStreamTime;
+    maxDocumentLength = template.maxDocumentLength;
+    maxDocumentTime = template.maxDocumentTime;
+  }
+
+  /**
+   * @param decoder the name of the decoder used in error messages
+   * @return a new meter for a decoder
+   */
+  public Meter newMeter(String decoder) {
+    return new Meter(decoder);
+  }
+
+  public DecodeMemoryAccountant getMemoryAccountant() {
+    return memoryAccountant;
+  }
+
+  /**
+   * @param maxLength the maximum number of bytes produced by a single decoder
+   */
+  public void setMaxStreamLength(long maxLength) {
+    if (maxLength < 0)
+      throw new IllegalArgumentException("The maximum length must not be negative");
+    maxStreamLength = maxLength;
+  }
+
+  public long getMaxStreamLength() {
+    return maxStreamLength;
+  }
+
+  /**
+   * @param maxRatio the maximum ratio between the bytes produced and consumed by a single decoder,
+   *                 enforced after {@link #EXPANSION_RATIO_GRACE} bytes
+   */
+  public void setMaxExpansionRatio(double maxRatio) {
+    if (!(maxRatio > 0))
+      throw new IllegalArgumentException("The maximum ratio must be positive");
+    maxExpansionRatio = maxRatio;
+  }
+
+  public double getMaxExpansionRatio() {
+    return maxExpansionRatio;
+  }
+
+  /**
+   * @param maxTime the maximum time spent in a single decoder, including the time spent in the
+   *                decoders it reads from
+   */
+  public void setMaxStreamTime(long maxTime, TimeUnit unit) {
+    if (maxTime < 0)
+      throw new IllegalArgumentException("The maximum time must not be negative");
+    maxStreamTime = unit.toNanos(maxTime);
+  }
+
+  public long getMaxStreamTime(TimeUnit unit) {
+    return unit.convert(maxStreamTime, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param maxLength the maximum number of bytes produced by all decoders of the document. The
+   *                  output of a decoder read by another decoder counts, too.
+   */
+  public void setMaxDocumentLength(long maxLength) {
+    if (maxLength < 0)
+      throw new IllegalArgumentException("The maximum length must not be negative");
+    maxDocumentLength = maxLength;
+  }
+
+  public long getMaxDocumentLength() {
+    return maxDocumentLength;
+  }
+
+  /**
+   * @param maxTime the maximum time spent decoding the streams of the document
+   */
+  public void setMaxDocumentTime(long maxTime, TimeUnit unit) {
+    if (maxTime < 0)
+      throw new IllegalArgumentException("The maximum time must not be negative");
+    maxDocumentTime = unit.toNanos(maxTime);
+  }
+
+  public long getMaxDocumentTime(TimeUnit unit) {
+    return unit.convert(maxDocumentTime, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the number of bytes produced by all decoders so far
+   */
+  public long getDocumentLength() {
+    return documentLength.get();
+  }
+
+  /**
+   * @return the time spent decoding so far
+   */
+  public long getDocumentTime(TimeUnit unit) {
+    return unit.convert(documentTime.get(), TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,29 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.io.IOException;
+
+/**
+ * Signals that decoding a stream has been stopped because it exceeded a limit of its
+ * {@link DecodeBudget} or of the {@link DecodeMemoryAccountant}.
+ */
+public class DecodeBudgetExceededException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  public enum Limit {
+    STREAM_LENGTH, EXPANSION_RATIO, STREAM_TIME, DOCUMENT_LENGTH, DOCUMENT_TIME, MEMORY
+  }
+
+  private final Limit limit;
+
+  public DecodeBudgetExceededException(Limit limit, String message) {
+    super(message);
+    this.limit = limit;
+  }
+
+  /**
+   * @return the limit which has been exceeded
+   */
+  public Limit getLimit() {
+    return limit;
+  }
+}
@@ -0,0 +1,59 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.levigo.jadice.document.internal.codec.DecodeBudgetExceededException.Limit;
+
+/**
+ * Bounds the memory held by fully decoded stream data. A single accountant is meant to be shared by
+ * all documents processed concurrently, so that together they can't exhaust the heap. Memory is
+ * reserved before it is allocated and released once it is no longer used.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class DecodeMemoryAccountant {
+  private final long capacity;
+  private final AtomicLong reserved = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of bytes reserved at any time
+   */
+  public DecodeMemoryAccountant(long capacity) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("The capacity must not be negative");
+    this.capacity = capacity;
+  }
+
+  /**
+   * Reserve the given number of bytes.
+   *
+   * @throws DecodeBudgetExceededException if the reservation would exceed the capacity
+   */
+  public void reserve(long bytes) throws DecodeBudgetExceededException {
+    long current;
+    do {
+      current = reserved.get();
+      if (current + bytes > capacity)
+        throw new DecodeBudgetExceededException(Limit.MEMORY,
+            "Unable to reserve " + bytes + " bytes, " + current + " of " + capacity + " bytes are in use");
+    } while (!reserved.compareAndSet(current, current + bytes));
+  }
+
+  /**
+   * Release bytes reserved before.
+   */
+  public void release(long bytes) {
+    reserved.addAndGet(-bytes);
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of bytes currently reserved
+   */
+  public long getReserved() {
+    return reserved.get();
+  }
+}
@@ -0,0 +1,351 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jzlib.JZlib;
+import com.jcraft.jzlib.ZStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+/**
+ * A combination of {@link ZInflaterInputStream} and {@link PNGPredictorInputStream}. Flate
+ * compression followed by PNG prediction is the norm for cross reference streams, object streams
+ * and many images. Instead of passing every byte through two streams with separate buffers, this
+ * stream inflates a block of complete rows (including their filter type bytes) and undoes the PNG
+ * filters in place.
+ * <p>
+ * The result is identical to that of a {@link PNGPredictorInputStream} wrapping a
+ * {@link ZInflaterInputStream}, including the treatment of truncated and corrupt data.
+ */
+public final class FlatePNGPredictorInputStream extends SeekableInputStream implements DecodeBudget.Metered {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FlatePNGPredictorInputStream.class);
+
+  /**
+   * the minimum size of the row block
+   */
+  private static final int BLOCK_SIZE = 8192;
+
+  private final boolean propagateClose;
+  private final int bytesPerRow;
+  /**
+   * the number of bytes per complete pixel, rounding up to one.
+   */
+  private final int totalNumberBytesPerPixels;
+  /**
+   * the length of a row including the leading filter type byte
+   */
+  private final int rowLength;
+
+  /**
+   * flate in data
+   */
+  private SeekableInputStream stream;
+  private long sourcePosition;
+  private boolean reachEOF;
+
+  /**
+   * decompressor
+   */
+  private ZStream zStream;
+  private final byte[] input;
+  /**
+   * flag, whether the decompressor won't deliver any more data
+   */
+  private boolean inflaterExhausted;
+
+  /**
+   * consecutive rows, each preceded by its filter type byte
+   */
+  private final byte[] block;
+  private int blockFillDegree;
+  /**
+   * the number of complete, already unfiltered rows at the start of {@link #block}
+   */
+  private int decodedRows;
+  private int currentRow;
+  private int positionInCurrentRow;
+  /**
+   * the unfiltered rows immediately preceding the first row of the block
+   */
+  private final byte[] priorRow;
+  private final byte[] priorPriorRow;
+
+  private long streamPos;
+
+  private DecodeBudget.Meter meter;
+
+  public FlatePNGPredictorInputStream(SeekableInputStream stream, int colors, int columns, int bpc) {
+    this(stream, colors, columns, bpc, false);
+  }
+
+  public FlatePNGPredictorInputStream(SeekableInputStream stream, int colors, int columns, int bpc,
+      boolean propagateClose) {
+    if (stream == null) {
+      throw new IllegalArgumentException("Raw data input is null.");
+    }
+    this.stream = stream;
+    this.propagateClose = propagateClose;
+
+    final int bpp = bpc * colors;
+    totalNumberBytesPerPixels = (int) Math.ceil(bpp / 8.0);
+    bytesPerRow = (columns * bpp + 7) / 8;
+    rowLength = bytesPerRow + 1;
+
+    block = new byte[Math.max(1, BLOCK_SIZE / rowLength) * rowLength];
+    priorRow = new byte[rowLength];
+    priorPriorRow = new byte[rowLength];
+    input = new byte[BLOCK_SIZE];
+
+    prepareInflater();
+  }
+
+  private void prepareInflater() {
+    if (zStream != null) {
+      zStream.inflateEnd();
+      zStream.free();
+    }
+
+    zStream = new ZStream();
+    zStream.inflateInit(false);
+    zStream.next_in = input;
+    zStream.next_in_index = 0;
+    zStream.avail_in = 0;
+
+    sourcePosition = 0;
+    reachEOF = false;
+    inflaterExhausted = false;
+    blockFillDegree = 0;
+    decodedRows = 0;
+    currentRow = 0;
+    positionInCurrentRow = 0;
+    Arrays.fill(priorRow, (byte) 0);
+    Arrays.fill(priorPriorRow, (byte) 0);
+    streamPos = 0;
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if (currentRow >= decodedRows && !fill())
+      return -1;
+
+    final int b = block[currentRow * rowLength + 1 + positionInCurrentRow] & 0xff;
+    advance(1);
+    return b;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    int read = 0;
+    while (read < len) {
+      if (currentRow >= decodedRows && !fill())
+        return read == 0 ? -1 : read;
+
+      final int toCopy = Math.min(len - read, bytesPerRow - positionInCurrentRow);
+      System.arraycopy(block, currentRow * rowLength + 1 + positionInCurrentRow, b, off + read, toCopy);
+      read += toCopy;
+      advance(toCopy);
+    }
+
+    return read;
+  }
+
+  /**
+   * Advance within the decoded rows. Must not cross the current row's end.
+   */
+  private void advance(int count) {
+    positionInCurrentRow += count;
+    streamPos += count;
+    if (positionInCurrentRow == bytesPerRow) {
+      currentRow++;
+      positionInCurrentRow = 0;
+    }
+  }
+
+  /**
+   * Make the next block of rows available.
+   *
+   * @return <code>false</code> if there are no more rows
+   */
+  private boolean fill() throws IOException {
+    if (decodedRows > 0) {
+      // retain the last two rows for prediction and move a trailing partial row to the front
+      if (decodedRows >= 2)
+        System.arraycopy(block, (decodedRows - 2) * rowLength, priorPriorRow, 0, rowLength);
+      else
+        System.arraycopy(priorRow, 0, priorPriorRow, 0, rowLength);
+      System.arraycopy(block, (decodedRows - 1) * rowLength, priorRow, 0, rowLength);
+
+      final int consumed = decodedRows * rowLength;
+      System.arraycopy(block, consumed, block, 0, blockFillDegree - consumed);
+      blockFillDegree -= consumed;
+      decodedRows = 0;
+    }
+    currentRow = 0;
+    positionInCurrentRow = 0;
+
+    if (!inflaterExhausted)
+      meteredInflate();
+
+    int rows = blockFillDegree / rowLength;
+    if (rows == 0) {
+      if (blockFillDegree == 0)
+        return false;
+
+      // DOCPV-22 There are broken PDF files which hold too little data for the last line of a
+      // PNG-predicted stream. Like PNGPredictorInputStream, leave the rest of the line untouched,
+      // i.e. filled with the content of the line before the previous one.
+      LOGGER.debug("Early EOF. Unable to fill line. Number of bytes remaining: " + (rowLength - blockFillDegree));
+      System.arraycopy(priorPriorRow, blockFillDegree, block, blockFillDegree, rowLength - blockFillDegree);
+      blockFillDegree = rowLength;
+      rows = 1;
+    }
+
+    for (int row = 0; row < rows; row++) {
+      final int offset = row * rowLength;
+      final int filter = block[offset] & 0xff;
+      if (filter > 4 && row > 0) {
+        // deliver the preceding rows first. The error is raised when reaching this row.
+        rows = row;
+        break;
+      }
+      if (row == 0)
+        PNGPredictorInputStream.decodeRow(filter, block, 1, priorRow, 1, bytesPerRow, totalNumberBytesPerPixels);
+      else
+        PNGPredictorInputStream.decodeRow(filter, block, offset + 1, block, offset + 1 - rowLength, bytesPerRow,
+            totalNumberBytesPerPixels);
+    }
+    decodedRows = rows;
+
+    return true;
+  }
+
+  @Override
+  public void setDecodeMeter(DecodeBudget.Meter meter) {
+    this.meter = meter;
+  }
+
+  private void meteredInflate() throws IOException {
+    final DecodeBudget.Meter m = meter;
+    if (m == null) {
+      inflate();
+      return;
+    }
+
+    m.check();
+    final long token = m.enter();
+    try {
+      inflate();
+    } finally {
+      m.exit(token);
+    }
+    try {
+      m.update(zStream.total_in, zStream.total_out);
+    } catch (final DecodeBudgetExceededException e) {
+      // don't hand out the rows exceeding the budget
+      blockFillDegree = 0;
+      throw e;
+    }
+  }
+
+  /**
+   * Inflate into the free space of the block.
+   */
+  private void inflate() throws IOException {
+    zStream.next_out = block;
+    zStream.next_out_index = blockFillDegree;
+    zStream.avail_out = block.length - blockFillDegree;
+
+    while (zStream.avail_out > 0) {
+      if (zStream.avail_in == 0 && !reachEOF) {
+        // if buffer is empty and more input is available, refill it
+        zStream.next_in_index = 0;
+        synchronized (stream) {
+          if (stream.getStreamPosition() != sourcePosition)
+            stream.seek(sourcePosition);
+          zStream.avail_in = stream.read(input);
+        }
+        if (zStream.avail_in == -1) {
+          zStream.avail_in = 0;
+          reachEOF = true;
+        } else {
+          sourcePosition += zStream.avail_in;
+        }
+      }
+
+      final int err = zStream.inflate(JZlib.Z_NO_FLUSH);
+      if (err == JZlib.Z_STREAM_END || reachEOF && err == JZlib.Z_BUF_ERROR) {
+        inflaterExhausted = true;
+        break;
+      }
+      if (err != JZlib.Z_OK && !(err == JZlib.Z_BUF_ERROR && zStream.avail_in == 0)) {
+        // Bad data. Deliver what has been decoded so far, then signal end of file.
+        LOGGER.warn("Bad data during FlatePNGPredictorInputStream decoding. ZStream error: " + err
+            + ", ZStream message: " + zStream.msg);
+        inflaterExhausted = true;
+        break;
+      }
+    }
+
+    blockFillDegree = zStream.next_out_index;
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return streamPos;
+  }
+
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return -1;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Performance considerations: seeking backwards requires decoding to be re-started from position
+   * 0.
+   */
+  @Override
+  public void seek(long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos) {
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+    }
+    bitOffset = 0;
+
+    if (pos < streamPos)
+      prepareInflater();
+
+    while (streamPos < pos) {
+      if (currentRow >= decodedRows && !fill())
+        break;
+      advance((int) Math.min(pos - streamPos, bytesPerRow - positionInCurrentRow));
+    }
+
+    streamPos = pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (propagateClose && null != stream)
+      stream.close();
+    stream = null;
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return stream != null ? stream.getSizeEstimate() : 1024;
+  }
+}
@@ -0,0 +1,127 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A random access index into flate compressed data. While decoding, a {@link ZInflaterInputStream}
+ * using an index records a checkpoint at the first deflate block boundary after every
+ * {@link #getInterval()} bytes of output. A checkpoint consists of the position of the block within
+ * the compressed data (in bits, as deflate blocks need not be byte aligned) and the preceding 32 KB
+ * of uncompressed data, which is all that is needed to resume decoding at that block.
+ * <p>
+ * Seeking backwards (or far forward) therefore only needs to decode from the nearest checkpoint
+ * instead of from the start of the stream. As a checkpoint is only valid for the compressed data it
+ * was recorded for, an index must only be shared between streams decoding the same data, e.g.
+ * several streams obtained for the same <code>DSStream</code>. Instances are thread safe.
+ * <p>
+ * Please note that a checkpoint can only be recorded at a block boundary. For (unusual) streams
+ * consisting of very few, very large blocks, checkpoints will be further apart than the interval.
+ */
+public final class InflateCheckpointIndex {
+  /**
+   * the default distance between two checkpoints in bytes of uncompressed data
+   */
+  public static final int DEFAULT_INTERVAL = 256 * 1024;
+
+  /**
+   * The state required to resume decoding at a deflate block boundary.
+   */
+  public static final class Checkpoint {
+    private final long inputBitPosition;
+    private final long outputPosition;
+    private final byte[] window;
+
+    Checkpoint(long inputBitPosition, long outputPosition, byte[] window) {
+      this.inputBitPosition = inputBitPosition;
+      this.outputPosition = outputPosition;
+      this.window = window;
+    }
+
+    /**
+     * @return the position of the block header within the compressed data in bits
+     */
+    public long getInputBitPosition() {
+      return inputBitPosition;
+    }
+
+    /**
+     * @return the position within the uncompressed data at which the block starts
+     */
+    public long getOutputPosition() {
+      return outputPosition;
+    }
+
+    byte[] getWindow() {
+      return window;
+    }
+  }
+
+  private final int interval;
+  private final TreeMap<Long, Checkpoint> checkpoints = new TreeMap<>();
+
+  /**
+   * Create an index using the {@link #DEFAULT_INTERVAL}.
+   */
+  public InflateCheckpointIndex() {
+    this(DEFAULT_INTERVAL);
+  }
+
+  /**
+   * Create an index recording checkpoints with the given distance. As every checkpoint retains up
+   * to 32 KB of uncompressed data, intervals shouldn't be much smaller than that.
+   *
+   * @param interval the distance between two checkpoints in bytes of uncompressed data
+   */
+  public InflateCheckpointIndex(int interval) {
+    if (interval <= 0)
+      throw new IllegalArgumentException("The checkpoint interval must be positive");
+    this.interval = interval;
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+
+  /**
+   * @param outputPosition a position within the uncompressed data
+   * @return the checkpoint closest to, but not after the given position or <code>null</code> if
+   * there is none
+   */
+  public synchronized Checkpoint floor(long outputPosition) {
+    final Map.Entry<Long, Checkpoint> e = checkpoints.floorEntry(outputPosition);
+    return e != null ? e.getValue() : null;
+  }
+
+  /**
+   * @return the number of checkpoints recorded so far
+   */
+  public synchronized int size() {
+    return checkpoints.size();
+  }
+
+  /**
+   * @return the approximate number of bytes retained by the recorded checkpoints
+   */
+  public synchronized long getMemoryFootprint() {
+    long size = 0;
+    for (final Checkpoint c : checkpoints.values())
+      size += c.window.length + 48;
+    return size;
+  }
+
+  synchronized boolean isCheckpointDue(long outputPosition) {
+    final Long previous = checkpoints.floorKey(outputPosition);
+    final long distance = outputPosition - (previous != null ? previous : 0);
+    if (distance < interval)
+      return false;
+
+    // another stream sharing this index may already have covered the range ahead of us
+    final Long next = checkpoints.ceilingKey(outputPosition);
+    return next == null || next - outputPosition >= interval;
+  }
+
+  synchronized void add(Checkpoint checkpoint) {
+    checkpoints.putIfAbsent(checkpoint.getOutputPosition(), checkpoint);
+  }
+}
@@ -5,7 +5,6 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.levigo.jadice.document.io.ByteArrayBuffer;
 import com.levigo.jadice.document.io.SeekableInputStream;
 
 /**
@@ -14,29 +13,40 @@
  * data is compressed in lzw format and will be uncompressed on the fly while reading. Prediction
  * schemes will not applied by this class.
  */
-public final class LZWInputStream extends SeekableInputStream {
+public final class LZWInputStream extends SeekableInputStream implements DecodeBudget.Metered {
   private static final Logger LOGGER = LoggerFactory.getLogger(LZWInputStream.class);
   /**
    * The number of bytes to read-ahead. Default: {@value #READ_AHEAD_LENGTH}.
    */
-  private static final int READ_AHEAD_LENGTH = 64;
+  private static final int READ_AHEAD_LENGTH = 4096;
   // uncompressing constants
-  private static int CLEAR_CODE = 256; // = 1 << number of roots
-  private final static byte[][] alphabetSoup = new byte[CLEAR_CODE][1];
-  private static int EOI_CODE = 257; // = 1 << number of roots + 1
-  private static int FIRST_FREE_CODE = 258; // = CLEAR_CODE + 2
-
-  static {
-    for (int i = 0; i < CLEAR_CODE; i++) {
-      alphabetSoup[i] = new byte[]{(byte) i
-      };
-    }
-  }
+  private static final int CLEAR_CODE = 256; // = 1 << number of roots
+  private static final int EOI_CODE = 257; // = 1 << number of roots + 1
+  private static final int FIRST_FREE_CODE = 258; // = CLEAR_CODE + 2
+  /**
+   * The maximum number of dictionary entries. Without early change, codes may still be added after
+   * the code length reached 12 bits.
+   */
+  private static final int MAX_DICTIONARY_SIZE = 4096 + 1024;
+  /**
+   * The number of decoded bytes after which the decoding of further codes is suspended. As a single
+   * code never decodes to more than {@link #MAX_DICTIONARY_SIZE} bytes, the buffer is sized
+   * accordingly.
+   */
+  private static final int OUTPUT_CHUNK_SIZE = 8192;
 
   private final boolean propagateClose;
   private final long maxDataLength;
   // uncompressing variables
-  private byte dictionary[][];
+  /**
+   * The dictionary: every string is represented by the code of its prefix string and its last
+   * byte. The first byte and the length are kept for quick access.
+   */
+  private final short[] prefix = new short[MAX_DICTIONARY_SIZE];
+  private final byte[] suffix = new byte[MAX_DICTIONARY_SIZE];
+  private final byte[] firstByte = new byte[MAX_DICTIONARY_SIZE];
+  private final short[] stringLength = new short[MAX_DICTIONARY_SIZE];
+  private int dictionarySize;
   private int dictionaryLength;
   /**
    * The number of bits per code word
@@ -54,8 +64,18 @@ public final class LZWInputStream extends SeekableInputStream {
   private int nextBits = 0;
   private int lastCode = 0;
   // uncompressed data
-  private ByteArrayBuffer uncompressedData;
-  private long currentPosition = 0;
+  private final byte[] uncompressedData = new byte[OUTPUT_CHUNK_SIZE + MAX_DICTIONARY_SIZE];
+  private int uncompressedDataLength;
+  private int uncompressedDataIndex;
+  /**
+   * the stream position of the first byte in {@link #uncompressedData}
+   */
+  private long uncompressedDataPosition;
+  /**
+   * the total number of decoded bytes
+   */
+  private long decodedLength;
+  private boolean reachedEndOfData = false;
   // stream properties
   private boolean reachedEOF = false;
   private SeekableInputStream stream;
@@ -70,6 +90,8 @@ public final class LZWInputStream extends SeekableInputStream {
 
   private boolean useEarlyChange = true;
 
+  private DecodeBudget.Meter meter;
+
   /**
    * Construct a LZWInputStream. It decodes "on-the-fly" LZW compressed data provided by the given
    * inputstream when invoking {@link #read()}, {@link #read(byte[])} or
@@ -114,7 +136,12 @@ public LZWInputStream(SeekableInputStream in, long maxLength, boolean propagateC
     stream = in;
     maxDataLength = maxLength;
     this.propagateClose = propagateClose;
-    uncompressedData = new ByteArrayBuffer();
+
+    for (int i = 0; i < CLEAR_CODE; i++) {
+      suffix[i] = (byte) i;
+      firstByte[i] = (byte) i;
+      stringLength[i] = 1;
+    }
     initializeDictionary();
     nextDataFragment = 0;
     nextBits = 0;
@@ -131,8 +158,8 @@ public LZWInputStream(SeekableInputStream in, long maxLength, boolean propagateC
   public int read() throws IOException {
     checkClosed();
     bitOffset = 0;
-    if (currentPosition < uncompressedData.size() || fillUp())
-      return (0xFF & uncompressedData.getByteAt((int) currentPosition++));
+    if (uncompressedDataIndex < uncompressedDataLength || fillUp())
+      return 0xFF & uncompressedData[uncompressedDataIndex++];
     return -1;
   }
 
@@ -171,9 +198,10 @@ public int read(byte[] b, int off, int len) throws IOException {
       return 0;
     }
     bitOffset = 0;
-    if (currentPosition < uncompressedData.size() || fillUp()) {
-      final int counter = uncompressedData.getBytesAt((int) currentPosition, b, off, len);
-      currentPosition += counter;
+    if (uncompressedDataIndex < uncompressedDataLength || fillUp()) {
+      final int counter = Math.min(len, uncompressedDataLength - uncompressedDataIndex);
+      System.arraycopy(uncompressedData, uncompressedDataIndex, b, off, counter);
+      uncompressedDataIndex += counter;
       return counter;
     }
     return -1;
@@ -191,19 +219,51 @@ public void close() throws IOException {
       stream.close();
     }
     stream = null;
-    if (uncompressedData != null)
-      uncompressedData.clear();
-    uncompressedData = null;
-    dictionary = null;
+    readAheadBuffer = null;
+  }
+
+  @Override
+  public void setDecodeMeter(DecodeBudget.Meter meter) {
+    this.meter = meter;
   }
 
   /**
-   * Fills up the uncompressed data buffer
+   * Replaces the content of the uncompressed data buffer with the next chunk of data.
    *
    * @return boolean indicator whether decompression took places and uncompressed data is available
    * @throws IOException
    */
   private boolean fillUp() throws IOException {
+    final DecodeBudget.Meter m = meter;
+    if (m == null)
+      return decodeChunk();
+
+    m.check();
+    final long token = m.enter();
+    final boolean filled;
+    try {
+      filled = decodeChunk();
+    } finally {
+      m.exit(token);
+    }
+    try {
+      m.update(sourcePosition - Math.max(0, readAheadFilled - readAheadConsumed), decodedLength);
+    } catch (final DecodeBudgetExceededException e) {
+      // don't hand out the chunk exceeding the budget
+      uncompressedDataLength = 0;
+      throw e;
+    }
+    return filled;
+  }
+
+  private boolean decodeChunk() throws IOException {
+    uncompressedDataPosition += uncompressedDataLength;
+    uncompressedDataLength = 0;
+    uncompressedDataIndex = 0;
+
+    if (reachedEndOfData)
+      return false;
+
     // at the very start of the stream check for TIFF 5.0 encoded data
     if (enableTIFF5CompatibilityCheck && readAheadFilled == -1 && readAheadConsumed == 0) {
       if (readNext() == 0x00 && readNext() == 0x01) {
@@ -214,79 +274,98 @@ private boolean fillUp() throws IOException {
         readAheadConsumed = 0;
     }
 
-    int code = 0;
-    byte string[];
-    final int size = uncompressedData.size();
-    if (((code = getNextCode()) == EOI_CODE) || size >= maxDataLength) {
-      clearResources();
-      return false;
-    }
-
-    int length;
-    if (code == CLEAR_CODE) {
-      initializeDictionary();
-      code = getNextCode();
+    while (uncompressedDataLength < OUTPUT_CHUNK_SIZE) {
+      if (decodedLength >= maxDataLength) {
+        reachedEndOfData = true;
+        break;
+      }
 
-      if (code == EOI_CODE || size >= maxDataLength) {
-        clearResources();
-        return false;
+      int code = getNextCode();
+      if (code == EOI_CODE) {
+        reachedEndOfData = true;
+        break;
       }
 
-      /*
-       * length calculation has to use the Math.min(long, long) method as maxDataLength may exceed
-       * Integer.MAX_VALUE. The result of such a computation is a negative value when casting
-       * maxDataLength to int. That means the length will be negative which the underlying
-       * ByteArrayBuffer will simply ignore (no exception will be thrown). This fillUp() method will
-       * return true as it thinks that something has been filled in and returns true. The following
-       * access to the ucompressed data will then fail
-       */
-      length = (int) Math.min(dictionary[code].length, (maxDataLength - size));
-      uncompressedData.append(dictionary[code], 0, length);
+      if (code == CLEAR_CODE) {
+        initializeDictionary();
+        code = getNextCode();
 
+        if (code == EOI_CODE) {
+          reachedEndOfData = true;
+          break;
+        }
+        if (code >= CLEAR_CODE) {
+          LOGGER.warn("Illegal LZW code " + code + " following a clear code. Treating it as end of data.");
+          reachedEndOfData = true;
+          break;
+        }
+
+        emit(code);
+      } else if (code < dictionaryLength) {
+        emit(code);
+        addToDictionary(lastCode, firstByte[code]);
+      } else if (code > dictionaryLength) {
+        LOGGER.warn("Illegal LZW code " + code + " beyond the next free code " + dictionaryLength
+            + ". Treating it as end of data.");
+        reachedEndOfData = true;
+        break;
+      } else {
+        // the code to be defined right now: the previous string followed by its first byte
+        final int start = uncompressedDataLength;
+        emit(lastCode);
+        final byte first = firstByte[lastCode];
+        append(first, start);
+        addToDictionary(lastCode, first);
+        code = dictionaryLength - 1;
+      }
       lastCode = code;
-    } else {
-      if (code < dictionaryLength) {
-        string = dictionary[code];
-
-        length = (int) Math.min(string.length, (maxDataLength - size));
-        uncompressedData.append(string, 0, length);
+    }
 
-        addToDictionary(concatData(dictionary[lastCode], string[0]));
-        lastCode = code;
-      } else {
-        string = dictionary[lastCode];
-        string = concatData(string, string[0]);
-        length = (int) Math.min(string.length, (maxDataLength - size));
-        uncompressedData.append(string, 0, length);
+    return uncompressedDataLength > 0;
+  }
 
-        addToDictionary(string);
-        lastCode = code;
-      }
+  /**
+   * Append the string represented by the given code to the uncompressed data by walking the chain
+   * of prefixes backwards.
+   */
+  private void emit(int code) {
+    final int length = stringLength[code];
+    int pos = uncompressedDataLength + length;
+    while (code >= CLEAR_CODE) {
+      uncompressedData[--pos] = suffix[code];
+      code = prefix[code];
     }
-    if (size + length == maxDataLength)
-      clearResources();
+    uncompressedData[--pos] = (byte) code;
 
-    return true;
+    commit(uncompressedDataLength + length);
   }
 
-  private void clearResources() {
-    // CK: free stream as soon as possible, already finished data resides in
-    // uncompressed data buffer afterwards
-    if (!propagateClose)
-      stream = null;
-    dictionary = null;
-    readAheadBuffer = null;
+  /**
+   * Append a single byte to a string emitted right before, which started at the given position.
+   */
+  private void append(byte b, int stringStart) {
+    // the preceding emit may have been truncated to the maximum data length
+    if (uncompressedDataLength - stringStart == stringLength[lastCode]) {
+      uncompressedData[uncompressedDataLength] = b;
+      commit(uncompressedDataLength + 1);
+    }
+  }
+
+  /**
+   * Make the uncompressed data up to the given buffer position available, respecting the maximum
+   * data length.
+   */
+  private void commit(int newLength) {
+    final int length = (int) Math.min(newLength - uncompressedDataLength, maxDataLength - decodedLength);
+    uncompressedDataLength += length;
+    decodedLength += length;
   }
 
   /**
    * Initialize dictionary
    */
   private void initializeDictionary() {
-    if (dictionary == null) {
-      dictionary = new byte[4096 + (useEarlyChange ? 0 : 1024)][];
-      System.arraycopy(alphabetSoup, 0, dictionary, 0, CLEAR_CODE);
-    }
-
+    dictionarySize = 4096 + (useEarlyChange ? 0 : 1024);
     dictionaryLength = FIRST_FREE_CODE;
     codeLength = 9;
     codeMask = (1 << codeLength) - 1;
@@ -296,10 +375,21 @@ private void initializeDictionary() {
   /**
    * Adds a string to the dictionary.
    *
-   * @param string the string to add
+   * @param prefixCode the code of the string's prefix
+   * @param last       the last byte of the string
    */
-  private void addToDictionary(byte string[]) {
-    dictionary[dictionaryLength++] = string;
+  private void addToDictionary(int prefixCode, byte last) {
+    if (dictionaryLength >= dictionarySize) {
+      if (LOGGER.isDebugEnabled())
+        LOGGER.debug("The LZW dictionary is full. Ignoring new entry.");
+      return;
+    }
+
+    prefix[dictionaryLength] = (short) prefixCode;
+    suffix[dictionaryLength] = last;
+    firstByte[dictionaryLength] = firstByte[prefixCode];
+    stringLength[dictionaryLength] = (short) (stringLength[prefixCode] + 1);
+    dictionaryLength++;
 
     if (dictionaryLength > codeMax) {
       codeLength++;
@@ -314,22 +404,6 @@ private void addToDictionary(byte string[]) {
     }
   }
 
-  /**
-   * Concats given byte <code>newString</code> to the end of <code>oldString</code> byte array.
-   *
-   * @param oldString byte array to be extended
-   * @param newString byte to be appended
-   * @return the concatenated byte string
-   */
-  private byte[] concatData(byte oldString[], byte newString) {
-    final int length = oldString.length;
-    final byte string[] = new byte[length + 1];
-    System.arraycopy(oldString, 0, string, 0, length);
-    string[length] = newString;
-
-    return string;
-  }
-
   /**
    * Reads the next byte of data from the input stream. The value byte is returned as an
    * <code>int</code> in the range <code>0</code> to <code>255</code>. If no byte is available
@@ -361,7 +435,6 @@ private int readNext() throws IOException {
     }
     if (readAheadConsumed >= readAheadFilled) {
       reachedEOF = true;
-      clearResources();
       return 0; // zero-padding at EOF mandated by the spec
     }
 
@@ -439,7 +512,7 @@ private int getNextCodeCompat() throws IOException {
   @Override
   public long getStreamPosition() throws IOException {
     checkClosed();
-    return currentPosition;
+    return uncompressedDataPosition + uncompressedDataIndex;
   }
 
   /**
@@ -462,22 +535,44 @@ public void seek(long pos) throws IOException {
 
     bitOffset = 0;
 
-    if (pos <= currentPosition || pos <= uncompressedData.size())
-      currentPosition = pos;
-    else {
-      while (currentPosition < pos && !reachedEOF) {
-        if (!fillUp())
-          break;
+    if (pos < uncompressedDataPosition)
+      // this is where it gets expensive because we need to start decoding from the beginning
+      restart();
+
+    while (pos > uncompressedDataPosition + uncompressedDataLength) {
+      if (!fillUp()) {
+        // beyond the end of data
+        uncompressedDataPosition = pos;
+        break;
       }
-      currentPosition = pos;
     }
+    uncompressedDataIndex = (int) (pos - uncompressedDataPosition);
+  }
+
+  /**
+   * Reset the decoder in order to start decoding from the beginning.
+   */
+  private void restart() {
+    sourcePosition = 0;
+    readAheadFilled = -1;
+    readAheadConsumed = 0;
+    reachedEOF = false;
+    nextDataFragment = 0;
+    nextBits = 0;
+    lastCode = 0;
+    initializeDictionary();
+
+    reachedEndOfData = false;
+    decodedLength = 0;
+    uncompressedDataPosition = 0;
+    uncompressedDataLength = 0;
+    uncompressedDataIndex = 0;
   }
 
   @Override
   public long getSizeEstimate() {
-    return (maxDataLength != Long.MAX_VALUE //
-        ? (int) maxDataLength : (uncompressedData != null ? uncompressedData.size() : 1024)) //
-        + READ_AHEAD_LENGTH; // just to be on the safe side
+    // the retained buffers and the dictionary
+    return uncompressedData.length + READ_AHEAD_LENGTH + 6 * MAX_DICTIONARY_SIZE;
   }
 
   public SeekableInputStream getSource() {
@@ -508,7 +603,6 @@ public void setUseEarlyChange(boolean useEarlyChange) {
     codeMax = useEarlyChange ? codeMask - 1 : codeMask;
 
     // must also reset the dictionary
-    dictionary = null;
     initializeDictionary();
   }
 
@@ -50,11 +50,12 @@ public final class PNGPredictorInputStream extends SeekableInputStream {
    * <tt>tbpp</tt> is defined as the number of bytes per complete pixel, rounding up to one.
    *
    * @param curr
+   * @param currOff
    * @param count
    * @param tbpp
    */
-  private static void decodeSubFilter(byte[] curr, int count, int tbpp) {
-    for (int i = tbpp; i < count; i++) {
+  private static void decodeSubFilter(byte[] curr, int currOff, int count, int tbpp) {
+    for (int i = currOff + tbpp; i < currOff + count; i++) {
       int val;
 
       val = curr[i] & 0xff;
@@ -80,15 +81,17 @@ private static void decodeSubFilter(byte[] curr, int count, int tbpp) {
    * <tt>Prior(x)</tt> refers to the unfiltered bytes of the prior scanline.
    *
    * @param curr
+   * @param currOff
    * @param prev
+   * @param prevOff
    * @param count
    */
-  private static void decodeUpFilter(byte[] curr, byte[] prev, int count) {
+  private static void decodeUpFilter(byte[] curr, int currOff, byte[] prev, int prevOff, int count) {
     for (int i = 0; i < count; i++) {
-      final int raw = curr[i] & 0xff;
-      final int prior = prev[i] & 0xff;
+      final int raw = curr[currOff + i] & 0xff;
+      final int prior = prev[prevOff + i] & 0xff;
 
-      curr[i] = (byte) (raw + prior);
+      curr[currOff + i] = (byte) (raw + prior);
     }
   }
 
@@ -116,26 +119,28 @@ private static void decodeUpFilter(byte[] curr, byte[] prev, int count) {
    * an integer division or right shift operation.
    *
    * @param curr
+   * @param currOff
    * @param prev
+   * @param prevOff
    * @param count
    * @param tbpp
    */
-  private static void decodeAverageFilter(byte[] curr, byte[] prev, int count, int tbpp) {
+  private static void decodeAverageFilter(byte[] curr, int currOff, byte[] prev, int prevOff, int count, int tbpp) {
     int raw, priorPixel, priorRow;
 
     for (int i = 0; i < tbpp; i++) {
-      raw = curr[i] & 0xff;
-      priorRow = prev[i] & 0xff;
+      raw = curr[currOff + i] & 0xff;
+      priorRow = prev[prevOff + i] & 0xff;
 
-      curr[i] = (byte) (raw + priorRow / 2);
+      curr[currOff + i] = (byte) (raw + priorRow / 2);
     }
 
     for (int i = tbpp; i < count; i++) {
-      raw = curr[i] & 0xff;
-      priorPixel = curr[i - tbpp] & 0xff;
-      priorRow = prev[i] & 0xff;
+      raw = curr[currOff + i] & 0xff;
+      priorPixel = curr[currOff + i - tbpp] & 0xff;
+      priorRow = prev[prevOff + i] & 0xff;
 
-      curr[i] = (byte) (raw + (priorPixel + priorRow) / 2);
+      curr[currOff + i] = (byte) (raw + (priorPixel + priorRow) / 2);
     }
   }
 
@@ -207,27 +212,63 @@ private static int paethPredictor(int a, int b, int c) {
    * left. (This order differs from that given in Paeth's article.)
    *
    * @param curr
+   * @param currOff
    * @param prev
+   * @param prevOff
    * @param count
    * @param tbpp
    */
-  private static void decodePaethFilter(byte[] curr, byte[] prev, int count, int tbpp) {
+  private static void decodePaethFilter(byte[] curr, int currOff, byte[] prev, int prevOff, int count, int tbpp) {
     int raw, priorPixel, priorRow, priorRowPixel;
 
     for (int i = 0; i < tbpp; i++) {
-      raw = curr[i] & 0xff;
-      priorRow = prev[i] & 0xff;
+      raw = curr[currOff + i] & 0xff;
+      priorRow = prev[prevOff + i] & 0xff;
 
-      curr[i] = (byte) (raw + priorRow);
+      curr[currOff + i] = (byte) (raw + priorRow);
     }
 
     for (int i = tbpp; i < count; i++) {
-      raw = curr[i] & 0xff;
-      priorPixel = curr[i - tbpp] & 0xff;
-      priorRow = prev[i] & 0xff;
-      priorRowPixel = prev[i - tbpp] & 0xff;
+      raw = curr[currOff + i] & 0xff;
+      priorPixel = curr[currOff + i - tbpp] & 0xff;
+      priorRow = prev[prevOff + i] & 0xff;
+      priorRowPixel = prev[prevOff + i - tbpp] & 0xff;
 
-      curr[i] = (byte) (raw + paethPredictor(priorPixel, priorRow, priorRowPixel));
+      curr[currOff + i] = (byte) (raw + paethPredictor(priorPixel, priorRow, priorRowPixel));
+    }
+  }
+
+  /**
+   * Undo the PNG filter of the given type on a single row.
+   *
+   * @param filter  the PNG filter type
+   * @param curr    the buffer holding the filtered row
+   * @param currOff the offset of the row within <code>curr</code>
+   * @param prev    the buffer holding the unfiltered prior row
+   * @param prevOff the offset of the prior row within <code>prev</code>
+   * @param count   the number of bytes per row
+   * @param tbpp    the number of bytes per complete pixel, rounding up to one
+   * @throws RuntimeException if the filter type is unknown
+   */
+  static void decodeRow(int filter, byte[] curr, int currOff, byte[] prev, int prevOff, int count, int tbpp) {
+    switch (filter){
+      case PNG_FILTER_NONE:
+        break;
+      case PNG_FILTER_SUB:
+        decodeSubFilter(curr, currOff, count, tbpp);
+        break;
+      case PNG_FILTER_UP:
+        decodeUpFilter(curr, currOff, prev, prevOff, count);
+        break;
+      case PNG_FILTER_AVERAGE:
+        decodeAverageFilter(curr, currOff, prev, prevOff, count, tbpp);
+        break;
+      case PNG_FILTER_PAETH:
+        decodePaethFilter(curr, currOff, prev, prevOff, count, tbpp);
+        break;
+      default:
+        // Error -- unknown filter type
+        throw new RuntimeException("PNG filter type #" + filter + " unknown.");
     }
   }
 
@@ -306,25 +347,7 @@ private boolean fill() throws IOException {
 
     fillLine(currentLine, stream);
 
-    switch (filter){
-      case PNG_FILTER_NONE:
-        break;
-      case PNG_FILTER_SUB:
-        decodeSubFilter(currentLine, bytesPerRow, totalNumberBytesPerPixels);
-        break;
-      case PNG_FILTER_UP:
-        decodeUpFilter(currentLine, referenceLine, bytesPerRow);
-        break;
-      case PNG_FILTER_AVERAGE:
-        decodeAverageFilter(currentLine, referenceLine, bytesPerRow, totalNumberBytesPerPixels);
-        break;
-      case PNG_FILTER_PAETH:
-        decodePaethFilter(currentLine, referenceLine, bytesPerRow, totalNumberBytesPerPixels);
-        break;
-      default:
-        // Error -- unknown filter type
-        throw new RuntimeException("PNG filter type #" + filter + " unknown.");
-    }
+    decodeRow(filter, currentLine, 0, referenceLine, 0, bytesPerRow, totalNumberBytesPerPixels);
 
     positionInCurrentLine = 0;
 
@@ -399,37 +422,16 @@ public void seek(long pos) throws IOException {
         positionInCurrentLine += toSeek;
         streamPos += toSeek;
       } else {
-        final byte[] tmp = new byte[1024];
-        while (streamPos < pos && //
-            this.read(tmp, 0, Math.min(tmp.length, (int) (pos - streamPos))) > -1) {
-          // do nothing, just read to stream pos
+        // skip whole rows without copying them
+        while (streamPos < pos) {
+          if ((positionInCurrentLine < 0 || positionInCurrentLine >= currentLine.length) && !fill())
+            break;
+          final int toSkip = (int) Math.min(pos - streamPos, currentLine.length - positionInCurrentLine);
+          positionInCurrentLine += toSkip;
+          streamPos += toSkip;
         }
 
         streamPos = pos;
-
-
-        // fixme: ...und so könnte es noch schneller gehen...
-        // aber da ist irgendwo ein mini denkfehler drinne, denn
-        // ab und zu werden die bildle ein wenig rosa...
-
-        // toSeek -= restOfLine;
-        // this.streamPos += restOfLine;
-        //
-        // fill();
-        //
-        // // while (streamPos < pos && read() > -1);
-        //
-        // // seek in bytesPerRow chunks as this is faster than skipping single
-        // // bytes
-        // while (toSeek > bytesPerRow) {
-        // fill();
-        // toSeek -= bytesPerRow;
-        // this.streamPos += bytesPerRow;
-        // }
-        //
-        // // seek rest
-        // this.streamPos += toSeek;
-        // this.currentPosition += toSeek;
       }
     }
   }
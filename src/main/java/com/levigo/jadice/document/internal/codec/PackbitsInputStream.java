@@ -1,16 +1,20 @@
 package com.levigo.jadice.document.internal.codec;
 
 import java.io.IOException;
+import java.util.Arrays;
 
-import com.levigo.jadice.document.io.ByteArrayBuffer;
 import com.levigo.jadice.document.io.SeekableInputStream;
 
 /**
  * This class implements a stream filter for uncompressing packbits data. It is also used as a part
  * of an uncompressing chain for uncompress image data. Instances of this class wrap an inputstream
  * whose data is compressed in packbits format and will be uncompressed on the fly while reading.
+ * <p>
+ * Runs are decoded on demand directly into the caller's buffer. Only the most recently decoded
+ * {@value #HISTORY_SIZE} bytes are retained in a ring buffer, so that short backward seeks don't
+ * require decoding to be restarted. Seeking forward skips runs without decoding them.
  */
-public final class PackbitsInputStream extends SeekableInputStream {
+public final class PackbitsInputStream extends SeekableInputStream implements DecodeBudget.Metered {
   /**
    * A table for reversing the order of the bits in one byte. Initialised on-demand by
    * getReverseBitsTable().
@@ -33,24 +37,53 @@ public final class PackbitsInputStream extends SeekableInputStream {
     }
   }
 
-  // uncompressed data
-  private final ByteArrayBuffer uncompressedData;
+  /**
+   * the size of the ring buffer holding the most recently decoded data. Must be a power of two.
+   */
+  private static final int HISTORY_SIZE = 4096;
+
+  private static final int INPUT_SIZE = 4096;
+
   // data properties
-  private final int scanlineStride;
   private final boolean fillOrder;
-  private final byte[] tmpSip = new byte[4096];
-  private long currentPosition = 0;
   // stream properties
   private boolean reachEOF = false;
   private boolean propagateClose = false;
   private long maxDataLength = -1;
   private SeekableInputStream stream;
 
-  // FIXME:markReadLimit ignored
-  // private int markReadLimit = 0;
+  // compressed data
+  private final byte[] input = new byte[INPUT_SIZE];
+  private int inputPos;
+  private int inputLimit;
   private long srcPosition = 0;
-  private int sipped = 0;
-  private int filled = -1;
+
+  // the current run
+  private int runRemaining;
+  private boolean literalRun;
+  private byte repeatValue;
+
+  /**
+   * the most recently decoded data, indexed by the position modulo {@link #HISTORY_SIZE}
+   */
+  private final byte[] history = new byte[HISTORY_SIZE];
+  /**
+   * the position below which the history holds no valid data, regardless of its size
+   */
+  private long historyStart = 0;
+  /**
+   * the number of bytes decoded so far
+   */
+  private long decodedPosition = 0;
+  /**
+   * the read position, at most {@link #HISTORY_SIZE} before {@link #decodedPosition}, but may be
+   * beyond it after a seek past the end of the data
+   */
+  private long currentPosition = 0;
+
+  private final byte[] singleByte = new byte[1];
+
+  private DecodeBudget.Meter meter;
 
   /**
    * Construct a PackbitsInputStream. It decodes "on-the-fly" Packbitscompressed data provided by
@@ -59,7 +92,7 @@ public final class PackbitsInputStream extends SeekableInputStream {
    *
    * @param in             the inputstream providing the Packbits compressed data to decode
    * @param scanlineStride indicates the number of bytes of data there is for a single line of image
-   *                       data
+   *                       data. Not needed anymore, as data is decoded on demand.
    * @param fillOrder      indicates whether the data is provided in Motorola style byte ordering
    */
   public PackbitsInputStream(SeekableInputStream in, int scanlineStride, boolean fillOrder) {
@@ -76,7 +109,7 @@ public PackbitsInputStream(SeekableInputStream in, int scanlineStride, boolean f
    *                       uncompressed until EOF is reached. The parameter maxlength allows to limit the
    *                       decompression.
    * @param scanlineStride indicates the number of bytes of data there is for a single line of image
-   *                       data
+   *                       data. Not needed anymore, as data is decoded on demand.
    * @param fillOrder      indicates whether the data is provided in Motorola style byte ordering
    */
   public PackbitsInputStream(SeekableInputStream in, long maxLength, int scanlineStride, boolean fillOrder) {
@@ -95,7 +128,7 @@ public PackbitsInputStream(SeekableInputStream in, long maxLength, int scanlineS
    * @param propagateClose indicates whether the embedded Packbits inputstream should be closed as
    *                       well if this stream will be closed.
    * @param scanlineStride indicates the number of bytes of data there is for a single line of image
-   *                       data
+   *                       data. Not needed anymore, as data is decoded on demand.
    * @param fillOrder      indicates whether the data is provided in Motorola style byte ordering
    */
   public PackbitsInputStream(SeekableInputStream in, long maxLength, boolean propagateClose, int scanlineStride,
@@ -107,9 +140,6 @@ public PackbitsInputStream(SeekableInputStream in, long maxLength, boolean propa
     stream = in;
     maxDataLength = maxLength;
     this.propagateClose = propagateClose;
-    uncompressedData = new ByteArrayBuffer();
-
-    this.scanlineStride = scanlineStride;
     this.fillOrder = fillOrder;
   }
 
@@ -122,11 +152,25 @@ public PackbitsInputStream(SeekableInputStream in, long maxLength, boolean propa
    */
   @Override
   public int read() throws IOException {
-    checkClosed();
-    bitOffset = 0;
-    if (currentPosition < uncompressedData.size() || fillUp())
-      return (0xFF & uncompressedData.getByteAt((int) currentPosition++));
-    return -1;
+    if (currentPosition < decodedPosition) {
+      checkClosed();
+      bitOffset = 0;
+      return history[(int) currentPosition++ & (HISTORY_SIZE - 1)] & 0xff;
+    }
+
+    // fast path: within the current run
+    if (runRemaining > 0 && currentPosition == decodedPosition && decodedPosition < maxDataLength
+        && (!literalRun || inputPos < inputLimit)) {
+      checkClosed();
+      bitOffset = 0;
+      final byte b = literalRun ? input[inputPos++] : repeatValue;
+      runRemaining--;
+      history[(int) decodedPosition++ & (HISTORY_SIZE - 1)] = b;
+      currentPosition++;
+      return b & 0xff;
+    }
+
+    return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
   }
 
   /**
@@ -163,141 +207,261 @@ public int read(byte[] b, int off, int len) throws IOException {
     } else if (len == 0) {
       return 0;
     }
-    if (currentPosition < uncompressedData.size() || fillUp()) {
-      final int counter = uncompressedData.getBytesAt((int) currentPosition, b, off, len);
-      currentPosition += counter;
-      return counter;
+
+    int n = 0;
+    if (currentPosition < decodedPosition)
+      n = readHistory(b, off, len);
+    if (n < len && currentPosition == decodedPosition) {
+      final int decoded = decode(b, off + n, len - n);
+      currentPosition += decoded;
+      n += decoded;
     }
 
-    return -1;
+    return n > 0 ? n : -1;
   }
 
   /**
-   * Returns 0 after EOF has been reached, otherwise always return 1.
-   * <p>
-   * Programs should not count on this method to return the actual number of bytes that could be
-   * read without blocking.
-   *
-   * @return 1 before EOF and 0 after EOF.
-   * @throws IOException if an I/O error occurs.
+   * Copy already decoded data from the history.
    */
+  private int readHistory(byte[] b, int off, int len) {
+    final int count = (int) Math.min(len, decodedPosition - currentPosition);
+    final int start = (int) currentPosition & (HISTORY_SIZE - 1);
+    final int first = Math.min(count, HISTORY_SIZE - start);
+    System.arraycopy(history, start, b, off, first);
+    System.arraycopy(history, 0, b, off + first, count - first);
+    currentPosition += count;
+    return count;
+  }
+
   @Override
-  public int available() throws IOException {
-    checkClosed();
-    return reachEOF ? 0 : 1;
+  public void setDecodeMeter(DecodeBudget.Meter meter) {
+    this.meter = meter;
   }
 
   /**
-   * Closes this input stream and releases any system resources associated with the stream.
+   * Decode up to <code>len</code> bytes into the given buffer and record them in the history.
    *
-   * @throws IOException if an I/O error has occurred
+   * @return the number of bytes decoded, 0 at the end of the data
    */
-  @Override
-  public void close() throws IOException {
-    super.close();
-    if (propagateClose && stream != null)
-      stream.close();
-    stream = null;
-    if (uncompressedData != null)
-      uncompressedData.clear();
+  private int decode(byte[] b, int off, int len) throws IOException {
+    final DecodeBudget.Meter m = meter;
+    if (m == null)
+      return decodeRuns(b, off, len);
+
+    m.check();
+    final long token = m.enter();
+    final int n;
+    try {
+      n = decodeRuns(b, off, len);
+    } finally {
+      m.exit(token);
+    }
+    try {
+      m.update(getConsumedPosition(), decodedPosition);
+    } catch (final DecodeBudgetExceededException e) {
+      dropDecoded(n);
+      throw e;
+    }
+    return n;
+  }
+
+  private int decodeRuns(byte[] b, int off, int len) throws IOException {
+    len = (int) Math.min(len, maxDataLength - decodedPosition);
+
+    int n = 0;
+    while (n < len) {
+      if (runRemaining == 0 && !nextRun())
+        break;
+
+      int count = Math.min(runRemaining, len - n);
+      if (literalRun) {
+        if (inputPos == inputLimit && !fillInput()) {
+          // truncated literal run
+          runRemaining = 0;
+          reachEOF = true;
+          break;
+        }
+        count = Math.min(count, inputLimit - inputPos);
+        System.arraycopy(input, inputPos, b, off + n, count);
+        inputPos += count;
+      } else {
+        Arrays.fill(b, off + n, off + n + count, repeatValue);
+      }
+      runRemaining -= count;
+      n += count;
+    }
+
+    // remember the most recent data
+    final int retained = Math.min(n, HISTORY_SIZE);
+    final long retainedStart = decodedPosition + n - retained;
+    final int start = (int) retainedStart & (HISTORY_SIZE - 1);
+    final int first = Math.min(retained, HISTORY_SIZE - start);
+    System.arraycopy(b, off + n - retained, history, start, first);
+    System.arraycopy(b, off + n - retained + first, history, 0, retained - first);
+
+    decodedPosition += n;
+    return n;
   }
 
   /**
-   * Fills up the uncompressed data buffer
+   * Skip up to <code>count</code> bytes of decoded data without materializing them.
    *
-   * @return boolean indicator whether decompression took places and uncompressed data is available
-   * @throws IOException
+   * @return the number of bytes skipped
+   */
+  private long skipDecoded(long count) throws IOException {
+    final DecodeBudget.Meter m = meter;
+    if (m == null)
+      return skipRuns(count);
+
+    m.check();
+    final long token = m.enter();
+    final long n;
+    try {
+      n = skipRuns(count);
+    } finally {
+      m.exit(token);
+    }
+    try {
+      m.update(getConsumedPosition(), decodedPosition);
+    } catch (final DecodeBudgetExceededException e) {
+      dropDecoded(n);
+      throw e;
+    }
+    return n;
+  }
+
+  /**
+   * Drop the chunk exceeding the budget, including the history it may have overwritten, and leave
+   * the current run so that no more data is handed out without passing the meter.
    */
-  private boolean fillUp() throws IOException {
-    int counter = 0;
-    while (counter < scanlineStride) {
-      final byte cmd = getNextCommand();
-      if (reachEOF)
+  private void dropDecoded(long count) {
+    decodedPosition -= count;
+    historyStart = decodedPosition;
+    runRemaining = 0;
+  }
+
+  private long skipRuns(long count) throws IOException {
+    count = Math.min(count, maxDataLength - decodedPosition);
+
+    long n = 0;
+    while (n < count) {
+      if (runRemaining == 0 && !nextRun())
         break;
 
-      if (cmd >= 0 && cmd <= 127) {
-        final int copyCount = 1 + cmd;
-        int size = uncompressedData.size();
-        for (int i = 0; i < copyCount && size < maxDataLength; i++, size++) {
-          final int data = readNext();
-          if (!reachEOF) {
-            uncompressedData.append((byte) data);
-            counter++;
-          } else
-            return counter > 0;
-        }
-      } else if (cmd != -128) {
-        final int repeatCount = 1 - cmd;
-
-        final int data = readNext();
-        if (!reachEOF) {
-          int size = uncompressedData.size();
-          for (int i = 0; i < repeatCount && size < maxDataLength; i++, size++) {
-            uncompressedData.append((byte) data);
-            counter++;
-          }
+      int skip = (int) Math.min(runRemaining, count - n);
+      if (literalRun) {
+        if (inputPos == inputLimit && !fillInput()) {
+          runRemaining = 0;
+          reachEOF = true;
+          break;
         }
+        skip = Math.min(skip, inputLimit - inputPos);
+        inputPos += skip;
       }
+      runRemaining -= skip;
+      n += skip;
     }
-    if (uncompressedData.size() == maxDataLength && stream != null)
-      if (!propagateClose) {
-        stream = null;
-      }
 
-    return counter > 0;
+    decodedPosition += n;
+    return n;
+  }
+
+  /**
+   * @return the number of bytes of compressed data consumed so far
+   */
+  private long getConsumedPosition() {
+    return srcPosition - (inputLimit - inputPos);
+  }
+
+  /**
+   * Read the next run header (and value, in case of a repeat run).
+   *
+   * @return <code>false</code> if the end of the compressed data has been reached
+   */
+  private boolean nextRun() throws IOException {
+    while (!reachEOF) {
+      final int data = readNext();
+      if (data < 0)
+        return false;
+
+      final byte cmd = fillOrder ? reverseBitsTable[data] : (byte) data;
+      if (cmd >= 0) {
+        literalRun = true;
+        runRemaining = 1 + cmd;
+        return true;
+      } else if (cmd != -128) {
+        final int value = readNext();
+        if (value < 0)
+          return false;
+        literalRun = false;
+        repeatValue = (byte) value;
+        runRemaining = 1 - cmd;
+        return true;
+      }
+      // -128 is a no-op
+    }
+    return false;
   }
 
   /**
-   * Reads the next byte of data from the input stream. The value byte is returned as an
-   * <code>int</code> in the range <code>0</code> to <code>255</code>. If no byte is available
-   * because the end of the stream has been reached, the value <code>-1</code> is returned. This
-   * method blocks until input data is available, the end of the stream is detected, or an exception
-   * is thrown.
+   * Reads the next byte of compressed data.
    *
    * @return the next byte of data, or <code>-1</code> if the end of the stream is reached.
    * @throws IOException if an I/O error occurs.
    */
   private int readNext() throws IOException {
-    checkClosed();
-    if (stream == null)
+    if (inputPos == inputLimit && !fillInput()) {
       reachEOF = true;
+      return -1;
+    }
+    return input[inputPos++] & 0xff;
+  }
 
+  private boolean fillInput() throws IOException {
     if (reachEOF)
-      return -1;
+      return false;
 
-    if ((filled == -1 || sipped == filled) && stream != null) {
-      synchronized (stream) {
+    final int read;
+    synchronized (stream) {
+      if (stream.getStreamPosition() != srcPosition)
         stream.seek(srcPosition);
-        filled = stream.read(tmpSip);
-        srcPosition = stream.getStreamPosition();
-        sipped = 0;
-      }
-    }
-    final int next = (sipped < filled) ? 0xff & tmpSip[sipped++] : -1;
-    if (-1 == next) {
-      reachEOF = true;
-      // CK: free stream as soon as possible, already finished data resides in
-      // uncompressed data buffer afterwards
-      if (!propagateClose) {
-        stream = null;
-      }
+      read = stream.read(input, 0, input.length);
     }
+    if (read <= 0)
+      return false;
 
-    return next;
+    srcPosition += read;
+    inputPos = 0;
+    inputLimit = read;
+    return true;
   }
 
   /**
-   * Retrieves the next command code from the raw data
+   * Returns 0 after EOF has been reached, otherwise always return 1.
+   * <p>
+   * Programs should not count on this method to return the actual number of bytes that could be
+   * read without blocking.
    *
-   * @return the next command or <code>-1</code> if the end of the stream is reached.
+   * @return 1 before EOF and 0 after EOF.
    * @throws IOException if an I/O error occurs.
    */
-  private byte getNextCommand() throws IOException {
-    final int data = readNext();
-    if (!reachEOF) {
-      return fillOrder ? reverseBitsTable[data] : (byte) data;
-    }
-    return -1;
+  @Override
+  public int available() throws IOException {
+    checkClosed();
+    return reachEOF && currentPosition >= decodedPosition ? 0 : 1;
+  }
+
+  /**
+   * Closes this input stream and releases any system resources associated with the stream.
+   *
+   * @throws IOException if an I/O error has occurred
+   */
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (propagateClose && stream != null)
+      stream.close();
+    stream = null;
   }
 
   /**
@@ -318,6 +482,11 @@ public long length() throws IOException {
   }
 
   /**
+   * {@inheritDoc}
+   * <p>
+   * Performance considerations: seeking backwards by more than the size of the history requires
+   * decoding to be re-started from position 0.
+   *
    * @see javax.imageio.stream.ImageInputStream#seek(long)
    */
   @Override
@@ -328,22 +497,26 @@ public void seek(long pos) throws IOException {
           "Position to seek to (" + pos + ") is smaller than the flushed position or negative.");
 
     bitOffset = 0;
-    if (pos <= currentPosition || pos <= uncompressedData.size())
-      currentPosition = pos;
-    else {
-      while (currentPosition < pos && !reachEOF) {
-        if (!fillUp())
-          break;
-      }
-      currentPosition = pos;
+    if (pos < Math.max(historyStart, decodedPosition - HISTORY_SIZE)) {
+      // beyond the history -> we have to start all over
+      srcPosition = 0;
+      inputPos = inputLimit = 0;
+      runRemaining = 0;
+      reachEOF = false;
+      decodedPosition = 0;
+      historyStart = 0;
     }
+
+    if (pos > decodedPosition && skipDecoded(pos - decodedPosition) > 0)
+      // the skipped data hasn't been recorded
+      historyStart = decodedPosition;
+
+    currentPosition = pos;
   }
 
   @Override
   public long getSizeEstimate() {
-    return maxDataLength != Long.MAX_VALUE ?
-        (int) maxDataLength :
-        (uncompressedData != null ? uncompressedData.size() : 1024);
+    return maxDataLength != Long.MAX_VALUE ? maxDataLength : (stream != null ? stream.getSizeEstimate() : 1024);
   }
 
 }
@@ -0,0 +1,552 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+/**
+ * A pure Java implementation of the inflate algorithm (RFC 1950/1951) which, in contrast to JZlib,
+ * exposes enough of its internal state to be able to resume decoding at a deflate block boundary.
+ * This is what makes the {@link InflateCheckpointIndex} possible: at the start of a block the
+ * complete decoder state consists of the position within the compressed input (in bits) and the
+ * last 32 KB of output.
+ * <p>
+ * Instances are not thread safe. The compressed source stream is accessed while synchronizing on
+ * it, so that several inflaters may share the same source.
+ */
+final class RawInflater {
+  static final int WINDOW_SIZE = 1 << 15;
+  private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+  private static final int MAX_BITS = 15;
+  private static final int FAST_BITS = 9;
+  private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+  private static final int STATE_ZLIB_HEADER = 0;
+  private static final int STATE_BLOCK_HEADER = 1;
+  private static final int STATE_STORED = 2;
+  private static final int STATE_CODES = 3;
+  private static final int STATE_DONE = 4;
+
+  private static final int[] LENGTH_BASE = {
+      3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+  };
+  private static final int[] LENGTH_EXTRA = {
+      0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+  };
+  private static final int[] DIST_BASE = {
+      1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097,
+      6145, 8193, 12289, 16385, 24577
+  };
+  private static final int[] DIST_EXTRA = {
+      0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+  };
+  /**
+   * the order in which the code length code lengths are transmitted
+   */
+  private static final int[] CODE_LENGTH_ORDER = {
+      16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+  };
+
+  private static final Huffman FIXED_LENGTH_CODE = new Huffman(288);
+  private static final Huffman FIXED_DISTANCE_CODE = new Huffman(30);
+
+  static {
+    final byte[] lengths = new byte[288];
+    Arrays.fill(lengths, 0, 144, (byte) 8);
+    Arrays.fill(lengths, 144, 256, (byte) 9);
+    Arrays.fill(lengths, 256, 280, (byte) 7);
+    Arrays.fill(lengths, 280, 288, (byte) 8);
+    FIXED_LENGTH_CODE.build(lengths, 0, 288);
+
+    Arrays.fill(lengths, 0, 30, (byte) 5);
+    FIXED_DISTANCE_CODE.build(lengths, 0, 30);
+  }
+
+  /**
+   * A canonical huffman code. Codes of up to {@link #FAST_BITS} bits are decoded with a single table
+   * lookup, longer ones are decoded bit by bit using the count/symbol representation known from
+   * zlib's <code>puff.c</code>.
+   */
+  private static final class Huffman {
+    private final short[] count = new short[MAX_BITS + 1];
+    private final short[] offsets = new short[MAX_BITS + 1];
+    private final short[] symbol;
+
+    /**
+     * <code>(symbol &lt;&lt; 4) | length</code> indexed by the next {@link #FAST_BITS} input bits,
+     * or <code>0</code> if the code is longer than that.
+     */
+    private final int[] fast = new int[1 << FAST_BITS];
+
+    Huffman(int maxSymbols) {
+      symbol = new short[maxSymbols];
+    }
+
+    /**
+     * Build the code from the given code lengths.
+     *
+     * @return zero for a complete code, a negative value for an over-subscribed code and a positive
+     * value for an incomplete code
+     */
+    int build(byte[] lengths, int off, int n) {
+      Arrays.fill(count, (short) 0);
+      for (int i = 0; i < n; i++)
+        count[lengths[off + i]]++;
+
+      Arrays.fill(fast, 0);
+      if (count[0] == n)
+        // no codes at all. Complete, but decoding will fail.
+        return 0;
+
+      int left = 1;
+      for (int len = 1; len <= MAX_BITS; len++) {
+        left <<= 1;
+        left -= count[len];
+        if (left < 0)
+          return left;
+      }
+
+      offsets[1] = 0;
+      for (int len = 1; len < MAX_BITS; len++)
+        offsets[len + 1] = (short) (offsets[len] + count[len]);
+
+      for (int i = 0; i < n; i++)
+        if (lengths[off + i] != 0)
+          symbol[offsets[lengths[off + i]]++] = (short) i;
+
+      int code = 0;
+      int index = 0;
+      for (int len = 1; len <= FAST_BITS; len++) {
+        for (int k = 0; k < count[len]; k++, code++) {
+          final int entry = symbol[index++] << 4 | len;
+          for (int fill = reverse(code, len); fill <= FAST_MASK; fill += 1 << len)
+            fast[fill] = entry;
+        }
+        code <<= 1;
+      }
+
+      return left;
+    }
+
+    private static int reverse(int code, int length) {
+      int r = 0;
+      for (int i = 0; i < length; i++) {
+        r = r << 1 | code & 1;
+        code >>>= 1;
+      }
+      return r;
+    }
+  }
+
+  private final SeekableInputStream source;
+  private final InflateCheckpointIndex checkpoints;
+
+  private final byte[] input;
+  private int inputPosition;
+  private int inputLimit;
+  /**
+   * the position within the source stream of <code>input[0]</code>
+   */
+  private long inputBase;
+  private boolean inputExhausted;
+
+  private long bitBuffer;
+  private int bitCount;
+
+  private final byte[] window = new byte[WINDOW_SIZE];
+  private int windowPosition;
+  private long totalOut;
+
+  private int state = STATE_ZLIB_HEADER;
+  private boolean lastBlock;
+  private int storedRemaining;
+  private int copyLength;
+  private int copyDistance;
+  private DataFormatException pendingError;
+
+  private Huffman lengthCode;
+  private Huffman distanceCode;
+  private final Huffman dynamicLengthCode = new Huffman(288);
+  private final Huffman dynamicDistanceCode = new Huffman(30);
+  private final Huffman codeLengthCode = new Huffman(19);
+  private final byte[] lengths = new byte[288 + 32];
+
+  /**
+   * @param source      the zlib compressed data
+   * @param checkpoints the index to record checkpoints into, or <code>null</code> if no checkpoints
+   *                    shall be recorded
+   * @param bufferSize  the size of the compressed input buffer
+   */
+  RawInflater(SeekableInputStream source, InflateCheckpointIndex checkpoints, int bufferSize) {
+    this.source = source;
+    this.checkpoints = checkpoints;
+    this.input = new byte[Math.max(64, bufferSize)];
+  }
+
+  /**
+   * Restart decoding from the very beginning of the compressed data.
+   */
+  void reset() {
+    resetInput(0);
+    totalOut = 0;
+    windowPosition = 0;
+    state = STATE_ZLIB_HEADER;
+  }
+
+  /**
+   * Resume decoding at the given checkpoint. The checkpoint must have been recorded for the same
+   * compressed data.
+   */
+  void restore(InflateCheckpointIndex.Checkpoint checkpoint) throws IOException {
+    final long bitPosition = checkpoint.getInputBitPosition();
+    resetInput(bitPosition >>> 3);
+    final int skipBits = (int) (bitPosition & 7);
+    if (skipBits > 0) {
+      refill();
+      if (bitCount < skipBits)
+        throw new IOException("Checkpoint input position beyond end of compressed data");
+      dropBits(skipBits);
+    }
+
+    final byte[] w = checkpoint.getWindow();
+    System.arraycopy(w, 0, window, 0, w.length);
+    windowPosition = w.length & WINDOW_MASK;
+    totalOut = checkpoint.getOutputPosition();
+    state = STATE_BLOCK_HEADER;
+  }
+
+  private void resetInput(long position) {
+    inputBase = position;
+    inputPosition = inputLimit = 0;
+    inputExhausted = false;
+    bitBuffer = 0;
+    bitCount = 0;
+    lastBlock = false;
+    storedRemaining = copyLength = copyDistance = 0;
+    pendingError = null;
+  }
+
+  /**
+   * @return the number of bytes decoded so far, i.e. the output position
+   */
+  long getTotalOut() {
+    return totalOut;
+  }
+
+  /**
+   * Decode up to <code>len</code> bytes into the given array.
+   *
+   * @return the number of bytes decoded or <code>-1</code> if the end of the compressed data has
+   * been reached
+   * @throws DataFormatException if the compressed data is corrupt or truncated. Data decoded before
+   *                             the error was detected is returned by the preceding call.
+   */
+  int inflate(byte[] b, int off, int len) throws IOException, DataFormatException {
+    if (pendingError != null)
+      throw pendingError;
+
+    int written = 0;
+    try {
+      while (written < len) {
+        if (copyLength > 0) {
+          final int n = Math.min(copyLength, len - written);
+          int from = windowPosition - copyDistance & WINDOW_MASK;
+          for (int i = 0; i < n; i++) {
+            final byte v = window[from];
+            window[windowPosition] = v;
+            b[off + written++] = v;
+            windowPosition = windowPosition + 1 & WINDOW_MASK;
+            from = from + 1 & WINDOW_MASK;
+          }
+          copyLength -= n;
+          totalOut += n;
+          continue;
+        }
+
+        switch (state){
+          case STATE_ZLIB_HEADER:
+            readZlibHeader();
+            state = STATE_BLOCK_HEADER;
+            break;
+
+          case STATE_BLOCK_HEADER:
+            if (lastBlock) {
+              state = STATE_DONE;
+              break;
+            }
+            if (checkpoints != null && checkpoints.isCheckpointDue(totalOut))
+              checkpoints.add(new InflateCheckpointIndex.Checkpoint(getInputBitPosition(), totalOut, copyWindow()));
+            readBlockHeader();
+            break;
+
+          case STATE_STORED:
+            if (storedRemaining == 0) {
+              state = STATE_BLOCK_HEADER;
+              break;
+            }
+            written += readStored(b, off + written, Math.min(storedRemaining, len - written));
+            break;
+
+          case STATE_CODES:
+            written += decodeCodes(b, off + written, len - written);
+            break;
+
+          default:
+            return written > 0 ? written : -1;
+        }
+      }
+    } catch (final DataFormatException e) {
+      if (written == 0)
+        throw e;
+      pendingError = e;
+    }
+    return written;
+  }
+
+  private int decodeCodes(byte[] b, int off, int len) throws IOException, DataFormatException {
+    int written = 0;
+    while (written < len) {
+      final int symbol = decode(lengthCode);
+      if (symbol < 256) {
+        window[windowPosition] = (byte) symbol;
+        windowPosition = windowPosition + 1 & WINDOW_MASK;
+        b[off + written++] = (byte) symbol;
+        totalOut++;
+      } else if (symbol == 256) {
+        state = STATE_BLOCK_HEADER;
+        break;
+      } else {
+        final int lengthSymbol = symbol - 257;
+        if (lengthSymbol >= LENGTH_BASE.length)
+          throw new DataFormatException("invalid literal/length code");
+        final int length = LENGTH_BASE[lengthSymbol] + bits(LENGTH_EXTRA[lengthSymbol]);
+
+        final int distanceSymbol = decode(distanceCode);
+        if (distanceSymbol >= DIST_BASE.length)
+          throw new DataFormatException("invalid distance code");
+        final int distance = DIST_BASE[distanceSymbol] + bits(DIST_EXTRA[distanceSymbol]);
+        if (distance > Math.min(totalOut, WINDOW_SIZE))
+          throw new DataFormatException("invalid distance too far back");
+
+        copyLength = length;
+        copyDistance = distance;
+        break;
+      }
+    }
+    return written;
+  }
+
+  private void readZlibHeader() throws IOException, DataFormatException {
+    final int cmf = bits(8);
+    final int flg = bits(8);
+    if ((cmf & 0x0f) != 8 || (cmf << 8 | flg) % 31 != 0)
+      throw new DataFormatException("incorrect header check");
+    if ((flg & 0x20) != 0)
+      throw new DataFormatException("preset dictionaries are not supported");
+  }
+
+  private void readBlockHeader() throws IOException, DataFormatException {
+    lastBlock = bits(1) == 1;
+    switch (bits(2)){
+      case 0:
+        dropBits(bitCount & 7);
+        final int length = bits(16);
+        final int complement = bits(16);
+        if (length != (~complement & 0xffff))
+          throw new DataFormatException("invalid stored block lengths");
+        storedRemaining = length;
+        state = STATE_STORED;
+        break;
+      case 1:
+        lengthCode = FIXED_LENGTH_CODE;
+        distanceCode = FIXED_DISTANCE_CODE;
+        state = STATE_CODES;
+        break;
+      case 2:
+        readDynamicTables();
+        lengthCode = dynamicLengthCode;
+        distanceCode = dynamicDistanceCode;
+        state = STATE_CODES;
+        break;
+      default:
+        throw new DataFormatException("invalid block type");
+    }
+  }
+
+  private void readDynamicTables() throws IOException, DataFormatException {
+    final int lengthCount = bits(5) + 257;
+    final int distanceCount = bits(5) + 1;
+    final int codeCount = bits(4) + 4;
+    if (lengthCount > 286 || distanceCount > 30)
+      throw new DataFormatException("too many length or distance symbols");
+
+    Arrays.fill(lengths, 0, 19, (byte) 0);
+    for (int i = 0; i < codeCount; i++)
+      lengths[CODE_LENGTH_ORDER[i]] = (byte) bits(3);
+    if (codeLengthCode.build(lengths, 0, 19) != 0)
+      throw new DataFormatException("invalid code lengths set");
+
+    final int total = lengthCount + distanceCount;
+    int index = 0;
+    while (index < total) {
+      final int symbol = decode(codeLengthCode);
+      if (symbol < 16) {
+        lengths[index++] = (byte) symbol;
+        continue;
+      }
+
+      byte repeated = 0;
+      int repeat;
+      if (symbol == 16) {
+        if (index == 0)
+          throw new DataFormatException("invalid bit length repeat");
+        repeated = lengths[index - 1];
+        repeat = 3 + bits(2);
+      } else if (symbol == 17) {
+        repeat = 3 + bits(3);
+      } else {
+        repeat = 11 + bits(7);
+      }
+      if (index + repeat > total)
+        throw new DataFormatException("invalid bit length repeat");
+      Arrays.fill(lengths, index, index + repeat, repeated);
+      index += repeat;
+    }
+
+    if (lengths[256] == 0)
+      throw new DataFormatException("invalid code -- missing end-of-block");
+
+    int err = dynamicLengthCode.build(lengths, 0, lengthCount);
+    if (err < 0 || err > 0 && lengthCount - dynamicLengthCode.count[0] != 1)
+      throw new DataFormatException("invalid literal/lengths set");
+
+    err = dynamicDistanceCode.build(lengths, lengthCount, distanceCount);
+    if (err < 0 || err > 0 && distanceCount - dynamicDistanceCode.count[0] != 1)
+      throw new DataFormatException("invalid distances set");
+  }
+
+  private int readStored(byte[] b, int off, int len) throws IOException, DataFormatException {
+    int n = 0;
+    // drain whole bytes still held in the bit buffer
+    while (n < len && bitCount >= 8) {
+      b[off + n++] = (byte) bitBuffer;
+      dropBits(8);
+    }
+    while (n < len) {
+      if (inputPosition == inputLimit && !fillInput())
+        throw new DataFormatException("unexpected end of compressed data");
+      final int count = Math.min(len - n, inputLimit - inputPosition);
+      System.arraycopy(input, inputPosition, b, off + n, count);
+      inputPosition += count;
+      n += count;
+    }
+
+    for (int i = 0; i < n; i++) {
+      window[windowPosition] = b[off + i];
+      windowPosition = windowPosition + 1 & WINDOW_MASK;
+    }
+    storedRemaining -= n;
+    totalOut += n;
+    return n;
+  }
+
+  private int decode(Huffman h) throws IOException, DataFormatException {
+    if (bitCount < MAX_BITS)
+      refill();
+
+    final int entry = h.fast[(int) bitBuffer & FAST_MASK];
+    if (entry != 0 && (entry & 0xf) <= bitCount) {
+      dropBits(entry & 0xf);
+      return entry >>> 4;
+    }
+
+    int code = 0;
+    int first = 0;
+    int index = 0;
+    for (int len = 1; len <= MAX_BITS; len++) {
+      code |= bits(1);
+      final int count = h.count[len];
+      if (code - count < first)
+        return h.symbol[index + code - first];
+      index += count;
+      first += count;
+      first <<= 1;
+      code <<= 1;
+    }
+    throw new DataFormatException("invalid huffman code");
+  }
+
+  private int bits(int n) throws IOException, DataFormatException {
+    if (bitCount < n) {
+      refill();
+      if (bitCount < n)
+        throw new DataFormatException("unexpected end of compressed data");
+    }
+    final int value = (int) (bitBuffer & (1L << n) - 1);
+    dropBits(n);
+    return value;
+  }
+
+  private void dropBits(int n) {
+    bitBuffer >>>= n;
+    bitCount -= n;
+  }
+
+  private void refill() throws IOException {
+    while (bitCount <= 56) {
+      if (inputPosition == inputLimit && !fillInput())
+        return;
+      bitBuffer |= (input[inputPosition++] & 0xffL) << bitCount;
+      bitCount += 8;
+    }
+  }
+
+  private boolean fillInput() throws IOException {
+    if (inputExhausted)
+      return false;
+
+    inputBase += inputLimit;
+    inputPosition = inputLimit = 0;
+    synchronized (source) {
+      if (source.getStreamPosition() != inputBase)
+        source.seek(inputBase);
+      final int read = source.read(input, 0, input.length);
+      if (read <= 0) {
+        inputExhausted = true;
+        return false;
+      }
+      inputLimit = read;
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of bytes of compressed input consumed so far
+   */
+  long getInputPosition() {
+    return getInputBitPosition() / 8;
+  }
+
+  /**
+   * @return the position of the next unconsumed bit of compressed input
+   */
+  private long getInputBitPosition() {
+    return (inputBase + inputPosition) * 8 - bitCount;
+  }
+
+  /**
+   * @return the last (up to) 32 KB of output in chronological order
+   */
+  private byte[] copyWindow() {
+    final int size = (int) Math.min(totalOut, WINDOW_SIZE);
+    final byte[] copy = new byte[size];
+    final int start = windowPosition - size & WINDOW_MASK;
+    final int firstPart = Math.min(size, WINDOW_SIZE - start);
+    System.arraycopy(window, start, copy, 0, firstPart);
+    System.arraycopy(window, 0, copy, firstPart, size - firstPart);
+    return copy;
+  }
+}
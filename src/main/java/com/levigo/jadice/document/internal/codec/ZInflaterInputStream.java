@@ -3,6 +3,7 @@
 import static java.lang.Math.min;
 
 import java.io.IOException;
+import java.util.zip.DataFormatException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,8 +25,13 @@
  * licensed under BSD style license Copyright (c) 2000,2001, 2002,2003 ymnk, JCraft,Inc.
  * <p>
  * For using this class developers have to ensure JZlib package is available in the classpath.
+ * <p>
+ * Seeking backwards requires decoding the data from the very beginning. If that happens
+ * frequently, an {@link InflateCheckpointIndex} may be supplied. In that case decompression is done
+ * by {@link RawInflater} instead of JZlib, as JZlib does not allow to resume decoding at a deflate
+ * block boundary.
  */
-public final class ZInflaterInputStream extends SeekableInputStream {
+public final class ZInflaterInputStream extends SeekableInputStream implements DecodeBudget.Metered {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ZInflaterInputStream.class);
   /**
@@ -72,6 +78,18 @@ public final class ZInflaterInputStream extends SeekableInputStream {
    */
   private long badDataPosition = -1;
 
+  /**
+   * the (possibly shared) checkpoint index or <code>null</code> if random access isn't supported
+   */
+  private final InflateCheckpointIndex checkpoints;
+
+  /**
+   * decompressor used instead of {@link #zStream} if a checkpoint index is used
+   */
+  private final RawInflater rawInflater;
+
+  private DecodeBudget.Meter meter;
+
   /**
    * Construct a ZInflaterInputStream instance. It decodes flate data provided by the given
    * inputstream on the fly when invoking one of the following methods {@link #read()},
@@ -119,6 +137,33 @@ public ZInflaterInputStream(SeekableInputStream in, boolean propagateClose) {
    * @param bufferSize     buffer size of internal read ahead buffer
    */
   public ZInflaterInputStream(SeekableInputStream in, boolean propagateClose, int bufferSize) {
+    this(in, propagateClose, bufferSize, null);
+  }
+
+  /**
+   * Construct a ZInflaterInputStream instance supporting efficient random access by means of the
+   * given checkpoint index. The index may be shared with other streams decoding the same data.
+   *
+   * @param in          the inputstream providing the flate data to decode
+   * @param checkpoints the checkpoint index to use and populate
+   */
+  public ZInflaterInputStream(SeekableInputStream in, InflateCheckpointIndex checkpoints) {
+    this(in, false, 1024, checkpoints);
+  }
+
+  /**
+   * Construct a ZInflaterInputStream instance. It decodes flate data provided by the given
+   * inputstream on the fly when invoking one of the following methods {@link #read()},
+   * {@link #read(byte[])} or {@link #read(byte[], int, int)}.
+   *
+   * @param in             the inputstream providing the flate data to decode
+   * @param propagateClose indicates whether the embedded inputstream should be closed as well if
+   *                       this stream will be closed.
+   * @param bufferSize     buffer size of internal read ahead buffer
+   * @param checkpoints    the checkpoint index to use and populate or <code>null</code>
+   */
+  public ZInflaterInputStream(SeekableInputStream in, boolean propagateClose, int bufferSize,
+      InflateCheckpointIndex checkpoints) {
     if (in == null) {
       throw new IllegalArgumentException("Raw data input is null.");
     }
@@ -126,9 +171,15 @@ public ZInflaterInputStream(SeekableInputStream in, boolean propagateClose, int
     stream = in;
     this.bufferSize = Math.max(1, Math.abs(bufferSize));
     this.propagateClose = propagateClose;
+    this.checkpoints = checkpoints;
     position = 0;
     reachEOF = false;
-    prepareInflater();
+    if (checkpoints != null) {
+      rawInflater = new RawInflater(in, checkpoints, this.bufferSize);
+    } else {
+      rawInflater = null;
+      prepareInflater();
+    }
 
     uncompressedBuffer = new byte[this.bufferSize];
     uncompressedBufferIndex = 0;
@@ -157,11 +208,12 @@ private void prepareInflater() {
   @Override
   public int read() throws IOException {
     checkClosed();
-    final byte[] singleByteBuf = new byte[1];
-    if (read(singleByteBuf, 0, 1) == -1) {
+    bitOffset = 0;
+    if (uncompressedBufferIndex >= uncompressedBufferFillDegree && !fillBuffer()) {
       return -1;
     }
-    return singleByteBuf[0] & 0xFF;
+    position++;
+    return uncompressedBuffer[uncompressedBufferIndex++] & 0xFF;
   }
 
   @Override
@@ -183,33 +235,64 @@ public int read(byte[] b, int off, int len) throws IOException {
       return 0;
     }
 
-    if (uncompressedBufferIndex < uncompressedBufferFillDegree) {
-      final int toCopy = Math.min(len, uncompressedBufferFillDegree - uncompressedBufferIndex);
-      System.arraycopy(uncompressedBuffer, uncompressedBufferIndex, b, off, toCopy);
-      uncompressedBufferIndex += toCopy;
-      position += toCopy;
-      return toCopy;
+    if (uncompressedBufferIndex >= uncompressedBufferFillDegree && !fillBuffer()) {
+      return -1;
+    }
+
+    final int toCopy = Math.min(len, uncompressedBufferFillDegree - uncompressedBufferIndex);
+    System.arraycopy(uncompressedBuffer, uncompressedBufferIndex, b, off, toCopy);
+    uncompressedBufferIndex += toCopy;
+    position += toCopy;
+    return toCopy;
+  }
+
+  @Override
+  public void setDecodeMeter(DecodeBudget.Meter meter) {
+    this.meter = meter;
+  }
+
+  /**
+   * Decode the next chunk of data into the internal buffer.
+   *
+   * @return <code>false</code> if there is no more data
+   */
+  private boolean fillBuffer() throws IOException {
+    final DecodeBudget.Meter m = meter;
+    if (m == null)
+      return rawInflater != null ? fillBufferRaw() : fillBufferZ();
+
+    m.check();
+    final long token = m.enter();
+    final boolean filled;
+    try {
+      filled = rawInflater != null ? fillBufferRaw() : fillBufferZ();
+    } finally {
+      m.exit(token);
+    }
+    try {
+      m.update(rawInflater != null ? rawInflater.getInputPosition() : sourcePosition - zStream.avail_in,
+          filled ? position + uncompressedBufferFillDegree : position);
+    } catch (final DecodeBudgetExceededException e) {
+      // don't hand out the chunk exceeding the budget
+      uncompressedBufferFillDegree = 0;
+      uncompressedBufferIndex = 0;
+      throw e;
     }
+    return filled;
+  }
+
+  private boolean fillBufferZ() throws IOException {
 
     if (badDataPosition != -1 && sourcePosition >= (badDataPosition - 1)) {
       // reached the bad data position. Just return end of file marker.
-      return -1;
+      return false;
     }
 
     int err;
-    int bufferLen;
-    final boolean useInternalBuffer = true; // uncompressedBuffer.length > len;
-    if (useInternalBuffer) {
-      zStream.next_out = uncompressedBuffer;
-      zStream.next_out_index = 0;
-      zStream.avail_out = uncompressedBuffer.length;
-      bufferLen = uncompressedBuffer.length;
-    } else {
-      zStream.next_out = b;
-      zStream.next_out_index = off;
-      zStream.avail_out = len;
-      bufferLen = len;
-    }
+    final int bufferLen = uncompressedBuffer.length;
+    zStream.next_out = uncompressedBuffer;
+    zStream.next_out_index = 0;
+    zStream.avail_out = bufferLen;
     do {
       if (zStream.avail_in == 0 && !reachEOF) {
         // if buffer is empty and more input is available, refill it
@@ -227,7 +310,7 @@ public int read(byte[] b, int off, int len) throws IOException {
       }
       err = zStream.inflate(JZlib.Z_NO_FLUSH);
       if (reachEOF && err == JZlib.Z_BUF_ERROR) {
-        return -1;
+        return false;
       }
       if (err != JZlib.Z_OK && err != JZlib.Z_STREAM_END) {
         // Bad data. However, don't throw an exception. Instead give callers a chance to read the
@@ -237,26 +320,36 @@ public int read(byte[] b, int off, int len) throws IOException {
         badDataPosition = sourcePosition;
       }
       if ((reachEOF || err == JZlib.Z_STREAM_END) && zStream.avail_out == bufferLen) {
-        return -1;
+        return false;
       }
     } while (zStream.avail_out == bufferLen && err == JZlib.Z_OK);
 
-    if (useInternalBuffer) {
-      uncompressedBufferFillDegree = bufferLen - zStream.avail_out;
-      uncompressedBufferIndex = 0;
-      final int toCopy = Math.min(len, uncompressedBufferFillDegree);
+    uncompressedBufferFillDegree = bufferLen - zStream.avail_out;
+    uncompressedBufferIndex = 0;
+    return uncompressedBufferFillDegree > 0;
+  }
 
-      System.arraycopy(uncompressedBuffer, uncompressedBufferIndex, b, off, toCopy);
+  private boolean fillBufferRaw() throws IOException {
+    if (reachEOF) {
+      return false;
+    }
 
-      uncompressedBufferIndex += toCopy;
-      position += toCopy;
-      return toCopy;
+    final int read;
+    try {
+      read = rawInflater.inflate(uncompressedBuffer, 0, uncompressedBuffer.length);
+    } catch (final DataFormatException e) {
+      LOGGER.warn("Bad data during ZInflaterInputStream decoding: " + e.getMessage());
+      reachEOF = true;
+      return false;
+    }
+    if (read < 0) {
+      reachEOF = true;
+      return false;
     }
 
-    uncompressedBufferFillDegree = uncompressedBufferIndex = 0;
-    final int readCount = len - zStream.avail_out;
-    position += readCount;
-    return readCount;
+    uncompressedBufferFillDegree = read;
+    uncompressedBufferIndex = 0;
+    return read > 0;
   }
 
   @Override
@@ -292,6 +385,17 @@ public void seek(long pos) throws IOException {
       return;
     }
 
+    if (checkpoints != null && (pos < position || pos - position > checkpoints.getInterval())) {
+      final InflateCheckpointIndex.Checkpoint checkpoint = checkpoints.floor(pos);
+      if (checkpoint != null && (pos < position || checkpoint.getOutputPosition() > position)) {
+        rawInflater.restore(checkpoint);
+        position = checkpoint.getOutputPosition();
+        reachEOF = false;
+        uncompressedBufferIndex = 0;
+        uncompressedBufferFillDegree = 0;
+      }
+    }
+
     if (pos < position) {
       // /////////////
       // CK: Der folgende Workaround funktioniert nicht, da streamPos
@@ -309,7 +413,10 @@ public void seek(long pos) throws IOException {
       sourcePosition = 0;
       position = 0;
       reachEOF = false;
-      prepareInflater();
+      if (rawInflater != null)
+        rawInflater.reset();
+      else
+        prepareInflater();
 
       uncompressedBufferIndex = 0;
       uncompressedBufferFillDegree = 0;
@@ -321,14 +428,14 @@ public void seek(long pos) throws IOException {
 
   @Override
   public long skip(long count) throws IOException {
-    if (count <= 0)
-      return 0;
-
-    int r;
+    checkClosed();
+    bitOffset = 0;
     final long skipStart = position;
-    final byte[] buffer = new byte[(int) min(count, 4096)];
-    while (count > 0 && (r = read(buffer, 0, (int) min(buffer.length, count))) > 0) {
-      count -= r;
+    while (count > 0 && (uncompressedBufferIndex < uncompressedBufferFillDegree || fillBuffer())) {
+      final int skipped = (int) min(count, uncompressedBufferFillDegree - uncompressedBufferIndex);
+      uncompressedBufferIndex += skipped;
+      position += skipped;
+      count -= skipped;
     }
     return position - skipStart;
   }
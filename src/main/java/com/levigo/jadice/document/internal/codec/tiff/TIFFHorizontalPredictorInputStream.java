@@ -0,0 +1,335 @@
+package com.levigo.jadice.document.internal.codec.tiff;
+
+import java.io.IOException;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+/**
+ * Undoes TIFF predictor 2 (horizontal differencing) row by row. In contrast to
+ * {@link TIFFPredictorInputStream} whole blocks of rows are read from the source and decoded in
+ * place:
+ * <ul>
+ * <li>8 and 16 bit components are decoded by specialized loops,</li>
+ * <li>1, 2 and 4 bit components are decoded a byte at a time using lookup tables as long as a
+ * pixel doesn't span more than a byte, or by adding the components of whole bytes at once if pixels
+ * are byte aligned,</li>
+ * <li>any number of components (<code>Colors</code>) is supported.</li>
+ * </ul>
+ * As rows are independent of each other and the data isn't changed in size, seeking only needs to
+ * decode the row containing the target position.
+ */
+public final class TIFFHorizontalPredictorInputStream extends SeekableInputStream {
+
+  /**
+   * the minimum size of the row block
+   */
+  private static final int BLOCK_SIZE = 8192;
+
+  private final int colors;
+  private final int bitsPerComponent;
+  private final int bytesPerRow;
+  /**
+   * the mask of the padding bits in the last byte of a row. Those are left untouched.
+   */
+  private final int paddingMask;
+  /**
+   * the number of bits per pixel for packed samples
+   */
+  private final int bitsPerPixel;
+  /**
+   * For pixels of 1, 2 or 4 bits: the decoded byte for every combination of the preceding pixel and
+   * an encoded byte, indexed by <code>previousPixel &lt;&lt; 8 | encodedByte</code>.
+   */
+  private final byte[] table;
+
+  private SeekableInputStream stream;
+  private final boolean propagateClose;
+
+  /**
+   * decoded rows starting at {@link #blockStart}. The last row may be incomplete.
+   */
+  private final byte[] block;
+  private long blockStart;
+  private int blockLength;
+
+  private long streamPos;
+
+  /**
+   * @param stream           the source data
+   * @param colors           the number of components per pixel
+   * @param bitsPerComponent the number of bits per component, one of 1, 2, 4, 8 or 16
+   * @param columns          the number of pixels per row
+   */
+  public TIFFHorizontalPredictorInputStream(SeekableInputStream stream, int colors, int bitsPerComponent, int columns) {
+    this(stream, colors, bitsPerComponent, columns, false);
+  }
+
+  /**
+   * @param stream           the source data
+   * @param colors           the number of components per pixel
+   * @param bitsPerComponent the number of bits per component, one of 1, 2, 4, 8 or 16
+   * @param columns          the number of pixels per row
+   * @param propagateClose   whether to close the source when this stream is closed
+   */
+  public TIFFHorizontalPredictorInputStream(SeekableInputStream stream, int colors, int bitsPerComponent, int columns,
+      boolean propagateClose) {
+    if (stream == null)
+      throw new IllegalArgumentException("No InputStream");
+    if (bitsPerComponent != 1 && bitsPerComponent != 2 && bitsPerComponent != 4 && bitsPerComponent != 8
+        && bitsPerComponent != 16)
+      throw new IllegalArgumentException("Unsupported number of bits per component: " + bitsPerComponent);
+    if (colors < 1 || columns < 1)
+      throw new IllegalArgumentException("Invalid number of colors or columns: " + colors + "/" + columns);
+
+    this.stream = stream;
+    this.propagateClose = propagateClose;
+    this.colors = colors;
+    this.bitsPerComponent = bitsPerComponent;
+    this.bitsPerPixel = colors * bitsPerComponent;
+    this.bytesPerRow = (int) (((long) columns * bitsPerPixel + 7) / 8);
+    this.paddingMask = (1 << (int) (bytesPerRow * 8L - (long) columns * bitsPerPixel)) - 1;
+    this.table = bitsPerPixel < 8 && 8 % bitsPerPixel == 0 ? createTable(bitsPerPixel, bitsPerComponent) : null;
+
+    block = new byte[Math.max(1, BLOCK_SIZE / bytesPerRow) * bytesPerRow];
+    blockStart = 0;
+    blockLength = 0;
+  }
+
+  private static byte[] createTable(int bitsPerPixel, int bitsPerComponent) {
+    final int pixelsPerByte = 8 / bitsPerPixel;
+    final int pixelMask = (1 << bitsPerPixel) - 1;
+    final byte[] table = new byte[256 << bitsPerPixel];
+    for (int previous = 0; previous <= pixelMask; previous++) {
+      for (int encoded = 0; encoded < 256; encoded++) {
+        int prev = previous;
+        int decoded = 0;
+        for (int i = pixelsPerByte - 1; i >= 0; i--) {
+          final int pixel = addComponents(encoded >> i * bitsPerPixel & pixelMask, prev, bitsPerPixel,
+              bitsPerComponent);
+          decoded |= pixel << i * bitsPerPixel;
+          prev = pixel;
+        }
+        table[previous << 8 | encoded] = (byte) decoded;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Add the components packed into the given values individually, i.e. without carry from one
+   * component to the next.
+   */
+  private static int addComponents(int a, int b, int bits, int bitsPerComponent) {
+    final int mask = (1 << bitsPerComponent) - 1;
+    int sum = 0;
+    for (int shift = 0; shift < bits; shift += bitsPerComponent)
+      sum |= ((a >> shift) + (b >> shift) & mask) << shift;
+    return sum;
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if (!isBuffered(streamPos) && !fill())
+      return -1;
+    return block[(int) (streamPos++ - blockStart)] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length!");
+    }
+    if (len == 0)
+      return 0;
+
+    checkClosed();
+    bitOffset = 0;
+
+    int read = 0;
+    while (read < len) {
+      if (!isBuffered(streamPos) && !fill())
+        return read == 0 ? -1 : read;
+
+      final int offset = (int) (streamPos - blockStart);
+      final int toCopy = Math.min(len - read, blockLength - offset);
+      System.arraycopy(block, offset, b, off + read, toCopy);
+      streamPos += toCopy;
+      read += toCopy;
+    }
+
+    return read;
+  }
+
+  private boolean isBuffered(long pos) {
+    return pos >= blockStart && pos < blockStart + blockLength;
+  }
+
+  /**
+   * Read and decode the block of rows starting with the row containing the current position.
+   *
+   * @return <code>false</code> if the current position is beyond the end of the data
+   */
+  private boolean fill() throws IOException {
+    if (stream == null)
+      return false;
+
+    blockStart = streamPos - streamPos % bytesPerRow;
+    blockLength = 0;
+    synchronized (stream) {
+      if (stream.getStreamPosition() != blockStart)
+        stream.seek(blockStart);
+      while (blockLength < block.length) {
+        final int read = stream.read(block, blockLength, block.length - blockLength);
+        if (read <= 0)
+          break;
+        blockLength += read;
+      }
+    }
+
+    for (int offset = 0; offset < blockLength; offset += bytesPerRow)
+      decodeRow(block, offset, Math.min(bytesPerRow, blockLength - offset));
+
+    return isBuffered(streamPos);
+  }
+
+  /**
+   * Undo the horizontal differencing of a row in place.
+   *
+   * @param row    the data
+   * @param offset the start of the row
+   * @param length the length of the row, which may be less than {@link #bytesPerRow} for a truncated
+   *               row
+   */
+  private void decodeRow(byte[] row, int offset, int length) {
+    final int end = offset + length;
+    switch (bitsPerComponent){
+      case 8:
+        decode8(row, offset, end, colors);
+        break;
+
+      case 16:
+        decode16(row, offset, end, 2 * colors);
+        break;
+
+      default:
+        final int last = row[end - 1];
+        if (table != null)
+          decodeWithTable(row, offset, end);
+        else if (bitsPerPixel % 8 == 0)
+          decodePackedBytes(row, offset, end, bitsPerPixel / 8);
+        else
+          decodeSamples(row, offset, end);
+        if (length == bytesPerRow)
+          row[end - 1] = (byte) (row[end - 1] & ~paddingMask | last & paddingMask);
+    }
+  }
+
+  private static void decode8(byte[] row, int offset, int end, int distance) {
+    if (distance == 1) {
+      byte previous = row[offset];
+      for (int i = offset + 1; i < end; i++)
+        row[i] = previous += row[i];
+    } else {
+      for (int i = offset + distance; i < end; i++)
+        row[i] += row[i - distance];
+    }
+  }
+
+  private static void decode16(byte[] row, int offset, int end, int distance) {
+    for (int i = offset + distance; i < end - 1; i += 2) {
+      final int sum = ((row[i] & 0xff) << 8 | row[i + 1] & 0xff) + ((row[i - distance] & 0xff) << 8
+          | row[i - distance + 1] & 0xff);
+      row[i] = (byte) (sum >> 8);
+      row[i + 1] = (byte) sum;
+    }
+  }
+
+  /**
+   * Decode pixels of 1, 2 or 4 bits a byte at a time.
+   */
+  private void decodeWithTable(byte[] row, int offset, int end) {
+    final byte[] table = this.table;
+    final int pixelMask = (1 << bitsPerPixel) - 1;
+    // the first pixel is taken as is, i.e. as if preceded by zero
+    int previous = 0;
+    for (int i = offset; i < end; i++) {
+      final int decoded = table[previous << 8 | row[i] & 0xff] & 0xff;
+      row[i] = (byte) decoded;
+      previous = decoded & pixelMask;
+    }
+  }
+
+  /**
+   * Decode byte aligned pixels of components smaller than a byte by adding the components of a whole
+   * byte at once.
+   */
+  private void decodePackedBytes(byte[] row, int offset, int end, int distance) {
+    // the topmost bit of each component
+    int high = 0;
+    for (int shift = bitsPerComponent - 1; shift < 8; shift += bitsPerComponent)
+      high |= 1 << shift;
+    final int low = ~high & 0xff;
+
+    for (int i = offset + distance; i < end; i++) {
+      final int a = row[i] & 0xff;
+      final int b = row[i - distance] & 0xff;
+      row[i] = (byte) (((a & low) + (b & low)) ^ ((a ^ b) & high));
+    }
+  }
+
+  /**
+   * Decode sample by sample. Used for the rare case of pixels neither fitting into nor aligned to a
+   * byte, e.g. three components of two bits.
+   */
+  private void decodeSamples(byte[] row, int offset, int end) {
+    final int mask = (1 << bitsPerComponent) - 1;
+    final long endBit = (long) (end - offset) * 8;
+    for (long bit = bitsPerPixel; bit + bitsPerComponent <= endBit; bit += bitsPerComponent) {
+      final int index = offset + (int) (bit >> 3);
+      final int shift = 8 - bitsPerComponent - (int) (bit & 7);
+      final long previousBit = bit - bitsPerPixel;
+      final int previous = row[offset + (int) (previousBit >> 3)] >> 8 - bitsPerComponent - (int) (previousBit & 7)
+          & mask;
+      final int sample = (row[index] >> shift) + previous & mask;
+      row[index] = (byte) (row[index] & ~(mask << shift) | sample << shift);
+    }
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return streamPos;
+  }
+
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return stream != null ? stream.length() : -1L;
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos) {
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+    }
+    bitOffset = 0;
+    streamPos = pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (propagateClose && stream != null)
+      stream.close();
+    stream = null;
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return block.length + (stream != null ? stream.getSizeEstimate() : 1024);
+  }
+}
@@ -101,7 +101,7 @@ public int read() throws IOException {
       if (!fillUp())
         return -1;
 
-    return buffer.getByteAt((int) absolutePosition++);
+    return buffer.getByteAt((int) absolutePosition++) & 0xff;
   }
 
   /**
@@ -4,10 +4,25 @@
 
 public final class ByteArraySeekableInputStream extends SeekableInputStream {
   private final byte[] buf;
+  /**
+   * the number of valid bytes in the buffer
+   */
+  private final int count;
   private int bufPos;
 
   public ByteArraySeekableInputStream(byte[] buf) {
+    this(buf, buf.length);
+  }
+
+  /**
+   * @param buf    the data
+   * @param length the number of valid bytes at the start of the array
+   */
+  public ByteArraySeekableInputStream(byte[] buf, int length) {
+    if (length < 0 || length > buf.length)
+      throw new IllegalArgumentException("Invalid length " + length + " for an array of length " + buf.length);
     this.buf = buf;
+    this.count = length;
   }
 
   @Override
@@ -35,12 +50,12 @@ public long getSizeEstimate() {
 
   @Override
   public long length() throws IOException {
-    return buf.length;
+    return count;
   }
 
   @Override
   public int read() throws IOException {
-    if (bufPos >= buf.length) {
+    if (bufPos >= count) {
       return -1;
     }
     return buf[bufPos++] & 0xff;
@@ -53,11 +68,11 @@ public int read(byte[] b, int off, int len) throws IOException {
       throw new IllegalArgumentException();
     }
 
-    if (bufPos == buf.length) {
+    if (bufPos >= count) {
       return -1;
     }
 
-    final int toRead = Math.min(buf.length - bufPos, len);
+    final int toRead = Math.min(count - bufPos, len);
 
     if (toRead > 0) {
       System.arraycopy(buf, bufPos, b, off, toRead);
@@ -0,0 +1,79 @@
+package com.levigo.jadice.document.io;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link SeekableInputStream} reading from a {@link ByteBuffer}, which may be a direct (off-heap)
+ * buffer. The buffer's content between its position and limit is exposed. The buffer itself is
+ * never modified, so several streams may read from the same buffer concurrently.
+ */
+public final class ByteBufferSeekableInputStream extends SeekableInputStream {
+  private final ByteBuffer buf;
+  private final int length;
+  private int bufPos;
+
+  public ByteBufferSeekableInputStream(ByteBuffer buf) {
+    this.buf = buf.slice();
+    this.length = this.buf.remaining();
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return bufPos;
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos) {
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+    }
+    bitOffset = 0;
+
+    bufPos = (int) Math.min(pos, length);
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return 0;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return length;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (bufPos >= length) {
+      return -1;
+    }
+    return buf.get(bufPos++) & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    if (b == null || off + len > b.length || (off | len) < 0 || len == 0) {
+      throw new IllegalArgumentException();
+    }
+
+    if (bufPos >= length) {
+      return -1;
+    }
+
+    final int toRead = Math.min(length - bufPos, len);
+
+    // use a duplicate so that concurrent readers don't interfere
+    final ByteBuffer view = buf.duplicate();
+    ((Buffer) view).position(bufPos);
+    view.get(b, off, toRead);
+    bufPos += toRead;
+
+    return toRead;
+  }
+}
@@ -0,0 +1,328 @@
+package com.levigo.jadice.document.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link SeekableInputStream} reading its source on a separate thread. The source is read ahead
+ * into a bounded number of chunks which are handed to the consumer and recycled afterwards. If the
+ * consumer falls behind, the producing thread blocks until a chunk is returned (backpressure).
+ * <p>
+ * Placed between the stages of a filter chain, every stage runs on its own thread, so that the
+ * decoding of large streams makes use of several cores.
+ * <p>
+ * The source must not be used by anyone else while this stream is open. Seeking within the data
+ * already read ahead is cheap, any other seek stops the producing thread, seeks the source and
+ * starts reading ahead again. Reading ahead is started lazily on the first read.
+ */
+public final class PipelinedSeekableInputStream extends SeekableInputStream {
+
+  /**
+   * the default size of a chunk
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * the default number of chunks per stream
+   */
+  public static final int DEFAULT_CHUNK_COUNT = 4;
+
+  private static final class Chunk {
+    final byte[] data;
+    int length;
+    /**
+     * the position of the first byte within the source
+     */
+    long position;
+    /**
+     * set for the final chunk if reading the source failed
+     */
+    Throwable error;
+
+    Chunk(byte[] data) {
+      this.data = data;
+    }
+  }
+
+  /**
+   * The state of one run of the producing thread, i.e. reading ahead from a given position.
+   */
+  private final class Producer implements Runnable {
+    private final long startPosition;
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(chunkCount + 1);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean cancelled;
+
+    Producer(long startPosition) {
+      this.startPosition = startPosition;
+    }
+
+    @Override
+    public void run() {
+      try {
+        long position = startPosition;
+        while (!cancelled) {
+          final Chunk chunk = free.take();
+          if (cancelled) {
+            free.offer(chunk);
+            break;
+          }
+
+          chunk.position = position;
+          chunk.error = null;
+          try {
+            chunk.length = fill(chunk.data);
+          } catch (final Throwable t) {
+            chunk.length = 0;
+            chunk.error = t;
+          }
+
+          filled.put(chunk);
+          if (chunk.length == 0)
+            // end of data or error
+            break;
+          position += chunk.length;
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        finished.countDown();
+      }
+    }
+
+    /**
+     * Stop reading ahead and wait until the source is no longer used.
+     */
+    void cancel() throws InterruptedIOException {
+      cancelled = true;
+      // unblock the producer and take back the chunks it filled
+      filled.drainTo(free);
+      try {
+        while (!finished.await(10, TimeUnit.MILLISECONDS))
+          filled.drainTo(free);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while stopping the pipeline");
+      }
+      filled.drainTo(free);
+    }
+  }
+
+  private final SeekableInputStream source;
+  private final Executor executor;
+  private final boolean propagateClose;
+  private final int chunkCount;
+
+  /**
+   * the chunks available to the producer
+   */
+  private final BlockingQueue<Chunk> free;
+
+  private Producer producer;
+  /**
+   * the chunk currently consumed or <code>null</code>
+   */
+  private Chunk current;
+  private int currentIndex;
+  private long position;
+
+  /**
+   * @param source   the stream to read ahead
+   * @param executor the executor running the producing thread. As the producing task blocks
+   *                 while the consumer is behind, an executor with a bounded number of threads
+   *                 may dead-lock, if it is used for other blocking tasks as well.
+   */
+  public PipelinedSeekableInputStream(SeekableInputStream source, Executor executor) {
+    this(source, executor, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT, false);
+  }
+
+  /**
+   * @param source         the stream to read ahead
+   * @param executor       the executor running the producing thread
+   * @param chunkSize      the size of a chunk
+   * @param chunkCount     the number of chunks, i.e. the maximum amount of data read ahead
+   * @param propagateClose whether to close the source when this stream is closed
+   */
+  public PipelinedSeekableInputStream(SeekableInputStream source, Executor executor, int chunkSize, int chunkCount,
+      boolean propagateClose) {
+    if (source == null || executor == null)
+      throw new IllegalArgumentException("Source and executor must not be null");
+    if (chunkSize <= 0 || chunkCount < 2)
+      throw new IllegalArgumentException("Invalid chunk configuration: " + chunkCount + " x " + chunkSize);
+
+    this.source = source;
+    this.executor = executor;
+    this.propagateClose = propagateClose;
+    this.chunkCount = chunkCount;
+
+    free = new ArrayBlockingQueue<>(chunkCount);
+    for (int i = 0; i < chunkCount; i++)
+      free.add(new Chunk(new byte[chunkSize]));
+
+    // inherit the source's byte order
+    byteOrder = source.getByteOrder();
+  }
+
+  /**
+   * Read from the source until the array is full or the end of the data is reached. Called by the
+   * producing thread.
+   */
+  private int fill(byte[] data) throws IOException {
+    int length = 0;
+    while (length < data.length) {
+      final int read = source.read(data, length, data.length - length);
+      if (read <= 0)
+        break;
+      length += read;
+    }
+    return length;
+  }
+
+  /**
+   * Make sure that {@link #current} holds the data at the current position.
+   *
+   * @return <code>false</code> at the end of the data
+   */
+  private boolean ensureData() throws IOException {
+    if (current != null) {
+      if (currentIndex < current.length)
+        return true;
+      if (current.length == 0)
+        return checkError();
+    }
+
+    if (producer == null)
+      start(position);
+
+    if (current != null)
+      free.add(current);
+    try {
+      current = producer.filled.take();
+    } catch (final InterruptedException e) {
+      current = null;
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for data");
+    }
+    currentIndex = 0;
+
+    return current.length > 0 || checkError();
+  }
+
+  /**
+   * Report the failure to read ahead, if any.
+   *
+   * @return <code>false</code> if there was none
+   */
+  private boolean checkError() throws IOException {
+    final Throwable error = current.error;
+    if (error == null)
+      return false;
+    if (error instanceof IOException)
+      // keep the type, e.g. of a DecodeBudgetExceededException
+      throw (IOException) error;
+    throw new IOException("Reading ahead failed", error);
+  }
+
+  private void start(long pos) throws IOException {
+    synchronized (source) {
+      source.seek(pos);
+    }
+    producer = new Producer(pos);
+    executor.execute(producer);
+  }
+
+  private void stop() throws IOException {
+    if (current != null) {
+      free.add(current);
+      current = null;
+    }
+    if (producer != null) {
+      producer.cancel();
+      producer = null;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if (!ensureData())
+      return -1;
+    position++;
+    return current.data[currentIndex++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if ((off | len | off + len | b.length - (off + len)) < 0) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!ensureData())
+      return -1;
+
+    final int toCopy = Math.min(len, current.length - currentIndex);
+    System.arraycopy(current.data, currentIndex, b, off, toCopy);
+    currentIndex += toCopy;
+    position += toCopy;
+    return toCopy;
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return -1L;
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    checkClosed();
+    if (pos < flushedPos) {
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+    }
+    bitOffset = 0;
+
+    if (current != null && pos >= current.position && pos <= current.position + current.length) {
+      // within the current chunk
+      currentIndex = (int) (pos - current.position);
+    } else if (producer != null) {
+      // restart reading ahead at the new position
+      stop();
+      start(pos);
+    }
+    position = pos;
+  }
+
+  /**
+   * Stop the producing thread, returning the chunks it is blocked on, and wait until it has exited.
+   * Stages reading from this stream must close it, otherwise the thread stays blocked for good.
+   */
+  @Override
+  public void close() throws IOException {
+    super.close();
+    stop();
+    if (propagateClose)
+      source.close();
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return (long) chunkCount * (current != null ? current.data.length : DEFAULT_CHUNK_SIZE)
+        + source.getSizeEstimate();
+  }
+}
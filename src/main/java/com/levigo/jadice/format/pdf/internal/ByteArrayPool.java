@@ -0,0 +1,142 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of byte arrays used to hold decoded stream data. Arrays are handed out in power of two
+ * sizes, so that a released array can satisfy any later request of up to its size. The pool
+ * retains released arrays up to the given capacity, everything beyond is left to the garbage
+ * collector.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class ByteArrayPool {
+
+  /**
+   * the default maximum total size of the retained arrays in bytes
+   */
+  public static final long DEFAULT_CAPACITY = 32 * 1024 * 1024;
+
+  /**
+   * the smallest size class, 4 KB
+   */
+  private static final int MIN_SHIFT = 12;
+
+  /**
+   * the largest size class, 1 GB. Larger arrays aren't pooled.
+   */
+  private static final int MAX_SHIFT = 30;
+
+  private final long capacity;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final ArrayDeque<byte[]>[] free = new ArrayDeque[MAX_SHIFT + 1];
+  private long size;
+
+  private long allocationCount;
+  private long reuseCount;
+
+  /**
+   * Create a pool using the {@link #DEFAULT_CAPACITY}.
+   */
+  public ByteArrayPool() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity the maximum total size of the retained arrays in bytes
+   */
+  public ByteArrayPool(long capacity) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("Capacity must not be negative");
+    this.capacity = capacity;
+    for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++)
+      free[shift] = new ArrayDeque<>();
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @param minLength the minimum length of the array
+   * @return an array of at least the given length. Its content is undefined.
+   */
+  public byte[] acquire(int minLength) {
+    if (minLength < 0)
+      throw new IllegalArgumentException("Negative length: " + minLength);
+
+    final int shift = minLength <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(minLength - 1);
+    if (shift > MAX_SHIFT)
+      return new byte[minLength];
+
+    synchronized (this) {
+      final byte[] pooled = free[shift].pollFirst();
+      if (pooled != null) {
+        size -= pooled.length;
+        reuseCount++;
+        return pooled;
+      }
+      allocationCount++;
+    }
+    return new byte[1 << shift];
+  }
+
+  /**
+   * Return an array to the pool. The array must not be used by the caller afterwards. The pool
+   * doesn't track the arrays it hands out: any array of one of its sizes, a power of two of at
+   * least 4 KB, is retained, wherever it came from. Arrays of other sizes are ignored.
+   */
+  public void release(byte[] array) {
+    if (array == null)
+      return;
+
+    final int length = array.length;
+    if (Integer.bitCount(length) != 1 || length < 1 << MIN_SHIFT)
+      return;
+
+    final int shift = Integer.numberOfTrailingZeros(length);
+    synchronized (this) {
+      if (size + length <= capacity) {
+        free[shift].addFirst(array);
+        size += length;
+      }
+    }
+  }
+
+  /**
+   * Release all retained arrays. The statistics are retained.
+   */
+  public synchronized void clear() {
+    for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++)
+      free[shift].clear();
+    size = 0;
+  }
+
+  /**
+   * @return the total size of the retained arrays in bytes
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the number of requests which required a new array
+   */
+  public synchronized long getAllocationCount() {
+    return allocationCount;
+  }
+
+  /**
+   * @return the number of requests satisfied by a retained array
+   */
+  public synchronized long getReuseCount() {
+    return reuseCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ByteArrayPool[size=" + size + "/" + capacity + ", allocations=" + allocationCount + ", reuses="
+        + reuseCount + "]";
+  }
+}
@@ -0,0 +1,221 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.ByteBufferSeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory.Filter;
+
+/**
+ * A bounded cache of fully decoded stream data. Shared resources like form XObjects, fonts, ICC
+ * profiles or patterns are referenced from many pages. With this cache their data is only decoded
+ * once as long as it is used frequently enough.
+ * <p>
+ * Entries are keyed by the stream's object and generation number together with the filter chain
+ * used for decoding. As object numbers are only unique within a document, a cache must not be shared
+ * between documents. Entries are evicted in least recently used order as soon as the total size of
+ * the cached data exceeds the capacity. Optionally the data is kept in direct byte buffers, i.e.
+ * outside of the java heap.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class DecodedStreamCache {
+
+  /**
+   * the default capacity in bytes
+   */
+  public static final long DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+  /**
+   * the default maximum size of a single entry in bytes
+   */
+  public static final int DEFAULT_MAX_ENTRY_SIZE = 512 * 1024;
+
+  private static final class Key {
+    private final long objectNumber;
+    private final int generationNumber;
+    private final Filter[] filters;
+    private final int hashCode;
+
+    Key(long objectNumber, int generationNumber, Filter[] filters) {
+      this.objectNumber = objectNumber;
+      this.generationNumber = generationNumber;
+      this.filters = filters;
+      this.hashCode = ((int) (objectNumber ^ objectNumber >>> 32) * 31 + generationNumber) * 31
+          + Arrays.hashCode(filters);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      final Key other = (Key) obj;
+      return objectNumber == other.objectNumber && generationNumber == other.generationNumber
+          && Arrays.equals(filters, other.filters);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private final long capacity;
+  private final int maxEntrySize;
+  private final boolean offHeap;
+
+  /**
+   * the cached data, either <code>byte[]</code> or (direct) {@link ByteBuffer}, in access order
+   */
+  private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<>(64, 0.75f, true);
+  private long size;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+  private long evictedBytes;
+
+  /**
+   * Create a cache using the {@link #DEFAULT_CAPACITY} and {@link #DEFAULT_MAX_ENTRY_SIZE}, keeping
+   * the data on the heap.
+   */
+  public DecodedStreamCache() {
+    this(DEFAULT_CAPACITY, DEFAULT_MAX_ENTRY_SIZE, false);
+  }
+
+  /**
+   * @param capacity     the maximum total size of the cached data in bytes
+   * @param maxEntrySize the maximum size of a single decoded stream in bytes. Larger streams are
+   *                     never cached.
+   * @param offHeap      whether to keep the data in direct byte buffers instead of the heap
+   */
+  public DecodedStreamCache(long capacity, int maxEntrySize, boolean offHeap) {
+    if (capacity < 0 || maxEntrySize < 0)
+      throw new IllegalArgumentException("Capacity and maximum entry size must not be negative");
+    this.capacity = capacity;
+    this.maxEntrySize = (int) Math.min(maxEntrySize, capacity);
+    this.offHeap = offHeap;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public int getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * @return a stream over the cached data or <code>null</code> if there is no such entry
+   */
+  SeekableInputStream get(long objectNumber, int generationNumber, Filter[] filters) {
+    final Object data;
+    synchronized (this) {
+      data = entries.get(new Key(objectNumber, generationNumber, filters));
+      if (data == null) {
+        missCount++;
+        return null;
+      }
+      hitCount++;
+    }
+
+    return data instanceof byte[]
+        ? new ByteArraySeekableInputStream((byte[]) data)
+        : new ByteBufferSeekableInputStream((ByteBuffer) data);
+  }
+
+  /**
+   * Add the given decoded data. The array must not be modified afterwards.
+   */
+  void put(long objectNumber, int generationNumber, Filter[] filters, byte[] data, int length) {
+    if (length > maxEntrySize)
+      return;
+
+    final Object value;
+    if (offHeap) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+      buffer.put(data, 0, length);
+      ((Buffer) buffer).flip();
+      value = buffer.asReadOnlyBuffer();
+    } else {
+      value = length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    synchronized (this) {
+      final Object previous = entries.put(new Key(objectNumber, generationNumber, filters), value);
+      if (previous != null)
+        size -= sizeOf(previous);
+      size += length;
+
+      final Iterator<Object> i = entries.values().iterator();
+      while (size > capacity && i.hasNext()) {
+        final long evicted = sizeOf(i.next());
+        i.remove();
+        size -= evicted;
+        evictionCount++;
+        evictedBytes += evicted;
+      }
+    }
+  }
+
+  private static long sizeOf(Object data) {
+    return data instanceof byte[] ? ((byte[]) data).length : ((ByteBuffer) data).capacity();
+  }
+
+  /**
+   * Remove all entries. The statistics are retained.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    size = 0;
+  }
+
+  /**
+   * @return the total size of the cached data in bytes
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return the number of entries evicted to make room for new ones
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return the total size of the data evicted to make room for new entries
+   */
+  public synchronized long getEvictedBytes() {
+    return evictedBytes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "DecodedStreamCache[entries=" + entries.size() + ", size=" + size + "/" + capacity + ", hits=" + hitCount
+        + ", misses=" + missCount + ", evictions=" + evictionCount + ", evictedBytes=" + evictedBytes
+        + (offHeap ? ", off-heap" : "") + "]";
+  }
+}
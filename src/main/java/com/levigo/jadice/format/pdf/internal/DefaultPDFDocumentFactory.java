@@ -2,11 +2,14 @@
 
 import java.io.IOException;
 
+import com.levigo.jadice.document.internal.codec.DecodeBudget;
 import com.levigo.jadice.document.io.SeekableInputStream;
 import com.levigo.jadice.format.pdf.crypt.PDFSecurityException;
 import com.levigo.jadice.format.pdf.internal.crypt.NoSecurityHandler;
 import com.levigo.jadice.format.pdf.internal.crypt.SecurityHandler;
+import com.levigo.jadice.format.pdf.internal.crypt.StandardSecurityHandler;
 import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
 import com.levigo.jadice.format.pdf.internal.objects.DSReference;
 import com.levigo.jadice.format.pdf.internal.parsing.CrossReferenceTable;
 import com.levigo.jadice.format.pdf.internal.parsing.PDFDocumentStructureParser;
@@ -18,6 +21,37 @@
 
 public class DefaultPDFDocumentFactory implements PDFDocumentFactory {
 
+  private DecodeBudget decodeBudget;
+  private String password;
+
+  /**
+   * Limit the resources spent on decoding the streams of the documents created. Every document gets
+   * a budget of its own, created from the given template.
+   *
+   * @param template the template or <code>null</code> for unlimited decoding
+   */
+  public void setDecodeBudget(DecodeBudget template) {
+    decodeBudget = template;
+  }
+
+  public DecodeBudget getDecodeBudget() {
+    return decodeBudget;
+  }
+
+  /**
+   * Set the password used to open encrypted documents. Either the user or the owner password may be
+   * given.
+   *
+   * @param password the password or <code>null</code> to try the empty password only
+   */
+  public void setPassword(String password) {
+    this.password = password;
+  }
+
+  public String getPassword() {
+    return password;
+  }
+
   @Override
   public PDFDocument create(final SeekableInputStream source) throws IOException, PDFSecurityException {
 
@@ -30,7 +64,9 @@ public PDFDocument create(final SeekableInputStream source) throws IOException,
 
       return ref;
     };
+    final DecodeBudget budget = decodeBudget != null ? new DecodeBudget(decodeBudget) : null;
     final PDFFilterFactory initFilterFactory = new PDFFilterFactory(allButReferenceResolver);
+    initFilterFactory.setDecodeBudget(budget);
     final PDFDocumentStructureParser docStructParser = new PDFDocumentStructureParser(source, initFilterFactory);
     final PDFDocumentStructure docStruct = docStructParser.parse();
     final IncrementalUpdate activeUpdate = docStruct.getActiveUpdate();
@@ -44,10 +80,10 @@ public PDFDocument create(final SeekableInputStream source) throws IOException,
     // handle encryption and build security handler
     final PDFLexer lexer = new PDFLexer(source);
     final PDFParser encryptionParser = new PDFParser(lexer, crossReferenceTable, new NoSecurityHandler());
+    encryptionParser.getFilterFactory().setDecodeBudget(budget);
     final ReferenceResolver encryptionResolver = new DefaultReferenceResolver(encryptionParser);
 
-    // FIXME the current version of this extracted library doesn't have the decryption support.
-    final SecurityHandler securityHandler = new NoSecurityHandler();
+    final SecurityHandler securityHandler = createSecurityHandler(trailer, encryptionResolver);
     if (!securityHandler.authenticate()) {
       throw new PDFSecurityException("Access denied. Document will not be displayed.");
     }
@@ -55,12 +91,30 @@ public PDFDocument create(final SeekableInputStream source) throws IOException,
 
     // build and configure objects for final use
     final PDFParser docParser = new PDFParser(lexer, crossReferenceTable, securityHandler);
+    docParser.getFilterFactory().setDecodeBudget(budget);
     final ReferenceResolver docResolver = new DefaultReferenceResolver(docParser);
     final PDFFilterFactory docFilterFactory = new PDFFilterFactory(docResolver, securityHandler);
+    docFilterFactory.setDecodeBudget(budget);
     final DSDictionary root = docResolver.resolveDictionary(trailer.getRoot());
 
     // ready to build pdf document
     return new PDFDocument(docResolver, docFilterFactory, securityHandler, trailer, root, docStruct);
   }
 
+  private SecurityHandler createSecurityHandler(Trailer trailer, ReferenceResolver resolver)
+      throws PDFSecurityException {
+    final DSDictionary encrypt = trailer.getEncrypt() != null ? resolver.resolveDictionary(trailer.getEncrypt()) : null;
+    if (encrypt == null)
+      return new NoSecurityHandler();
+
+    final DSNameObject filter = resolver.resolveName(encrypt, "Filter");
+    if (filter == null || !filter.matches("Standard"))
+      throw new PDFSecurityException(
+          "Unsupported security handler: " + (filter != null ? filter.getName() : "none specified"));
+
+    final StandardSecurityHandler handler = new StandardSecurityHandler(encrypt, trailer.getID(), resolver);
+    handler.setPassword(password);
+    return handler;
+  }
+
 }
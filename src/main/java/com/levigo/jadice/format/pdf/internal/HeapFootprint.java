@@ -0,0 +1,260 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+
+/**
+ * The estimated heap footprint of a {@link PDFDocument}, as computed by
+ * {@link HeapFootprintEstimator}. The footprint is broken down into
+ * <ul>
+ * <li>the indirect objects of the document, by the type of every (nested) object, see
+ * {@link #getByType()}, and per indirect object, see {@link #getObjects()} and
+ * {@link #getLargest()},</li>
+ * <li>the cross reference structures of every incremental update, see {@link #getByUpdate()},</li>
+ * <li>the caches of the document, see {@link #getByCache()}.</li>
+ * </ul>
+ * All sizes are estimates in bytes, assuming a 64 bit VM with compressed object pointers.
+ */
+public final class HeapFootprint {
+
+  /**
+   * the number of histogram buckets, bucket <code>i</code> counting the sizes below
+   * <code>2<sup>i</sup></code> and at least <code>2<sup>i-1</sup></code>
+   */
+  public static final int HISTOGRAM_BUCKETS = 64;
+
+  /**
+   * A number of items with their total size and a histogram of their sizes.
+   */
+  public static final class Category {
+    private final String name;
+    private final long[] histogram = new long[HISTOGRAM_BUCKETS];
+    private long count;
+    private long bytes;
+
+    Category(String name) {
+      this.name = name;
+    }
+
+    void add(long size) {
+      count++;
+      bytes += size;
+      histogram[bucketOf(size)]++;
+    }
+
+    /**
+     * Add items whose individual sizes aren't known. They don't appear in the histogram.
+     */
+    void add(long count, long bytes) {
+      this.count += count;
+      this.bytes += bytes;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return the number of items per size bucket, see {@link HeapFootprint#HISTOGRAM_BUCKETS}
+     */
+    public long[] getHistogram() {
+      return histogram.clone();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%-24s %10d %14d", name, count, bytes);
+    }
+  }
+
+  /**
+   * The size of an indirect object including all its direct objects.
+   */
+  public static final class ObjectFootprint {
+    private final DSReference reference;
+    private final String type;
+    private final long bytes;
+
+    ObjectFootprint(DSReference reference, String type, long bytes) {
+      this.reference = reference;
+      this.type = type;
+      this.bytes = bytes;
+    }
+
+    public DSReference getReference() {
+      return reference;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%-24s %-24s %14d", reference.getReferencedObjectNumber() + " "
+          + reference.getReferencedGenerationNumber() + " R", type, bytes);
+    }
+  }
+
+  private static final Comparator<ObjectFootprint> BY_SIZE = Comparator.comparingLong(ObjectFootprint::getBytes);
+
+  private final int topN;
+  private final Category objects = new Category("objects");
+  private final Map<String, Category> byType = new TreeMap<>();
+  private final List<Category> byUpdate = new ArrayList<>();
+  private final Map<String, Category> byCache = new LinkedHashMap<>();
+  private final PriorityQueue<ObjectFootprint> largest;
+  private long offHeapBytes;
+
+  HeapFootprint(int topN) {
+    this.topN = topN;
+    this.largest = new PriorityQueue<>(Math.max(topN, 1), BY_SIZE);
+  }
+
+  static int bucketOf(long size) {
+    return Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(size));
+  }
+
+  void addObject(DSReference reference, String type, long bytes) {
+    objects.add(bytes);
+    if (topN <= 0)
+      return;
+    if (largest.size() < topN) {
+      largest.add(new ObjectFootprint(reference, type, bytes));
+    } else if (largest.peek().getBytes() < bytes) {
+      largest.poll();
+      largest.add(new ObjectFootprint(reference, type, bytes));
+    }
+  }
+
+  Category type(String name) {
+    return byType.computeIfAbsent(name, Category::new);
+  }
+
+  Category update(String name) {
+    final Category c = new Category(name);
+    byUpdate.add(c);
+    return c;
+  }
+
+  Category cache(String name) {
+    return byCache.computeIfAbsent(name, Category::new);
+  }
+
+  void addOffHeap(long bytes) {
+    offHeapBytes += bytes;
+  }
+
+  /**
+   * @return the estimated total heap footprint of the objects, cross reference structures and
+   *         caches
+   */
+  public long getTotalBytes() {
+    long total = objects.getBytes();
+    for (final Category c : byUpdate)
+      total += c.getBytes();
+    for (final Category c : byCache.values())
+      total += c.getBytes();
+    return total;
+  }
+
+  /**
+   * @return the sizes of the indirect objects including their direct objects
+   */
+  public Category getObjects() {
+    return objects;
+  }
+
+  /**
+   * @return the sizes of all objects, direct and indirect, by the simple name of their class. The
+   *         total equals that of {@link #getObjects()}.
+   */
+  public Map<String, Category> getByType() {
+    return Collections.unmodifiableMap(byType);
+  }
+
+  /**
+   * @return the cross reference structures, one per incremental update starting with the active
+   *         one, counting the objects registered
+   */
+  public List<Category> getByUpdate() {
+    return Collections.unmodifiableList(byUpdate);
+  }
+
+  /**
+   * @return the caches by name, counting their entries
+   */
+  public Map<String, Category> getByCache() {
+    return Collections.unmodifiableMap(byCache);
+  }
+
+  /**
+   * @return the largest indirect objects, largest first
+   */
+  public List<ObjectFootprint> getLargest() {
+    final List<ObjectFootprint> result = new ArrayList<>(largest);
+    result.sort(BY_SIZE.reversed());
+    return result;
+  }
+
+  /**
+   * @return the size of the cached data kept outside of the heap
+   */
+  public long getOffHeapBytes() {
+    return offHeapBytes;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "Heap footprint: %d bytes (%d bytes off-heap)%n", getTotalBytes(),
+        offHeapBytes));
+
+    section(sb, "Objects", Collections.singletonList(objects));
+    histogram(sb, objects);
+    section(sb, "By type", byType.values());
+    section(sb, "By update", byUpdate);
+    section(sb, "By cache", byCache.values());
+
+    if (!largest.isEmpty()) {
+      sb.append(String.format(Locale.ROOT, "%nLargest objects%n"));
+      for (final ObjectFootprint o : getLargest())
+        sb.append("  ").append(o).append(String.format(Locale.ROOT, "%n"));
+    }
+    return sb.toString();
+  }
+
+  private static void section(StringBuilder sb, String title, Iterable<Category> categories) {
+    sb.append(String.format(Locale.ROOT, "%n%s%n  %-24s %10s %14s%n", title, "", "count", "bytes"));
+    for (final Category c : categories)
+      sb.append("  ").append(c).append(String.format(Locale.ROOT, "%n"));
+  }
+
+  private static void histogram(StringBuilder sb, Category c) {
+    final long[] h = c.histogram;
+    for (int i = 0; i < h.length; i++)
+      if (h[i] > 0)
+        sb.append(String.format(Locale.ROOT, "  < %-22d %10d%n", 1L << i, h[i]));
+  }
+}
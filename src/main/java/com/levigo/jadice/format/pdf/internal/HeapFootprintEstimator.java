@@ -0,0 +1,289 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.levigo.jadice.format.pdf.internal.objects.DSArray;
+import com.levigo.jadice.format.pdf.internal.objects.DSBoolean;
+import com.levigo.jadice.format.pdf.internal.objects.DSCommonDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSCompactDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSFreezableObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSHierarchyAwareDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSInteger;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSNullObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSNumber;
+import com.levigo.jadice.format.pdf.internal.objects.DSNumericArray;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+import com.levigo.jadice.format.pdf.internal.objects.DSString;
+import com.levigo.jadice.format.pdf.internal.parsing.CrossReferenceTable;
+import com.levigo.jadice.format.pdf.internal.parsing.PDFDocumentStructureParser.IncrementalUpdate;
+import com.levigo.jadice.format.pdf.internal.struct.PageTree;
+
+/**
+ * Estimates the heap footprint of a {@link PDFDocument}, see {@link HeapFootprint}. Objects are not
+ * cached by the document, so the estimate for the objects is what resolving every object of the
+ * document once costs: every object registered in the cross reference tables is resolved and its
+ * size, including its direct objects, is estimated.
+ * <p>
+ * The estimates are based on the layout of a 64 bit VM with compressed object pointers. Instances
+ * shared between objects or documents, like the small integers, the booleans, the registered names
+ * and the canonical references held by the cross reference tables, don't count towards the objects
+ * referring to them. Names which aren't shared are counted once per document.
+ */
+public final class HeapFootprintEstimator {
+
+  private static final int OBJECT_HEADER = 12;
+  private static final int ARRAY_HEADER = 16;
+  private static final int POINTER = 4;
+
+  /**
+   * the fields of {@link DSObject}: object and generation number
+   */
+  private static final int DS_OBJECT = OBJECT_HEADER + 8 + 4;
+
+  /**
+   * the fields of {@link DSFreezableObject}: those of {@link DSObject} and the frozen flag
+   */
+  private static final int DS_FREEZABLE = DS_OBJECT + 1;
+
+  private static final int HASH_MAP = align(OBJECT_HEADER + 4 * POINTER + 4 * 4);
+  private static final int HASH_MAP_NODE = align(OBJECT_HEADER + 4 + 3 * POINTER);
+  private static final int STRING = align(OBJECT_HEADER + POINTER + 4 + 1 + 1);
+  private static final int LOCATION = align(OBJECT_HEADER + 1 + 8 + 4 + 8);
+
+  private final Set<DSNameObject> names = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final HeapFootprint footprint;
+  private final List<CrossReferenceTable> tables = new ArrayList<>();
+
+  private HeapFootprintEstimator(int topN) {
+    footprint = new HeapFootprint(topN);
+  }
+
+  /**
+   * Estimate the footprint of the given document. This resolves every object of the document and
+   * may take a while for large documents.
+   *
+   * @param document the document
+   * @param topN     the number of largest objects to report
+   * @return the footprint
+   */
+  public static HeapFootprint estimate(PDFDocument document, int topN) {
+    final HeapFootprintEstimator estimator = new HeapFootprintEstimator(topN);
+    final IncrementalUpdate active = document.getDocumentStructure() != null
+        ? document.getDocumentStructure().getActiveUpdate()
+        : null;
+
+    estimator.estimateUpdates(active);
+    estimator.estimateObjects(document.getResolver(), active);
+    estimator.estimateCaches(document);
+    return estimator.footprint;
+  }
+
+  /**
+   * Estimate the size of the given object including its direct objects, not following
+   * references. Shared instances are not counted.
+   */
+  public static long sizeOf(DSObject object) {
+    return new HeapFootprintEstimator(0).walk(object);
+  }
+
+  private void estimateUpdates(IncrementalUpdate active) {
+    int index = 0;
+    for (IncrementalUpdate u = active; u != null; u = u.getPrevious(), index++) {
+      final CrossReferenceTable table = u.getCrossReferenceTable();
+      final int registered = table != null ? table.getRegistered().size() : 0;
+      long bytes = 0;
+      if (table != null) {
+        bytes += align(OBJECT_HEADER + 3 * POINTER) + hashMap(registered, 16)
+            + (long) registered * (align(DS_OBJECT + 8 + 4) + LOCATION)
+            + align(ARRAY_HEADER + (long) POINTER * table.getReferenceTableLength());
+      }
+      if (u.getTrailer() != null && u.getTrailer().getDictionary() != null)
+        bytes += sizeOf(u.getTrailer().getDictionary());
+
+      footprint.update(index == 0 ? "update 0 (active)" : "update " + index).add(registered, bytes);
+    }
+  }
+
+  private void estimateObjects(ReferenceResolver resolver, IncrementalUpdate active) {
+    for (IncrementalUpdate u = active; u != null; u = u.getPrevious())
+      if (u.getCrossReferenceTable() != null)
+        tables.add(u.getCrossReferenceTable());
+
+    // the newest definition of an object number wins
+    final Set<Long> seen = new HashSet<>();
+    for (IncrementalUpdate u = active; u != null; u = u.getPrevious()) {
+      if (u.getCrossReferenceTable() == null)
+        continue;
+      for (final DSReference ref : u.getCrossReferenceTable().getRegistered()) {
+        if (!seen.add(ref.getReferencedObjectNumber()))
+          continue;
+        final DSObject object = resolver.resolve(ref);
+        if (object != null)
+          footprint.addObject(ref, object.getClass().getSimpleName(), walk(object));
+      }
+    }
+  }
+
+  private void estimateCaches(PDFDocument document) {
+    final PDFFilterFactory filterFactory = document.getFilterFactory();
+    final DecodedStreamCache streamCache = filterFactory != null ? filterFactory.getDecodedStreamCache() : null;
+    if (streamCache != null) {
+      final int entries = streamCache.getEntryCount();
+      // key, linked map entry and the array or buffer holding the data
+      final long overhead = (long) entries
+          * (align(OBJECT_HEADER + 8 + 4 + POINTER + 4) + align(HASH_MAP_NODE + 2 * POINTER) + ARRAY_HEADER);
+      if (streamCache.isOffHeap()) {
+        footprint.cache("decoded streams").add(entries, overhead);
+        footprint.addOffHeap(streamCache.getSize());
+      } else {
+        footprint.cache("decoded streams").add(entries, overhead + streamCache.getSize());
+      }
+    }
+
+    final ByteArrayPool pool = filterFactory != null ? filterFactory.getBufferPool() : null;
+    if (pool != null)
+      footprint.cache("buffer pool").add(0, pool.getSize());
+
+    // map node, inherited attributes
+    final int attributeNodes = document.getPageAttributeResolver().getCachedNodeCount();
+    footprint.cache("page attributes").add(attributeNodes,
+        (long) attributeNodes * (HASH_MAP_NODE + align(OBJECT_HEADER + 4 * POINTER)));
+
+    if (document.getCatalog() == null)
+      return;
+
+    // map node, node with its arrays, the table of pages if it has been built
+    final PageTree pageTree = document.getPageTree();
+    final int treeNodes = pageTree.getCachedNodeCount();
+    footprint.cache("page tree").add(treeNodes, (long) treeNodes
+        * (HASH_MAP_NODE + align(OBJECT_HEADER + 3 * POINTER + 4) + 3 * ARRAY_HEADER)
+        + (pageTree.isIndexComplete() ? align(ARRAY_HEADER + (long) POINTER * pageTree.getIndexSize()) : 0));
+  }
+
+  /**
+   * Estimate the size of the object and its direct objects, adding each to the footprint by type.
+   */
+  private long walk(DSObject root) {
+    long total = 0;
+    final Deque<DSObject> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      final DSObject o = stack.pop();
+      final long size = shallowSize(o);
+      if (size == 0)
+        continue;
+
+      footprint.type(o.getClass().getSimpleName()).add(size);
+      total += size;
+
+      if (o instanceof DSStream) {
+        stack.push(((DSStream) o).getDictionary());
+      } else if (o instanceof DSArray && !(o instanceof DSNumericArray && ((DSNumericArray) o).isPacked())) {
+        for (final DSObject item : (DSArray) o)
+          if (item != null)
+            stack.push(item);
+      } else if (o instanceof DSDictionary && !(o instanceof DSHierarchyAwareDictionary)) {
+        // the entries of a hierarchy aware dictionary belong to its source and parent
+        for (final Map.Entry<DSNameObject, DSObject> e : (DSDictionary) o) {
+          stack.push(e.getKey());
+          if (e.getValue() != null)
+            stack.push(e.getValue());
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @return the size of the object itself, without the objects it contains, or 0 for shared
+   *         instances
+   */
+  private long shallowSize(DSObject o) {
+    if (o instanceof DSInteger)
+      return ((DSInteger) o).isShared() ? 0 : align(DS_OBJECT + 8);
+    if (o instanceof DSNumber)
+      return align(DS_OBJECT + 8);
+    if (o instanceof DSBoolean)
+      return ((DSBoolean) o).isShared() ? 0 : align(DS_OBJECT + 1);
+    if (o instanceof DSNullObject)
+      return o == DSNullObject.INSTANCE ? 0 : align(DS_OBJECT);
+    if (o instanceof DSReference)
+      return isCanonical((DSReference) o) ? 0 : align(DS_OBJECT + 8 + 4);
+    if (o instanceof DSNameObject) {
+      final DSNameObject name = (DSNameObject) o;
+      if (name.isCanonical() || !names.add(name))
+        return 0;
+      return align(DS_OBJECT + POINTER + 4 + 4) + STRING + align(ARRAY_HEADER + name.getName().length());
+    }
+    if (o instanceof DSString)
+      return align(DS_FREEZABLE + POINTER) + align(ARRAY_HEADER + ((DSString) o).getLength());
+    if (o instanceof DSStream)
+      return align(DS_FREEZABLE + 2 * POINTER);
+    if (o instanceof DSNumericArray && ((DSNumericArray) o).isPacked()) {
+      final int n = ((DSArray) o).size();
+      return align(DS_FREEZABLE + POINTER) + align(OBJECT_HEADER + 4 + 3 * POINTER + 1)
+          + align(ARRAY_HEADER + 8L * n) + align(ARRAY_HEADER + 8L * (n + 63 >>> 6));
+    }
+    if (o instanceof DSArray)
+      return align(DS_FREEZABLE + POINTER) + align(OBJECT_HEADER + 4 + 4 + POINTER)
+          + align(ARRAY_HEADER + (long) POINTER * ((DSArray) o).size());
+    if (o instanceof DSCompactDictionary) {
+      final int n = ((DSDictionary) o).size();
+      final long shallow = align(DS_FREEZABLE + 3 * POINTER + 4 + 4);
+      if (n > DSCompactDictionary.THRESHOLD)
+        // promoted into a map created for four times the threshold
+        return shallow + hashMap(n, DSCompactDictionary.THRESHOLD * 4);
+      // the arrays start with four slots and double as needed
+      final int capacity = Math.min(DSCompactDictionary.THRESHOLD,
+          Math.max(4, Integer.highestOneBit(Math.max(n, 1) * 2 - 1)));
+      return shallow + 2 * align(ARRAY_HEADER + (long) POINTER * capacity);
+    }
+    if (o instanceof DSCommonDictionary)
+      return align(DS_FREEZABLE + POINTER) + hashMap(((DSDictionary) o).size(), 16);
+    if (o instanceof DSHierarchyAwareDictionary)
+      return align(DS_FREEZABLE + 3 * POINTER);
+    return align(DS_OBJECT);
+  }
+
+  /**
+   * @return whether the reference is the instance held by the cross reference table of one of the
+   *         updates
+   */
+  private boolean isCanonical(DSReference ref) {
+    for (final CrossReferenceTable table : tables)
+      if (table.isCanonical(ref))
+        return true;
+    return false;
+  }
+
+  /**
+   * @param size         the number of entries
+   * @param initialTable the table size the map has been created for
+   */
+  private static long hashMap(int size, int initialTable) {
+    if (size == 0)
+      return HASH_MAP;
+    final int table = Math.max(initialTable, Integer.highestOneBit((int) Math.ceil(size / 0.75) * 2 - 1));
+    return HASH_MAP + align(ARRAY_HEADER + (long) POINTER * table) + (long) size * HASH_MAP_NODE;
+  }
+
+  private static int align(int size) {
+    return size + 7 & ~7;
+  }
+
+  private static long align(long size) {
+    return size + 7 & ~7L;
+  }
+}
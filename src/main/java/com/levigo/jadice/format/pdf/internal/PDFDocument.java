@@ -3,6 +3,8 @@
 import com.levigo.jadice.format.pdf.internal.crypt.SecurityHandler;
 import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
 import com.levigo.jadice.format.pdf.internal.parsing.PDFDocumentStructureParser.PDFDocumentStructure;
+import com.levigo.jadice.format.pdf.internal.struct.PageAttributeResolver;
+import com.levigo.jadice.format.pdf.internal.struct.PageTree;
 import com.levigo.jadice.format.pdf.internal.struct.Trailer;
 
 public class PDFDocument {
@@ -13,6 +15,8 @@ public class PDFDocument {
   private final Trailer trailer;
   private final DSDictionary catalog;
   private final PDFDocumentStructure documentStructure;
+  private final PageAttributeResolver pageAttributeResolver;
+  private final PageTree pageTree;
 
   public PDFDocument(ReferenceResolver resolver, PDFFilterFactory filterFactory, SecurityHandler securityHandler,
       Trailer trailer, DSDictionary catalog, PDFDocumentStructure documentStructure) {
@@ -22,6 +26,8 @@ public PDFDocument(ReferenceResolver resolver, PDFFilterFactory filterFactory, S
     this.trailer = trailer;
     this.catalog = catalog;
     this.documentStructure = documentStructure;
+    this.pageAttributeResolver = new PageAttributeResolver(resolver);
+    this.pageTree = new PageTree(resolver, catalog, pageAttributeResolver);
   }
 
   public ReferenceResolver getResolver() {
@@ -48,4 +54,18 @@ public PDFDocumentStructure getDocumentStructure() {
     return documentStructure;
   }
 
+  /**
+   * @return the resolver of the attributes pages inherit through the page tree
+   */
+  public PageAttributeResolver getPageAttributeResolver() {
+    return pageAttributeResolver;
+  }
+
+  /**
+   * @return the index of the pages of this document
+   */
+  public PageTree getPageTree() {
+    return pageTree;
+  }
+
 }
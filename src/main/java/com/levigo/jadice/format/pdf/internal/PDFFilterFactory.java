@@ -1,25 +1,39 @@
 package com.levigo.jadice.format.pdf.internal;
 
-import java.awt.Dimension;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.levigo.jadice.document.internal.codec.ASCII85InputStream;
 import com.levigo.jadice.document.internal.codec.ASCIIHexInputStream;
+import com.levigo.jadice.document.internal.codec.CCITTFaxInputStream;
+import com.levigo.jadice.document.internal.codec.DecodeBudget;
+import com.levigo.jadice.document.internal.codec.DecodeMemoryAccountant;
+import com.levigo.jadice.document.internal.codec.FlatePNGPredictorInputStream;
+import com.levigo.jadice.document.internal.codec.InflateCheckpointIndex;
 import com.levigo.jadice.document.internal.codec.LZWInputStream;
 import com.levigo.jadice.document.internal.codec.PNGPredictorInputStream;
 import com.levigo.jadice.document.internal.codec.PackbitsInputStream;
 import com.levigo.jadice.document.internal.codec.ZInflaterInputStream;
-import com.levigo.jadice.document.internal.codec.tiff.TIFFPredictorInputStream;
+import com.levigo.jadice.document.internal.codec.tiff.TIFFHorizontalPredictorInputStream;
 import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
 import com.levigo.jadice.document.io.ConcatenatedInputStream;
+import com.levigo.jadice.document.io.PipelinedSeekableInputStream;
 import com.levigo.jadice.document.io.SeekableInputStream;
 import com.levigo.jadice.format.pdf.crypt.PDFSecurityException;
 import com.levigo.jadice.format.pdf.internal.crypt.NoSecurityHandler;
@@ -39,13 +53,46 @@ public final class PDFFilterFactory {
   private static final Map<String, Filter> FILTER_MAPPING;
   private static final Logger LOGGER = LoggerFactory.getLogger(PDFFilterFactory.class);
 
+  /**
+   * the maximum size of the initial buffer used by {@link #decode(DSStream)}, regardless of the
+   * expected size
+   */
+  private static final int MAX_INITIAL_DECODE_BUFFER_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * the size of the intermediate array used to decode into buffers not backed by an array
+   */
+  private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * the default minimum encoded length of a stream for pipelined decoding
+   */
+  public static final long DEFAULT_PIPELINE_THRESHOLD = 4 * 1024 * 1024;
+
+  /**
+   * the compression ratio assumed for flate streams without <code>/DL</code> when deciding whether
+   * to use checkpoints
+   */
+  public static final int EXPECTED_FLATE_RATIO = 4;
+
+  /**
+   * the maximum number of compiled filter pipelines retained, see
+   * {@link #getFilterPipeline(DSStream)}
+   */
+  public static final int MAX_FILTER_PIPELINES = 4096;
+
+  /**
+   * the largest array size most VMs are able to allocate
+   */
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
   public enum Filter { //
     ASCII85(new ASCII85FilterStreamFactory(), "ASCII85Decode", "A85"), //
     ASCIIHEX(new ASCIIHexFilterStreamFactory(), "ASCIIHexDecode", "AHx"), //
     FLATE(new FlateFilterStreamFactory(), "FlateDecode", "Fl"), //
     LZW(new LZWFilterStreamFactory(), "LZWDecode", "LZW"), //
     RUNLENGTH(new RLEFilterStreamFactory(), "RunLengthDecode", "RL"), //
-    CCITTFAX("CCITTFaxDecode", "CCF"), //
+    CCITTFAX(new CCITTFaxFilterStreamFactory(), "CCITTFaxDecode", "CCF"), //
     CRYPT(new CryptFilterStreamFactory(), "Crypt"), //
     DCT("DCTDecode", "DCT"), //
     JBIG2("JBIG2Decode"), //
@@ -83,8 +130,11 @@ public boolean isStreamDecompressionPossible() {
   }
 
   protected interface FilterStreamFactory {
+    /**
+     * @param propagateClose whether closing the created stream shall close the given one as well
+     */
     SeekableInputStream create(SeekableInputStream sis, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler);
+        SecurityHandler securityHandler, boolean propagateClose);
   }
 
   public static final class FilterEntry {
@@ -93,6 +143,11 @@ public static final class FilterEntry {
     private final DSDictionary streamDictionary;
     private final DSDictionary decodeParms;
 
+    /**
+     * the decode parameters, resolved on first use
+     */
+    private volatile DecodeParameters parameters;
+
     public FilterEntry(Filter filter, DSDictionary streamDictionary, DSDictionary decodeParms) {
       this.filter = filter;
       this.streamDictionary = streamDictionary;
@@ -110,26 +165,168 @@ public Filter getFilter() {
     public DSDictionary getStreamDictionary() {
       return streamDictionary;
     }
+
+    /**
+     * @return the decode parameters, resolved using the given resolver on first use
+     */
+    DecodeParameters getParameters(ReferenceResolver resolver) {
+      DecodeParameters p = parameters;
+      if (p == null)
+        parameters = p = new DecodeParameters(filter, decodeParms, resolver);
+      return p;
+    }
+  }
+
+  /**
+   * The decode parameters of a {@link FilterEntry} used by the filter implementations, resolved
+   * once.
+   */
+  static final class DecodeParameters {
+    final int colors;
+    final int columns;
+    final int bitsPerComponent;
+    final int earlyChange;
+    // CCITTFaxDecode
+    final int k;
+    final int rows;
+    final boolean encodedByteAlign;
+    final boolean blackIs1;
+    final boolean endOfBlock;
+    /**
+     * the name of the crypt filter to use or <code>null</code> for the default one
+     */
+    final DSNameObject cryptFilterName;
+
+    DecodeParameters(Filter filter, DSDictionary decodeParms, ReferenceResolver resolver) {
+      final int defaultColumns = filter == Filter.CCITTFAX ? CCITTFaxInputStream.DEFAULT_COLUMNS : 1;
+      if (decodeParms == null) {
+        colors = 1;
+        columns = defaultColumns;
+        bitsPerComponent = 8;
+        earlyChange = 1;
+        k = 0;
+        rows = 0;
+        encodedByteAlign = false;
+        blackIs1 = false;
+        endOfBlock = true;
+        cryptFilterName = null;
+        return;
+      }
+
+      colors = resolver.resolveInt(decodeParms, "Colors", 1);
+      columns = resolver.resolveInt(decodeParms, "Columns", defaultColumns);
+      bitsPerComponent = resolver.resolveInt(decodeParms, "BitsPerComponent", "BPC", 8);
+      earlyChange = resolver.resolveInt(decodeParms, "EarlyChange", 1);
+
+      if (filter == Filter.CCITTFAX) {
+        k = resolver.resolveInt(decodeParms, "K", 0);
+        rows = resolver.resolveInt(decodeParms, "Rows", 0);
+        encodedByteAlign = resolver.resolveBool(decodeParms, "EncodedByteAlign", false);
+        blackIs1 = resolver.resolveBool(decodeParms, "BlackIs1", false);
+        endOfBlock = resolver.resolveBool(decodeParms, "EndOfBlock", true);
+      } else {
+        k = 0;
+        rows = 0;
+        encodedByteAlign = false;
+        blackIs1 = false;
+        endOfBlock = true;
+      }
+
+      if (filter == Filter.CRYPT) {
+        final DSNameObject type = resolver.resolveName(decodeParms, "Type");
+        if (type != null && !type.matches("CryptFilterDecodeParms"))
+          LOGGER.warn("Got crypt filter decode parameters with wrong type.");
+        cryptFilterName = resolver.resolveName(decodeParms, "Name");
+      } else {
+        cryptFilterName = null;
+      }
+    }
+  }
+
+  /**
+   * The filter chain of a stream compiled from its dictionary, together with the values of the
+   * dictionary needed to decode it. Instances are immutable and cached for numbered streams, so
+   * that opening a stream again doesn't need to inspect and resolve its dictionary.
+   *
+   * @see PDFFilterFactory#getFilterPipeline(DSStream)
+   */
+  public static final class FilterPipeline {
+    private final List<FilterEntry> filterChain;
+    private final Filter[] filters;
+    private final long encodedLength;
+    private final boolean streamable;
+
+    FilterPipeline(List<FilterEntry> filterChain, long encodedLength, ReferenceResolver resolver) {
+      this.filterChain = Collections.unmodifiableList(new ArrayList<>(filterChain));
+      this.encodedLength = encodedLength;
+
+      filters = new Filter[filterChain.size()];
+      boolean allStreamable = true;
+      for (int i = 0; i < filters.length; i++) {
+        final FilterEntry e = filterChain.get(i);
+        filters[i] = e.getFilter();
+        allStreamable &= filters[i].isStreamDecompressionPossible();
+        // resolve the decode parameters upfront
+        e.getParameters(resolver);
+      }
+      streamable = allStreamable;
+    }
+
+    public List<FilterEntry> getFilterChain() {
+      return filterChain;
+    }
+
+    public Filter[] getFilters() {
+      return filters.clone();
+    }
+
+    /**
+     * @return the value of <code>/Length</code> or 0 if unknown
+     */
+    public long getEncodedLength() {
+      return encodedLength;
+    }
+
+    /**
+     * @return whether all filters can be applied by streams
+     */
+    public boolean isStreamable() {
+      return streamable;
+    }
   }
 
   private static final class ASCII85FilterStreamFactory implements FilterStreamFactory {
     public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler) {
-      return new ASCII85InputStream(stream);
+        SecurityHandler securityHandler, boolean propagateClose) {
+      return new ASCII85InputStream(stream, propagateClose);
     }
   }
 
   private static final class ASCIIHexFilterStreamFactory implements FilterStreamFactory {
     public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler) {
-      return new ASCIIHexInputStream(stream);
+        SecurityHandler securityHandler, boolean propagateClose) {
+      return new ASCIIHexInputStream(stream, propagateClose);
+    }
+  }
+
+  private static final class CCITTFaxFilterStreamFactory implements FilterStreamFactory {
+    public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
+        SecurityHandler securityHandler, boolean propagateClose) {
+      final DecodeParameters parameters = filterEntry.getParameters(resolver);
+      if (parameters.columns < 1) {
+        LOGGER.error("Invalid number of columns for CCITTFaxDecode: " + parameters.columns);
+        return stream;
+      }
+      return new CCITTFaxInputStream(stream, parameters.k, parameters.columns, parameters.rows,
+          parameters.encodedByteAlign, parameters.blackIs1, parameters.endOfBlock, propagateClose);
     }
   }
 
   private static final class CryptFilterStreamFactory implements FilterStreamFactory {
     @Override
     public SeekableInputStream create(final SeekableInputStream sis, FilterEntry filterEntry,
-        ReferenceResolver resolver, SecurityHandler securityHandler) {
+        ReferenceResolver resolver, SecurityHandler securityHandler, boolean propagateClose) {
+      // the crypt filter is always the first one, reading the document itself: never closed
 
       try {
         StreamDecryptor streamDecryptor = null;
@@ -139,12 +336,7 @@ public SeekableInputStream create(final SeekableInputStream sis, FilterEntry fil
           // Try to get the default crypt filter
           streamDecryptor = securityHandler.getStreamDecryptor();
         } else {
-          final DSNameObject type = resolver.resolveName(filterEntry.decodeParms, "Type");
-
-          if (type != null && !type.matches("CryptFilterDecodeParms"))
-            LOGGER.warn("Got crypt filter decode parameters with wrong type.");
-
-          cryptFilterName = resolver.resolveName(filterEntry.decodeParms, "Name");
+          cryptFilterName = filterEntry.getParameters(resolver).cryptFilterName;
           streamDecryptor = securityHandler.getStreamDecryptor(cryptFilterName);
         }
 
@@ -167,17 +359,16 @@ public SeekableInputStream create(final SeekableInputStream sis, FilterEntry fil
 
   private static final class FlateFilterStreamFactory implements FilterStreamFactory {
     public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler) {
-      return new ZInflaterInputStream(stream);
+        SecurityHandler securityHandler, boolean propagateClose) {
+      return new ZInflaterInputStream(stream, propagateClose);
     }
   }
 
   private static final class LZWFilterStreamFactory implements FilterStreamFactory {
     public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler) {
-      final DSDictionary decodeParms = filterEntry.getDecodeParms();
-      final int earlyChange = null != decodeParms ? resolver.resolveInt(decodeParms, "EarlyChange", 1) : 1;
-      final LZWInputStream s = new LZWInputStream(stream);
+        SecurityHandler securityHandler, boolean propagateClose) {
+      final int earlyChange = filterEntry.getParameters(resolver).earlyChange;
+      final LZWInputStream s = new LZWInputStream(stream, Long.MAX_VALUE, propagateClose);
       if (earlyChange == 0) // early change is default for the LZWInputStream
         s.setUseEarlyChange(false);
       return s;
@@ -186,41 +377,33 @@ public SeekableInputStream create(SeekableInputStream stream, FilterEntry filter
 
   private static final class PNGPredictorFilterStreamFactory implements FilterStreamFactory {
     public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler) {
-      final DSDictionary decodeParms = filterEntry.getDecodeParms();
-      final int colors = resolver.resolveInt(decodeParms, "Colors", 1);
-      final int columns = resolver.resolveInt(decodeParms, "Columns", 1);
-      final int bpc = resolver.resolveInt(decodeParms, "BitsPerComponent", "BPC", 8);
-      return new PNGPredictorInputStream(stream, colors, columns, bpc);
+        SecurityHandler securityHandler, boolean propagateClose) {
+      final DecodeParameters parameters = filterEntry.getParameters(resolver);
+      return new PNGPredictorInputStream(stream, parameters.colors, parameters.columns, parameters.bitsPerComponent,
+          propagateClose);
     }
   }
 
   private static final class RLEFilterStreamFactory implements FilterStreamFactory {
     public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler) {
-      return new PackbitsInputStream(stream, Integer.MAX_VALUE, false);
+        SecurityHandler securityHandler, boolean propagateClose) {
+      return new PackbitsInputStream(stream, Integer.MAX_VALUE, propagateClose);
     }
   }
 
   private static final class TIFFPredictorFilterStreamFactory implements FilterStreamFactory {
     public SeekableInputStream create(SeekableInputStream stream, FilterEntry filterEntry, ReferenceResolver resolver,
-        SecurityHandler securityHandler) {
-      final DSDictionary decodeParms = filterEntry.getDecodeParms();
-      final int bpc = resolver.resolveInt(decodeParms, "BitsPerComponent", "BPC", 8);
-      final int colors = resolver.resolveInt(decodeParms, "Colors", 1);
-      final int columns = resolver.resolveInt(decodeParms, "Columns", 1);
+        SecurityHandler securityHandler, boolean propagateClose) {
+      final DecodeParameters parameters = filterEntry.getParameters(resolver);
 
-      final int bytesPerLine = ((colors * columns * bpc) / 8);
-
-      final int width = resolver.resolveInt(filterEntry.getStreamDictionary(), "Width", "W", -1);
-      final int height = resolver.resolveInt(filterEntry.getStreamDictionary(), "Height", "H", -1);
-
-      if (width < 0 || height < 0) {
-        LOGGER.error(
-            "image sizes not given but needed for prediction. Predition won't be applied. Image produced may be unexpected");
+      try {
+        return new TIFFHorizontalPredictorInputStream(stream, parameters.colors, parameters.bitsPerComponent,
+            parameters.columns, propagateClose);
+      } catch (final IllegalArgumentException e) {
+        LOGGER.error("Invalid TIFF predictor parameters. Prediction won't be applied. Image produced may be unexpected",
+            e);
         return stream;
       }
-      return new TIFFPredictorInputStream(stream, 2, colors, bytesPerLine, new Dimension(width, height));
     }
   }
 
@@ -248,6 +431,141 @@ public SeekableInputStream getStream() {
     }
   }
 
+  /**
+   * The fully decoded data of a stream as delivered by {@link PDFFilterFactory#decodeAll(List,
+   * Executor)}. The data is held in an array obtained from the factory's {@link ByteArrayPool}.
+   * Closing returns it to the pool, the data must not be used afterwards.
+   */
+  public static final class DecodedStream implements Closeable {
+    private final DSStream source;
+    private final ByteArrayPool pool;
+    private final DecodeMemoryAccountant memoryAccountant;
+    private byte[] data;
+    private final int length;
+
+    DecodedStream(DSStream source, ByteArrayPool pool, DecodeMemoryAccountant memoryAccountant, byte[] data,
+        int length) {
+      this.source = source;
+      this.pool = pool;
+      this.memoryAccountant = memoryAccountant;
+      this.data = data;
+      this.length = length;
+    }
+
+    public DSStream getSource() {
+      return source;
+    }
+
+    /**
+     * @return the array holding the data. It may be larger than {@link #getLength()}.
+     */
+    public byte[] getData() {
+      if (data == null)
+        throw new IllegalStateException("Already closed");
+      return data;
+    }
+
+    public int getLength() {
+      return length;
+    }
+
+    public SeekableInputStream getInputStream() {
+      return new ByteArraySeekableInputStream(getData(), length);
+    }
+
+    @Override
+    public void close() {
+      final byte[] d = data;
+      data = null;
+      if (d != null) {
+        pool.release(d);
+        if (memoryAccountant != null)
+          memoryAccountant.release(d.length);
+      }
+    }
+  }
+
+  /**
+   * Receives the decoded data of a stream from {@link PDFFilterFactory#decode(DSStream, DecodeSink)}.
+   * The data is written directly into the buffers supplied by the sink, which may be direct
+   * buffers.
+   */
+  public interface DecodeSink {
+    /**
+     * @param expectedRemaining the number of bytes expected to follow or -1 if unknown
+     * @return the buffer to decode the following data into, between its position and its limit.
+     * <code>null</code> or a buffer without remaining space stops decoding.
+     */
+    ByteBuffer nextBuffer(long expectedRemaining) throws IOException;
+
+    /**
+     * Called when a buffer obtained from {@link #nextBuffer(long)} is full or the data has ended.
+     * The position of the buffer has been advanced by the number of bytes decoded into it.
+     */
+    void bufferFilled(ByteBuffer buffer) throws IOException;
+  }
+
+  /**
+   * A {@link DecodeSink} collecting the data in buffers wrapping arrays of a {@link ByteArrayPool}.
+   * Closing returns the arrays to the pool, the buffers must not be used afterwards.
+   */
+  public static final class PooledBufferSink implements DecodeSink, Closeable {
+    /**
+     * the size of the buffers used if the length of the data is unknown
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final ByteArrayPool pool;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private long length;
+
+    public PooledBufferSink(ByteArrayPool pool) {
+      this.pool = pool;
+    }
+
+    @Override
+    public ByteBuffer nextBuffer(long expectedRemaining) {
+      final int size = expectedRemaining > 0
+          ? (int) Math.min(expectedRemaining, MAX_INITIAL_DECODE_BUFFER_SIZE)
+          : DEFAULT_BUFFER_SIZE;
+      return ByteBuffer.wrap(pool.acquire(size));
+    }
+
+    @Override
+    public void bufferFilled(ByteBuffer buffer) {
+      if (buffer.position() == 0) {
+        pool.release(buffer.array());
+        return;
+      }
+      ((Buffer) buffer).flip();
+      buffers.add(buffer);
+      length += buffer.remaining();
+    }
+
+    /**
+     * @return the buffers holding the data in order, each ready to be read from its position to its
+     * limit
+     */
+    public List<ByteBuffer> getBuffers() {
+      return Collections.unmodifiableList(buffers);
+    }
+
+    /**
+     * @return the total length of the data
+     */
+    public long getLength() {
+      return length;
+    }
+
+    @Override
+    public void close() {
+      for (final ByteBuffer buffer : buffers)
+        pool.release(buffer.array());
+      buffers.clear();
+      length = 0;
+    }
+  }
+
   static {
     final Map<String, Filter> tmp = new HashMap<>(20);
 
@@ -280,9 +598,95 @@ public static final boolean isRunLengthDecode(DSNameObject name) {
     return FILTER_MAPPING.get(name.getName()) == Filter.RUNLENGTH;
   }
 
+  /**
+   * Identifies a flate filter within the filter chain of a numbered stream.
+   */
+  private static final class FlateStageKey {
+    private final long objectNumber;
+    private final int generationNumber;
+    private final int stage;
+
+    FlateStageKey(long objectNumber, int generationNumber, int stage) {
+      this.objectNumber = objectNumber;
+      this.generationNumber = generationNumber;
+      this.stage = stage;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof FlateStageKey))
+        return false;
+      final FlateStageKey other = (FlateStageKey) obj;
+      return objectNumber == other.objectNumber && generationNumber == other.generationNumber && stage == other.stage;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (objectNumber ^ objectNumber >>> 32) * 31 + generationNumber * 7 + stage;
+    }
+  }
+
+  /**
+   * Identifies a numbered stream.
+   */
+  private static final class StreamKey {
+    private final long objectNumber;
+    private final int generationNumber;
+
+    StreamKey(long objectNumber, int generationNumber) {
+      this.objectNumber = objectNumber;
+      this.generationNumber = generationNumber;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof StreamKey))
+        return false;
+      final StreamKey other = (StreamKey) obj;
+      return objectNumber == other.objectNumber && generationNumber == other.generationNumber;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (objectNumber ^ objectNumber >>> 32) * 31 + generationNumber;
+    }
+  }
+
   private final ReferenceResolver resolver;
   private SecurityHandler securityHandler;
 
+  /**
+   * the checkpoint interval for flate streams or <code>0</code> if no checkpoint indices are used
+   */
+  private int flateCheckpointInterval;
+  private final Map<FlateStageKey, InflateCheckpointIndex> flateCheckpointIndices = new ConcurrentHashMap<>();
+
+  private DecodedStreamCache decodedStreamCache;
+
+  private ByteArrayPool bufferPool = new ByteArrayPool();
+
+  /**
+   * the executor running the stages of pipelined filter chains or <code>null</code> if pipelining
+   * is disabled
+   */
+  private Executor pipelineExecutor;
+  private long pipelineThreshold = DEFAULT_PIPELINE_THRESHOLD;
+
+  private DecodeBudget decodeBudget;
+
+  /**
+   * the compiled filter pipelines of numbered streams, in access order. Guarded by itself.
+   */
+  private final LinkedHashMap<StreamKey, FilterPipeline> filterPipelines = new LinkedHashMap<StreamKey, FilterPipeline>(
+      64, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<StreamKey, FilterPipeline> eldest) {
+      return size() > MAX_FILTER_PIPELINES;
+    }
+  };
+
   public PDFFilterFactory(ReferenceResolver resolver) {
     this(resolver, new NoSecurityHandler());
   }
@@ -292,6 +696,179 @@ public PDFFilterFactory(ReferenceResolver resolver, SecurityHandler securityHand
     this.securityHandler = securityHandler;
   }
 
+  /**
+   * Enable random access support for large flate compressed streams. Streams whose decoded length
+   * is expected to be at least the given interval get an {@link InflateCheckpointIndex} which is
+   * shared by all streams subsequently created for the same object. Backward seeks on such streams
+   * no longer need to decode from the start of the stream. The decoded length is taken from
+   * <code>/DL</code> if present, otherwise it is estimated as {@link #EXPECTED_FLATE_RATIO} times
+   * the encoded length.
+   * <p>
+   * Checkpointing takes priority over the fused flate and PNG predictor decoder: a checkpointed
+   * flate stage is followed by a separate predictor stage.
+   *
+   * @param interval the checkpoint interval in bytes of uncompressed data or <code>0</code> to
+   *                 disable checkpointing
+   */
+  public void setFlateCheckpointInterval(int interval) {
+    if (interval < 0)
+      throw new IllegalArgumentException("The checkpoint interval must not be negative");
+    flateCheckpointInterval = interval;
+    flateCheckpointIndices.clear();
+  }
+
+  public int getFlateCheckpointInterval() {
+    return flateCheckpointInterval;
+  }
+
+  /**
+   * Set the cache used by {@link #getInputStreamFromPDFStream(DSStream)} to retain the decoded data
+   * of small, numbered streams. The cache must not be shared with other documents.
+   *
+   * @param cache the cache or <code>null</code> to disable caching
+   */
+  public void setDecodedStreamCache(DecodedStreamCache cache) {
+    decodedStreamCache = cache;
+  }
+
+  public DecodedStreamCache getDecodedStreamCache() {
+    return decodedStreamCache;
+  }
+
+  /**
+   * Set the pool providing the arrays for {@link #decode(DSStream)} and
+   * {@link #decodeAll(List, Executor)}. The pool may be shared between factories.
+   */
+  public void setBufferPool(ByteArrayPool pool) {
+    if (pool == null)
+      throw new IllegalArgumentException("The buffer pool must not be null");
+    bufferPool = pool;
+  }
+
+  public ByteArrayPool getBufferPool() {
+    return bufferPool;
+  }
+
+  /**
+   * Enable pipelined decoding of large streams with several filters. Every filter stage but the
+   * last one runs on a thread of the given executor, connected to the next stage by a
+   * {@link PipelinedSeekableInputStream}. The last stage runs on the consumer's thread.
+   * <p>
+   * As every stage occupies a thread for as long as the stream is read, the executor should not
+   * limit the number of threads, e.g. a cached thread pool.
+   *
+   * @param executor  the executor or <code>null</code> to disable pipelining
+   * @param threshold the minimum encoded length of a stream to be decoded pipelined
+   */
+  public void setPipelinedDecoding(Executor executor, long threshold) {
+    if (threshold < 0)
+      throw new IllegalArgumentException("The threshold must not be negative");
+    pipelineExecutor = executor;
+    pipelineThreshold = threshold;
+  }
+
+  public Executor getPipelineExecutor() {
+    return pipelineExecutor;
+  }
+
+  public long getPipelineThreshold() {
+    return pipelineThreshold;
+  }
+
+  /**
+   * Set the budget limiting the resources spent on decoding streams. The budget accounts for a
+   * single document and must not be shared with other documents, use
+   * {@link DecodeBudget#DecodeBudget(DecodeBudget)} to derive one from a template.
+   *
+   * @param budget the budget or <code>null</code> for unlimited decoding
+   */
+  public void setDecodeBudget(DecodeBudget budget) {
+    decodeBudget = budget;
+  }
+
+  public DecodeBudget getDecodeBudget() {
+    return decodeBudget;
+  }
+
+  /**
+   * Bind the decoder created for the given filter entry to the {@link #getDecodeBudget() budget},
+   * if any.
+   */
+  private void applyDecodeBudget(SeekableInputStream decoder, FilterEntry filterEntry) {
+    final DecodeBudget budget = decodeBudget;
+    if (budget == null || !(decoder instanceof DecodeBudget.Metered))
+      return;
+
+    final DSDictionary dict = filterEntry.getStreamDictionary();
+    final String name = dict != null && dict.objectNumber() >= 0
+        ? filterEntry.getFilter() + " decoder of object " + dict.objectNumber() + " " + dict.generationNumber()
+        : filterEntry.getFilter() + " decoder";
+    ((DecodeBudget.Metered) decoder).setDecodeMeter(budget.newMeter(name));
+  }
+
+  /**
+   * @return whether the stages of the given filter chain shall be decoupled by
+   * {@link PipelinedSeekableInputStream}s
+   */
+  private boolean isPipelined(FilterPipeline pipeline) {
+    return pipelineExecutor != null && pipeline.getFilterChain().size() >= 2
+        && pipeline.getEncodedLength() >= pipelineThreshold;
+  }
+
+  /**
+   * @return the checkpoint index to be used for the flate filter at the given position of the
+   * filter chain or <code>null</code> if none shall be used
+   */
+  private InflateCheckpointIndex getFlateCheckpointIndex(FilterPipeline pipeline, FilterEntry filterEntry,
+      int stage) {
+    final int interval = flateCheckpointInterval;
+    final DSDictionary dict = filterEntry.getStreamDictionary();
+    if (interval <= 0 || dict == null || dict.objectNumber() < 0)
+      return null;
+
+    final long decodedLength = resolver.resolveLong(dict.getNamedEntryValue("DL"), -1);
+    final long expected = decodedLength >= 0 ? decodedLength : pipeline.getEncodedLength() * EXPECTED_FLATE_RATIO;
+    if (expected < interval)
+      return null;
+
+    return flateCheckpointIndices.computeIfAbsent(
+        new FlateStageKey(dict.objectNumber(), dict.generationNumber(), stage),
+        k -> new InflateCheckpointIndex(interval));
+  }
+
+  /**
+   * Get the compiled filter pipeline of the given stream. Pipelines of numbered streams are cached,
+   * so that the stream dictionary is inspected only once. The {@link #MAX_FILTER_PIPELINES} most
+   * recently used pipelines are retained.
+   */
+  public FilterPipeline getFilterPipeline(DSStream stream) {
+    final DSDictionary dict = stream.getDictionary();
+    if (dict == null || dict.objectNumber() < 0)
+      return compileFilterPipeline(dict);
+
+    final StreamKey key = new StreamKey(dict.objectNumber(), dict.generationNumber());
+    synchronized (filterPipelines) {
+      final FilterPipeline pipeline = filterPipelines.get(key);
+      if (pipeline != null)
+        return pipeline;
+    }
+
+    // compile outside of the lock, as this may resolve objects
+    final FilterPipeline pipeline = compileFilterPipeline(dict);
+    synchronized (filterPipelines) {
+      final FilterPipeline existing = filterPipelines.putIfAbsent(key, pipeline);
+      return existing != null ? existing : pipeline;
+    }
+  }
+
+  private FilterPipeline compileFilterPipeline(DSDictionary streamDictionary) {
+    return new FilterPipeline(buildFilterChain(streamDictionary), getEncodedLength(streamDictionary), resolver);
+  }
+
+  private long getEncodedLength(DSDictionary streamDictionary) {
+    return streamDictionary != null ? resolver.resolveLong(streamDictionary.getNamedEntryValue("Length"), 0) : 0;
+  }
+
   public List<FilterEntry> buildFilterChain(DSDictionary streamDictionary) {
     DSObject filter = null;
     DSObject params = null;
@@ -461,6 +1038,19 @@ protected FilterEntry buildPredictionEntry(Filter filter, DSDictionary streamDic
    */
   public SeekableInputStream generateFilterStream(SeekableInputStream stream, FilterEntry filterEntry)
       throws RuntimeException {
+    return generateFilterStream(stream, filterEntry, false);
+  }
+
+  /**
+   * Create the stream applying the given filter.
+   *
+   * @param stream         the stream to be filtered
+   * @param filterEntry    the filter
+   * @param propagateClose whether closing the created stream shall close the given one as well
+   * @return the stream
+   */
+  public SeekableInputStream generateFilterStream(SeekableInputStream stream, FilterEntry filterEntry,
+      boolean propagateClose) throws RuntimeException {
 
     final Filter filter = filterEntry.getFilter();
     if (LOGGER.isDebugEnabled()) {
@@ -472,7 +1062,7 @@ public SeekableInputStream generateFilterStream(SeekableInputStream stream, Filt
       throw new RuntimeException("Filter type " + filter + " is only supported for image decompression");
     }
     // generate the filter
-    return filter.getFilterStreamFactory().create(stream, filterEntry, resolver, securityHandler);
+    return filter.getFilterStreamFactory().create(stream, filterEntry, resolver, securityHandler, propagateClose);
   }
 
   public final FilteringResult buildFilterStreamChain(DSStream stream, boolean acceptNonStreamable) {
@@ -485,18 +1075,59 @@ public final FilteringResult buildFilterStreamChain(DSStream stream, boolean acc
         LOGGER.error("unable to reset resource Stream.", e1);
       }
     }
-    return buildFilterStreamChain(sis, buildFilterChain(stream.getDictionary()), acceptNonStreamable);
+    return buildFilterStreamChain(sis, getFilterPipeline(stream), acceptNonStreamable);
   }
 
   public FilteringResult buildFilterStreamChain(SeekableInputStream sis, List<FilterEntry> filterChain,
       boolean acceptNonStreamable) {
+    final DSDictionary dict = filterChain.isEmpty() ? null : filterChain.get(0).getStreamDictionary();
+    return buildFilterStreamChain(sis, new FilterPipeline(filterChain, getEncodedLength(dict), resolver),
+        acceptNonStreamable);
+  }
+
+  public FilteringResult buildFilterStreamChain(SeekableInputStream sis, FilterPipeline pipeline,
+      boolean acceptNonStreamable) {
 
+    final List<FilterEntry> filterChain = pipeline.getFilterChain();
     final List<FilterEntry> processed = new ArrayList<>(2);
+    final Executor executor = isPipelined(pipeline) ? pipelineExecutor : null;
+    final SeekableInputStream source = sis;
+    boolean decoding = false;
 
-    for (final FilterEntry e : filterChain) {
+    for (int i = 0; i < filterChain.size(); i++) {
+      FilterEntry e = filterChain.get(i);
       if (e.getFilter().isStreamDecompressionPossible()) {
-        sis = generateFilterStream(sis, e);
+        // run the preceding decoding stage on its own thread
+        if (executor != null && decoding)
+          sis = new PipelinedSeekableInputStream(sis, executor, PipelinedSeekableInputStream.DEFAULT_CHUNK_SIZE,
+              PipelinedSeekableInputStream.DEFAULT_CHUNK_COUNT, true);
+        final SeekableInputStream stageInput = sis;
+        // closing the resulting stream closes every stage built here, stopping their threads, but
+        // never the source
+        final boolean propagateClose = stageInput != source;
+
+        // checkpoints take priority over the fused flate and PNG predictor decoder
+        final InflateCheckpointIndex checkpoints = e.getFilter() == Filter.FLATE
+            ? getFlateCheckpointIndex(pipeline, e, processed.size())
+            : null;
+        if (checkpoints != null) {
+          sis = new ZInflaterInputStream(sis, propagateClose, 1024, checkpoints);
+        } else if (e.getFilter() == Filter.FLATE && i + 1 < filterChain.size()
+            && filterChain.get(i + 1).getFilter() == Filter.PREDICTOR_PNG) {
+          // flate followed by PNG prediction: use the fused implementation
+          processed.add(e);
+          e = filterChain.get(++i);
+          final DecodeParameters parameters = e.getParameters(resolver);
+          sis = new FlatePNGPredictorInputStream(sis, parameters.colors, parameters.columns,
+              parameters.bitsPerComponent, propagateClose);
+        } else {
+          sis = generateFilterStream(sis, e, propagateClose);
+        }
         processed.add(e);
+        if (sis != stageInput) {
+          applyDecodeBudget(sis, e);
+          decoding = true;
+        }
       } else {
         if (!acceptNonStreamable) {
           // FIXME a PDFProcessingRuntimeException would be better
@@ -527,7 +1158,61 @@ public FilteringResult buildFilterStreamChain(SeekableInputStream sis, List<Filt
   }
 
   public final SeekableInputStream getInputStreamFromPDFStream(DSStream stream) {
-    return buildFilterStreamChain(stream, false).getStream();
+    final DecodedStreamCache cache = decodedStreamCache;
+    final DSDictionary dict = stream.getDictionary();
+    if (cache == null || dict == null || dict.objectNumber() < 0)
+      return buildFilterStreamChain(stream, false).getStream();
+
+    final FilterPipeline pipeline = getFilterPipeline(stream);
+    if (pipeline.getEncodedLength() > cache.getMaxEntrySize())
+      return buildFilterStreamChain(stream, false).getStream();
+
+    // the pipeline's array is never modified
+    final Filter[] filters = pipeline.filters;
+
+    final SeekableInputStream cached = cache.get(dict.objectNumber(), dict.generationNumber(), filters);
+    if (cached != null)
+      return cached;
+
+    final SeekableInputStream sis = stream.getSourceStream();
+    try {
+      sis.seek(0);
+    } catch (final IOException e1) {
+      if (LOGGER.isErrorEnabled()) {
+        // FIXME wouldn't an exception be better?
+        LOGGER.error("unable to reset resource Stream.", e1);
+      }
+    }
+    final SeekableInputStream decoded = buildFilterStreamChain(sis, pipeline, false).getStream();
+
+    // decode at most one byte more than fits into the cache in order to detect oversized streams
+    try {
+      // as a long, as the maximum entry size may be Integer.MAX_VALUE
+      final long limit = Math.min(cache.getMaxEntrySize() + 1L, MAX_ARRAY_LENGTH);
+      byte[] buffer = new byte[(int) Math.min(limit, 8192)];
+      int length = 0;
+      int read;
+      while ((read = decoded.read(buffer, length, buffer.length - length)) > 0) {
+        length += read;
+        if (length == buffer.length) {
+          if (length == limit)
+            break;
+          buffer = Arrays.copyOf(buffer, (int) Math.min(limit, 2L * length));
+        }
+      }
+
+      if (length < limit) {
+        final byte[] data = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        cache.put(dict.objectNumber(), dict.generationNumber(), filters, data, length);
+        return new ByteArraySeekableInputStream(data);
+      }
+
+      decoded.seek(0);
+    } catch (final IOException e) {
+      LOGGER.warn("Unable to cache decoded stream " + dict.objectNumber() + " " + dict.generationNumber(), e);
+      return buildFilterStreamChain(stream, false).getStream();
+    }
+    return decoded;
   }
 
   public final SeekableInputStream getInputStreamFromPDFStreams(DSStream[] streams) {
@@ -547,4 +1232,259 @@ public final SeekableInputStream getInputStreamFromPDFStreams(DSStream[] streams
 
     return getInputStreamFromPDFStream(streams[0]);
   }
+
+  /**
+   * Decode the given streams concurrently using the given executor. Every stream is read through its
+   * own view of the source, so that the streams can be decoded independently, e.g. all content
+   * streams of a range of pages or all images of a document.
+   *
+   * @param streams  the streams to decode
+   * @param executor the executor running the decoding tasks
+   * @return a future for every stream, in the order of the given list. A failure to decode a stream
+   * is reported as an {@link UncheckedIOException}.
+   */
+  public List<CompletableFuture<DecodedStream>> decodeAll(List<DSStream> streams, Executor executor) {
+    final List<CompletableFuture<DecodedStream>> result = new ArrayList<>(streams.size());
+    for (final DSStream stream : streams) {
+      result.add(CompletableFuture.supplyAsync(() -> {
+        try {
+          return decode(stream);
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, executor));
+    }
+    return result;
+  }
+
+  /**
+   * Fully decode the given stream into an array obtained from the {@link #getBufferPool() buffer
+   * pool}. The caller is responsible for closing the result.
+   */
+  public DecodedStream decode(DSStream stream) throws IOException {
+    final ByteArrayPool pool = bufferPool;
+
+    // start with the decoded length, if known
+    long expected = getDecodedLength(stream);
+    if (expected < 0 || expected > Integer.MAX_VALUE - 1)
+      expected = 2 * getFilterPipeline(stream).getEncodedLength();
+
+    final DecodeBudget budget = decodeBudget;
+    final DecodeMemoryAccountant accountant = budget != null ? budget.getMemoryAccountant() : null;
+
+    final SeekableInputStream sis = getInputStreamFromPDFStream(stream);
+    byte[] buffer = null;
+    int length = 0;
+    try {
+      buffer = acquire(pool, accountant, (int) Math.min(expected + 1, MAX_INITIAL_DECODE_BUFFER_SIZE));
+      int read;
+      while ((read = sis.read(buffer, length, buffer.length - length)) > 0) {
+        length += read;
+        if (length == buffer.length) {
+          if (length == Integer.MAX_VALUE)
+            throw new IOException("Stream too large to be decoded into an array");
+          final byte[] larger = acquire(pool, accountant, (int) Math.min(Integer.MAX_VALUE, 2L * length));
+          System.arraycopy(buffer, 0, larger, 0, length);
+          release(pool, accountant, buffer);
+          buffer = larger;
+        }
+      }
+    } catch (final IOException | RuntimeException e) {
+      release(pool, accountant, buffer);
+      throw e;
+    } finally {
+      sis.close();
+    }
+
+    return new DecodedStream(stream, pool, accountant, buffer, length);
+  }
+
+  private static byte[] acquire(ByteArrayPool pool, DecodeMemoryAccountant accountant, int minLength)
+      throws IOException {
+    final byte[] array = pool.acquire(minLength);
+    if (accountant != null) {
+      try {
+        accountant.reserve(array.length);
+      } catch (final IOException e) {
+        pool.release(array);
+        throw e;
+      }
+    }
+    return array;
+  }
+
+  private static void release(ByteArrayPool pool, DecodeMemoryAccountant accountant, byte[] array) {
+    if (array == null)
+      return;
+    pool.release(array);
+    if (accountant != null)
+      accountant.release(array.length);
+  }
+
+  /**
+   * Decode the given stream into the given buffer, starting at its position. Decoding stops when
+   * the buffer is full, any data beyond is ignored. Use {@link #getDecodedLength(DSStream)} to size
+   * the buffer upfront.
+   * <p>
+   * Buffers backed by an array are decoded into without an intermediate copy. Other buffers, e.g.
+   * direct ones, are filled in bulk from a pooled transfer array.
+   *
+   * @return the number of bytes decoded into the buffer
+   */
+  public int decodeInto(DSStream stream, final ByteBuffer target) throws IOException {
+    final int start = target.position();
+    decode(stream, new DecodeSink() {
+      private boolean supplied;
+
+      @Override
+      public ByteBuffer nextBuffer(long expectedRemaining) {
+        if (supplied)
+          return null;
+        supplied = true;
+        return target;
+      }
+
+      @Override
+      public void bufferFilled(ByteBuffer buffer) {
+        // nothing to do
+      }
+    });
+    return target.position() - start;
+  }
+
+  /**
+   * Decode the given stream into the buffers supplied by the given sink.
+   *
+   * @return the total number of bytes decoded
+   * @see #decodeInto(DSStream, ByteBuffer)
+   * @see PooledBufferSink
+   */
+  public long decode(DSStream stream, DecodeSink sink) throws IOException {
+    final long expected = getDecodedLength(stream);
+    final SeekableInputStream sis = getInputStreamFromPDFStream(stream);
+    byte[] transfer = null;
+    long total = 0;
+    try {
+      boolean eof = false;
+      while (!eof) {
+        final ByteBuffer buffer = sink.nextBuffer(expected >= 0 ? Math.max(0, expected - total) : -1);
+        if (buffer == null || !buffer.hasRemaining())
+          break;
+
+        while (buffer.hasRemaining()) {
+          final int read;
+          if (buffer.hasArray()) {
+            read = sis.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read > 0)
+              ((Buffer) buffer).position(buffer.position() + read);
+          } else {
+            if (transfer == null)
+              transfer = bufferPool.acquire(TRANSFER_BUFFER_SIZE);
+            read = sis.read(transfer, 0, Math.min(transfer.length, buffer.remaining()));
+            if (read > 0)
+              buffer.put(transfer, 0, read);
+          }
+          if (read <= 0) {
+            eof = true;
+            break;
+          }
+          total += read;
+        }
+        sink.bufferFilled(buffer);
+      }
+    } finally {
+      sis.close();
+      bufferPool.release(transfer);
+    }
+    return total;
+  }
+
+  /**
+   * Determine the length of the decoded data of the given stream without decoding it. The length is
+   * taken from <code>/DL</code> or, for images decoded by streaming filters only, computed from the
+   * image geometry.
+   *
+   * @return the length in bytes or -1 if unknown
+   */
+  public long getDecodedLength(DSStream stream) {
+    final DSDictionary dict = stream.getDictionary();
+    if (dict == null)
+      return -1;
+
+    final long dl = resolver.resolveLong(dict.getNamedEntryValue("DL"), -1);
+    if (dl >= 0)
+      return dl;
+
+    final DSNameObject subtype = resolver.resolveName(dict, "Subtype");
+    if (subtype != null && !subtype.matches("Image"))
+      return -1;
+
+    // inline images use abbreviated keys
+    final int width = resolver.resolveInt(dict, "Width", "W", -1);
+    final int height = resolver.resolveInt(dict, "Height", "H", -1);
+    if (width <= 0 || height <= 0)
+      return -1;
+
+    final boolean mask = resolver.resolveBool(resolver.resolveObject(dict, "ImageMask", "IM"), false);
+    final int bpc = mask ? 1 : resolver.resolveInt(dict, "BitsPerComponent", "BPC", -1);
+    final int components = mask ? 1 : getComponentCount(resolver.resolveObject(dict, "ColorSpace", "CS"));
+    if (bpc <= 0 || components <= 0)
+      return -1;
+
+    // the geometry describes the output of the last filter only if all filters are streamable
+    if (!getFilterPipeline(stream).isStreamable())
+      return -1;
+
+    return ((long) width * components * bpc + 7) / 8 * height;
+  }
+
+  /**
+   * @return the number of components of the given color space or -1 if unknown, e.g. for a named
+   * color space resource
+   */
+  private int getComponentCount(DSObject colorSpace) {
+    if (colorSpace instanceof DSArray && !((DSArray) colorSpace).isEmpty()) {
+      final DSArray array = (DSArray) colorSpace;
+      final DSObject family = resolver.resolve(array.get(0));
+      if (!(family instanceof DSNameObject))
+        return -1;
+
+      final String name = ((DSNameObject) family).getName();
+      if (array.size() > 1) {
+        if ("ICCBased".equals(name)) {
+          final DSStream profile = resolver.resolveStream(array.get(1));
+          return profile != null ? resolver.resolveInt(profile.getDictionary(), "N", -1) : -1;
+        }
+        if ("DeviceN".equals(name)) {
+          final DSArray names = resolver.resolveArray(array.get(1));
+          return names != null ? names.size() : -1;
+        }
+      }
+      return getComponentCount(name);
+    }
+
+    return colorSpace instanceof DSNameObject ? getComponentCount(((DSNameObject) colorSpace).getName()) : -1;
+  }
+
+  private static int getComponentCount(String colorSpaceFamily) {
+    switch (colorSpaceFamily){
+      case "DeviceGray":
+      case "G":
+      case "CalGray":
+      case "Indexed":
+      case "I":
+      case "Separation":
+        return 1;
+      case "DeviceRGB":
+      case "RGB":
+      case "CalRGB":
+      case "Lab":
+        return 3;
+      case "DeviceCMYK":
+      case "CMYK":
+        return 4;
+      default:
+        return -1;
+    }
+  }
 }
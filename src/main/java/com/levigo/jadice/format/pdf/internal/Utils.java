@@ -12,6 +12,7 @@
 import com.levigo.jadice.format.pdf.internal.objects.DSHexString;
 import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
 import com.levigo.jadice.format.pdf.internal.objects.DSNumber;
+import com.levigo.jadice.format.pdf.internal.objects.DSNumericArray;
 import com.levigo.jadice.format.pdf.internal.objects.DSObject;
 import com.levigo.jadice.format.pdf.internal.objects.DSRectangle;
 import com.levigo.jadice.format.pdf.internal.objects.DSStream;
@@ -91,8 +92,16 @@ public static final AffineTransform affineTransformFromArray(DSArray array) {
       return null;
     }
 
-    int arrayPos = 0;
     final double[] values = new double[6];
+    if (array instanceof DSNumericArray && ((DSNumericArray) array).isPacked()) {
+      // fast path: read the packed values directly, missing values are 0
+      final DSNumericArray numbers = (DSNumericArray) array;
+      for (int i = 0; i < Math.min(values.length, numbers.size()); i++)
+        values[i] = numbers.getDouble(i);
+      return new AffineTransform(values);
+    }
+
+    int arrayPos = 0;
     for (final DSObject obj : array) {
       if (obj.isNumber()) {
         values[arrayPos++] = ((DSNumber) obj).getDouble();
@@ -0,0 +1,229 @@
+package com.levigo.jadice.format.pdf.internal.crypt;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+/**
+ * Decrypts AES-CBC encrypted data as used by PDF: a 16 byte initialization vector followed by the
+ * cipher text, padded according to PKCS#5. The data is decrypted in blocks of
+ * {@value #CHUNK_SIZE} bytes.
+ * <p>
+ * In CBC mode, a cipher block depends on the preceding cipher block only. Decryption can therefore
+ * be started at any block by using the preceding cipher block (or the initialization vector) as
+ * initialization vector. Seeking outside of the current block of data does just that, so that
+ * seeking is cheap in both directions, and disjoint ranges of the data may be decrypted
+ * concurrently by independent instances reading the same source.
+ */
+public final class AESInputStream extends SeekableInputStream {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AESInputStream.class);
+
+  static final int BLOCK_SIZE = 16;
+  static final int CHUNK_SIZE = 16 * 1024;
+
+  private SeekableInputStream source;
+  private final SecretKeySpec key;
+  private final Cipher cipher;
+
+  /**
+   * cipher text read but not decrypted yet. The last complete block is held back until the end of
+   * the data is known, as it may contain the padding.
+   */
+  private final byte[] input = new byte[CHUNK_SIZE + BLOCK_SIZE];
+  private int inputLength;
+  /**
+   * the position in the source of the next cipher text to read
+   */
+  private long sourcePosition;
+  private boolean finished;
+
+  /**
+   * the decrypted data starting at {@link #bufferStart}
+   */
+  private final byte[] buffer = new byte[CHUNK_SIZE + BLOCK_SIZE];
+  private int bufferLength;
+  private long bufferStart;
+  /**
+   * whether the cipher has been initialized for the block following the buffer
+   */
+  private boolean started;
+
+  private long position;
+
+  private final byte[] singleByte = new byte[1];
+
+  public AESInputStream(SeekableInputStream source, byte[] key) throws GeneralSecurityException {
+    this.source = source;
+    this.key = new SecretKeySpec(key, "AES");
+    cipher = Cipher.getInstance("AES/CBC/NoPadding");
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
+    }
+
+    int n = 0;
+    while (n < len) {
+      if (position < bufferStart || position >= bufferStart + bufferLength) {
+        if (!started || position < bufferStart || position >= bufferStart + bufferLength + CHUNK_SIZE)
+          restart(position / BLOCK_SIZE);
+        do
+          if (!fill())
+            return n > 0 ? n : -1;
+        while (position >= bufferStart + bufferLength);
+      }
+      final int start = (int) (position - bufferStart);
+      final int count = Math.min(len - n, bufferLength - start);
+      System.arraycopy(buffer, start, b, off + n, count);
+      position += count;
+      n += count;
+    }
+    return n;
+  }
+
+  /**
+   * Restart decryption at the given block, using the preceding cipher block as initialization
+   * vector. The cipher text of block <code>n</code> is found at <code>16 * (n + 1)</code>.
+   */
+  private void restart(long block) throws IOException {
+    final byte[] iv = new byte[BLOCK_SIZE];
+    int read = 0;
+    synchronized (source) {
+      source.seek(block * BLOCK_SIZE);
+      while (read < iv.length) {
+        final int r = source.read(iv, read, iv.length - read);
+        if (r <= 0)
+          break;
+        read += r;
+      }
+    }
+
+    bufferStart = block * BLOCK_SIZE;
+    bufferLength = 0;
+    inputLength = 0;
+    sourcePosition = (block + 1) * BLOCK_SIZE;
+    started = true;
+    finished = read < iv.length;
+    if (finished)
+      return;
+
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+    } catch (final GeneralSecurityException e) {
+      throw new IOException("AES decryption failed", e);
+    }
+  }
+
+  /**
+   * Decrypt the next chunk of data into the buffer.
+   *
+   * @return <code>false</code> at the end of the data
+   */
+  private boolean fill() throws IOException {
+    bufferStart += bufferLength;
+    bufferLength = 0;
+
+    while (bufferLength == 0 && !finished) {
+      final int read;
+      synchronized (source) {
+        if (source.getStreamPosition() != sourcePosition)
+          source.seek(sourcePosition);
+        read = source.read(input, inputLength, input.length - inputLength);
+      }
+      final boolean end = read <= 0;
+      if (!end) {
+        sourcePosition += read;
+        inputLength += read;
+      }
+
+      final int complete = inputLength / BLOCK_SIZE * BLOCK_SIZE;
+      // hold back the last block unless it is known not to be the final one
+      final int decryptable = end || complete < inputLength ? complete
+          : inputLength == input.length ? complete - BLOCK_SIZE : 0;
+      if (decryptable > 0) {
+        try {
+          bufferLength = cipher.update(input, 0, decryptable, buffer, 0);
+        } catch (final GeneralSecurityException e) {
+          throw new IOException("AES decryption failed", e);
+        }
+        inputLength -= decryptable;
+        System.arraycopy(input, decryptable, input, 0, inputLength);
+      }
+
+      if (end) {
+        if (inputLength > 0)
+          LOGGER.warn("AES encrypted data is not a multiple of the block size, ignoring " + inputLength + " bytes");
+        bufferLength = removePadding(buffer, bufferLength);
+        finished = true;
+      }
+    }
+    return bufferLength > 0;
+  }
+
+  /**
+   * @return the length of the data without the PKCS#5 padding, or the given length, if the padding
+   *         is invalid
+   */
+  static int removePadding(byte[] data, int length) {
+    if (length == 0)
+      return 0;
+    final int padding = data[length - 1] & 0xff;
+    if (padding < 1 || padding > BLOCK_SIZE || padding > length)
+      return length;
+    for (int i = length - padding; i < length - 1; i++)
+      if ((data[i] & 0xff) != padding)
+        return length;
+    return length - padding;
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    checkClosed();
+    if (pos < getFlushedPosition() || pos < 0)
+      throw new IndexOutOfBoundsException(
+          "Position to seek to (" + pos + ") is smaller than the flushed position or negative.");
+    bitOffset = 0;
+    position = pos;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return -1L;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    source = null;
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return source != null ? source.getSizeEstimate() : 1024;
+  }
+}
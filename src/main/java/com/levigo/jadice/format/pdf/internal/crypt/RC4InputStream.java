@@ -0,0 +1,144 @@
+package com.levigo.jadice.format.pdf.internal.crypt;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+/**
+ * Decrypts RC4 encrypted data in blocks of {@value #CHUNK_SIZE} bytes. Being a stream cipher, RC4
+ * can't be restarted in the middle of the data: seeking backwards before the current block
+ * restarts decryption at the beginning. Seeking forward merely advances the key stream, without
+ * reading the data skipped.
+ */
+public final class RC4InputStream extends SeekableInputStream {
+  static final int CHUNK_SIZE = 16 * 1024;
+
+  private SeekableInputStream source;
+  private final SecretKeySpec key;
+  private final Cipher cipher;
+
+  /**
+   * the decrypted data starting at {@link #bufferStart}
+   */
+  private final byte[] buffer = new byte[CHUNK_SIZE];
+  private int bufferLength;
+  private long bufferStart;
+
+  /**
+   * the position of the key stream, i.e. the position of the next byte to decrypt
+   */
+  private long cipherPosition;
+  private long position;
+
+  private final byte[] singleByte = new byte[1];
+
+  public RC4InputStream(SeekableInputStream source, byte[] key) throws GeneralSecurityException {
+    this.source = source;
+    this.key = new SecretKeySpec(key, "ARCFOUR");
+    cipher = Cipher.getInstance("ARCFOUR");
+    cipher.init(Cipher.DECRYPT_MODE, this.key);
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
+    }
+
+    int n = 0;
+    while (n < len) {
+      if (position < bufferStart || position >= bufferStart + bufferLength) {
+        if (!fill())
+          break;
+      }
+      final int start = (int) (position - bufferStart);
+      final int count = Math.min(len - n, bufferLength - start);
+      System.arraycopy(buffer, start, b, off + n, count);
+      position += count;
+      n += count;
+    }
+    return n > 0 ? n : -1;
+  }
+
+  /**
+   * Decrypt the block containing the current position.
+   *
+   * @return <code>false</code> at the end of the data
+   */
+  private boolean fill() throws IOException {
+    try {
+      if (position < cipherPosition) {
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        cipherPosition = 0;
+      }
+      // advance the key stream up to the current position
+      while (cipherPosition < position) {
+        final int skip = (int) Math.min(buffer.length, position - cipherPosition);
+        cipher.update(buffer, 0, skip, buffer, 0);
+        cipherPosition += skip;
+      }
+
+      final int read;
+      synchronized (source) {
+        if (source.getStreamPosition() != cipherPosition)
+          source.seek(cipherPosition);
+        read = source.read(buffer, 0, buffer.length);
+      }
+      bufferStart = cipherPosition;
+      bufferLength = 0;
+      if (read <= 0)
+        return false;
+
+      bufferLength = cipher.update(buffer, 0, read, buffer, 0);
+      cipherPosition += read;
+      return bufferLength > 0;
+    } catch (final GeneralSecurityException e) {
+      throw new IOException("RC4 decryption failed", e);
+    }
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    checkClosed();
+    if (pos < getFlushedPosition() || pos < 0)
+      throw new IndexOutOfBoundsException(
+          "Position to seek to (" + pos + ") is smaller than the flushed position or negative.");
+    bitOffset = 0;
+    position = pos;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return source != null ? source.length() : -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    source = null;
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return source != null ? source.getSizeEstimate() : 1024;
+  }
+}
@@ -0,0 +1,192 @@
+package com.levigo.jadice.format.pdf.internal.crypt;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.crypt.PDFSecurityException;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSHexString;
+import com.levigo.jadice.format.pdf.internal.objects.DSLiteralString;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSString;
+
+/**
+ * Decrypts strings and streams using one of the methods of the standard security handler, see
+ * PDF32000-1:2008, section 7.6.2. Streams are decrypted by {@link RC4InputStream} or
+ * {@link AESInputStream}.
+ * <p>
+ * Except for AES-256, every object is encrypted with a key of its own derived from the file key.
+ * The keys of recently used objects are cached, so that an object's strings and streams, which are
+ * decrypted separately and possibly many times, don't require the key to be derived again.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class StandardDecryptor implements StreamDecryptor, StringDecryptor {
+
+  public enum Method {
+    /**
+     * RC4 with a key length of 40 to 128 bits
+     */
+    RC4,
+    /**
+     * AES-128 in CBC mode
+     */
+    AESV2,
+    /**
+     * AES-256 in CBC mode, using the file key for all objects
+     */
+    AESV3
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StandardDecryptor.class);
+
+  /**
+   * the number of object keys cached. Must be a power of two.
+   */
+  private static final int KEY_CACHE_SIZE = 1024;
+
+  private static final byte[] AES_SALT = {
+      0x73, 0x41, 0x6c, 0x54
+  };
+
+  private static final ThreadLocal<Cipher> RC4_CIPHER = ThreadLocal.withInitial(() -> getCipher("ARCFOUR"));
+  private static final ThreadLocal<Cipher> AES_CIPHER = ThreadLocal.withInitial(() -> getCipher("AES/CBC/NoPadding"));
+
+  /**
+   * A cached object key. Entries are immutable, so that they can be shared between threads without
+   * synchronization.
+   */
+  private static final class ObjectKey {
+    final long objectNumber;
+    final long generationNumber;
+    final byte[] key;
+
+    ObjectKey(long objectNumber, long generationNumber, byte[] key) {
+      this.objectNumber = objectNumber;
+      this.generationNumber = generationNumber;
+      this.key = key;
+    }
+  }
+
+  private final Method method;
+  private final byte[] fileKey;
+  private final boolean encryptMetadata;
+  private final ObjectKey[] keyCache = new ObjectKey[KEY_CACHE_SIZE];
+
+  /**
+   * @param method          the encryption method
+   * @param fileKey         the file encryption key
+   * @param encryptMetadata whether metadata streams are encrypted
+   */
+  public StandardDecryptor(Method method, byte[] fileKey, boolean encryptMetadata) {
+    this.method = method;
+    this.fileKey = fileKey.clone();
+    this.encryptMetadata = encryptMetadata;
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  @Override
+  public DSString getDecryptedString(DSString srcString, long objectNumber, long generationNumber)
+      throws PDFSecurityException {
+    final byte[] data = srcString.getRawData();
+    if (method != Method.RC4
+        && (data.length < 2 * AESInputStream.BLOCK_SIZE || data.length % AESInputStream.BLOCK_SIZE != 0)) {
+      // producers tend to leave (empty) strings unencrypted
+      if (data.length > 0)
+        LOGGER.warn("Invalid length of an AES encrypted string in object " + objectNumber + " " + generationNumber
+            + ": " + data.length + ". Leaving it as it is.");
+      return srcString;
+    }
+
+    final byte[] key = getObjectKey(objectNumber, generationNumber);
+    final byte[] decrypted;
+    try {
+      if (method == Method.RC4) {
+        final Cipher cipher = RC4_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "ARCFOUR"));
+        decrypted = cipher.doFinal(data);
+      } else {
+        final Cipher cipher = AES_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+            new IvParameterSpec(data, 0, AESInputStream.BLOCK_SIZE));
+        final byte[] plain = cipher.doFinal(data, AESInputStream.BLOCK_SIZE, data.length - AESInputStream.BLOCK_SIZE);
+        final byte[] unpadded = new byte[AESInputStream.removePadding(plain, plain.length)];
+        System.arraycopy(plain, 0, unpadded, 0, unpadded.length);
+        decrypted = unpadded;
+      }
+    } catch (final GeneralSecurityException e) {
+      throw new PDFSecurityException("String decryption failed", e);
+    }
+    return srcString instanceof DSHexString ? new DSHexString(decrypted) : new DSLiteralString(decrypted);
+  }
+
+  @Override
+  public SeekableInputStream getDecryptedStream(DSDictionary streamDictionary, SeekableInputStream sis)
+      throws PDFSecurityException {
+    if (streamDictionary != null) {
+      // cross reference streams are never encrypted, metadata streams optionally
+      final DSObject type = streamDictionary.getNamedEntryValue(DSNameObject.type);
+      if (type instanceof DSNameObject && (((DSNameObject) type).matches("XRef")
+          || !encryptMetadata && ((DSNameObject) type).matches("Metadata")))
+        return sis;
+    }
+
+    final long objectNumber = streamDictionary != null ? streamDictionary.objectNumber() : 0;
+    final long generationNumber = streamDictionary != null ? streamDictionary.generationNumber() : 0;
+    final byte[] key = getObjectKey(objectNumber, generationNumber);
+    try {
+      return method == Method.RC4 ? new RC4InputStream(sis, key) : new AESInputStream(sis, key);
+    } catch (final GeneralSecurityException e) {
+      throw new PDFSecurityException("Stream decryption failed", e);
+    }
+  }
+
+  /**
+   * Get the key of an object, see algorithm 1 of PDF32000-1:2008, section 7.6.2.
+   */
+  byte[] getObjectKey(long objectNumber, long generationNumber) {
+    if (method == Method.AESV3)
+      return fileKey;
+
+    final int slot = (int) (objectNumber * 31 + generationNumber) & KEY_CACHE_SIZE - 1;
+    final ObjectKey cached = keyCache[slot];
+    if (cached != null && cached.objectNumber == objectNumber && cached.generationNumber == generationNumber)
+      return cached.key;
+
+    final MessageDigest md5 = StandardSecurityHandler.md5();
+    md5.update(fileKey);
+    md5.update((byte) objectNumber);
+    md5.update((byte) (objectNumber >> 8));
+    md5.update((byte) (objectNumber >> 16));
+    md5.update((byte) generationNumber);
+    md5.update((byte) (generationNumber >> 8));
+    if (method == Method.AESV2)
+      md5.update(AES_SALT);
+    final byte[] hash = md5.digest();
+
+    final byte[] key = new byte[Math.min(fileKey.length + 5, 16)];
+    System.arraycopy(hash, 0, key, 0, key.length);
+    keyCache[slot] = new ObjectKey(objectNumber, generationNumber, key);
+    return key;
+  }
+
+  private static Cipher getCipher(String transformation) {
+    try {
+      return Cipher.getInstance(transformation);
+    } catch (final GeneralSecurityException e) {
+      throw new IllegalStateException("The cipher " + transformation + " is not available", e);
+    }
+  }
+}
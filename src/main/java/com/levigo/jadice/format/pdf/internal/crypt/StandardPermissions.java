@@ -0,0 +1,89 @@
+package com.levigo.jadice.format.pdf.internal.crypt;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+
+/**
+ * The permissions granted by the standard security handler, as given by the user access
+ * permissions (the P entry) of the encryption dictionary, see PDF32000-1:2008, table 22.
+ */
+public class StandardPermissions implements PDFPermissions<StandardPermissions.Permission> {
+
+  public enum Permission implements PDFPermission {
+    PRINT(3), //
+    MODIFY(4), //
+    COPY(5), //
+    ANNOTATE(6), //
+    FILL_FORMS(9), //
+    EXTRACT_FOR_ACCESSIBILITY(10), //
+    ASSEMBLE(11), //
+    PRINT_HIGH_QUALITY(12);
+
+    /**
+     * the one-based number of the bit in the P entry
+     */
+    private final int bit;
+
+    Permission(int bit) {
+      this.bit = bit;
+    }
+
+    @Override
+    public String getKey() {
+      return name();
+    }
+  }
+
+  private final EnumSet<Permission> allowed;
+
+  /**
+   * @param p        the value of the P entry
+   * @param revision the revision of the standard security handler
+   */
+  public StandardPermissions(int p, int revision) {
+    allowed = EnumSet.noneOf(Permission.class);
+    for (final Permission permission : Permission.values())
+      if ((p & 1 << permission.bit - 1) != 0)
+        allowed.add(permission);
+
+    if (revision == 2) {
+      // revision 2 knows the first four permissions only, they imply the finer grained ones
+      allowed.removeAll(EnumSet.range(Permission.FILL_FORMS, Permission.PRINT_HIGH_QUALITY));
+      if (allowed.contains(Permission.ANNOTATE))
+        allowed.add(Permission.FILL_FORMS);
+      if (allowed.contains(Permission.COPY))
+        allowed.add(Permission.EXTRACT_FOR_ACCESSIBILITY);
+      if (allowed.contains(Permission.MODIFY))
+        allowed.add(Permission.ASSEMBLE);
+      if (allowed.contains(Permission.PRINT))
+        allowed.add(Permission.PRINT_HIGH_QUALITY);
+    }
+  }
+
+  /**
+   * Create permissions allowing everything, as granted to the owner of a document.
+   */
+  public StandardPermissions() {
+    allowed = EnumSet.allOf(Permission.class);
+  }
+
+  public boolean isAllowed(Permission permission) {
+    return allowed.contains(permission);
+  }
+
+  @Override
+  public Collection<Permission> getAllowed() {
+    return Collections.unmodifiableSet(allowed);
+  }
+
+  @Override
+  public Collection<Permission> getDenied() {
+    return Collections.unmodifiableSet(EnumSet.complementOf(allowed));
+  }
+
+  @Override
+  public String toString() {
+    return "StandardPermissions" + allowed;
+  }
+}
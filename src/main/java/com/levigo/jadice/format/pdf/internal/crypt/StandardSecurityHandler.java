@@ -0,0 +1,451 @@
+package com.levigo.jadice.format.pdf.internal.crypt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.levigo.jadice.format.pdf.crypt.PDFSecurityException;
+import com.levigo.jadice.format.pdf.internal.ReferenceResolver;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSString;
+
+/**
+ * The standard security handler, see PDF32000-1:2008, section 7.6.3, supporting revisions 2 to 4
+ * (RC4 and AES-128) as well as revisions 5 and 6 (AES-256, see ISO 32000-2).
+ * <p>
+ * {@link #authenticate()} tries the password set by {@link #setPassword(String)}, or the empty
+ * password, as user and as owner password. Passwords of revisions 5 and 6 are expected to be
+ * normalized already, they are merely encoded as UTF-8.
+ */
+public class StandardSecurityHandler implements SecurityHandler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StandardSecurityHandler.class);
+
+  private static final byte[] PADDING = {
+      (byte) 0x28, (byte) 0xBF, (byte) 0x4E, (byte) 0x5E, (byte) 0x4E, (byte) 0x75, (byte) 0x8A, (byte) 0x41,
+      (byte) 0x64, (byte) 0x00, (byte) 0x4E, (byte) 0x56, (byte) 0xFF, (byte) 0xFA, (byte) 0x01, (byte) 0x08,
+      (byte) 0x2E, (byte) 0x2E, (byte) 0x00, (byte) 0xB6, (byte) 0xD0, (byte) 0x68, (byte) 0x3E, (byte) 0x80,
+      (byte) 0x2F, (byte) 0x0C, (byte) 0xA9, (byte) 0xFE, (byte) 0x64, (byte) 0x53, (byte) 0x69, (byte) 0x7A
+  };
+
+  private static final NoopDecryptor IDENTITY = new NoopDecryptor();
+
+  private final int version;
+  private final int revision;
+  private final int keyLength;
+  private final int p;
+  private final byte[] o;
+  private final byte[] u;
+  private final byte[] oe;
+  private final byte[] ue;
+  private final boolean encryptMetadata;
+  private final byte[] documentID;
+
+  /**
+   * the crypt filter dictionaries by name, for version 4 and above
+   */
+  private final Map<String, DSDictionary> cryptFilterDictionaries = new HashMap<>();
+  private final String stmF;
+  private final String strF;
+  private final ReferenceResolver resolver;
+
+  private String password;
+
+  private boolean authenticated;
+  private StandardPermissions permissions;
+  private byte[] fileKey;
+  private final Map<String, StandardDecryptor> decryptors = new HashMap<>();
+
+  /**
+   * @param encrypt    the encryption dictionary
+   * @param documentID the ID of the trailer or <code>null</code>
+   * @param resolver   the resolver for the entries of the encryption dictionary
+   * @throws PDFSecurityException if the encryption dictionary isn't supported
+   */
+  public StandardSecurityHandler(DSDictionary encrypt, DSString[] documentID, ReferenceResolver resolver)
+      throws PDFSecurityException {
+    this.resolver = resolver;
+    version = resolver.resolveInt(encrypt, "V", 0);
+    revision = resolver.resolveInt(encrypt, "R", 0);
+    if (revision < 2 || revision > 6)
+      throw new PDFSecurityException("Unsupported revision of the standard security handler: " + revision);
+
+    p = resolver.resolveInt(encrypt, "P", 0);
+    o = getBytes(encrypt, "O", revision <= 4 ? 32 : 48);
+    u = getBytes(encrypt, "U", revision <= 4 ? 32 : 48);
+    oe = revision >= 5 ? getBytes(encrypt, "OE", 32) : null;
+    ue = revision >= 5 ? getBytes(encrypt, "UE", 32) : null;
+    encryptMetadata = resolver.resolveBool(encrypt, "EncryptMetadata", true);
+    this.documentID = documentID != null && documentID[0] != null ? documentID[0].getRawData() : new byte[0];
+
+    if (version >= 4) {
+      final DSDictionary cf = resolver.resolveDictionary(encrypt, "CF");
+      if (cf != null)
+        for (final Map.Entry<DSNameObject, DSObject> e : cf) {
+          final DSDictionary filter = resolver.resolveDictionary(e.getValue());
+          if (filter != null)
+            cryptFilterDictionaries.put(e.getKey().getName(), filter);
+        }
+      stmF = getName(encrypt, "StmF", "Identity");
+      strF = getName(encrypt, "StrF", "Identity");
+    } else {
+      stmF = strF = null;
+    }
+
+    int length = resolver.resolveInt(encrypt, "Length", 40);
+    if (version >= 4 && stmF != null && cryptFilterDictionaries.containsKey(stmF)) {
+      // the length of a crypt filter is given in bytes, but some writers use bits
+      final int cfLength = resolver.resolveInt(cryptFilterDictionaries.get(stmF), "Length", 0);
+      if (cfLength > 0)
+        length = cfLength <= 32 ? cfLength * 8 : cfLength;
+    }
+    keyLength = revision == 2 ? 5 : revision >= 5 ? 32 : Math.max(5, Math.min(16, length / 8));
+  }
+
+  /**
+   * Set the password to authenticate with, either the user or the owner password.
+   */
+  public void setPassword(String password) {
+    this.password = password;
+  }
+
+  @Override
+  public synchronized boolean authenticate() throws PDFSecurityException {
+    if (authenticated)
+      return true;
+
+    final String pw = password != null ? password : "";
+    if (revision >= 5) {
+      final byte[] utf8 = pw.getBytes(StandardCharsets.UTF_8);
+      final byte[] pwBytes = Arrays.copyOf(utf8, Math.min(127, utf8.length));
+      if (authenticateOwnerAES256(pwBytes)) {
+        permissions = new StandardPermissions();
+      } else if (authenticateUserAES256(pwBytes)) {
+        permissions = new StandardPermissions(p, revision);
+      } else {
+        return false;
+      }
+    } else {
+      final byte[] pwBytes = pad(pw.getBytes(StandardCharsets.ISO_8859_1));
+      if (authenticateOwner(pwBytes)) {
+        permissions = new StandardPermissions();
+      } else if (authenticateUser(pwBytes)) {
+        permissions = new StandardPermissions(p, revision);
+      } else {
+        return false;
+      }
+    }
+
+    authenticated = true;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isAuthenticated() {
+    return authenticated;
+  }
+
+  @Override
+  public StringDecryptor getStringDecryptor() throws PDFSecurityException {
+    final StandardDecryptor decryptor = getDecryptor(strF);
+    return decryptor != null ? decryptor : IDENTITY;
+  }
+
+  @Override
+  public StreamDecryptor getStreamDecryptor() throws PDFSecurityException {
+    final StandardDecryptor decryptor = getDecryptor(stmF);
+    return decryptor != null ? decryptor : IDENTITY;
+  }
+
+  @Override
+  public StreamDecryptor getStreamDecryptor(DSNameObject name) throws PDFSecurityException {
+    if (name == null)
+      return null;
+    if (version < 4 || name.matches("Identity") || cryptFilterDictionaries.containsKey(name.getName())) {
+      final StandardDecryptor decryptor = getDecryptor(version < 4 ? null : name.getName());
+      return decryptor != null ? decryptor : IDENTITY;
+    }
+    LOGGER.warn("Unknown crypt filter {}, using the default", name.getName());
+    return null;
+  }
+
+  @Override
+  public synchronized PDFPermissions<?> getPermissions() throws PDFSecurityException {
+    checkAuthenticated();
+    return permissions;
+  }
+
+  /**
+   * @param cryptFilter the name of the crypt filter or <code>null</code> for versions below 4
+   * @return the decryptor or <code>null</code> if the crypt filter doesn't decrypt
+   */
+  private synchronized StandardDecryptor getDecryptor(String cryptFilter) throws PDFSecurityException {
+    checkAuthenticated();
+    if (cryptFilter != null && cryptFilter.equals("Identity"))
+      return null;
+
+    final String key = cryptFilter != null ? cryptFilter : "";
+    StandardDecryptor decryptor = decryptors.get(key);
+    if (decryptor == null) {
+      final StandardDecryptor.Method method;
+      if (cryptFilter == null) {
+        method = StandardDecryptor.Method.RC4;
+      } else {
+        final DSDictionary filter = cryptFilterDictionaries.get(cryptFilter);
+        final DSNameObject cfm = filter != null ? resolver.resolveName(filter, "CFM") : null;
+        if (cfm == null || cfm.matches("None"))
+          return null;
+        else if (cfm.matches("V2"))
+          method = StandardDecryptor.Method.RC4;
+        else if (cfm.matches("AESV2"))
+          method = StandardDecryptor.Method.AESV2;
+        else if (cfm.matches("AESV3"))
+          method = StandardDecryptor.Method.AESV3;
+        else
+          throw new PDFSecurityException("Unsupported crypt filter method: " + cfm.getName());
+      }
+      decryptor = new StandardDecryptor(method, fileKey, encryptMetadata);
+      decryptors.put(key, decryptor);
+    }
+    return decryptor;
+  }
+
+  synchronized byte[] getFileKey() {
+    return fileKey;
+  }
+
+  private void checkAuthenticated() throws PDFSecurityException {
+    if (!authenticated)
+      throw new PDFSecurityException("The security handler has not been authenticated");
+  }
+
+  /**
+   * Algorithm 6: authenticate the user password and compute the file key, revisions 2 to 4.
+   */
+  private boolean authenticateUser(byte[] paddedPassword) throws PDFSecurityException {
+    final byte[] key = computeFileKey(paddedPassword);
+    if (!Arrays.equals(computeU(key), revision == 2 ? u : Arrays.copyOf(u, 16)))
+      return false;
+    fileKey = key;
+    return true;
+  }
+
+  /**
+   * Algorithm 7: authenticate the owner password by decrypting the user password from O, revisions
+   * 2 to 4.
+   */
+  private boolean authenticateOwner(byte[] paddedPassword) throws PDFSecurityException {
+    final byte[] key = computeOwnerKey(paddedPassword);
+    byte[] userPassword = Arrays.copyOf(o, 32);
+    if (revision == 2) {
+      userPassword = rc4(key, userPassword);
+    } else {
+      for (int i = 19; i >= 0; i--)
+        userPassword = rc4(xor(key, i), userPassword);
+    }
+    return authenticateUser(userPassword);
+  }
+
+  /**
+   * Algorithm 2: compute the file key from the padded user password.
+   */
+  byte[] computeFileKey(byte[] paddedPassword) {
+    final MessageDigest md5 = md5();
+    md5.update(paddedPassword);
+    md5.update(o, 0, 32);
+    md5.update(new byte[]{
+        (byte) p, (byte) (p >> 8), (byte) (p >> 16), (byte) (p >> 24)
+    });
+    md5.update(documentID);
+    if (revision >= 4 && !encryptMetadata)
+      md5.update(new byte[]{
+          (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff
+      });
+    byte[] hash = md5.digest();
+    if (revision >= 3)
+      for (int i = 0; i < 50; i++) {
+        md5.update(hash, 0, keyLength);
+        hash = md5.digest();
+      }
+    return Arrays.copyOf(hash, keyLength);
+  }
+
+  /**
+   * Algorithms 4 and 5: compute the U entry (or its first 16 bytes) from the file key.
+   */
+  byte[] computeU(byte[] fileKey) throws PDFSecurityException {
+    if (revision == 2)
+      return rc4(fileKey, PADDING);
+
+    final MessageDigest md5 = md5();
+    md5.update(PADDING);
+    md5.update(documentID);
+    byte[] result = md5.digest();
+    for (int i = 0; i < 20; i++)
+      result = rc4(xor(fileKey, i), result);
+    return result;
+  }
+
+  /**
+   * Algorithm 3, steps a to d: compute the RC4 key to encrypt the O entry with.
+   */
+  byte[] computeOwnerKey(byte[] paddedOwnerPassword) {
+    final MessageDigest md5 = md5();
+    byte[] hash = md5.digest(paddedOwnerPassword);
+    if (revision >= 3)
+      for (int i = 0; i < 50; i++)
+        hash = md5.digest(hash);
+    return Arrays.copyOf(hash, keyLength);
+  }
+
+  private boolean authenticateUserAES256(byte[] password) throws PDFSecurityException {
+    if (!Arrays.equals(hash(password, u, 32, null), Arrays.copyOf(u, 32)))
+      return false;
+    fileKey = aes256DecryptKey(hash(password, u, 40, null), ue);
+    return true;
+  }
+
+  private boolean authenticateOwnerAES256(byte[] password) throws PDFSecurityException {
+    final byte[] userData = Arrays.copyOf(u, 48);
+    if (!Arrays.equals(hash(password, o, 32, userData), Arrays.copyOf(o, 32)))
+      return false;
+    fileKey = aes256DecryptKey(hash(password, o, 40, userData), oe);
+    return true;
+  }
+
+  /**
+   * Compute the hash of a password for revisions 5 (SHA-256) and 6 (algorithm 2.B of ISO 32000-2).
+   *
+   * @param password   the UTF-8 encoded password
+   * @param saltSource the O or U entry
+   * @param saltOffset the offset of the 8 byte salt in <code>saltSource</code>
+   * @param userData   the U entry when hashing an owner password, <code>null</code> otherwise
+   */
+  byte[] hash(byte[] password, byte[] saltSource, int saltOffset, byte[] userData) throws PDFSecurityException {
+    final byte[] extra = userData != null ? userData : new byte[0];
+    MessageDigest digest = digest("SHA-256");
+    digest.update(password);
+    digest.update(saltSource, saltOffset, 8);
+    digest.update(extra);
+    byte[] k = digest.digest();
+    if (revision == 5)
+      return k;
+
+    try {
+      final Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+      final int sequenceLength = password.length + 64 + extra.length;
+      final byte[] k1 = new byte[64 * sequenceLength];
+      byte[] e;
+      int round = 0;
+      do {
+        // K1 is 64 repetitions of password + K + userData, K being 32 to 64 bytes long
+        final int length = password.length + k.length + extra.length;
+        for (int i = 0; i < 64; i++) {
+          final int offset = i * length;
+          System.arraycopy(password, 0, k1, offset, password.length);
+          System.arraycopy(k, 0, k1, offset + password.length, k.length);
+          System.arraycopy(extra, 0, k1, offset + password.length + k.length, extra.length);
+        }
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(k, 0, 16, "AES"), new IvParameterSpec(k, 16, 16));
+        e = aes.doFinal(k1, 0, 64 * length);
+
+        int sum = 0;
+        for (int i = 0; i < 16; i++)
+          sum += e[i] & 0xff;
+        switch (sum % 3){
+          case 0 :
+            digest = digest("SHA-256");
+            break;
+          case 1 :
+            digest = digest("SHA-384");
+            break;
+          default :
+            digest = digest("SHA-512");
+            break;
+        }
+        k = digest.digest(e);
+        round++;
+      } while (round < 64 || (e[e.length - 1] & 0xff) > round - 32);
+    } catch (final GeneralSecurityException ex) {
+      throw new PDFSecurityException("Password hashing failed", ex);
+    }
+    return Arrays.copyOf(k, 32);
+  }
+
+  private static byte[] aes256DecryptKey(byte[] key, byte[] encryptedKey) throws PDFSecurityException {
+    try {
+      final Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+      aes.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(new byte[16]));
+      return aes.doFinal(encryptedKey, 0, 32);
+    } catch (final GeneralSecurityException e) {
+      throw new PDFSecurityException("Decryption of the file key failed", e);
+    }
+  }
+
+  static byte[] rc4(byte[] key, byte[] data) throws PDFSecurityException {
+    try {
+      final Cipher rc4 = Cipher.getInstance("ARCFOUR");
+      rc4.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "ARCFOUR"));
+      return rc4.doFinal(data);
+    } catch (final GeneralSecurityException e) {
+      throw new PDFSecurityException("RC4 is not available", e);
+    }
+  }
+
+  private static byte[] xor(byte[] key, int value) {
+    final byte[] result = new byte[key.length];
+    for (int i = 0; i < key.length; i++)
+      result[i] = (byte) (key[i] ^ value);
+    return result;
+  }
+
+  /**
+   * Pad or truncate a password to 32 bytes.
+   */
+  static byte[] pad(byte[] password) {
+    final byte[] padded = Arrays.copyOf(password, 32);
+    if (password.length < 32)
+      System.arraycopy(PADDING, 0, padded, password.length, 32 - password.length);
+    return padded;
+  }
+
+  static MessageDigest md5() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+
+  private static MessageDigest digest(String algorithm) throws PDFSecurityException {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new PDFSecurityException(algorithm + " is not available", e);
+    }
+  }
+
+  private byte[] getBytes(DSDictionary encrypt, String name, int minimumLength) throws PDFSecurityException {
+    final DSString s = resolver.resolveString(encrypt, name);
+    if (s == null || s.getRawData().length < minimumLength)
+      throw new PDFSecurityException("Missing or invalid " + name + " entry in the encryption dictionary");
+    return s.getRawData();
+  }
+
+  private String getName(DSDictionary dict, String key, String defaultValue) {
+    final DSNameObject name = resolver.resolveName(dict, key);
+    return name != null ? name.getName() : defaultValue;
+  }
+}
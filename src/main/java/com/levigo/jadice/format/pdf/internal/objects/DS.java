@@ -1,7 +1,5 @@
 package com.levigo.jadice.format.pdf.internal.objects;
 
-import static org.jadice.util.base.Strings.utf8String;
-
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -80,7 +78,7 @@ public static DSArray arrayOfInt(Integer... integers) {
    * @return - the {@link DSDictionary}
    */
   public static DSDictionary dict() {
-    return new DSCommonDictionary();
+    return new DSCompactDictionary();
   }
 
   /**
@@ -90,7 +88,7 @@ public static DSDictionary dict() {
    * @return the {@link DSDictionary}
    */
   public static DSDictionary dict(int initialCapacity) {
-    return new DSCommonDictionary(initialCapacity);
+    return new DSCompactDictionary(initialCapacity);
   }
 
   /**
@@ -103,11 +101,11 @@ public static DSDictionary dict(int initialCapacity) {
    * as UTF-8 values.
    */
   public static DSNameObject name(byte[] utf8bytes) {
-    return name(utf8String(utf8bytes));
+    return DSNameObject.valueOf(utf8bytes, 0, utf8bytes.length);
   }
 
   public static DSNameObject name(String name) {
-    return new DSNameObject(name);
+    return DSNameObject.valueOf(name);
   }
 
   public static DSInteger num(int value) {
@@ -115,7 +113,7 @@ public static DSInteger num(int value) {
   }
 
   public static DSInteger num(long value) {
-    return new DSInteger(value);
+    return DSInteger.valueOf(value);
   }
 
   public static DSReal num(float value) {
@@ -130,7 +128,7 @@ public static DSNumber num(Number value) {
     if (value instanceof Float || value instanceof Double) {
       return new DSReal(value.doubleValue());
     } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
-      return new DSInteger(value.longValue());
+      return DSInteger.valueOf(value.longValue());
     }
 
     return null;
@@ -167,7 +165,7 @@ public static DSInteger integer(int value) {
   }
 
   public static DSInteger integer(long value) {
-    return new DSInteger(value);
+    return DSInteger.valueOf(value);
   }
 
   public static DSInteger integer(Integer value) {
@@ -219,7 +217,7 @@ public static DSStream stream(byte[] streamData) {
   public static DSStream stream(DSDictionary streamDict, byte[] streamData) {
     Objects.requireNonNull(streamData, "streamData");
     if (streamDict == null) {
-      streamDict = new DSCommonDictionary();
+      streamDict = new DSCompactDictionary();
     }
     streamDict.addNamedEntry(name("Length"), integer(streamData.length));
     final IStreamFactory streamFactory = new ByteArrayStreamFactory(streamData);
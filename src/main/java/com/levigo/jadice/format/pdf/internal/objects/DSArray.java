@@ -3,6 +3,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -10,12 +11,12 @@
 /**
  * the <code>PDFArray</code> is one of the basic PDF types. It can carry any type of PDFObject<br>
  */
-public class DSArray extends DSObject implements List<DSObject> {
+public class DSArray extends DSFreezableObject implements List<DSObject> {
 
   /**
    * the list of Objects
    */
-  private final List<DSObject> objects;
+  private List<DSObject> objects;
 
   /**
    * Contructor <br>
@@ -190,6 +191,13 @@ public <T> T[] toArray(T[] a) {
   }
 
 
+  @Override
+  protected void freezeContents() {
+    for (final DSObject o : objects)
+      o.freeze();
+    objects = Collections.unmodifiableList(objects);
+  }
+
   /**
    * @see com.levigo.jadice.format.pdf.internal.objects.DSObject#equals(com.levigo.jadice.format.pdf.internal.objects.DSObject)
    */
@@ -28,6 +28,22 @@ public DSBoolean(boolean value) {
     this.value = value;
   }
 
+  /**
+   * @param value the value
+   * @return the shared constant {@link #TRUE} or {@link #FALSE}, which must not be used as an
+   *         indirect object
+   */
+  public static DSBoolean valueOf(boolean value) {
+    return value ? TRUE : FALSE;
+  }
+
+  /**
+   * @return <code>true</code> if this is one of the shared constants
+   */
+  public boolean isShared() {
+    return this == TRUE || this == FALSE;
+  }
+
   /**
    * returns the booelan value represented by this instance
    *
@@ -2,6 +2,7 @@
 
 import static com.levigo.jadice.format.pdf.internal.objects.DS.name;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -21,6 +22,7 @@ public DSCommonDictionary(int initialCapacity) {
 
   @Override
   public void addNamedEntry(DSNameObject nameObject, DSObject object) {
+    checkMutable();
     entries.put(nameObject, object);
   }
 
@@ -31,13 +33,13 @@ public DSObject getNamedEntryValue(DSNameObject nameObject) {
 
   @Override
   public DSObject getNamedEntryValue(String nameString) {
-    // FIXME: können wir uns da das Wrappen nicht irgendwie sparen?
+    // registered names are looked up without wrapping
     return getNamedEntryValue(name(nameString));
   }
 
   @Override
   public Iterator<Map.Entry<DSNameObject, DSObject>> iterator() {
-    return entries.entrySet().iterator();
+    return isFrozen() ? Collections.unmodifiableMap(entries).entrySet().iterator() : entries.entrySet().iterator();
   }
 
   /**
@@ -58,6 +60,7 @@ public int size() {
 
   @Override
   public void removeNamedEntry(DSNameObject name) {
+    checkMutable();
     entries.remove(name);
   }
 }
@@ -0,0 +1,270 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A dictionary optimized for the small dictionaries making up most of a PDF document. Up to
+ * {@value #THRESHOLD} entries are kept in parallel key and value arrays and looked up by a linear
+ * scan, which is both smaller and, for few entries, faster than a {@link HashMap}. Beyond that the
+ * dictionary promotes itself to a {@link HashMap}; it doesn't return to the compact form.
+ * <p>
+ * Entries are iterated in insertion order while the dictionary is compact.
+ */
+public class DSCompactDictionary extends DSDictionary {
+
+  /**
+   * the maximum number of entries kept in the arrays
+   */
+  public static final int THRESHOLD = 16;
+
+  private static final int DEFAULT_CAPACITY = 4;
+
+  private DSNameObject[] keys;
+  private DSObject[] values;
+  private int size;
+
+  /**
+   * the entries once promoted, <code>null</code> before
+   */
+  private HashMap<DSNameObject, DSObject> map;
+
+  private int modCount;
+
+  public DSCompactDictionary() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public DSCompactDictionary(int initialCapacity) {
+    if (initialCapacity > THRESHOLD) {
+      map = new HashMap<>(initialCapacity);
+    } else {
+      keys = new DSNameObject[Math.max(initialCapacity, 1)];
+      values = new DSObject[keys.length];
+    }
+  }
+
+  @Override
+  public void addNamedEntry(DSNameObject nameObject, DSObject object) {
+    checkMutable();
+    if (map != null) {
+      map.put(nameObject, object);
+      return;
+    }
+
+    final int index = indexOf(nameObject);
+    if (index >= 0) {
+      values[index] = object;
+      return;
+    }
+
+    if (size == THRESHOLD) {
+      promote();
+      map.put(nameObject, object);
+      return;
+    }
+
+    if (size == keys.length) {
+      final int capacity = Math.min(THRESHOLD, keys.length * 2);
+      final DSNameObject[] newKeys = new DSNameObject[capacity];
+      final DSObject[] newValues = new DSObject[capacity];
+      System.arraycopy(keys, 0, newKeys, 0, size);
+      System.arraycopy(values, 0, newValues, 0, size);
+      keys = newKeys;
+      values = newValues;
+    }
+    keys[size] = nameObject;
+    values[size] = object;
+    size++;
+    modCount++;
+  }
+
+  private void promote() {
+    map = new HashMap<>(THRESHOLD * 4);
+    for (int i = 0; i < size; i++)
+      map.put(keys[i], values[i]);
+    keys = null;
+    values = null;
+    size = 0;
+    modCount++;
+  }
+
+  private int indexOf(DSNameObject nameObject) {
+    for (int i = 0; i < size; i++)
+      if (keys[i].equals(nameObject))
+        return i;
+    return -1;
+  }
+
+  private int indexOf(String name) {
+    if (name.length() > 0 && name.charAt(0) == '/')
+      name = name.substring(1);
+    final int id = NameRegistry.idOf(name);
+    if (id != NameRegistry.UNREGISTERED) {
+      for (int i = 0; i < size; i++)
+        if (keys[i].getId() == id)
+          return i;
+    } else {
+      for (int i = 0; i < size; i++)
+        if (keys[i].getId() == NameRegistry.UNREGISTERED && keys[i].getName().equals(name))
+          return i;
+    }
+    return -1;
+  }
+
+  @Override
+  public DSObject getNamedEntryValue(DSNameObject nameObject) {
+    if (map != null)
+      return map.get(nameObject);
+    final int index = indexOf(nameObject);
+    return index >= 0 ? values[index] : null;
+  }
+
+  @Override
+  public DSObject getNamedEntryValue(String nameString) {
+    if (map != null)
+      return map.get(DS.name(nameString));
+    final int index = indexOf(nameString);
+    return index >= 0 ? values[index] : null;
+  }
+
+  @Override
+  public void removeNamedEntry(DSNameObject name) {
+    checkMutable();
+    if (map != null) {
+      map.remove(name);
+      return;
+    }
+    final int index = indexOf(name);
+    if (index >= 0)
+      removeAt(index);
+  }
+
+  private void removeAt(int index) {
+    checkMutable();
+    final int moved = size - index - 1;
+    System.arraycopy(keys, index + 1, keys, index, moved);
+    System.arraycopy(values, index + 1, values, index, moved);
+    size--;
+    keys[size] = null;
+    values[size] = null;
+    modCount++;
+  }
+
+  @Override
+  public int size() {
+    return map != null ? map.size() : size;
+  }
+
+  /**
+   * @return whether the entries are kept in the arrays
+   */
+  boolean isCompact() {
+    return map == null;
+  }
+
+  @Override
+  public Iterator<Map.Entry<DSNameObject, DSObject>> iterator() {
+    if (map != null)
+      return isFrozen() ? Collections.unmodifiableMap(map).entrySet().iterator() : map.entrySet().iterator();
+
+    return new Iterator<Map.Entry<DSNameObject, DSObject>>() {
+      private int next;
+      private int last = -1;
+      private int expectedModCount = modCount;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Map.Entry<DSNameObject, DSObject> next() {
+        checkForComodification();
+        if (next >= size)
+          throw new NoSuchElementException();
+        last = next++;
+        return new Entry(keys[last]);
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0)
+          throw new IllegalStateException();
+        checkForComodification();
+        removeAt(last);
+        next = last;
+        last = -1;
+        expectedModCount = modCount;
+      }
+
+      private void checkForComodification() {
+        if (modCount != expectedModCount)
+          throw new ConcurrentModificationException();
+      }
+    };
+  }
+
+  /**
+   * An entry reading and writing through to the dictionary.
+   */
+  private final class Entry implements Map.Entry<DSNameObject, DSObject> {
+    private final DSNameObject key;
+
+    Entry(DSNameObject key) {
+      this.key = key;
+    }
+
+    @Override
+    public DSNameObject getKey() {
+      return key;
+    }
+
+    @Override
+    public DSObject getValue() {
+      return getNamedEntryValue(key);
+    }
+
+    @Override
+    public DSObject setValue(DSObject value) {
+      final DSObject old = getValue();
+      addNamedEntry(key, value);
+      return old;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      final DSObject value = getValue();
+      return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      final DSObject value = getValue();
+      return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + getValue();
+    }
+  }
+
+  /**
+   * if it's not the same instance, this method will always return <code>false</code> as
+   * Dictionaries can't be compared
+   *
+   * @see com.levigo.jadice.format.pdf.internal.objects.DSObject#equals(com.levigo.jadice.format.pdf.internal.objects.DSObject)
+   */
+  @Override
+  public boolean equals(DSObject object) {
+    return this == object;
+  }
+}
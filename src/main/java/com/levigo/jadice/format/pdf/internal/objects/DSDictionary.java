@@ -4,7 +4,7 @@
 import java.util.Map;
 import java.util.Map.Entry;
 
-public abstract class DSDictionary extends DSObject implements Iterable<Entry<DSNameObject, DSObject>> {
+public abstract class DSDictionary extends DSFreezableObject implements Iterable<Entry<DSNameObject, DSObject>> {
 
   /**
    * add an {@link DSNameObject} and {@link DSObject} pair to the dictionary. If there is a
@@ -60,6 +60,13 @@ public final boolean isDictionary() {
     return true;
   }
 
+  @Override
+  protected void freezeContents() {
+    for (final Entry<DSNameObject, DSObject> e : this)
+      if (e.getValue() != null)
+        e.getValue().freeze();
+  }
+
   public abstract void removeNamedEntry(DSNameObject name);
 
   public abstract int size();
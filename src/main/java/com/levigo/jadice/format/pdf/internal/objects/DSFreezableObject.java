@@ -0,0 +1,39 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+/**
+ * The objects which can be modified until they are {@link #freeze() frozen}: dictionaries, arrays,
+ * strings and streams. The immutable types don't carry the frozen state, which would grow every
+ * number, name and reference.
+ */
+public abstract class DSFreezableObject extends DSObject {
+
+  private boolean frozen;
+
+  @Override
+  public final void freeze() {
+    if (!frozen) {
+      frozen = true;
+      freezeContents();
+    }
+  }
+
+  @Override
+  public final boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Freeze the objects contained in this object, called once by {@link #freeze()}.
+   */
+  protected void freezeContents() {
+    // nothing to do for strings
+  }
+
+  /**
+   * @throws UnsupportedOperationException if this object has been frozen
+   */
+  protected final void checkMutable() {
+    if (frozen)
+      throw new UnsupportedOperationException("frozen objects can't be modified: " + this);
+  }
+}
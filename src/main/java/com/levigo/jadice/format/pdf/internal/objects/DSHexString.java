@@ -18,7 +18,7 @@ public DSHexString(byte[] rawData) {
   @Override
   public boolean equals(DSObject object) {
     if (object instanceof DSHexString) {
-      return Arrays.equals(getRawData(), ((DSHexString) object).getRawData());
+      return Arrays.equals(rawData(), ((DSHexString) object).rawData());
     } else {
       return false;
     }
@@ -30,7 +30,7 @@ public boolean equals(DSObject object) {
   @Override
   public String toString() {
     String retval = "";
-    for (final byte element : getRawData()) {
+    for (final byte element : rawData()) {
       retval += showHex(element);
     }
     retval.trim();
@@ -1,15 +1,16 @@
 package com.levigo.jadice.format.pdf.internal.objects;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map.Entry;
-import java.util.Vector;
+import java.util.Set;
 
 
 public class DSHierarchyAwareDictionary extends DSDictionary {
   private final DSDictionary sourceDict;
   private final DSDictionary parent;
-  private List<DSNameObject> deletedList;
+  private Set<DSNameObject> deleted = Collections.emptySet();
 
 
   public DSHierarchyAwareDictionary(DSDictionary sourceDict, DSDictionary parent) {
@@ -22,6 +23,7 @@ public DSHierarchyAwareDictionary(DSDictionary sourceDict, DSDictionary parent)
 
   @Override
   public void addNamedEntry(DSNameObject nameObject, DSObject Object) {
+    checkMutable();
     sourceDict.addNamedEntry(nameObject, Object);
   }
 
@@ -33,7 +35,7 @@ public boolean equals(DSObject object) {
   @Override
   public DSObject getNamedEntryValue(DSNameObject nameObject) {
 
-    if (deletedList != null && deletedList.indexOf(nameObject) >= 0) {
+    if (deleted.contains(nameObject)) {
       return null;
     }
 
@@ -49,7 +51,8 @@ public DSObject getNamedEntryValue(DSNameObject nameObject) {
   @Override
   public DSObject getNamedEntryValue(String nameObject) {
 
-    if (deletedList != null && deletedList.indexOf(new DSNameObject(nameObject)) >= 0) {
+    // registered names are looked up without wrapping
+    if (!deleted.isEmpty() && deleted.contains(DS.name(nameObject))) {
       return null;
     }
 
@@ -72,22 +75,29 @@ public Iterator<Entry<DSNameObject, DSObject>> iterator() {
 
   @Override
   public void removeNamedEntry(DSNameObject name) {
+    checkMutable();
 
-    // XXX this is slow and should be optimized
     final DSObject entry = sourceDict.getNamedEntryValue(name);
 
     if (entry != null) {
       sourceDict.removeNamedEntry(name);
     } else {
 
-      if (deletedList == null) {
-        deletedList = new Vector<>();
+      if (deleted.isEmpty()) {
+        deleted = new HashSet<>();
       }
 
-      deletedList.add(name);
+      deleted.add(name);
     }
   }
 
+  @Override
+  protected void freezeContents() {
+    sourceDict.freeze();
+    if (parent != null)
+      parent.freeze();
+  }
+
   @Override
   public int size() {
     // FIXME das ist nicht ganz korrekt. Durch die Vererbung koennen es mehr eintraege sein.
@@ -3,12 +3,48 @@
 
 public final class DSInteger extends DSNumber implements Comparable<DSInteger> {
 
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 1023;
+
+  /**
+   * the shared instances of the small integers which make up the bulk of all integers in a
+   * document: array and dictionary entries, widths, flags, lengths, etc.
+   */
+  private static final DSInteger[] CACHE = new DSInteger[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int i = 0; i < CACHE.length; i++)
+      CACHE[i] = new DSInteger(i + CACHE_LOW);
+  }
+
   private final long value;
 
   public DSInteger(long value) {
     this.value = value;
   }
 
+  /**
+   * Returns a {@link DSInteger} with the given value. Small values are served from a cache of
+   * shared instances, so that the result must not be used as an indirect object, as its object-
+   * and generation-number would collide with other users. Use the constructor in that case.
+   *
+   * @param value the value
+   * @return a possibly shared instance
+   */
+  public static DSInteger valueOf(long value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH)
+      return CACHE[(int) value - CACHE_LOW];
+    return new DSInteger(value);
+  }
+
+  /**
+   * @return <code>true</code> if this is one of the shared instances returned by
+   *         {@link #valueOf(long)}
+   */
+  public boolean isShared() {
+    return value >= CACHE_LOW && value <= CACHE_HIGH && CACHE[(int) value - CACHE_LOW] == this;
+  }
+
   public long getValue() {
     return value;
   }
@@ -63,6 +99,11 @@ public float getFloat() {
     return getValue();
   }
 
+  @Override
+  public int hashCode() {
+    return (int) (value ^ value >>> 32);
+  }
+
   @Override
   public int compareTo(DSInteger o) {
     return value < o.value ? -1 : value > o.value ? 1 : 0;
@@ -15,7 +15,7 @@ public DSLiteralString(byte[] rawData) {
   @Override
   public boolean equals(DSObject object) {
     if (object instanceof DSLiteralString) {
-      return Arrays.equals(getRawData(), ((DSLiteralString) object).getRawData());
+      return Arrays.equals(rawData(), ((DSLiteralString) object).rawData());
     } else {
       return false;
     }
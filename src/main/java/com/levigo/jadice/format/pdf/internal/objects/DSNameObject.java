@@ -1,5 +1,7 @@
 package com.levigo.jadice.format.pdf.internal.objects;
 
+import java.nio.charset.StandardCharsets;
+
 
 /**
  * A PDF Name Object.
@@ -8,59 +10,111 @@
  * "an atomic symbol uniquely defined by a sequence of any characters (8-bit values) except null (character code 0)"
  * (Source: PDF 32000-1:2008, 7.3.5 "Name Objects"). We store the name object's contents as a
  * String. If each String uses the same encoding this should be OK.
+ * <p>
+ * Names known to the {@link NameRegistry} carry their registry id. There is a canonical instance
+ * for each of them, returned by {@link #valueOf(String)} and {@link #valueOf(byte[], int, int)}
+ * without allocating, and two registered names are compared by their ids.
  */
 public class DSNameObject extends DSObject implements Comparable<DSNameObject> {
 
-  public static final DSNameObject type = new DSNameObject("Type");
-  public static final DSNameObject filter = new DSNameObject("Filter");
-  public static final DSNameObject bitsPerComponent = new DSNameObject("BitsPerComponent");
-  public static final DSNameObject colorSpace = new DSNameObject("ColorSpace");
-  public static final DSNameObject decode = new DSNameObject("Decode");
-  public static final DSNameObject decodeParms = new DSNameObject("DecodeParms");
-  public static final DSNameObject height = new DSNameObject("Height");
-  public static final DSNameObject width = new DSNameObject("Width");
-  public static final DSNameObject deviceGray = new DSNameObject("DeviceGray");
-  public static final DSNameObject deviceRGB = new DSNameObject("DeviceRGB");
-  public static final DSNameObject deviceCMYK = new DSNameObject("DeviceCMYK");
-  public static final DSNameObject indexed = new DSNameObject("Indexed");
-  public static final DSNameObject iccBased = new DSNameObject("ICCBased");
-  public static final DSNameObject asciiHexDecode = new DSNameObject("ASCIIHexDecode");
-  public static final DSNameObject ascii85Decode = new DSNameObject("ASCII85Decode");
-  public static final DSNameObject lzwDecode = new DSNameObject("LZWDecode");
-  public static final DSNameObject flateDecode = new DSNameObject("FlateDecode");
-  public static final DSNameObject ccittFaxDecode = new DSNameObject("CCITTFaxDecode");
-  public static final DSNameObject dctDecode = new DSNameObject("DCTDecode");
-  public static final DSNameObject runLengthDecode = new DSNameObject("RunLengthDecode");
-  public static final DSNameObject calRGB = new DSNameObject("CalRGB");
-  public static final DSNameObject calGray = new DSNameObject("CalGray");
-  public static final DSNameObject font = new DSNameObject("Font");
-  public static final DSNameObject fontName = new DSNameObject("FontName");
-  public static final DSNameObject fontFamily = new DSNameObject("FontFamily");
-  public static final DSNameObject flags = new DSNameObject("Flags");
-  public static final DSNameObject fontBBox = new DSNameObject("FontBBox");
-  public static final DSNameObject fontMatrix = new DSNameObject("FontMatrix");
-  public static final DSNameObject leading = new DSNameObject("Leading");
-  public static final DSNameObject separation = new DSNameObject("Separation");
-  public static final DSNameObject differences = new DSNameObject("Differences");
-  public static final DSNameObject fontDescriptor = new DSNameObject("FontDescriptor");
-  public static final DSNameObject subtype = new DSNameObject("Subtype");
-  public static final DSNameObject pattern = new DSNameObject("Pattern");
-  public static final DSNameObject extGState = new DSNameObject("ExtGState");
+  /**
+   * the canonical instances of the registered names by id
+   */
+  private static final DSNameObject[] REGISTERED = new DSNameObject[NameRegistry.size()];
+
+  static {
+    for (int id = 0; id < REGISTERED.length; id++)
+      REGISTERED[id] = new DSNameObject(NameRegistry.nameOf(id), id);
+  }
+
+  public static final DSNameObject type = valueOf("Type");
+  public static final DSNameObject filter = valueOf("Filter");
+  public static final DSNameObject bitsPerComponent = valueOf("BitsPerComponent");
+  public static final DSNameObject colorSpace = valueOf("ColorSpace");
+  public static final DSNameObject decode = valueOf("Decode");
+  public static final DSNameObject decodeParms = valueOf("DecodeParms");
+  public static final DSNameObject height = valueOf("Height");
+  public static final DSNameObject width = valueOf("Width");
+  public static final DSNameObject deviceGray = valueOf("DeviceGray");
+  public static final DSNameObject deviceRGB = valueOf("DeviceRGB");
+  public static final DSNameObject deviceCMYK = valueOf("DeviceCMYK");
+  public static final DSNameObject indexed = valueOf("Indexed");
+  public static final DSNameObject iccBased = valueOf("ICCBased");
+  public static final DSNameObject asciiHexDecode = valueOf("ASCIIHexDecode");
+  public static final DSNameObject ascii85Decode = valueOf("ASCII85Decode");
+  public static final DSNameObject lzwDecode = valueOf("LZWDecode");
+  public static final DSNameObject flateDecode = valueOf("FlateDecode");
+  public static final DSNameObject ccittFaxDecode = valueOf("CCITTFaxDecode");
+  public static final DSNameObject dctDecode = valueOf("DCTDecode");
+  public static final DSNameObject runLengthDecode = valueOf("RunLengthDecode");
+  public static final DSNameObject calRGB = valueOf("CalRGB");
+  public static final DSNameObject calGray = valueOf("CalGray");
+  public static final DSNameObject font = valueOf("Font");
+  public static final DSNameObject fontName = valueOf("FontName");
+  public static final DSNameObject fontFamily = valueOf("FontFamily");
+  public static final DSNameObject flags = valueOf("Flags");
+  public static final DSNameObject fontBBox = valueOf("FontBBox");
+  public static final DSNameObject fontMatrix = valueOf("FontMatrix");
+  public static final DSNameObject leading = valueOf("Leading");
+  public static final DSNameObject separation = valueOf("Separation");
+  public static final DSNameObject differences = valueOf("Differences");
+  public static final DSNameObject fontDescriptor = valueOf("FontDescriptor");
+  public static final DSNameObject subtype = valueOf("Subtype");
+  public static final DSNameObject pattern = valueOf("Pattern");
+  public static final DSNameObject extGState = valueOf("ExtGState");
   /**
    * the name HAS to be stored without trailing /
    */
   private final String name;
+  /**
+   * the id in the {@link NameRegistry} or {@link NameRegistry#UNREGISTERED}
+   */
+  private final int id;
+  private final int hash;
 
   public DSNameObject(String name) {
-    // check if there is a preceding /
-    if (name.length() > 0 && name.charAt(0) == '/') {
-      // set name only with the name and omit the /
-      name = name.substring(1, name.length());
-    }
+    this(stripSlash(name), NameRegistry.idOf(stripSlash(name)));
+  }
+
+  private DSNameObject(String name, int id) {
+    this.name = name;
+    this.id = id;
+    this.hash = name.hashCode();
+  }
 
-    // use the canonical representation with help of String.intern(), which does some pooling
-    // FIXME DOCPV-1766 do we really want to intern() every name String
-    this.name = name.intern();
+  private static String stripSlash(String name) {
+    // the name is stored without a preceding /
+    return name.length() > 0 && name.charAt(0) == '/' ? name.substring(1) : name;
+  }
+
+  /**
+   * @param name the name, with or without preceding slash
+   * @return the canonical instance for registered names, a new one otherwise
+   */
+  public static DSNameObject valueOf(String name) {
+    final String stripped = stripSlash(name);
+    final int id = NameRegistry.idOf(stripped);
+    if (id != NameRegistry.UNREGISTERED)
+      return REGISTERED[id];
+    return new DSNameObject(stripped, id);
+  }
+
+  /**
+   * @param utf8bytes the raw bytes of the name, without preceding slash
+   * @return the canonical instance for registered names, a new one otherwise
+   */
+  public static DSNameObject valueOf(byte[] utf8bytes, int offset, int length) {
+    final int id = NameRegistry.idOf(utf8bytes, offset, length);
+    if (id != NameRegistry.UNREGISTERED)
+      return REGISTERED[id];
+    return new DSNameObject(new String(utf8bytes, offset, length, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return the canonical instance of the registered name with the given id
+   */
+  public static DSNameObject valueOf(int id) {
+    return REGISTERED[id];
   }
 
   /**
@@ -73,8 +127,12 @@ public DSNameObject(String name) {
    */
   @Override
   public boolean equals(DSObject dsObject) {
+    if (this == dsObject)
+      return true;
     if (dsObject instanceof DSNameObject) {
-      return name.equals(((DSNameObject) dsObject).name);
+      final DSNameObject other = (DSNameObject) dsObject;
+      // a registered name can only equal a name with the same id
+      return id == other.id && (id != NameRegistry.UNREGISTERED || hash == other.hash && name.equals(other.name));
     }
     return false;
   }
@@ -141,7 +199,20 @@ public String getName() {
 
   @Override
   public int hashCode() {
-    return name.hashCode();
+    return hash;
+  }
+
+  /**
+   * @return the id in the {@link NameRegistry} or {@link NameRegistry#UNREGISTERED}
+   */
+  public int getId() {
+    return id;
   }
 
+  /**
+   * @return whether this is the canonical instance of a registered name, shared by all documents
+   */
+  public boolean isCanonical() {
+    return id != NameRegistry.UNREGISTERED && REGISTERED[id] == this;
+  }
 }
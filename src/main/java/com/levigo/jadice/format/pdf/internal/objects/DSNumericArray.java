@@ -0,0 +1,207 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link DSArray} consisting of numbers only, like <code>/Widths</code>, <code>/MediaBox</code>,
+ * <code>/Matrix</code> or function sample tables. The values are packed into a
+ * <code>double[]</code> plus a bit mask marking the integers, instead of one {@link DSNumber}
+ * object per element. The {@link List} view materializes the elements on access: every access to
+ * a real returns a new {@link DSReal}, equal to but not identical with the previous one. The
+ * primitive accessors like {@link #getDouble(int)} don't allocate at all and are to be preferred
+ * when reading numbers in bulk.
+ * <p>
+ * A packed array stays modifiable: the first structural or element modification unpacks it into
+ * an ordinary list, see {@link #isPacked()}.
+ */
+public class DSNumericArray extends DSArray {
+
+  /**
+   * integers beyond this magnitude can't be represented exactly as a <code>double</code>
+   */
+  private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+  private static final class PackedList extends AbstractList<DSObject> {
+    private final double[] values;
+    private final long[] integers;
+    private List<DSObject> unpacked;
+    private boolean frozen;
+
+    PackedList(double[] values, long[] integers) {
+      this.values = values;
+      this.integers = integers;
+    }
+
+    boolean isInteger(int index) {
+      return (integers[index >>> 6] & 1L << index) != 0;
+    }
+
+    @Override
+    public DSObject get(int index) {
+      if (unpacked != null)
+        return unpacked.get(index);
+      if (index < 0 || index >= values.length)
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + values.length);
+      return isInteger(index) ? DSInteger.valueOf((long) values[index]) : new DSReal(values[index]);
+    }
+
+    @Override
+    public int size() {
+      return unpacked != null ? unpacked.size() : values.length;
+    }
+
+    @Override
+    public DSObject set(int index, DSObject element) {
+      return unpack().set(index, element);
+    }
+
+    @Override
+    public void add(int index, DSObject element) {
+      unpack().add(index, element);
+      modCount++;
+    }
+
+    @Override
+    public DSObject remove(int index) {
+      final DSObject removed = unpack().remove(index);
+      modCount++;
+      return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+      unpack().subList(fromIndex, toIndex).clear();
+      modCount++;
+    }
+
+    private List<DSObject> unpack() {
+      if (frozen)
+        throw new UnsupportedOperationException("frozen objects can't be modified");
+      if (unpacked == null) {
+        final List<DSObject> list = new ArrayList<>(values.length + 4);
+        for (int i = 0; i < values.length; i++)
+          list.add(get(i));
+        unpacked = list;
+      }
+      return unpacked;
+    }
+  }
+
+  private final PackedList packed;
+
+  private DSNumericArray(PackedList packed) {
+    super(packed);
+    this.packed = packed;
+  }
+
+  /**
+   * Pack the given numbers into a {@link DSNumericArray}.
+   *
+   * @param objects the elements of the array
+   * @return the packed array or a plain {@link DSArray} if there are elements which aren't
+   *         {@link DSNumber}s or integers too large to be packed
+   */
+  public static DSArray pack(List<DSObject> objects) {
+    final int size = objects.size();
+    final double[] values = new double[size];
+    final long[] integers = new long[(size + 63) >>> 6];
+    for (int i = 0; i < size; i++) {
+      final DSObject o = objects.get(i);
+      if (o instanceof DSInteger) {
+        final long value = ((DSInteger) o).getValue();
+        if (value > MAX_EXACT_INTEGER || value < -MAX_EXACT_INTEGER)
+          return asArray(objects);
+        values[i] = value;
+        integers[i >>> 6] |= 1L << i;
+      } else if (o instanceof DSReal) {
+        values[i] = ((DSReal) o).getValue();
+      } else {
+        return asArray(objects);
+      }
+    }
+    return new DSNumericArray(new PackedList(values, integers));
+  }
+
+  private static DSArray asArray(List<DSObject> objects) {
+    return objects instanceof DSArray ? (DSArray) objects : new DSArray(objects);
+  }
+
+  @Override
+  protected void freezeContents() {
+    // packed numbers need no freezing, just keep them from being unpacked
+    if (isPacked())
+      packed.frozen = true;
+    else
+      super.freezeContents();
+  }
+
+  /**
+   * @return <code>true</code> as long as the values are held in packed form, i.e. the array has not
+   *         been modified since parsing
+   */
+  public boolean isPacked() {
+    return packed.unpacked == null;
+  }
+
+  /**
+   * @param index the index of the element
+   * @return the element as a <code>double</code>
+   * @throws ClassCastException if the array has been modified to contain something else than a
+   *                            number at the given index
+   */
+  public double getDouble(int index) {
+    if (packed.unpacked != null)
+      return ((DSNumber) packed.unpacked.get(index)).getDouble();
+    return packed.values[index];
+  }
+
+  /**
+   * @param index the index of the element
+   * @return the element as a <code>float</code>
+   */
+  public float getFloat(int index) {
+    return (float) getDouble(index);
+  }
+
+  /**
+   * @param index the index of the element
+   * @return the element as a <code>long</code>, truncating reals
+   */
+  public long getLong(int index) {
+    return (long) getDouble(index);
+  }
+
+  /**
+   * @param index the index of the element
+   * @return the element as an <code>int</code>, truncating reals
+   */
+  public int getInteger(int index) {
+    return (int) getDouble(index);
+  }
+
+  /**
+   * @param index the index of the element
+   * @return <code>true</code> if the element is a {@link DSInteger}
+   */
+  public boolean isInteger(int index) {
+    if (packed.unpacked != null)
+      return packed.unpacked.get(index) instanceof DSInteger;
+    if (index < 0 || index >= packed.values.length)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + packed.values.length);
+    return packed.isInteger(index);
+  }
+
+  /**
+   * @return a copy of the values
+   */
+  public double[] toDoubleArray() {
+    if (packed.unpacked == null)
+      return packed.values.clone();
+    final double[] result = new double[size()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = getDouble(i);
+    return result;
+  }
+}
@@ -22,6 +22,30 @@ public final boolean equals(Object obj) {
     return false;
   }
 
+  /**
+   * Make this object and all direct objects contained in it read-only. Any attempt to modify a
+   * frozen object throws an {@link UnsupportedOperationException}, so that a frozen object graph can
+   * be shared by many threads without copying or locking, provided it is published safely, e.g.
+   * through a concurrent map. Referenced objects are not affected, neither are the object and
+   * generation numbers, which are assigned before an object is published.
+   * <p>
+   * Freezing can't be undone. Numbers, names, references, booleans and null are immutable anyway.
+   * As their instances are shared, e.g. the small integers or the registered names, freezing leaves
+   * them untouched. Only the types which can be modified carry the frozen state, see
+   * {@link DSFreezableObject}.
+   */
+  public void freeze() {
+    // immutable
+  }
+
+  /**
+   * @return whether this object is read-only: {@link #freeze()} has been called on this object or a
+   *         container holding it or the object is immutable anyway
+   */
+  public boolean isFrozen() {
+    return true;
+  }
+
   /**
    * returns <code>true</code> if the object is representing an object of type {@link DSNumber}
    *
@@ -24,6 +24,15 @@ public DSRectangle(DSArray array) {
     if (array == null) {
       throw new IllegalArgumentException("rectangle array must not be null");
     }
+    if (array instanceof DSNumericArray && ((DSNumericArray) array).isPacked() && array.size() >= 4) {
+      // fast path: read the packed values directly
+      final DSNumericArray numbers = (DSNumericArray) array;
+      lowerLeft = new Point2D.Double(numbers.getDouble(0), numbers.getDouble(1));
+      upperRight = new Point2D.Double(numbers.getDouble(2), numbers.getDouble(3));
+      initializeUndefinedPoints();
+      return;
+    }
+
     final Iterator<DSObject> iter = array.iterator();
 
     lowerLeft = new Point2D.Double(nextOrDefault(iter), nextOrDefault(iter));
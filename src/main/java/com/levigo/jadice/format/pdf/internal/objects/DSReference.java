@@ -83,6 +83,4 @@ && getReferencedGenerationNumber() > ref.getReferencedGenerationNumber()) {
   public int hashCode() {
     return (int) objectNumber;
   }
-
-
 }
@@ -2,7 +2,7 @@
 
 import com.levigo.jadice.document.io.SeekableInputStream;
 
-public class DSStream extends DSObject {
+public class DSStream extends DSFreezableObject {
 
   /**
    * contains the Dictionary for the stream
@@ -31,6 +31,11 @@ public DSDictionary getDictionary() {
     return this.dictionary;
   }
 
+  @Override
+  protected void freezeContents() {
+    dictionary.freeze();
+  }
+
   public SeekableInputStream getSourceStream() {
     return streamFactory.createStream();
   }
@@ -5,7 +5,7 @@
 import com.levigo.jadice.document.io.ByteUtils;
 import com.levigo.jadice.format.pdf.internal.parsing.PDFDocEncoding;
 
-public abstract class DSString extends DSObject implements Comparable<DSString> {
+public abstract class DSString extends DSFreezableObject implements Comparable<DSString> {
   private static char[] decodeUTF(byte[] rawData, boolean bigEndian) {
     rawData = ByteUtils.doShortAlignment(rawData);
 
@@ -31,17 +31,32 @@ public DSString(byte[] rawData) {
     this.rawData = rawData;
   }
 
+  /**
+   * @return the number of raw bytes
+   */
+  public int getLength() {
+    return rawData.length;
+  }
+
   @Override
   public final boolean isString() {
     return true;
   }
 
   /**
-   * Use this method for strings which are marked "byte string" in the PDF Specifications.
+   * Use this method for strings which are marked "byte string" in the PDF Specifications. Once the
+   * string is frozen, a copy is returned.
    *
    * @return raw byte values
    */
   public byte[] getRawData() {
+    return isFrozen() ? rawData.clone() : rawData;
+  }
+
+  /**
+   * @return the raw byte values without copying them. They must not be modified.
+   */
+  final byte[] rawData() {
     return rawData;
   }
 
@@ -0,0 +1,174 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+/**
+ * The registry of well-known PDF names. Every well-known name has a stable id, its index in
+ * {@link #NAMES}, and a single canonical {@link DSNameObject} instance, see
+ * {@link DSNameObject#valueOf(String)}. Names can be looked up by <code>String</code> and by their
+ * raw bytes without allocating.
+ * <p>
+ * The registry is immutable, so lookups are lock-free. New names must only ever be appended to
+ * {@link #NAMES}, to keep the ids stable.
+ */
+public final class NameRegistry {
+
+  /**
+   * the id of names not registered
+   */
+  public static final int UNREGISTERED = -1;
+
+  private static final String[] NAMES = {
+      // the constants of DSNameObject
+      "Type", "Filter", "BitsPerComponent", "ColorSpace", "Decode", "DecodeParms", "Height", "Width", "DeviceGray",
+      "DeviceRGB", "DeviceCMYK", "Indexed", "ICCBased", "ASCIIHexDecode", "ASCII85Decode", "LZWDecode", "FlateDecode",
+      "CCITTFaxDecode", "DCTDecode", "RunLengthDecode", "CalRGB", "CalGray", "Font", "FontName", "FontFamily", "Flags",
+      "FontBBox", "FontMatrix", "Leading", "Separation", "Differences", "FontDescriptor", "Subtype", "Pattern",
+      "ExtGState",
+      // file structure
+      "Size", "Prev", "Root", "Encrypt", "Info", "ID", "XRefStm", "XRef", "Index", "W", "ObjStm", "N", "First",
+      "Extends", "Length", "F", "DL", "FFilter", "FDecodeParms", "DP", "Linearized",
+      // filters and decode parameters
+      "AHx", "A85", "LZW", "Fl", "RL", "CCF", "DCT", "JBIG2Decode", "JPXDecode", "Crypt", "Predictor", "Colors",
+      "Columns", "EarlyChange", "K", "EndOfLine", "EncodedByteAlign", "Rows", "EndOfBlock", "BlackIs1",
+      "DamagedRowsBeforeError", "ColorTransform", "JBIG2Globals", "Name", "Identity",
+      // encryption
+      "Standard", "V", "R", "O", "U", "OE", "UE", "P", "Perms", "EncryptMetadata", "CF", "StmF", "StrF", "EFF", "CFM",
+      "StdCF", "AuthEvent", "None", "V2", "AESV2", "AESV3", "DocOpen", "Metadata", "CryptFilterDecodeParms",
+      // document catalog and page tree
+      "Catalog", "Version", "Pages", "PageLabels", "Names", "Dests", "ViewerPreferences", "PageLayout", "PageMode",
+      "Outlines", "Threads", "OpenAction", "AA", "URI", "AcroForm", "StructTreeRoot", "MarkInfo", "Lang",
+      "SpiderInfo", "OutputIntents", "PieceInfo", "OCProperties", "Legal", "Requirements", "Collection",
+      "NeedsRendering", "Page", "Parent", "Kids", "Count", "LastModified", "Resources", "MediaBox", "CropBox",
+      "BleedBox", "TrimBox", "ArtBox", "BoxColorInfo", "Contents", "Rotate", "Group", "Thumb", "B", "Dur", "Trans",
+      "Annots", "StructParents", "PZ", "SeparationInfo", "Tabs", "TemplateInstantiated", "PresSteps", "UserUnit",
+      "VP",
+      // resources
+      "XObject", "Shading", "ProcSet", "Properties", "PDF", "Text", "ImageB", "ImageC", "ImageI", "Form", "Image",
+      "PS", "BBox", "Matrix", "Ref", "OPI", "OC", "ImageMask", "Mask", "SMask", "SMaskInData", "Interpolate",
+      "Alternates", "Intent", "StructParent", "Transparency", "CS", "I", "S",
+      // colour spaces and patterns
+      "Lab", "DeviceN", "WhitePoint", "BlackPoint", "Gamma", "Range", "Alternate", "PatternType", "ShadingType",
+      "PaintType", "TilingType", "XStep", "YStep", "Background", "AntiAlias", "Coords", "Domain", "Extend",
+      "Function", "Functions", "FunctionType", "C0", "C1", "Bounds", "Encode", "Order", "BitsPerSample",
+      "BitsPerCoordinate", "BitsPerFlag", "VerticesPerRow",
+      // graphics state
+      "LW", "LC", "LJ", "ML", "D", "RI", "OP", "op", "OPM", "BG", "BG2", "UCR", "UCR2", "TR", "TR2", "HT", "FL",
+      "SM", "SA", "BM", "CA", "ca", "AIS", "TK", "Normal", "Multiply", "Screen", "Overlay", "Darken", "Lighten",
+      "ColorDodge", "ColorBurn", "HardLight", "SoftLight", "Difference", "Exclusion", "Hue", "Saturation", "Color",
+      "Luminosity", "Alpha", "G", "BC", "Default",
+      // fonts
+      "Type0", "Type1", "MMType1", "Type3", "TrueType", "CIDFontType0", "CIDFontType2", "BaseFont", "FirstChar",
+      "LastChar", "Widths", "Encoding", "ToUnicode", "DescendantFonts", "CIDSystemInfo", "Registry", "Ordering",
+      "Supplement", "DW", "DW2", "W2", "CIDToGIDMap", "BaseEncoding", "StandardEncoding", "MacRomanEncoding",
+      "WinAnsiEncoding", "MacExpertEncoding", "CharProcs", "FontStretch", "FontWeight", "ItalicAngle", "Ascent",
+      "Descent", "CapHeight", "XHeight", "StemV", "StemH", "AvgWidth", "MaxWidth", "MissingWidth", "FontFile",
+      "FontFile2", "FontFile3", "CharSet", "Style", "CIDSet", "Type1C", "CIDFontType0C", "OpenType", "UseCMap",
+      "CMap", "CMapName", "WMode",
+      // annotations and forms
+      "Annot", "Rect", "NM", "M", "AP", "AS", "Border", "C", "Link", "Widget", "Popup", "FreeText", "Square",
+      "Circle", "Highlight", "Underline", "StrikeOut", "Stamp", "Ink", "FileAttachment", "Dest", "A", "H", "QuadPoints",
+      "Fields", "FT", "T", "TU", "TM", "Ff", "DA", "DR", "Q", "MK", "Opt", "Tx", "Btn", "Ch", "Sig", "Off", "On",
+      "NeedAppearances", "SigFlags", "CO", "XFA", "Action", "GoTo", "GoToR", "Launch", "JavaScript", "JS", "Next",
+      "Named", "SubmitForm", "ResetForm", "Title", "Author", "Subject", "Keywords", "Creator", "Producer",
+      "CreationDate", "ModDate", "Trapped", "Last", "Mark", "Marked", "Nums", "St", "XYZ", "Fit", "FitH", "FitV",
+      "FitR", "FitB", "FitBH", "FitBV", "EmbeddedFile", "EmbeddedFiles", "Filespec", "EF", "UF", "Params",
+      "MCID", "Artifact", "Span", "ActualText", "Alt", "E", "OCG", "OCGs", "OCMD", "Usage", "Print", "View", "ON",
+      "OFF", "BaseState", "Event"
+  };
+
+  /**
+   * open addressing hash table of ids plus one, 0 marking empty slots
+   */
+  private static final int[] TABLE;
+  private static final int MASK;
+
+  static {
+    final int capacity = Integer.highestOneBit(NAMES.length * 4);
+    TABLE = new int[capacity];
+    MASK = capacity - 1;
+    for (int id = 0; id < NAMES.length; id++) {
+      if (idOf(NAMES[id]) != UNREGISTERED)
+        throw new IllegalStateException("Duplicate well-known name " + NAMES[id]);
+      int slot = NAMES[id].hashCode() & MASK;
+      while (TABLE[slot] != 0)
+        slot = slot + 1 & MASK;
+      TABLE[slot] = id + 1;
+    }
+  }
+
+  private NameRegistry() {
+    // no instantiation -- only static methods
+  }
+
+  /**
+   * @return the number of registered names. Ids range from 0 to <code>size() - 1</code>.
+   */
+  public static int size() {
+    return NAMES.length;
+  }
+
+  /**
+   * @return the name with the given id
+   */
+  public static String nameOf(int id) {
+    return NAMES[id];
+  }
+
+  /**
+   * @param name the name without leading slash
+   * @return the id of the name or {@link #UNREGISTERED}
+   */
+  public static int idOf(String name) {
+    final int hash = name.hashCode();
+    for (int slot = hash & MASK;; slot = slot + 1 & MASK) {
+      final int entry = TABLE[slot];
+      if (entry == 0)
+        return UNREGISTERED;
+      final String candidate = NAMES[entry - 1];
+      if (candidate.hashCode() == hash && candidate.equals(name))
+        return entry - 1;
+    }
+  }
+
+  /**
+   * @return the id of the name with the given raw bytes or {@link #UNREGISTERED}
+   */
+  public static int idOf(byte[] bytes, int offset, int length) {
+    return idOf(bytes, offset, length, hash(bytes, offset, length));
+  }
+
+  /**
+   * Look up the name with the given raw bytes, whose hash has already been computed, e.g. while
+   * lexing.
+   *
+   * @param hash the hash of the bytes as computed by {@link #hash(byte[], int, int)}
+   * @return the id of the name or {@link #UNREGISTERED}
+   */
+  public static int idOf(byte[] bytes, int offset, int length, int hash) {
+    for (int slot = hash & MASK;; slot = slot + 1 & MASK) {
+      final int entry = TABLE[slot];
+      if (entry == 0)
+        return UNREGISTERED;
+      final String name = NAMES[entry - 1];
+      if (name.length() == length && name.hashCode() == hash && matches(name, bytes, offset))
+        return entry - 1;
+    }
+  }
+
+  /**
+   * Compute the hash of the raw bytes of a name. For names consisting of ASCII characters, which
+   * all registered names do, the hash equals {@link String#hashCode()} of the name.
+   */
+  public static int hash(byte[] bytes, int offset, int length) {
+    int h = 0;
+    for (int i = offset; i < offset + length; i++)
+      h = 31 * h + (bytes[i] & 0xff);
+    return h;
+  }
+
+  private static boolean matches(String name, byte[] bytes, int offset) {
+    for (int i = 0; i < name.length(); i++)
+      if (name.charAt(i) != (bytes[offset + i] & 0xff))
+        return false;
+    return true;
+  }
+}
@@ -4,6 +4,7 @@
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +88,32 @@ public byte[] getStringToken() {
     }
   }
 
+  /**
+   * A name token carrying the name object resolved while lexing.
+   */
+  protected static class NameToken extends Token {
+    private final DSNameObject name;
+
+    public NameToken(DSNameObject name) {
+      super(TokenTypesPDF.NAME);
+      this.name = name;
+    }
+
+    public DSNameObject getName() {
+      return name;
+    }
+
+    @Override
+    public Number getNumberToken() {
+      return null;
+    }
+
+    @Override
+    public byte[] getStringToken() {
+      return name.getName().getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
   protected class PDFTokenProvider implements StatefulTokenProvider {
     private final ArrayQueue<Token> queue;
 
@@ -347,11 +374,29 @@ protected static byte[] resizeByteArray(byte[] src, int newSize) {
   protected final ConcurrentSeekableLookaheadStream lookaheadStream;
   private PDFTokenProvider tokenProvider;
 
+  private NameCache nameCache = NameCache.getSharedInstance();
+  /**
+   * the bytes of the name being lexed
+   */
+  private byte[] nameBuffer = new byte[64];
+
   protected AbstractPDFLexer(SeekableInputStream source) {
     super(false); // no tokenprovider validation needed
     lookaheadStream = new ConcurrentSeekableLookaheadStream(source, 1024);
   }
 
+  /**
+   * Set the cache resolving the names found by this lexer, e.g. to use one cache per document
+   * instead of the shared one.
+   */
+  public void setNameCache(NameCache nameCache) {
+    this.nameCache = nameCache;
+  }
+
+  public NameCache getNameCache() {
+    return nameCache;
+  }
+
   @Override
   protected PDFTokenProvider getTokenProvider() {
     if (tokenProvider == null) {
@@ -586,7 +631,8 @@ protected StringToken nextLiteralString() throws IOException {
    * @throws IOException in case of I/O Errors
    */
   protected Token nextNameObject() throws IOException {
-    final ByteArrayOutputStream buff = new ByteArrayOutputStream();
+    int length = 0;
+    int hash = 0;
 
     lookaheadStream.consume(1);
     // as there are so many ugly pdf files we've got to make
@@ -602,27 +648,31 @@ protected Token nextNameObject() throws IOException {
         && !isNameObjectBegin(c) // is a name object following?
         && !isCommentChar(c) // some comment?
         ) {
+      final int b;
       if (c == '#') {
         final int p1 = lookaheadStream.lookahead(2);
         final int p2 = lookaheadStream.lookahead(3);
         if (isHexDigit(p1) && isHexDigit(p2)) {
-
-          buff.write(hexToBytes(new byte[]{(byte) p1, (byte) p2
-          }));
+          b = Character.digit(p1, 16) << 4 | Character.digit(p2, 16);
           lookaheadStream.consume(3);
-
         } else {
           // not a valid hex string. Appending the #-Character and proceeding
-          buff.write('#');
+          b = '#';
           lookaheadStream.consume(1);
         }
       } else {
         lookaheadStream.consume(1);
-        buff.write(c);
+        b = c;
       }
+
+      if (length == nameBuffer.length)
+        nameBuffer = resizeByteArray(nameBuffer, length * 2);
+      nameBuffer[length++] = (byte) b;
+      // the same hash as NameRegistry.hash()
+      hash = 31 * hash + (b & 0xff);
     }
 
-    return new StringToken(TokenTypesPDF.NAME, buff.toByteArray());
+    return new NameToken(nameCache.get(nameBuffer, length, hash));
   }
 
   /**
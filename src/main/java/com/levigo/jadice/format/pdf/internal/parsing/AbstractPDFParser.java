@@ -15,14 +15,17 @@
 import com.levigo.jadice.format.pdf.internal.crypt.StringDecryptor;
 import com.levigo.jadice.format.pdf.internal.objects.DSArray;
 import com.levigo.jadice.format.pdf.internal.objects.DSBoolean;
-import com.levigo.jadice.format.pdf.internal.objects.DSCommonDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSCompactDictionary;
 import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
 import com.levigo.jadice.format.pdf.internal.objects.DSHexString;
+import com.levigo.jadice.format.pdf.internal.objects.DSInteger;
 import com.levigo.jadice.format.pdf.internal.objects.DSLiteralString;
 import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
 import com.levigo.jadice.format.pdf.internal.objects.DSNullObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSNumericArray;
 import com.levigo.jadice.format.pdf.internal.objects.DSObject;
 import com.levigo.jadice.format.pdf.internal.objects.DSReal;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
 import com.levigo.jadice.format.ps.internal.Token;
 import com.levigo.jadice.format.ps.internal.TokenProvider;
 import com.levigo.jadice.format.ps.internal.TokenTypes;
@@ -121,10 +124,10 @@ protected DSObject parseObjectInternal(Token token, long objectNumber, int gener
           // just remove the trailing 'R' token
           lexer.getNextToken();
 
-          return ref(token.getNumberToken().longValue(), genNum);
+          return reference(token.getNumberToken().longValue(), genNum);
         }
 
-        return integer(token.getNumberToken().longValue());
+        return DSInteger.valueOf(token.getNumberToken().longValue());
       }
 
       // it may only be a real if it hasn't been an int
@@ -149,13 +152,20 @@ protected DSArray parseArray(long objectNumber, int generationNumber) throws IOE
 
     final DSArray a = new DSArray();
     Token t;
+    boolean numeric = true;
 
     while (!(t = lexer.getNextToken()).isOfType(TokenTypesPDF.ARRAY_END) && !t.isOfType(TokenTypes.TOKEN_TYPE_EOF)) {
 
-      a.add(parseObjectInternal(t, objectNumber, generationNumber));
+      final DSObject o = parseObjectInternal(t, objectNumber, generationNumber);
+      numeric &= o instanceof DSInteger || o instanceof DSReal;
+      a.add(o);
 
     }
 
+    // arrays of numbers only are kept in packed form
+    if (numeric && !a.isEmpty())
+      return DSNumericArray.pack(a);
+
     return a;
   }
 
@@ -170,7 +180,7 @@ protected DSArray parseArray(long objectNumber, int generationNumber) throws IOE
    * @throws PDFSecurityException
    */
   public DSDictionary parseDictionary(long objectNumber, int generationNumber) throws IOException {
-    final DSDictionary d = new DSCommonDictionary();
+    final DSDictionary d = new DSCompactDictionary();
     Token t;
     while (!(t = lexer.getNextToken()).isOfType(TokenTypesPDF.DICTIONARY_END) && !t.isOfType(
         TokenTypes.TOKEN_TYPE_EOF)) {
@@ -183,8 +193,18 @@ public DSDictionary parseDictionary(long objectNumber, int generationNumber) thr
     return d;
   }
 
+  /**
+   * Create the {@link DSReference} for an <code>N G R</code> triple. Subclasses knowing the
+   * document's cross reference table return canonical instances.
+   */
+  protected DSReference reference(long objectNumber, int generationNumber) {
+    return ref(objectNumber, generationNumber);
+  }
+
   protected DSNameObject parseName(Token t) {
     assertTokenType(t, TokenTypesPDF.NAME);
+    if (t instanceof AbstractPDFLexer.NameToken)
+      return ((AbstractPDFLexer.NameToken) t).getName();
     return name(t.getStringToken());
   }
 
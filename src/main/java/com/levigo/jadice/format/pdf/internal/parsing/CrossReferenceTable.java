@@ -2,6 +2,7 @@
 
 import static com.levigo.jadice.format.pdf.internal.objects.DS.ref;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,9 +12,20 @@
 
 public class CrossReferenceTable implements IObjectLocator {
 
+  /**
+   * references to object numbers beyond this aren't canonicalized, to keep a damaged table from
+   * allocating huge arrays
+   */
+  private static final long MAX_CANONICAL_OBJECT_NUMBER = 1 << 22;
+
   private final Map<DSReference, Location> locations;
   private CrossReferenceTable prev;
 
+  /**
+   * the canonical reference instances indexed by object number
+   */
+  private DSReference[] references = new DSReference[0];
+
   public CrossReferenceTable(int initialSize) {
     locations = new HashMap<>(initialSize + 5);
   }
@@ -39,11 +51,62 @@ public Location locate(DSReference ref) {
 
   @Override
   public Location locate(long objectNumber, int generationNumber) {
-    return locate(ref(objectNumber, generationNumber));
+    return locate(getReference(objectNumber, generationNumber));
+  }
+
+  /**
+   * Return the canonical {@link DSReference} for the given object and generation number. Every
+   * object registered in this table or one of its predecessors is referenced by a single instance;
+   * references to objects of the same update which are not registered are canonicalized as they
+   * are requested. The instances are immutable and may be shared freely, lost updates under
+   * concurrent use merely create an additional instance.
+   */
+  @Override
+  public DSReference getReference(long objectNumber, int generationNumber) {
+    for (CrossReferenceTable t = this; t != null; t = t.prev) {
+      final DSReference[] refs = t.references;
+      if (objectNumber >= 0 && objectNumber < refs.length) {
+        final DSReference r = refs[(int) objectNumber];
+        if (r != null && r.getReferencedGenerationNumber() == generationNumber)
+          return r;
+      }
+    }
+
+    final DSReference r = ref(objectNumber, generationNumber);
+    if (objectNumber >= 0 && objectNumber < references.length && references[(int) objectNumber] == null)
+      references[(int) objectNumber] = r;
+    return r;
+  }
+
+  /**
+   * Check whether the given reference is the canonical instance held by this table or one of its
+   * predecessors. Unlike {@link #getReference(long, int)}, this never registers anything.
+   */
+  public boolean isCanonical(DSReference ref) {
+    final long objectNumber = ref.getReferencedObjectNumber();
+    for (CrossReferenceTable t = this; t != null; t = t.prev) {
+      final DSReference[] refs = t.references;
+      if (objectNumber >= 0 && objectNumber < refs.length && refs[(int) objectNumber] == ref)
+        return true;
+    }
+    return false;
   }
 
   public void add(long objectNumber, int generationNumber, Location location) {
-    locations.put(ref(objectNumber, generationNumber), location);
+    final DSReference r = ref(objectNumber, generationNumber);
+    if (objectNumber >= 0 && objectNumber < MAX_CANONICAL_OBJECT_NUMBER) {
+      if (objectNumber >= references.length)
+        references = Arrays.copyOf(references, (int) Math.max(objectNumber + 1, references.length * 3L / 2));
+      references[(int) objectNumber] = r;
+    }
+    locations.put(r, location);
+  }
+
+  /**
+   * @return the length of the table of canonical references of this update
+   */
+  public int getReferenceTableLength() {
+    return references.length;
   }
 
   public Set<DSReference> getRegistered() {
@@ -78,4 +78,10 @@ public boolean equals(Object obj) {
   Location locate(DSReference ref);
 
   Location locate(long objectNumber, int generationNumber);
+
+  /**
+   * @return a {@link DSReference} to the given object, shared with other references to the same
+   *         object where possible
+   */
+  DSReference getReference(long objectNumber, int generationNumber);
 }
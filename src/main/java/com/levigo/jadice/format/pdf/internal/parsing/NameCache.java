@@ -0,0 +1,104 @@
+package com.levigo.jadice.format.pdf.internal.parsing;
+
+import java.nio.charset.StandardCharsets;
+
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.NameRegistry;
+
+/**
+ * A bounded cache of {@link DSNameObject}s keyed by the raw bytes of the names as found in the
+ * document. The lexer computes the hash of a name while reading it, so that a name seen before is
+ * resolved to its {@link DSNameObject} without creating a <code>String</code> and without the JVM
+ * wide string table behind {@link String#intern()}.
+ * <p>
+ * The cache is direct mapped: a name replaces the one cached in its slot. Entries are immutable,
+ * so that the cache can be shared by concurrently parsed documents without locking; a lost update
+ * merely costs a miss later on. Registered names always resolve to their canonical instance, see
+ * {@link NameRegistry}.
+ */
+public final class NameCache {
+
+  private static final int DEFAULT_SIZE = 4096;
+
+  /**
+   * names longer than this aren't cached, they are rare and unlikely to repeat
+   */
+  private static final int MAX_NAME_LENGTH = 64;
+
+  private static final NameCache SHARED = new NameCache(DEFAULT_SIZE);
+
+  private static final class Entry {
+    final byte[] bytes;
+    final int hash;
+    final DSNameObject name;
+
+    Entry(byte[] bytes, int hash, DSNameObject name) {
+      this.bytes = bytes;
+      this.hash = hash;
+      this.name = name;
+    }
+  }
+
+  private final Entry[] entries;
+  private final int mask;
+
+  /**
+   * @param size the number of names cached, rounded up to a power of two
+   */
+  public NameCache(int size) {
+    int capacity = 16;
+    while (capacity < size)
+      capacity <<= 1;
+    entries = new Entry[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * @return the cache shared by all lexers not configured otherwise
+   */
+  public static NameCache getSharedInstance() {
+    return SHARED;
+  }
+
+  /**
+   * Resolve the name with the given raw bytes.
+   *
+   * @param bytes  the buffer holding the name, without the leading slash and with
+   *               <code>#</code>-escapes already decoded
+   * @param length the length of the name
+   * @param hash   the hash of the name as computed by {@link NameRegistry#hash(byte[], int, int)}
+   * @return the name object
+   */
+  public DSNameObject get(byte[] bytes, int length, int hash) {
+    final int id = NameRegistry.idOf(bytes, 0, length, hash);
+    if (id != NameRegistry.UNREGISTERED)
+      return DSNameObject.valueOf(id);
+
+    if (length > MAX_NAME_LENGTH)
+      return new DSNameObject(decode(bytes, length));
+
+    final int slot = (hash ^ hash >>> 16) & mask;
+    final Entry entry = entries[slot];
+    if (entry != null && entry.hash == hash && matches(entry.bytes, bytes, length))
+      return entry.name;
+
+    final byte[] copy = new byte[length];
+    System.arraycopy(bytes, 0, copy, 0, length);
+    final DSNameObject name = new DSNameObject(decode(bytes, length));
+    entries[slot] = new Entry(copy, hash, name);
+    return name;
+  }
+
+  private static String decode(byte[] bytes, int length) {
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private static boolean matches(byte[] cached, byte[] bytes, int length) {
+    if (cached.length != length)
+      return false;
+    for (int i = 0; i < length; i++)
+      if (cached[i] != bytes[i])
+        return false;
+    return true;
+  }
+}
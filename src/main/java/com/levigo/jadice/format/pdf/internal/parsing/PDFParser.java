@@ -11,8 +11,10 @@
 import com.levigo.jadice.format.pdf.internal.DefaultReferenceResolver;
 import com.levigo.jadice.format.pdf.internal.PDFFilterFactory;
 import com.levigo.jadice.format.pdf.internal.crypt.SecurityHandler;
+import com.levigo.jadice.format.pdf.internal.objects.DSBoolean;
 import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
 import com.levigo.jadice.format.pdf.internal.objects.DSInteger;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
 import com.levigo.jadice.format.pdf.internal.objects.DSObject;
 import com.levigo.jadice.format.pdf.internal.objects.DSReference;
 import com.levigo.jadice.format.pdf.internal.objects.DSStream;
@@ -47,6 +49,8 @@ public SeekableInputStream createStream() {
 
   private PDFFilterFactory filterFactory;
 
+  private boolean freezeObjects;
+
   public PDFParser(IPDFLexer lexer, IObjectLocator locator, SecurityHandler securityHandler,
       PDFFilterFactory filterFactory, boolean objectStreamContext) {
     super(lexer);
@@ -68,6 +72,26 @@ public PDFParser(IPDFLexer lexer, IObjectLocator locator, SecurityHandler securi
     filterFactory = new PDFFilterFactory(new DefaultReferenceResolver(this), securityHandler);
   }
 
+  /**
+   * Whether the objects returned by {@link #parseObject(long, int)} are frozen, see
+   * {@link DSObject#freeze()}. Frozen objects can be cached and handed to concurrent readers
+   * without copying.
+   */
+  public void setFreezeObjects(boolean freezeObjects) {
+    this.freezeObjects = freezeObjects;
+  }
+
+  public boolean isFreezeObjects() {
+    return freezeObjects;
+  }
+
+  /**
+   * @return the filter factory used to decode object streams
+   */
+  public PDFFilterFactory getFilterFactory() {
+    return filterFactory;
+  }
+
   @Override
   public DSObject parseObjectAt(long offset) throws IOException, RuntimeException {
     lexer.seek(offset);
@@ -105,7 +129,7 @@ public DSObject parseObjectBody(final long objectNumber, final int generationNum
     // here comes the fun part. Parse the actual object body
     Token token = lexer.getNextToken();
 
-    final DSObject o;
+    DSObject o;
     // start with the most common case: a dictionary declared as an indirect object. This is a
     // shortcut to make processing faster. The same will be declared in parseObject
     if (token.isOfType(TokenTypesPDF.DICTIONARY_BEGIN)) {
@@ -120,6 +144,7 @@ public DSObject parseObjectBody(final long objectNumber, final int generationNum
     }
 
     // apply object reference data
+    o = unshare(o);
     o.setThisObjectsObjectNumber(objectNumber);
     o.setThisObjectsGenerationNumber(generationNumber);
 
@@ -218,7 +243,10 @@ public DSObject parseObjectBody(final long objectNumber, final int generationNum
   @Override
   public DSObject parseObject(long objectNumber, int generationNumber) throws IOException {
     final Location location = locator.locate(objectNumber, generationNumber);
-    return parseObject(objectNumber, generationNumber, location, true);
+    final DSObject res = parseObject(objectNumber, generationNumber, location, true);
+    if (freezeObjects && res != null)
+      res.freeze();
+    return res;
   }
 
   private DSObject parseObject(long objectNumber, int generationNumber, Location location, boolean useHeuristic)
@@ -287,6 +315,29 @@ private DSObject parseObject(long objectNumber, int generationNumber, Location l
   // }
   // }
 
+  /**
+   * Shared instances, like the names resolved by the {@link NameCache}, the small integers and the
+   * canonical references, must not carry the number of an indirect object: replace them by a copy.
+   */
+  private static DSObject unshare(DSObject o) {
+    if (o instanceof DSNameObject)
+      return new DSNameObject(((DSNameObject) o).getName());
+    if (o instanceof DSInteger && ((DSInteger) o).isShared())
+      return new DSInteger(((DSInteger) o).getValue());
+    if (o instanceof DSBoolean)
+      return new DSBoolean(((DSBoolean) o).getValue());
+    if (o instanceof DSReference) {
+      final DSReference r = (DSReference) o;
+      return new DSReference(r.getReferencedObjectNumber(), r.getReferencedGenerationNumber());
+    }
+    return o;
+  }
+
+  @Override
+  protected DSReference reference(long objectNumber, int generationNumber) {
+    return locator.getReference(objectNumber, generationNumber);
+  }
+
   private DSObject parseObject(long objectNumber, int generationNumber, DSObject res, int delta) throws IOException {
     Location location;
     if (res != null)
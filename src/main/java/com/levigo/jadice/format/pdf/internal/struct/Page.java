@@ -0,0 +1,69 @@
+package com.levigo.jadice.format.pdf.internal.struct;
+
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSRectangle;
+
+/**
+ * A flattened view of a page: the page dictionary together with the effective values of the
+ * attributes inherited through the page tree, see {@link PageAttributeResolver}. The boxes belong to
+ * this page alone, whereas the dictionaries are those of the document and shared with other pages.
+ */
+public final class Page extends AbstractStructureObject<DSDictionary> {
+
+  private final DSDictionary resources;
+  private final DSRectangle mediaBox;
+  private final DSRectangle cropBox;
+  private final int rotate;
+
+  Page(DSDictionary pageDict, DSDictionary resources, DSRectangle mediaBox, DSRectangle cropBox, int rotate) {
+    super(pageDict);
+    this.resources = resources;
+    this.mediaBox = mediaBox;
+    this.cropBox = cropBox;
+    this.rotate = rotate;
+  }
+
+  /**
+   * @return the page dictionary
+   */
+  public DSDictionary getDictionary() {
+    return baseObject;
+  }
+
+  /**
+   * The resource dictionary is not copied: an inherited one is the same instance for all pages
+   * below the node defining it, and changes to it affect all of them.
+   *
+   * @return the effective resource dictionary or <code>null</code> if the page doesn't have one
+   */
+  public DSDictionary getResources() {
+    return resources;
+  }
+
+  /**
+   * @return the effective media box. Pages without one are assumed to be US letter sized.
+   */
+  public DSRectangle getMediaBox() {
+    return mediaBox;
+  }
+
+  /**
+   * @return the effective crop box, defaulting to the media box
+   */
+  public DSRectangle getCropBox() {
+    return cropBox;
+  }
+
+  /**
+   * @return the effective rotation in degrees, one of 0, 90, 180 or 270
+   */
+  public int getRotate() {
+    return rotate;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + baseObject.objectNumber() + " " + baseObject.generationNumber()
+        + ", mediaBox=" + mediaBox + ", rotate=" + rotate + "]";
+  }
+}
@@ -0,0 +1,158 @@
+package com.levigo.jadice.format.pdf.internal.struct;
+
+import java.awt.geom.Point2D;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.levigo.jadice.format.pdf.internal.ReferenceResolver;
+import com.levigo.jadice.format.pdf.internal.Utils;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSNumber;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSRectangle;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+
+/**
+ * Resolves the attributes a page inherits through the page tree: <code>/Resources</code>,
+ * <code>/MediaBox</code>, <code>/CropBox</code> and <code>/Rotate</code>. The effective values are
+ * computed once per intermediate <code>/Pages</code> node, based on those of its parent, and
+ * shared by all pages below it. Looking up a page therefore only costs the page's own entries,
+ * independent of the depth of the tree. As {@link DSRectangle}s are mutable, each page gets its own
+ * copies of the boxes.
+ * <p>
+ * The resolver is thread safe. Nodes are cached by reference, as they are parsed anew on every
+ * resolution.
+ */
+public class PageAttributeResolver {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PageAttributeResolver.class);
+
+  /**
+   * the size of the default media box for pages not specifying one: US letter
+   */
+  static final double DEFAULT_WIDTH = 612;
+  static final double DEFAULT_HEIGHT = 792;
+
+  /**
+   * page trees deeper than this are considered cyclic
+   */
+  private static final int MAX_DEPTH = 256;
+
+  private static final DSNameObject RESOURCES = DSNameObject.valueOf("Resources");
+  private static final DSNameObject MEDIA_BOX = DSNameObject.valueOf("MediaBox");
+  private static final DSNameObject CROP_BOX = DSNameObject.valueOf("CropBox");
+  private static final DSNameObject ROTATE = DSNameObject.valueOf("Rotate");
+  private static final DSNameObject PARENT = DSNameObject.valueOf("Parent");
+
+  /**
+   * The effective inheritable attributes of a page tree node. Immutable.
+   */
+  private static final class Inherited {
+    static final Inherited ROOT = new Inherited(null, null, null, 0);
+
+    final DSDictionary resources;
+    final DSRectangle mediaBox;
+    final DSRectangle cropBox;
+    final int rotate;
+
+    Inherited(DSDictionary resources, DSRectangle mediaBox, DSRectangle cropBox, int rotate) {
+      this.resources = resources;
+      this.mediaBox = mediaBox;
+      this.cropBox = cropBox;
+      this.rotate = rotate;
+    }
+  }
+
+  private final ReferenceResolver resolver;
+  private final Map<DSReference, Inherited> nodes = new ConcurrentHashMap<>();
+
+  public PageAttributeResolver(ReferenceResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  /**
+   * Create the flattened view of the given page.
+   *
+   * @param pageDict the page dictionary
+   * @return the page
+   */
+  public Page getPage(DSDictionary pageDict) {
+    final Inherited inherited = derive(parentOf(pageDict, 0), pageDict);
+    final DSRectangle mediaBox = inherited.mediaBox != null
+        ? copy(inherited.mediaBox)
+        : DS.rect(0, 0, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    final DSRectangle cropBox = copy(inherited.cropBox != null ? inherited.cropBox : mediaBox);
+    return new Page(pageDict, inherited.resources, mediaBox, cropBox, inherited.rotate);
+  }
+
+  /**
+   * @return the number of intermediate nodes whose attributes are cached
+   */
+  public int getCachedNodeCount() {
+    return nodes.size();
+  }
+
+  private Inherited parentOf(DSDictionary node, int depth) {
+    final DSObject parent = node.getNamedEntryValue(PARENT);
+    if (parent == null)
+      return Inherited.ROOT;
+
+    if (depth >= MAX_DEPTH) {
+      LOGGER.warn("Page tree exceeds {} levels, probably due to a cycle. Ignoring inherited attributes.", MAX_DEPTH);
+      return Inherited.ROOT;
+    }
+
+    if (!(parent instanceof DSReference)) {
+      // direct parent dictionaries are invalid, but cheap to handle
+      final DSDictionary parentDict = Utils.getDictionary(parent);
+      return parentDict != null ? derive(parentOf(parentDict, depth + 1), parentDict) : Inherited.ROOT;
+    }
+
+    final DSReference ref = (DSReference) parent;
+    Inherited inherited = nodes.get(ref);
+    if (inherited == null) {
+      final DSDictionary parentDict = resolver.resolveDictionary(ref);
+      if (parentDict == null)
+        return Inherited.ROOT;
+      inherited = derive(parentOf(parentDict, depth + 1), parentDict);
+      // concurrent computations yield equal results, keep the first
+      final Inherited existing = nodes.putIfAbsent(ref, inherited);
+      if (existing != null)
+        inherited = existing;
+    }
+    return inherited;
+  }
+
+  private Inherited derive(Inherited parent, DSDictionary node) {
+    if (node.getNamedEntryValue(RESOURCES) == null && node.getNamedEntryValue(MEDIA_BOX) == null
+        && node.getNamedEntryValue(CROP_BOX) == null && node.getNamedEntryValue(ROTATE) == null)
+      return parent;
+
+    final DSDictionary resources = resolver.resolveDictionary(node, RESOURCES);
+    final DSRectangle mediaBox = resolver.resolveRectangle(node, MEDIA_BOX);
+    final DSRectangle cropBox = resolver.resolveRectangle(node, CROP_BOX);
+    final DSNumber rotate = resolver.resolveNumber(node, ROTATE);
+
+    return new Inherited( //
+        resources != null ? resources : parent.resources, //
+        mediaBox != null ? mediaBox : parent.mediaBox, //
+        cropBox != null ? cropBox : parent.cropBox, //
+        rotate != null ? normalizeRotation(rotate.getInteger()) : parent.rotate //
+    );
+  }
+
+  private static DSRectangle copy(DSRectangle r) {
+    return new DSRectangle(new Point2D.Double(r.getLowerLeft().x, r.getLowerLeft().y),
+        new Point2D.Double(r.getUpperRight().x, r.getUpperRight().y));
+  }
+
+  private static int normalizeRotation(int rotate) {
+    // only multiples of 90 are allowed, round anything else down
+    return (rotate % 360 + 360) % 360 / 90 * 90;
+  }
+}
@@ -0,0 +1,353 @@
+package com.levigo.jadice.format.pdf.internal.struct;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.levigo.jadice.format.pdf.internal.ReferenceResolver;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSArray;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSNumber;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+
+/**
+ * An index over the page tree of a document. A page is looked up by descending from the root
+ * along the <code>/Count</code>s of the intermediate nodes, so that only the nodes on the path to
+ * the page and their kids up to the one holding the page are resolved, never whole sibling
+ * subtrees. The kids of a node counting as many pages as it has kids are taken to be pages without
+ * resolving them. The kids and page counts of every node resolved are cached, subsequent lookups
+ * descend through the cached nodes by binary search without resolving anything but the page
+ * itself.
+ * <p>
+ * Optionally the table of all pages can be built in the background, see
+ * {@link #buildIndex(Executor)}. If the <code>/Count</code>s turn out to be wrong, the table is
+ * built by walking the tree instead. Once built, all lookups are served from the table. It holds
+ * the pages actually found only, so a bogus <code>/Count</code> doesn't cost any memory.
+ * <p>
+ * The page tree is thread safe.
+ */
+public class PageTree {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PageTree.class);
+
+  /**
+   * page trees deeper than this are considered cyclic
+   */
+  private static final int MAX_DEPTH = 256;
+
+  private static final DSNameObject PAGES = DSNameObject.valueOf("Pages");
+  private static final DSNameObject KIDS = DSNameObject.valueOf("Kids");
+  private static final DSNameObject COUNT = DSNameObject.valueOf("Count");
+
+  /**
+   * An intermediate node: its kids, which of them are pages and the index of the first page below
+   * each kid relative to the node. The kids are resolved lazily, in order, up to the one holding
+   * the page looked for.
+   */
+  private final class Node {
+    final DSObject[] kids;
+    final boolean[] leaves;
+    final int[] starts;
+    final int count;
+
+    /**
+     * the number of kids resolved so far and the number of pages below them
+     */
+    private int resolved;
+    private int resolvedCount;
+
+    Node(DSObject[] kids, int count) {
+      this.kids = kids;
+      this.leaves = new boolean[kids.length];
+      this.starts = new int[kids.length];
+      this.count = count;
+
+      if (count == kids.length) {
+        // as many pages as kids: all of them are pages unless the tree is inconsistent
+        for (int i = 0; i < kids.length; i++) {
+          leaves[i] = true;
+          starts[i] = i;
+        }
+        resolved = resolvedCount = kids.length;
+      }
+    }
+
+    /**
+     * @return the index of the kid holding the page with the given relative index or -1 if the
+     *         kids hold fewer pages
+     */
+    synchronized int kidFor(int index) {
+      while (resolvedCount <= index) {
+        if (resolved == kids.length)
+          return -1;
+        resolveKid(resolved++);
+      }
+
+      int low = 0;
+      int high = resolved - 1;
+      while (low < high) {
+        final int mid = low + high + 1 >>> 1;
+        if (starts[mid] <= index)
+          low = mid;
+        else
+          high = mid - 1;
+      }
+      return low;
+    }
+
+    /**
+     * Resolve the kid, but not its subtree, to learn its page count.
+     */
+    private void resolveKid(int i) {
+      starts[i] = resolvedCount;
+      final DSDictionary kid = resolver.resolveDictionary(kids[i]);
+      if (kid == null)
+        return;
+      if (kid.getNamedEntryValue(KIDS) == null) {
+        leaves[i] = true;
+        resolvedCount++;
+      } else {
+        final DSNumber kidCount = resolver.resolveNumber(kid, COUNT);
+        resolvedCount += kidCount != null ? Math.max(kidCount.getInteger(), 0) : 0;
+      }
+    }
+  }
+
+  private final ReferenceResolver resolver;
+  private final DSDictionary catalog;
+  private final PageAttributeResolver attributeResolver;
+
+  private final Map<DSReference, Node> nodes = new ConcurrentHashMap<>();
+
+  private volatile DSDictionary root;
+  private volatile int pageCount = -1;
+  private volatile DSObject[] index;
+
+  public PageTree(ReferenceResolver resolver, DSDictionary catalog, PageAttributeResolver attributeResolver) {
+    this.resolver = resolver;
+    this.catalog = catalog;
+    this.attributeResolver = attributeResolver;
+  }
+
+  /**
+   * @return the number of pages as declared by the root node. If the page tree is inconsistent,
+   *         some of them may not exist.
+   */
+  public int getPageCount() {
+    int count = pageCount;
+    if (count < 0) {
+      final DSNumber declared = resolver.resolveNumber(root(), COUNT);
+      pageCount = count = declared != null ? Math.max(declared.getInteger(), 0) : 0;
+    }
+    return count;
+  }
+
+  /**
+   * @param pageIndex the zero-based page index
+   * @return the page dictionary or <code>null</code> if the page tree doesn't actually hold the
+   *         declared number of pages
+   * @throws IndexOutOfBoundsException if there is no such page
+   */
+  public DSDictionary getPageDictionary(int pageIndex) {
+    final DSDictionary page = resolver.resolveDictionary(getPageObject(pageIndex));
+    if (page == null || page.getNamedEntryValue(KIDS) == null || index != null)
+      return page;
+
+    // a kid taken to be a page is an intermediate node
+    LOGGER.warn("Inconsistent /Count entries in the page tree, indexing all pages");
+    buildIndex();
+    final DSObject[] table = index;
+    return pageIndex < table.length ? resolver.resolveDictionary(table[pageIndex]) : null;
+  }
+
+  /**
+   * @param index the zero-based page index
+   * @return the reference to the page or <code>null</code> if the page is (invalidly) a direct
+   *         object. Unlike {@link #getPageDictionary(int)}, the page isn't resolved and so not
+   *         checked to be a page.
+   * @throws IndexOutOfBoundsException if there is no such page
+   */
+  public DSReference getPageReference(int index) {
+    final DSObject page = getPageObject(index);
+    return page instanceof DSReference ? (DSReference) page : null;
+  }
+
+  /**
+   * @param index the zero-based page index
+   * @return the page with its inherited attributes
+   * @throws IndexOutOfBoundsException if there is no such page
+   */
+  public Page getPage(int index) {
+    final DSDictionary pageDict = getPageDictionary(index);
+    return pageDict != null ? attributeResolver.getPage(pageDict) : null;
+  }
+
+  /**
+   * Build the table of all pages using the given executor. Lookups are served from the table once
+   * it is complete.
+   *
+   * @return a future completing once the table is complete
+   */
+  public CompletableFuture<Void> buildIndex(Executor executor) {
+    if (index != null)
+      return CompletableFuture.completedFuture(null);
+    return CompletableFuture.runAsync(this::buildIndex, executor);
+  }
+
+  /**
+   * @return the number of intermediate nodes whose kids are cached
+   */
+  public int getCachedNodeCount() {
+    return nodes.size();
+  }
+
+  /**
+   * @return whether the table of all pages is complete
+   */
+  public boolean isIndexComplete() {
+    return index != null;
+  }
+
+  /**
+   * @return the number of pages in the table of all pages, which is less than the declared count
+   *         if the page tree is inconsistent, or 0 if the table hasn't been built
+   */
+  public int getIndexSize() {
+    final DSObject[] table = index;
+    return table != null ? table.length : 0;
+  }
+
+  private DSObject getPageObject(int pageIndex) {
+    final int count = getPageCount();
+    if (pageIndex < 0 || pageIndex >= count)
+      throw new IndexOutOfBoundsException("Page " + pageIndex + " of " + count);
+
+    DSObject[] table = index;
+    if (table == null) {
+      final DSObject page = descend(pageIndex);
+      if (page != null)
+        return page;
+
+      LOGGER.warn("Inconsistent /Count entries in the page tree, indexing all pages");
+      buildIndex();
+      table = index;
+    }
+    return pageIndex < table.length ? table[pageIndex] : null;
+  }
+
+  private DSDictionary root() {
+    DSDictionary r = root;
+    if (r == null) {
+      r = resolver.resolveDictionary(catalog, PAGES);
+      root = r = r != null ? r : DS.dict();
+    }
+    return r;
+  }
+
+  /**
+   * Descend to the page with the given index along the counts of the nodes.
+   *
+   * @return the page or <code>null</code> if the counts are inconsistent
+   */
+  private DSObject descend(int pageIndex) {
+    DSObject nodeObject = catalog.getNamedEntryValue(PAGES);
+    int relative = pageIndex;
+    for (int depth = 0; depth < MAX_DEPTH; depth++) {
+      final Node node = node(nodeObject);
+      if (node == null || node.kids.length == 0 || relative >= node.count)
+        return null;
+
+      final int kid = node.kidFor(relative);
+      if (kid < 0)
+        return null;
+      relative -= node.starts[kid];
+      nodeObject = node.kids[kid];
+
+      if (node.leaves[kid]) {
+        return relative == 0 ? nodeObject : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the cached node or <code>null</code> if the object isn't an intermediate node
+   */
+  private Node node(DSObject nodeObject) {
+    Node node = nodeObject instanceof DSReference ? nodes.get(nodeObject) : null;
+    if (node != null)
+      return node;
+
+    final DSDictionary dict = resolveNode(nodeObject);
+    final DSArray kidsArray = dict != null ? resolver.resolveArray(dict, KIDS) : null;
+    if (kidsArray == null)
+      return null;
+
+    final DSNumber declared = resolver.resolveNumber(dict, COUNT);
+    if (declared == null || declared.getInteger() < 0)
+      return null;
+
+    node = new Node(kidsArray.toArray(new DSObject[kidsArray.size()]), declared.getInteger());
+    if (nodeObject instanceof DSReference) {
+      final Node cached = nodes.putIfAbsent((DSReference) nodeObject, node);
+      if (cached != null)
+        return cached;
+    }
+    return node;
+  }
+
+  private DSDictionary resolveNode(DSObject nodeObject) {
+    return nodeObject == catalog.getNamedEntryValue(PAGES) ? root() : resolver.resolveDictionary(nodeObject);
+  }
+
+  /**
+   * Build the table by walking the whole tree, in page order, up to the declared number of pages.
+   */
+  private synchronized void buildIndex() {
+    if (index != null)
+      return;
+
+    final int count = getPageCount();
+    final List<DSObject> found = new ArrayList<>();
+    final Set<DSReference> visited = new HashSet<>();
+    final Deque<DSObject> stack = new ArrayDeque<>();
+    stack.push(catalog.getNamedEntryValue(PAGES));
+
+    while (!stack.isEmpty() && found.size() < count) {
+      final DSObject nodeObject = stack.pop();
+      if (nodeObject instanceof DSReference && !visited.add((DSReference) nodeObject)) {
+        LOGGER.warn("Cycle in the page tree at {}", nodeObject);
+        continue;
+      }
+
+      final DSDictionary dict = resolveNode(nodeObject);
+      if (dict == null)
+        continue;
+
+      final DSArray kids = resolver.resolveArray(dict, KIDS);
+      if (kids == null) {
+        found.add(nodeObject);
+        continue;
+      }
+      for (int i = kids.size() - 1; i >= 0; i--)
+        stack.push(kids.get(i));
+    }
+
+    if (found.size() < count)
+      LOGGER.warn("The page tree declares {} pages, but only {} were found", count, found.size());
+    index = found.toArray(new DSObject[found.size()]);
+  }
+}
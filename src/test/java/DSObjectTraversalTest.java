@@ -0,0 +1,168 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.format.pdf.internal.MapReferenceResolver;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSInteger;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+
+public class DSObjectTraversalTest {
+
+  private final MapReferenceResolver resolver = new MapReferenceResolver();
+
+  /**
+   * Records the visited integers and dictionary keys, following all references.
+   */
+  private class Recorder extends DSObjectTraversal {
+    final List<String> events = new ArrayList<>();
+    final List<Long> revisited = new ArrayList<>();
+    int resolved;
+
+    Recorder() {
+      super(resolver);
+    }
+
+    @Override
+    public void visitEntry(DSNameObject key, DSObject value) {
+      events.add(key.getName());
+    }
+
+    @Override
+    public void visit(DSInteger object) {
+      events.add(Long.toString(object.getLong()));
+    }
+
+    @Override
+    public boolean visitReference(DSReference reference, int depth) {
+      resolved++;
+      return true;
+    }
+
+    @Override
+    public void alreadyVisited(DSReference reference, int depth) {
+      revisited.add(reference.getReferencedObjectNumber());
+    }
+  }
+
+  private DSDictionary node(long objectNumber, long parent, int value) {
+    final DSDictionary d = DS.dict();
+    d.addNamedEntry(DS.name("Parent"), DS.ref(parent));
+    d.addNamedEntry(DS.name("Value"), DS.num(value));
+    resolver.put(objectNumber, d);
+    return d;
+  }
+
+  @Test
+  void testCycles() {
+    // 1 -> 2 -> 3 -> 1
+    node(1, 2, 10);
+    node(2, 3, 20);
+    node(3, 1, 30);
+
+    final Recorder r = new Recorder();
+    r.traverse(DS.ref(1));
+    assertEquals("[Parent, Parent, Parent, Value, 30, Value, 20, Value, 10]", r.events.toString());
+    assertEquals(4, r.resolved);
+    assertEquals("[1]", r.revisited.toString());
+
+    // the visited objects are forgotten between traversals
+    r.events.clear();
+    r.traverse(DS.ref(1));
+    assertEquals(9, r.events.size());
+  }
+
+  @Test
+  void testGenerations() {
+    // the same object number in different generations denotes different objects
+    resolver.put(5, DS.num(5));
+    final Recorder r = new Recorder();
+    r.traverse(DS.array(DS.ref(5, 0), DS.ref(5, 1), DS.ref(5, 0)));
+    assertEquals("[5, 5]", r.events.toString());
+    assertEquals("[5]", r.revisited.toString());
+  }
+
+  @Test
+  void testNestedTraversal() {
+    node(1, 2, 10);
+    node(2, 3, 20);
+    node(3, 1, 30);
+    resolver.put(7, DS.num(7));
+
+    // a traversal started by a visitor doesn't affect the one running
+    final Recorder r = new Recorder() {
+      boolean nested;
+
+      @Override
+      public void visitEntry(DSNameObject key, DSObject value) {
+        super.visitEntry(key, value);
+        if (!nested) {
+          nested = true;
+          traverse(DS.ref(7));
+        }
+      }
+    };
+    r.traverse(DS.ref(1));
+    assertEquals("[Parent, 7, Parent, Parent, Value, 30, Value, 20, Value, 10]", r.events.toString());
+    assertEquals("[1]", r.revisited.toString());
+  }
+
+  @Test
+  void testDeepGraph() {
+    final int depth = 100000;
+    for (int i = 1; i < depth; i++)
+      node(i, i + 1, i);
+    resolver.put((long) depth, DS.dict());
+
+    final Recorder r = new Recorder();
+    r.traverse(DS.ref(1));
+    assertEquals(3 * (depth - 1), r.events.size());
+  }
+
+  @Test
+  void testBatchedResolution() {
+    // a root, four arrays and 17 numbers carrying their object number
+    final List<DSObject> kids = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final List<DSObject> grandKids = new ArrayList<>();
+      for (int j = 0; j < 4; j++) {
+        final long n = 100 + i * 4 + j;
+        resolver.put(n, DS.num(n));
+        grandKids.add(DS.ref(n));
+        // shared with the next sibling
+        grandKids.add(DS.ref(n + 1));
+      }
+      resolver.put(10L + i, DS.array(grandKids));
+      kids.add(DS.ref(10 + i));
+    }
+    resolver.put(116L, DS.num(116));
+    resolver.put(1L, DS.array(kids));
+
+    final Recorder inline = new Recorder();
+    inline.traverse(DS.ref(1));
+
+    for (final DSObjectTraversal.Resolution resolution : new DSObjectTraversal.Resolution[]{
+        DSObjectTraversal.Resolution.BATCHED, DSObjectTraversal.Resolution.PARALLEL
+    }) {
+      final Recorder batched = new Recorder();
+      batched.setResolution(resolution);
+      batched.setPool(new ForkJoinPool(4));
+      batched.traverse(DS.ref(1));
+
+      // every object once, level by level in object number order
+      assertEquals(17, batched.events.size());
+      assertEquals(inline.resolved, batched.resolved);
+      assertTrue(batched.events.containsAll(inline.events));
+      for (int i = 0; i < 17; i++)
+        assertEquals(Integer.toString(100 + i), batched.events.get(i));
+    }
+  }
+}
@@ -5,6 +5,7 @@
 
 import org.junit.jupiter.api.Test;
 
+import com.levigo.jadice.format.pdf.internal.MapReferenceResolver;
 import com.levigo.jadice.format.pdf.internal.ReferenceResolver;
 import com.levigo.jadice.format.pdf.internal.objects.DS;
 import com.levigo.jadice.format.pdf.internal.objects.DSArray;
@@ -55,18 +56,33 @@ void testFormatDictionayWithArrayWithReferences() {
 
     assertEquals("<<\n" + "  /A [\n" + "    {1 0 R} \n" + "    {2 0 R} \n" + "    {3 0 R} \n" + "  ]\n" + ">>\n", s);
   }
+  @Test
+  void testFormatRepeatedReference() {
+    final MapReferenceResolver resolver = new MapReferenceResolver();
+    resolver.put(1, DS.num(42));
+    final DSArray in = DS.array( //
+        DS.ref(1), //
+        DS.ref(1) //
+    );
 
+    final String s = process(in, resolver, 1);
+
+    assertEquals("[\n  {1 0 R} 42\n  {1 0 R} (already visited)\n]\n", s);
+  }
 
   private String process(final DSObject in) {
-    final int maxReferenceDepth = 0;
+    return process(in, new ReferenceResolver() {
+      @Override
+      public DSObject resolve(final DSObject ref) {
+        return null;
+      }
+    }, 0);
+  }
+
+  private String process(final DSObject in, final ReferenceResolver resolver, final int maxReferenceDepth) {
     final StringWriter ws = new StringWriter();
     try (final PrintWriter out = new PrintWriter(ws)) {
-      final PrintDSObjectTraversal traversal = new PrintDSObjectTraversal(new ReferenceResolver() {
-        @Override
-        public DSObject resolve(final DSObject ref) {
-          return null;
-        }
-      }, out, maxReferenceDepth);
+      final PrintDSObjectTraversal traversal = new PrintDSObjectTraversal(resolver, out, maxReferenceDepth);
       traversal.traverse(in);
     }
 
@@ -0,0 +1,142 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCII85;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class ASCII85InputStreamTest {
+
+  @Test
+  void testRoundTrip() throws IOException {
+    for (int length = 0; length < 10; length++) {
+      final byte[] data = createData(length);
+      assertArrayEquals(data, decode(encodeASCII85(data)), "length " + length);
+    }
+
+    final byte[] data = createData(100001);
+    for (final int lineLength : new int[]{0, 64}) {
+      final byte[] encoded = encodeASCII85(data, lineLength);
+      assertArrayEquals(data, decode(encoded), "line length " + lineLength);
+
+      final ASCII85InputStream s = createStream(encoded);
+      for (int i = 0; i < data.length; i++)
+        assertEquals(data[i] & 0xff, s.read(), "at " + i);
+      assertEquals(-1, s.read());
+    }
+  }
+
+  @Test
+  void testKnownValue() throws IOException {
+    assertEquals("Man is d", new String(decode(ascii("9jqo^BlbD-~>")), StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  void testZeroGroup() throws IOException {
+    final byte[] data = {
+        0, 0, 0, 0, 1, 2, 3, 4, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+    final byte[] encoded = encodeASCII85(data);
+    assertEquals("z!<N?+zz~>", new String(encoded, StandardCharsets.US_ASCII));
+    assertArrayEquals(data, decode(encoded));
+
+    // a 'z' within a group is an error
+    assertThrows(IOException.class, () -> decode(ascii("!!z!!!~>")));
+  }
+
+  @Test
+  void testWhitespace() throws IOException {
+    final byte[] data = createData(1001);
+    final String encoded = new String(encodeASCII85(data), StandardCharsets.US_ASCII);
+
+    // whitespace may appear anywhere, even within a group
+    final char[] whitespace = {
+        ' ', '\t', '\n', '\r', '\f', 0
+    };
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < encoded.length(); i++)
+      sb.append(whitespace[i % whitespace.length]).append(encoded.charAt(i));
+    assertArrayEquals(data, decode(ascii(sb.toString())));
+  }
+
+  @Test
+  void testFinalPartialGroup() throws IOException {
+    // two to four digits encode one to three bytes
+    assertArrayEquals(new byte[]{'M'}, decode(ascii("9`~>")));
+    assertArrayEquals(new byte[]{'M', 'a'}, decode(ascii("9jn~>")));
+    assertArrayEquals(new byte[]{'M', 'a', 'n'}, decode(ascii("9jqo~>")));
+
+    // a single digit doesn't encode anything
+    assertArrayEquals(new byte[]{'M', 'a', 'n', ' '}, decode(ascii("9jqo^9~>")));
+  }
+
+  @Test
+  void testTerminator() throws IOException {
+    // anything after the end-of-data marker is ignored
+    assertArrayEquals(new byte[]{'M', 'a', 'n', ' '}, decode(ascii("9jqo^~>9jqo^")));
+
+    // the end of the source ends the data as well
+    assertArrayEquals(new byte[]{'M', 'a', 'n'}, decode(ascii("9jqo")));
+  }
+
+  @Test
+  void testInvalidCharacters() {
+    assertThrows(IOException.class, () -> decode(ascii("9jqo^{~>")));
+    assertThrows(IOException.class, () -> decode(ascii("9jqo^v~>")));
+  }
+
+  @Test
+  void testSeek() throws IOException {
+    final byte[] data = createData(100000);
+    final ASCII85InputStream s = createStream(encodeASCII85(data, 64));
+
+    final Random r = new Random(4711);
+    final byte[] buffer = new byte[1000];
+    for (int i = 0; i < 50; i++) {
+      final int pos = r.nextInt(data.length - buffer.length);
+      s.seek(pos);
+      s.readFully(buffer);
+      assertEquals(pos + buffer.length, s.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(data, pos, pos + buffer.length), buffer, "at " + pos);
+    }
+  }
+
+  private static ASCII85InputStream createStream(byte[] encoded) {
+    return new ASCII85InputStream(new ByteArraySeekableInputStream(encoded));
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] createData(int length) {
+    final Random r = new Random(length);
+    final byte[] data = new byte[length];
+    r.nextBytes(data);
+    // some groups of zeros
+    for (int i = 0; i + 8 <= length; i += 40)
+      Arrays.fill(data, i, i + 8, (byte) 0);
+    return data;
+  }
+
+  private static byte[] decode(byte[] encoded) throws IOException {
+    final SeekableInputStream s = createStream(encoded);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[777];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
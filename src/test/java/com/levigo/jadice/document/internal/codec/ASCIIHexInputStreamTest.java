@@ -0,0 +1,113 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCIIHex;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class ASCIIHexInputStreamTest {
+
+  @Test
+  void testRoundTrip() throws IOException {
+    final byte[] data = createData(100001);
+    for (final int lineLength : new int[]{0, 32}) {
+      final byte[] encoded = encodeASCIIHex(data, lineLength);
+      assertArrayEquals(data, decode(encoded), "line length " + lineLength);
+
+      final ASCIIHexInputStream s = createStream(encoded);
+      for (int i = 0; i < data.length; i++)
+        assertEquals(data[i] & 0xff, s.read(), "at " + i);
+      assertEquals(-1, s.read());
+    }
+
+    // lower case digits
+    final String lower = new String(encodeASCIIHex(data), StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+    assertArrayEquals(data, decode(ascii(lower)));
+
+    assertArrayEquals(new byte[0], decode(ascii(">")));
+  }
+
+  @Test
+  void testWhitespace() throws IOException {
+    assertArrayEquals(ascii("Hello"), decode(ascii(" 4 8\n65\t6C\r\f6c\0 6F >")));
+  }
+
+  @Test
+  void testFinalPartialGroup() throws IOException {
+    // a missing final digit is assumed to be 0
+    assertArrayEquals(new byte[]{0x48, 0x70}, decode(ascii("487>")));
+    assertArrayEquals(new byte[]{0x48, 0x70}, decode(ascii("487")));
+  }
+
+  @Test
+  void testTerminator() throws IOException {
+    // anything after the end-of-data marker is ignored
+    assertArrayEquals(ascii("AB"), decode(ascii("4142>4344")));
+
+    // the end of the source ends the data as well
+    assertArrayEquals(ascii("AB"), decode(ascii("4142")));
+  }
+
+  @Test
+  void testInvalidCharacters() throws IOException {
+    // the data before an invalid character is returned first
+    final ASCIIHexInputStream s = createStream(ascii("4142G43>"));
+    final byte[] buffer = new byte[10];
+    assertEquals(2, s.read(buffer));
+    assertThrows(IOException.class, () -> s.read(buffer));
+
+    assertThrows(IOException.class, () -> decode(ascii("~>")));
+  }
+
+  @Test
+  void testSeek() throws IOException {
+    final byte[] data = createData(100000);
+    final ASCIIHexInputStream s = createStream(encodeASCIIHex(data, 32));
+
+    final Random r = new Random(4711);
+    final byte[] buffer = new byte[1000];
+    for (int i = 0; i < 50; i++) {
+      final int pos = r.nextInt(data.length - buffer.length);
+      s.seek(pos);
+      s.readFully(buffer);
+      assertEquals(pos + buffer.length, s.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(data, pos, pos + buffer.length), buffer, "at " + pos);
+    }
+  }
+
+  private static ASCIIHexInputStream createStream(byte[] encoded) {
+    return new ASCIIHexInputStream(new ByteArraySeekableInputStream(encoded));
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] createData(int length) {
+    final byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+
+  private static byte[] decode(byte[] encoded) throws IOException {
+    final SeekableInputStream s = createStream(encoded);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[777];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,225 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * A straightforward CCITT fax encoder following the description of the coding schemes in ITU-T
+ * T.4, used to produce test data for {@link CCITTFaxInputStream}. Pixels are given as one boolean
+ * per pixel, <code>true</code> for black.
+ */
+class CCITTFaxEncoder {
+  private final int k;
+  private final int columns;
+  private boolean encodedByteAlign;
+  private boolean endOfLine;
+  private boolean endOfBlock = true;
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private int bitBuffer;
+  private int bitCount;
+
+  private boolean[] reference;
+  private int row;
+
+  CCITTFaxEncoder(int k, int columns) {
+    this.k = k;
+    this.columns = columns;
+    reference = new boolean[columns];
+  }
+
+  CCITTFaxEncoder setEncodedByteAlign(boolean encodedByteAlign) {
+    this.encodedByteAlign = encodedByteAlign;
+    return this;
+  }
+
+  /**
+   * Precede each row by an EOL. Always done for mixed encoding.
+   */
+  CCITTFaxEncoder setEndOfLine(boolean endOfLine) {
+    this.endOfLine = endOfLine;
+    return this;
+  }
+
+  CCITTFaxEncoder setEndOfBlock(boolean endOfBlock) {
+    this.endOfBlock = endOfBlock;
+    return this;
+  }
+
+  void encodeRow(boolean[] pixels) {
+    final boolean twoDimensional = k < 0 || k > 0 && row % k != 0;
+    if (k >= 0 && (endOfLine || k > 0)) {
+      writeEOL();
+      if (k > 0)
+        write(twoDimensional ? "0" : "1");
+    } else if (encodedByteAlign) {
+      align();
+    }
+
+    if (twoDimensional)
+      encode2D(pixels);
+    else
+      encode1D(pixels);
+
+    reference = pixels.clone();
+    row++;
+  }
+
+  byte[] finish() {
+    if (endOfBlock) {
+      if (k < 0) {
+        if (encodedByteAlign)
+          align();
+        write(CCITTFaxInputStream.EOL);
+        write(CCITTFaxInputStream.EOL);
+      } else {
+        for (int i = 0; i < 6; i++) {
+          writeEOL();
+          if (k > 0)
+            write("1");
+        }
+      }
+    }
+    align();
+    return out.toByteArray();
+  }
+
+  private void encode1D(boolean[] pixels) {
+    int a0 = 0;
+    boolean black = false;
+    while (a0 < columns) {
+      final int a1 = nextChange(pixels, a0 - 1, black);
+      writeRun(a1 - a0, black);
+      a0 = a1;
+      black = !black;
+    }
+  }
+
+  private void encode2D(boolean[] pixels) {
+    int a0 = -1;
+    boolean black = false;
+    while (a0 < columns) {
+      final int a1 = nextChange(pixels, a0, black);
+      final int b1 = nextChangingElement(reference, a0, black);
+      final int b2 = b1 < columns ? nextChange(reference, b1, !black) : columns;
+
+      if (b2 < a1) {
+        write(CCITTFaxInputStream.PASS);
+        a0 = b2;
+      } else if (Math.abs(a1 - b1) <= 3) {
+        write(CCITTFaxInputStream.VERTICAL_MODES[a1 - b1 + 3]);
+        a0 = a1;
+        black = !black;
+      } else {
+        final int a2 = a1 < columns ? nextChange(pixels, a1, !black) : columns;
+        write(CCITTFaxInputStream.HORIZONTAL);
+        writeRun(a1 - Math.max(a0, 0), black);
+        writeRun(a2 - a1, !black);
+        a0 = a2;
+      }
+    }
+  }
+
+  /**
+   * @return the first position after <code>pos</code> whose pixel doesn't have the given color
+   */
+  private int nextChange(boolean[] pixels, int pos, boolean black) {
+    int p = pos + 1;
+    while (p < columns && pixels[p] == black)
+      p++;
+    return p;
+  }
+
+  /**
+   * @return the first changing element after <code>pos</code> changing from the given color to the
+   *         opposite one
+   */
+  private int nextChangingElement(boolean[] pixels, int pos, boolean black) {
+    for (int p = pos + 1; p < columns; p++)
+      if (pixels[p] != black && (p == 0 ? !black : pixels[p - 1] == black))
+        return p;
+    return columns;
+  }
+
+  private void writeRun(int run, boolean black) {
+    while (run >= 64) {
+      final int makeup = Math.min(run / 64 * 64, 2560);
+      if (makeup > 1728)
+        write(CCITTFaxInputStream.EXTENDED_MAKEUP[makeup / 64 - 28]);
+      else
+        write((black ? CCITTFaxInputStream.BLACK_MAKEUP : CCITTFaxInputStream.WHITE_MAKEUP)[makeup / 64 - 1]);
+      run -= makeup;
+    }
+    write((black ? CCITTFaxInputStream.BLACK_TERMINATING : CCITTFaxInputStream.WHITE_TERMINATING)[run]);
+  }
+
+  private void write(String code) {
+    for (int i = 0; i < code.length(); i++) {
+      bitBuffer = bitBuffer << 1 | code.charAt(i) - '0';
+      if (++bitCount % 8 == 0)
+        out.write(bitBuffer);
+    }
+  }
+
+  private void writeEOL() {
+    if (encodedByteAlign)
+      // the EOL ends at a byte boundary
+      while ((bitCount + 12) % 8 != 0)
+        write("0");
+    write(CCITTFaxInputStream.EOL);
+  }
+
+  private void align() {
+    while (bitCount % 8 != 0)
+      write("0");
+  }
+
+  /**
+   * Pack a row of pixels the way the decoder produces them.
+   */
+  static byte[] pack(boolean[] pixels, boolean blackIs1) {
+    final byte[] packed = new byte[(pixels.length + 7) / 8];
+    for (int i = 0; i < packed.length * 8; i++)
+      if ((i < pixels.length && pixels[i]) == blackIs1)
+        packed[i >> 3] |= 0x80 >> (i & 7);
+    return packed;
+  }
+
+  /**
+   * Create a page resembling a scanned document: rows mostly similar to the previous one, made up
+   * of runs of varying length.
+   */
+  static boolean[][] page(Random random, int columns, int rows) {
+    final boolean[][] page = new boolean[rows][];
+    boolean[] previous = new boolean[columns];
+    for (int y = 0; y < rows; y++) {
+      final boolean[] pixels;
+      if (random.nextInt(10) == 0) {
+        // a row unrelated to the previous one, sometimes blank
+        pixels = new boolean[columns];
+        if (random.nextBoolean()) {
+          boolean black = random.nextBoolean();
+          for (int x = 0; x < columns;) {
+            final int run = random.nextInt(8) == 0 ? random.nextInt(3000) : random.nextInt(20);
+            for (int i = x; i < Math.min(x + run, columns); i++)
+              pixels[i] = black;
+            x += run;
+            black = !black;
+          }
+        }
+      } else {
+        // move some of the edges of the previous row
+        pixels = previous.clone();
+        for (int i = random.nextInt(8); i > 0; i--) {
+          final int x = random.nextInt(columns);
+          final int length = random.nextInt(6);
+          final boolean black = random.nextBoolean();
+          for (int j = x; j < Math.min(x + length, columns); j++)
+            pixels[j] = black;
+        }
+      }
+      page[y] = previous = pixels;
+    }
+    return page;
+  }
+}
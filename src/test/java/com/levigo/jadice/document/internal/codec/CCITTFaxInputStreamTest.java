@@ -0,0 +1,252 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class CCITTFaxInputStreamTest {
+
+  private static final int[] WIDTHS = {
+      1, 13, 64, 1728, 2600
+  };
+
+  @Test
+  void testGroup4() throws IOException {
+    for (final int columns : WIDTHS) {
+      assertRoundTrip(new CCITTFaxEncoder(-1, columns), -1, columns, 0, false, false, true);
+      assertRoundTrip(new CCITTFaxEncoder(-1, columns).setEncodedByteAlign(true), -1, columns, 0, true, false,
+          true);
+    }
+  }
+
+  @Test
+  void testGroup4WithoutEndOfBlock() throws IOException {
+    for (final int columns : WIDTHS)
+      assertRoundTrip(new CCITTFaxEncoder(-1, columns).setEndOfBlock(false), -1, columns, 50, false, false, false);
+  }
+
+  @Test
+  void testGroup3OneDimensional() throws IOException {
+    for (final int columns : WIDTHS) {
+      assertRoundTrip(new CCITTFaxEncoder(0, columns), 0, columns, 0, false, false, true);
+      assertRoundTrip(new CCITTFaxEncoder(0, columns).setEndOfLine(true), 0, columns, 0, false, false, true);
+      assertRoundTrip(new CCITTFaxEncoder(0, columns).setEndOfLine(true).setEncodedByteAlign(true), 0, columns, 0,
+          true, false, true);
+      assertRoundTrip(new CCITTFaxEncoder(0, columns).setEncodedByteAlign(true).setEndOfBlock(false), 0, columns,
+          50, true, false, false);
+    }
+  }
+
+  @Test
+  void testGroup3TwoDimensional() throws IOException {
+    for (final int columns : WIDTHS) {
+      assertRoundTrip(new CCITTFaxEncoder(4, columns), 4, columns, 0, false, false, true);
+      assertRoundTrip(new CCITTFaxEncoder(4, columns).setEncodedByteAlign(true), 4, columns, 0, true, false, true);
+    }
+  }
+
+  @Test
+  void testBlackIs1() throws IOException {
+    assertRoundTrip(new CCITTFaxEncoder(-1, 100), -1, 100, 0, false, true, true);
+    assertRoundTrip(new CCITTFaxEncoder(0, 100), 0, 100, 0, false, true, true);
+  }
+
+  @Test
+  void testRows() throws IOException {
+    final boolean[][] page = CCITTFaxEncoder.page(new Random(1), 100, 50);
+    final byte[] data = encode(new CCITTFaxEncoder(-1, 100), page);
+
+    // the data is cut off after the given number of rows
+    final byte[] decoded = readAll(new CCITTFaxInputStream(new ByteArraySeekableInputStream(data), -1, 100, 20,
+        false, false, true, false));
+    assertEquals(20 * 13, decoded.length);
+    for (int y = 0; y < 20; y++)
+      assertArrayEquals(CCITTFaxEncoder.pack(page[y], false), slice(decoded, y * 13, 13));
+  }
+
+  @Test
+  void testSeek() throws IOException {
+    final int columns = 1728;
+    final int rowLength = columns / 8;
+    final boolean[][] page = CCITTFaxEncoder.page(new Random(2), columns, 200);
+    final CCITTFaxInputStream s = new CCITTFaxInputStream(
+        new ByteArraySeekableInputStream(encode(new CCITTFaxEncoder(-1, columns), page)), -1, columns, 0, false, false,
+        true, false);
+    assertEquals(rowLength, s.getRowLength());
+
+    final Random random = new Random(3);
+    final byte[] b = new byte[rowLength];
+    for (int i = 0; i < 100; i++) {
+      final int y = random.nextInt(page.length);
+      s.seek((long) y * rowLength);
+      s.readFully(b);
+      assertArrayEquals(CCITTFaxEncoder.pack(page[y], false), b, "row " + y);
+      assertEquals((long) (y + 1) * rowLength, s.getStreamPosition());
+    }
+    s.seek((long) page.length * rowLength);
+    assertEquals(-1, s.read());
+  }
+
+  @Test
+  void testInvalidData() throws IOException {
+    // garbage after the encoded rows: the rows before are kept
+    final boolean[][] page = CCITTFaxEncoder.page(new Random(4), 64, 10);
+    final CCITTFaxEncoder encoder = new CCITTFaxEncoder(-1, 64).setEndOfBlock(false);
+    final byte[] valid = encode(encoder, page);
+    final byte[] data = new byte[valid.length + 4];
+    System.arraycopy(valid, 0, data, 0, valid.length);
+    data[valid.length + 1] = 0x01;
+    data[valid.length + 2] = 0x00;
+
+    final byte[] decoded = readAll(new CCITTFaxInputStream(new ByteArraySeekableInputStream(data), -1, 64, 0,
+        false, false, true, false));
+    for (int y = 0; y < page.length; y++)
+      assertArrayEquals(CCITTFaxEncoder.pack(page[y], false), slice(decoded, y * 8, 8));
+  }
+
+  /**
+   * Decode data produced by the TIFF writer of the JRE, if there is one.
+   */
+  @Test
+  void testTIFFWriter() throws IOException {
+    final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+    assumeTrue(writers.hasNext());
+    final ImageWriter writer = writers.next();
+
+    final int width = 1000;
+    final int height = 300;
+    final boolean[][] page = CCITTFaxEncoder.page(new Random(5), width, height);
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+    final byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    final int rowLength = (width + 7) / 8;
+    for (int y = 0; y < height; y++)
+      System.arraycopy(CCITTFaxEncoder.pack(page[y], false), 0, pixels, y * rowLength, rowLength);
+
+    for (final String compression : new String[]{
+        "CCITT RLE", "CCITT T.4", "CCITT T.6"
+    }) {
+      final ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionType(compression);
+      final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+      try (ImageOutputStream ios = ImageIO.createImageOutputStream(tiff)) {
+        writer.setOutput(ios);
+        writer.write(null, new IIOImage(image, null, null), param);
+      }
+
+      // decode the strips one by one
+      final ByteBuffer file = ByteBuffer.wrap(tiff.toByteArray());
+      if (file.get(0) == 'I')
+        file.order(ByteOrder.LITTLE_ENDIAN);
+      final long[] offsets = getField(file, 273);
+      final long[] counts = getField(file, 279);
+      final int rowsPerStrip = (int) getField(file, 278)[0];
+      assertEquals(1, getField(file, 266) != null ? getField(file, 266)[0] : 1, "fill order");
+      final long[] t4Options = getField(file, 292);
+
+      int y = 0;
+      for (int i = 0; i < offsets.length; i++) {
+        final byte[] strip = new byte[(int) counts[i]];
+        System.arraycopy(file.array(), (int) offsets[i], strip, 0, strip.length);
+        final int rows = Math.min(rowsPerStrip, height - y);
+
+        final CCITTFaxInputStream s;
+        if (compression.equals("CCITT RLE"))
+          s = new CCITTFaxInputStream(new ByteArraySeekableInputStream(strip), 0, width, rows, true, false, false,
+              false);
+        else if (compression.equals("CCITT T.4"))
+          s = new CCITTFaxInputStream(new ByteArraySeekableInputStream(strip),
+              t4Options != null && (t4Options[0] & 1) != 0 ? 1 : 0, width, rows, false, false, false, false);
+        else
+          s = new CCITTFaxInputStream(new ByteArraySeekableInputStream(strip), -1, width, rows, false, false, false,
+              false);
+
+        final byte[] decoded = readAll(s);
+        assertEquals(rows * rowLength, decoded.length, compression);
+        for (int r = 0; r < rows; r++, y++)
+          assertArrayEquals(CCITTFaxEncoder.pack(page[y], false), slice(decoded, r * rowLength, rowLength),
+              compression + " row " + y);
+      }
+      assertEquals(height, y);
+    }
+  }
+
+  /**
+   * @return the values of a SHORT or LONG field of the first IFD or <code>null</code>
+   */
+  private static long[] getField(ByteBuffer file, int tag) {
+    final int ifd = file.getInt(4);
+    final int entries = file.getShort(ifd) & 0xffff;
+    for (int i = 0; i < entries; i++) {
+      final int entry = ifd + 2 + i * 12;
+      if ((file.getShort(entry) & 0xffff) != tag)
+        continue;
+      final boolean isShort = file.getShort(entry + 2) == 3;
+      final int count = file.getInt(entry + 4);
+      final int size = isShort ? 2 : 4;
+      final int valueOffset = count * size <= 4 ? entry + 8 : file.getInt(entry + 8);
+      final long[] values = new long[count];
+      for (int j = 0; j < count; j++)
+        values[j] = isShort ? file.getShort(valueOffset + j * 2) & 0xffff
+            : file.getInt(valueOffset + j * 4) & 0xffffffffL;
+      return values;
+    }
+    return null;
+  }
+
+  private static void assertRoundTrip(CCITTFaxEncoder encoder, int k, int columns, int rows,
+      boolean encodedByteAlign, boolean blackIs1, boolean endOfBlock) throws IOException {
+    final boolean[][] page = CCITTFaxEncoder.page(new Random(columns), columns, rows > 0 ? rows : 150);
+    final byte[] data = encode(encoder, page);
+    final byte[] decoded = readAll(new CCITTFaxInputStream(new ByteArraySeekableInputStream(data), k, columns, rows,
+        encodedByteAlign, blackIs1, endOfBlock, false));
+
+    final int rowLength = (columns + 7) / 8;
+    final String message = "K=" + k + " Columns=" + columns + " EncodedByteAlign=" + encodedByteAlign;
+    assertEquals(page.length * rowLength, decoded.length, message);
+    for (int y = 0; y < page.length; y++)
+      assertArrayEquals(CCITTFaxEncoder.pack(page[y], blackIs1), slice(decoded, y * rowLength, rowLength),
+          message + " row " + y);
+  }
+
+  private static byte[] encode(CCITTFaxEncoder encoder, boolean[][] page) {
+    for (final boolean[] row : page)
+      encoder.encodeRow(row);
+    return encoder.finish();
+  }
+
+  private static byte[] slice(byte[] data, int offset, int length) {
+    final byte[] slice = new byte[length];
+    System.arraycopy(data, offset, slice, 0, length);
+    return slice;
+  }
+
+  private static byte[] readAll(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[1000];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,131 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class FlatePNGPredictorInputStreamTest {
+
+  /**
+   * colors, bits per component, columns
+   */
+  private static final int[][] PARAMETERS = {
+      {1, 8, 5}, {1, 8, 1}, {3, 8, 100}, {4, 8, 37}, {1, 1, 13}, {1, 2, 99}, {1, 4, 3}, {3, 16, 1500}, {2, 8, 4097}
+  };
+
+  @Test
+  void testMatchesLayeredDecoding() throws IOException {
+    for (final int[] p : PARAMETERS) {
+      final int rowLength = (p[0] * p[1] * p[2] + 7) / 8 + 1;
+      for (final int rows : new int[]{0, 1, 2, 50}) {
+        // complete rows as well as a truncated last row
+        for (final int extra : new int[]{0, 1, rowLength / 2}) {
+          final byte[] compressed = deflate(createRows(rowLength, rows, extra, 5));
+          final byte[] expected = readFully(layered(compressed, p));
+          assertArrayEquals(expected, readFully(fused(compressed, p)), Arrays.toString(p) + " " + rows + " " + extra);
+          assertArrayEquals(expected, readBytewise(fused(compressed, p)));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testMatchesLayeredDecodingOfCorruptData() throws IOException {
+    final int[] p = {3, 8, 100};
+    final byte[] compressed = deflate(createRows(301, 200, 0, 5));
+
+    // truncated compressed data
+    final byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+    assertArrayEquals(readFully(layered(truncated, p)), readFully(fused(truncated, p)));
+
+    // garbage in the middle of the compressed data
+    final byte[] corrupt = compressed.clone();
+    for (int i = corrupt.length / 2; i < corrupt.length / 2 + 20; i++)
+      corrupt[i] = (byte) 0xff;
+    assertArrayEquals(readFully(layered(corrupt, p)), readFully(fused(corrupt, p)));
+
+    // unknown filter type: both deliver the preceding rows, then fail
+    final byte[] rows = createRows(301, 20, 0, 5);
+    rows[10 * 301] = 17;
+    final byte[] badFilter = deflate(rows);
+    assertArrayEquals(readUntilFailure(layered(badFilter, p)), readUntilFailure(fused(badFilter, p)));
+  }
+
+  @Test
+  void testSeek() throws IOException {
+    final int[] p = {3, 8, 333};
+    final byte[] compressed = deflate(createRows(1000, 300, 0, 5));
+    final byte[] expected = readFully(layered(compressed, p));
+
+    final SeekableInputStream s = fused(compressed, p);
+    final Random r = new Random(42);
+    final byte[] buffer = new byte[777];
+    for (int i = 0; i < 100; i++) {
+      final int pos = r.nextInt(expected.length - buffer.length);
+      s.seek(pos);
+      s.readFully(buffer);
+      assertEquals(pos + buffer.length, s.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(expected, pos, pos + buffer.length), buffer);
+    }
+  }
+
+  private static SeekableInputStream layered(byte[] compressed, int[] p) {
+    return new PNGPredictorInputStream(new ZInflaterInputStream(new ByteArraySeekableInputStream(compressed)), p[0],
+        p[2], p[1]);
+  }
+
+  private static SeekableInputStream fused(byte[] compressed, int[] p) {
+    return new FlatePNGPredictorInputStream(new ByteArraySeekableInputStream(compressed), p[0], p[2], p[1]);
+  }
+
+  /**
+   * Create PNG filtered rows using all filter types with random content.
+   */
+  private static byte[] createRows(int rowLength, int rows, int extra, int filterTypes) {
+    final Random r = new Random(rowLength * 31 + rows);
+    final byte[] data = new byte[rowLength * rows + extra];
+    r.nextBytes(data);
+    for (int i = 0; i < data.length; i += rowLength)
+      data[i] = (byte) r.nextInt(filterTypes);
+    return data;
+  }
+
+  private static byte[] readFully(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[1000];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      baos.write(buffer, 0, read);
+    return baos.toByteArray();
+  }
+
+  private static byte[] readBytewise(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    int b;
+    while ((b = s.read()) >= 0)
+      baos.write(b);
+    return baos.toByteArray();
+  }
+
+  private static byte[] readUntilFailure(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      int b;
+      while ((b = s.read()) >= 0)
+        baos.write(b);
+    } catch (final RuntimeException e) {
+      // expected
+    }
+    return baos.toByteArray();
+  }
+}
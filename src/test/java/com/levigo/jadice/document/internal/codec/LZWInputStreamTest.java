@@ -0,0 +1,150 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeLZW;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class LZWInputStreamTest {
+
+  @Test
+  void testEarlyChange() throws IOException {
+    final byte[] data = createData(100000);
+    for (final boolean earlyChange : new boolean[]{true, false}) {
+      final byte[] encoded = encodeLZW(data, earlyChange, false, 4096);
+
+      final LZWInputStream lzw = new LZWInputStream(new ByteArraySeekableInputStream(encoded));
+      lzw.setUseEarlyChange(earlyChange);
+      assertArrayEquals(data, readFully(lzw), "early change " + earlyChange);
+
+      // the code lengths increase at different codes
+      final LZWInputStream wrong = new LZWInputStream(new ByteArraySeekableInputStream(encoded));
+      wrong.setUseEarlyChange(!earlyChange);
+      assertFalse(Arrays.equals(data, readFully(wrong)), "early change " + earlyChange);
+    }
+  }
+
+  @Test
+  void testClearCodes() throws IOException {
+    final byte[] data = createData(100000);
+    for (final int clearAt : new int[]{300, 511, 512, 1023, 2047, 4095}) {
+      final byte[] encoded = encodeLZW(data, true, false, clearAt);
+      assertArrayEquals(data, readFully(new LZWInputStream(new ByteArraySeekableInputStream(encoded))),
+          "clear at " + clearAt);
+    }
+  }
+
+  @Test
+  void testFullDictionary() throws IOException {
+    // the dictionary fills up early on and is never cleared
+    final byte[] data = createData(300000);
+    for (final boolean earlyChange : new boolean[]{true, false}) {
+      final byte[] encoded = encodeLZW(data, earlyChange, false, Integer.MAX_VALUE);
+
+      final LZWInputStream lzw = new LZWInputStream(new ByteArraySeekableInputStream(encoded));
+      lzw.setUseEarlyChange(earlyChange);
+      assertArrayEquals(data, readFully(lzw), "early change " + earlyChange);
+    }
+  }
+
+  @Test
+  void testTIFF5Compatibility() throws IOException {
+    // TIFF 5.0 data is recognized by its first bytes: a clear code followed by a zero byte
+    final byte[] data = createData(100000);
+    data[0] = 0;
+    final byte[] encoded = encodeLZW(data, false, true, 4096);
+    assertEquals(0x00, encoded[0]);
+    assertEquals(0x01, encoded[1]);
+
+    final LZWInputStream lzw = new LZWInputStream(new ByteArraySeekableInputStream(encoded));
+    lzw.setEnableTIFF5CompatibilityCheck(true);
+    assertArrayEquals(data, readFully(lzw));
+
+    // regular data passes the check
+    final LZWInputStream regular = new LZWInputStream(new ByteArraySeekableInputStream(encodeLZW(data)));
+    regular.setEnableTIFF5CompatibilityCheck(true);
+    assertArrayEquals(data, readFully(regular));
+  }
+
+  @Test
+  void testSeekBackwards() throws IOException {
+    final byte[] data = createData(100000);
+    final LZWInputStream lzw = new LZWInputStream(new ByteArraySeekableInputStream(encodeLZW(data)));
+    assertArrayEquals(data, readFully(lzw));
+
+    final Random r = new Random(4711);
+    final byte[] buffer = new byte[1000];
+    for (int i = 0; i < 50; i++) {
+      final int pos = r.nextInt(data.length - buffer.length);
+      lzw.seek(pos);
+      lzw.readFully(buffer);
+      assertEquals(pos + buffer.length, lzw.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(data, pos, pos + buffer.length), buffer, "at " + pos);
+    }
+  }
+
+  @Test
+  void testMaxLength() throws IOException {
+    final byte[] data = createData(100000);
+    final LZWInputStream lzw = new LZWInputStream(new ByteArraySeekableInputStream(encodeLZW(data)), 12345);
+    assertArrayEquals(Arrays.copyOf(data, 12345), readFully(lzw));
+  }
+
+  @Test
+  void testCodeBeyondDictionary() throws IOException {
+    // clear, 'A', 'B', a code not defined yet, 'C'
+    final byte[] encoded = pack9(256, 'A', 'B', 300, 'C', 257);
+    assertArrayEquals(new byte[]{'A', 'B'}, readFully(new LZWInputStream(new ByteArraySeekableInputStream(encoded))));
+
+    // the code being defined right now is valid: 'A', 'A' + 'A'
+    assertArrayEquals(new byte[]{'A', 'A', 'A'},
+        readFully(new LZWInputStream(new ByteArraySeekableInputStream(pack9(256, 'A', 258, 257)))));
+  }
+
+  /**
+   * Pack the given codes using 9 bits per code.
+   */
+  private static byte[] pack9(int... codes) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int bits = 0;
+    int bitCount = 0;
+    for (final int code : codes) {
+      bits = bits << 9 | code;
+      bitCount += 9;
+      for (; bitCount >= 8; bitCount -= 8)
+        out.write(bits >> bitCount - 8);
+      bits &= (1 << bitCount) - 1;
+    }
+    if (bitCount > 0)
+      out.write(bits << 8 - bitCount);
+    return out.toByteArray();
+  }
+
+  private static byte[] createData(int length) {
+    // a small alphabet with repetitions, filling the dictionary quickly
+    final Random r = new Random(length);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++)
+      data[i] = i > 10 && r.nextInt(3) == 0 ? data[i - 1 - r.nextInt(10)] : (byte) ('a' + r.nextInt(16));
+    return data;
+  }
+
+  private static byte[] readFully(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
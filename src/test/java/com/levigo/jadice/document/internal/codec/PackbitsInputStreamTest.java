@@ -0,0 +1,130 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class PackbitsInputStreamTest {
+
+  @Test
+  void testDecodeWithVaryingReadSizes() throws IOException {
+    final byte[] data = createData(300000);
+    final byte[] encoded = encode(data);
+
+    for (final int chunk : new int[]{1, 3, 128, 8192, data.length}) {
+      final PackbitsInputStream s = createStream(encoded);
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[chunk];
+      int read;
+      while ((read = s.read(buffer)) > 0)
+        out.write(buffer, 0, read);
+      assertArrayEquals(data, out.toByteArray(), "chunk size " + chunk);
+    }
+
+    final PackbitsInputStream s = createStream(encoded);
+    for (int i = 0; i < data.length; i++)
+      assertEquals(data[i] & 0xff, s.read(), "at " + i);
+    assertEquals(-1, s.read());
+  }
+
+  @Test
+  void testSeek() throws IOException {
+    final byte[] data = createData(300000);
+    final PackbitsInputStream s = createStream(encode(data));
+
+    final Random r = new Random(4711);
+    final byte[] buffer = new byte[500];
+    long pos = 0;
+    for (int i = 0; i < 500; i++) {
+      // mostly short hops around the current position, sometimes a long way
+      pos = r.nextInt(4) == 0 ? r.nextInt(data.length - buffer.length)
+          : Math.max(0, Math.min(data.length - buffer.length, pos + r.nextInt(10000) - 5000));
+      s.seek(pos);
+      s.readFully(buffer);
+      assertEquals(pos + buffer.length, s.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(data, (int) pos, (int) pos + buffer.length), buffer, "at " + pos);
+    }
+
+    s.seek(data.length + 10);
+    assertEquals(-1, s.read());
+    s.seek(data.length - 1);
+    assertEquals(data[data.length - 1] & 0xff, s.read());
+  }
+
+  @Test
+  void testNoOpAndTruncatedRuns() throws IOException {
+    // -128 is a no-op, a truncated literal run delivers what's there
+    final byte[] encoded = {(byte) -128, (byte) -2, 7, (byte) -128, 4, 1, 2};
+    assertArrayEquals(new byte[]{7, 7, 7, 1, 2}, readFully(createStream(encoded)));
+  }
+
+  @Test
+  void testMaxLength() throws IOException {
+    final byte[] data = createData(10000);
+    final PackbitsInputStream s = new PackbitsInputStream(new ByteArraySeekableInputStream(encode(data)), 1234, 0,
+        false);
+    assertArrayEquals(Arrays.copyOf(data, 1234), readFully(s));
+  }
+
+  private static PackbitsInputStream createStream(byte[] encoded) {
+    return new PackbitsInputStream(new ByteArraySeekableInputStream(encoded), Integer.MAX_VALUE, false);
+  }
+
+  private static byte[] createData(int length) {
+    // alternating runs and noise
+    final Random r = new Random(length);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; ) {
+      final int n = Math.min(length - i, 1 + r.nextInt(300));
+      if (r.nextBoolean())
+        Arrays.fill(data, i, i + n, (byte) r.nextInt());
+      else
+        for (int j = i; j < i + n; j++)
+          data[j] = (byte) r.nextInt();
+      i += n;
+    }
+    return data;
+  }
+
+  private static byte[] encode(byte[] data) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int i = 0;
+    while (i < data.length) {
+      int run = 1;
+      while (i + run < data.length && run < 128 && data[i + run] == data[i])
+        run++;
+      if (run > 1) {
+        out.write(1 - run);
+        out.write(data[i]);
+        i += run;
+      } else {
+        int literal = 1;
+        while (i + literal < data.length && literal < 128
+            && (i + literal + 1 >= data.length || data[i + literal] != data[i + literal + 1]))
+          literal++;
+        out.write(literal - 1);
+        out.write(data, i, literal);
+        i += literal;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readFully(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
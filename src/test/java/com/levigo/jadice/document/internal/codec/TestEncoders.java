@@ -0,0 +1,184 @@
+package com.levigo.jadice.document.internal.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Encoders producing test data for the decoders.
+ */
+public final class TestEncoders {
+
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  private TestEncoders() {
+    // no instantiation -- only static methods
+  }
+
+  /**
+   * Compress the data using the default compression level.
+   */
+  public static byte[] deflate(byte[] data) {
+    return deflate(data, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public static byte[] deflate(byte[] data, int level) {
+    final Deflater deflater = new Deflater(level);
+    deflater.setInput(data);
+    deflater.finish();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[65536];
+    while (!deflater.finished())
+      out.write(buffer, 0, deflater.deflate(buffer));
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  /**
+   * Encode the data as ASCII85 on a single line, terminated by <code>~&gt;</code>. Groups of four
+   * zeros are abbreviated as <code>z</code>.
+   */
+  public static byte[] encodeASCII85(byte[] data) {
+    return encodeASCII85(data, 0);
+  }
+
+  /**
+   * @param lineLength the number of input bytes after which to insert a line break or 0 for no line
+   *                   breaks. Must be a multiple of four.
+   */
+  public static byte[] encodeASCII85(byte[] data, int lineLength) {
+    final StringBuilder sb = new StringBuilder(data.length * 5 / 4 + 2);
+    final char[] group = new char[5];
+    for (int i = 0; i < data.length; i += 4) {
+      final int n = Math.min(4, data.length - i);
+      long value = 0;
+      for (int k = 0; k < 4; k++)
+        value = value << 8 | (k < n ? data[i + k] & 0xff : 0);
+      if (value == 0 && n == 4) {
+        sb.append('z');
+      } else {
+        for (int k = 4; k >= 0; k--) {
+          group[k] = (char) ('!' + value % 85);
+          value /= 85;
+        }
+        sb.append(group, 0, n + 1);
+      }
+      if (lineLength > 0 && (i + 4) % lineLength == 0)
+        sb.append('\n');
+    }
+    return sb.append("~>").toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Encode the data as upper case hex digits on a single line, terminated by <code>&gt;</code>.
+   */
+  public static byte[] encodeASCIIHex(byte[] data) {
+    return encodeASCIIHex(data, 0);
+  }
+
+  /**
+   * @param lineLength the number of input bytes after which to insert a line break or 0 for no line
+   *                   breaks
+   */
+  public static byte[] encodeASCIIHex(byte[] data, int lineLength) {
+    final StringBuilder sb = new StringBuilder(data.length * 2 + 1);
+    for (int i = 0; i < data.length; i++) {
+      sb.append(HEX_DIGITS[data[i] >> 4 & 0xf]).append(HEX_DIGITS[data[i] & 0xf]);
+      if (lineLength > 0 && (i + 1) % lineLength == 0)
+        sb.append('\n');
+    }
+    return sb.append('>').toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Encode the data as LZW using the early change, clearing the dictionary once it is full.
+   */
+  public static byte[] encodeLZW(byte[] data) {
+    return encodeLZW(data, true, false, 4096);
+  }
+
+  /**
+   * Encode the data as LZW. The data starts with a clear code and ends with an end of data code.
+   *
+   * @param earlyChange whether to increase the code length one code early
+   * @param lsbFirst    whether to pack the codes least significant bit first like the TIFF 5.0
+   *                    encoders of libtiff did
+   * @param clearAt     the next free code at which to emit a clear code. For values above 4096 the
+   *                    dictionary is never cleared and new strings are no longer added once it is
+   *                    full.
+   */
+  public static byte[] encodeLZW(byte[] data, boolean earlyChange, boolean lsbFirst, int clearAt) {
+    final CodeWriter out = new CodeWriter(earlyChange, lsbFirst);
+    final Map<Integer, Integer> dictionary = new HashMap<>();
+
+    out.write(256);
+    int prefix = data[0] & 0xff;
+    for (int i = 1; i < data.length; i++) {
+      final int b = data[i] & 0xff;
+      final Integer code = dictionary.get(prefix << 8 | b);
+      if (code != null) {
+        prefix = code;
+        continue;
+      }
+
+      out.write(prefix);
+      if (out.nextCode < 4096)
+        dictionary.put(prefix << 8 | b, out.nextCode++);
+      if (out.nextCode == clearAt) {
+        out.write(256);
+        dictionary.clear();
+        out.nextCode = 258;
+      }
+      prefix = b;
+    }
+    out.write(prefix);
+    out.write(257);
+    return out.finish();
+  }
+
+  /**
+   * Packs LZW codes, choosing the code length like a decoder does: as the decoder adds a string to
+   * its dictionary one code later than the encoder, it knows <code>nextCode - 1</code> strings when
+   * reading a code.
+   */
+  private static final class CodeWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final boolean earlyChange;
+    private final boolean lsbFirst;
+    private int nextCode = 258;
+    private long bits;
+    private int bitCount;
+
+    CodeWriter(boolean earlyChange, boolean lsbFirst) {
+      this.earlyChange = earlyChange;
+      this.lsbFirst = lsbFirst;
+    }
+
+    void write(int code) {
+      int length = 9;
+      while (length < 12 && nextCode - 1 > (1 << length) - (earlyChange ? 2 : 1))
+        length++;
+
+      if (lsbFirst) {
+        bits |= (long) code << bitCount;
+        bitCount += length;
+        for (; bitCount >= 8; bitCount -= 8, bits >>>= 8)
+          out.write((int) bits);
+      } else {
+        bits = bits << length | code;
+        bitCount += length;
+        for (; bitCount >= 8; bitCount -= 8)
+          out.write((int) (bits >> bitCount - 8));
+        bits &= (1L << bitCount) - 1;
+      }
+    }
+
+    byte[] finish() {
+      if (bitCount > 0)
+        out.write((int) (lsbFirst ? bits : bits << 8 - bitCount));
+      return out.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.levigo.jadice.document.internal.codec;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class ZInflaterInputStreamTest {
+
+  @Test
+  void testCheckpointedInflaterMatchesJZlib() throws IOException {
+    for (final int level : new int[]{0, 1, 6, 9}) {
+      final byte[] data = createData(1024 * 1024 + 17);
+      final byte[] compressed = deflate(data, level);
+
+      assertArrayEquals(data, readFully(new ZInflaterInputStream(new ByteArraySeekableInputStream(compressed))));
+      assertArrayEquals(data, readFully(
+          new ZInflaterInputStream(new ByteArraySeekableInputStream(compressed), new InflateCheckpointIndex())));
+    }
+  }
+
+  @Test
+  void testRandomAccessUsingSharedIndex() throws IOException {
+    final byte[] data = createData(2 * 1024 * 1024);
+    final byte[] compressed = deflate(data, 6);
+    final SeekableInputStream source = new ByteArraySeekableInputStream(compressed);
+
+    final InflateCheckpointIndex index = new InflateCheckpointIndex(64 * 1024);
+    readFully(new ZInflaterInputStream(source, index));
+    assertTrue(index.size() > 10, "expected checkpoints, got " + index.size());
+
+    // a second stream benefits from the checkpoints recorded by the first one
+    final ZInflaterInputStream s = new ZInflaterInputStream(source, index);
+    final Random r = new Random(4711);
+    final byte[] buffer = new byte[1000];
+    for (int i = 0; i < 200; i++) {
+      final int pos = r.nextInt(data.length - buffer.length);
+      s.seek(pos);
+      s.readFully(buffer);
+      assertEquals(pos + buffer.length, s.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(data, pos, pos + buffer.length), buffer, "at " + pos);
+    }
+  }
+
+  private static byte[] createData(int length) {
+    // moderately compressible data producing a mix of literals and matches
+    final Random r = new Random(length);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++)
+      data[i] = i > 100 && r.nextInt(4) != 0 ? data[i - 1 - r.nextInt(100)] : (byte) r.nextInt(64);
+    return data;
+  }
+
+  private static byte[] readFully(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      baos.write(buffer, 0, read);
+    return baos.toByteArray();
+  }
+}
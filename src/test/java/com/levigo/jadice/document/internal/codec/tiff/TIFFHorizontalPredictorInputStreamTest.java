@@ -0,0 +1,142 @@
+package com.levigo.jadice.document.internal.codec.tiff;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+
+public class TIFFHorizontalPredictorInputStreamTest {
+
+  @Test
+  void testAllBitDepthsAndColors() throws IOException {
+    for (final int bpc : new int[]{1, 2, 4, 8, 16}) {
+      for (int colors = 1; colors <= 5; colors++) {
+        for (final int columns : new int[]{1, 7, 333}) {
+          final String setup = "bpc=" + bpc + ", colors=" + colors + ", columns=" + columns;
+          final int bytesPerRow = (columns * colors * bpc + 7) / 8;
+          final byte[] data = createData(bytesPerRow * 50, bpc, colors, columns);
+          final byte[] encoded = encode(data, bpc, colors, columns);
+
+          assertArrayEquals(data, readFully(createStream(encoded, bpc, colors, columns), 4096), setup);
+          assertArrayEquals(data, readFully(createStream(encoded, bpc, colors, columns), 5), setup);
+
+          // a truncated last row is decoded as far as possible
+          final int truncated = encoded.length - bytesPerRow / 2;
+          final byte[] partial = readFully(createStream(Arrays.copyOf(encoded, truncated), bpc, colors, columns),
+              4096);
+          assertEquals(truncated, partial.length, setup);
+          assertArrayEquals(Arrays.copyOf(data, truncated - bytesPerRow), Arrays.copyOf(partial, truncated
+              - bytesPerRow), setup);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testSeek() throws IOException {
+    final int columns = 1001;
+    final byte[] data = createData(columns * 8 * 200, 16, 4, columns);
+    final SeekableInputStream s = createStream(encode(data, 16, 4, columns), 16, 4, columns);
+
+    final Random r = new Random(4711);
+    final byte[] buffer = new byte[3000];
+    for (int i = 0; i < 200; i++) {
+      final int pos = r.nextInt(data.length - buffer.length);
+      s.seek(pos);
+      s.readFully(buffer);
+      assertEquals(pos + buffer.length, s.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(data, pos, pos + buffer.length), buffer, "at " + pos);
+    }
+  }
+
+  @Test
+  void testMatchesTIFFPredictorInputStream() throws IOException {
+    // TIFFPredictorInputStream is only correct for 8 bit components and leaves the last pixel of
+    // every row untouched. Compare everything else.
+    for (int colors = 1; colors <= 4; colors++) {
+      final int columns = 517;
+      final int rows = 40;
+      final int bytesPerRow = columns * colors;
+      final byte[] encoded = createData(bytesPerRow * rows, 8, colors, columns);
+
+      final byte[] expected = readFully(new TIFFPredictorInputStream(new ByteArraySeekableInputStream(encoded),
+          TIFF.PREDICTOR_HORIZONTAL_DIFFERENCING, colors, bytesPerRow, new Dimension(columns, rows)), 4096);
+      final byte[] actual = readFully(createStream(encoded, 8, colors, columns), 4096);
+
+      assertEquals(expected.length, actual.length);
+      for (int row = 0; row < rows; row++) {
+        final int from = row * bytesPerRow;
+        final int to = from + bytesPerRow - colors;
+        assertArrayEquals(Arrays.copyOfRange(expected, from, to), Arrays.copyOfRange(actual, from, to),
+            "colors=" + colors + ", row " + row);
+      }
+    }
+  }
+
+  private static SeekableInputStream createStream(byte[] encoded, int bpc, int colors, int columns) {
+    return new TIFFHorizontalPredictorInputStream(new ByteArraySeekableInputStream(encoded), colors, bpc, columns);
+  }
+
+  private static byte[] createData(int length, int bpc, int colors, int columns) {
+    // smooth gradients with a bit of noise
+    final Random r = new Random(length ^ bpc ^ colors << 8 ^ columns << 16);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++)
+      data[i] = (byte) (i / 7 + r.nextInt(3));
+    return data;
+  }
+
+  /**
+   * A straightforward, sample by sample implementation of horizontal differencing.
+   */
+  private static byte[] encode(byte[] data, int bpc, int colors, int columns) {
+    final byte[] encoded = data.clone();
+    final int bytesPerRow = (columns * colors * bpc + 7) / 8;
+    final int mask = (1 << bpc) - 1;
+    for (int row = 0; row * bytesPerRow < data.length; row++) {
+      final int offset = row * bytesPerRow;
+      for (int sample = colors; sample < columns * colors; sample++) {
+        final int value = getSample(data, offset, sample, bpc) - getSample(data, offset, sample - colors, bpc);
+        setSample(encoded, offset, sample, bpc, value & mask);
+      }
+    }
+    return encoded;
+  }
+
+  private static int getSample(byte[] data, int offset, int sample, int bpc) {
+    if (bpc == 16)
+      return (data[offset + 2 * sample] & 0xff) << 8 | data[offset + 2 * sample + 1] & 0xff;
+    final int bit = sample * bpc;
+    return (data[offset + bit / 8] & 0xff) >> 8 - bpc - bit % 8 & (1 << bpc) - 1;
+  }
+
+  private static void setSample(byte[] data, int offset, int sample, int bpc, int value) {
+    if (bpc == 16) {
+      data[offset + 2 * sample] = (byte) (value >> 8);
+      data[offset + 2 * sample + 1] = (byte) value;
+      return;
+    }
+    final int bit = sample * bpc;
+    final int shift = 8 - bpc - bit % 8;
+    final int mask = (1 << bpc) - 1;
+    data[offset + bit / 8] = (byte) (data[offset + bit / 8] & ~(mask << shift) | value << shift);
+  }
+
+  private static byte[] readFully(SeekableInputStream s, int chunkSize) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[chunkSize];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
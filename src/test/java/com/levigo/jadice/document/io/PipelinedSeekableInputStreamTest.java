@@ -0,0 +1,164 @@
+package com.levigo.jadice.document.io;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCII85;
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCIIHex;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+
+public class PipelinedSeekableInputStreamTest {
+
+  private final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testReadAndSeek() throws IOException {
+    final byte[] data = new byte[1000000];
+    new Random(4711).nextBytes(data);
+
+    final SeekableInputStream s = new PipelinedSeekableInputStream(new ByteArraySeekableInputStream(data), executor,
+        4096, 3, true);
+    assertArrayEquals(data, readFully(s));
+
+    final Random r = new Random(4711);
+    final byte[] buffer = new byte[5000];
+    for (int i = 0; i < 200; i++) {
+      final int pos = r.nextInt(data.length - buffer.length);
+      s.seek(pos);
+      s.readFully(buffer);
+      assertEquals(pos + buffer.length, s.getStreamPosition());
+      assertArrayEquals(Arrays.copyOfRange(data, pos, pos + buffer.length), buffer, "at " + pos);
+      assertEquals(data[pos + buffer.length] & 0xff, s.read());
+    }
+
+    s.seek(data.length + 1);
+    assertEquals(-1, s.read());
+    s.close();
+  }
+
+  @Test
+  void testErrorPropagation() throws IOException {
+    final SeekableInputStream s = new PipelinedSeekableInputStream(new FailingInputStream(), executor);
+    assertThrows(IOException.class, s::read);
+    assertThrows(IOException.class, s::read);
+    s.close();
+  }
+
+  @Test
+  void testPipelinedFilterChain() throws IOException {
+    // ASCII85 -> Flate
+    final byte[] data = new byte[3000000];
+    final Random r = new Random(4711);
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) (i / 1000 + r.nextInt(8));
+
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.array(DS.name("ASCII85Decode"), DS.name("FlateDecode")));
+    final DSStream stream = DS.stream(dict, encodeASCII85(deflate(data)));
+
+    final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+    filterFactory.setPipelinedDecoding(executor, 0);
+
+    final SeekableInputStream s = filterFactory.getInputStreamFromPDFStream(stream);
+    assertTrue(s.getSizeEstimate() >= PipelinedSeekableInputStream.DEFAULT_CHUNK_SIZE);
+    assertArrayEquals(data, readFully(s));
+
+    s.seek(12345);
+    final byte[] buffer = new byte[1000];
+    s.readFully(buffer);
+    assertArrayEquals(Arrays.copyOfRange(data, 12345, 13345), buffer);
+    s.close();
+  }
+
+  @Test
+  void testCloseStopsAllStages() throws Exception {
+    // ASCIIHex -> ASCII85 -> Flate: two stages on threads of their own
+    final byte[] data = new byte[3000000];
+    new Random(4711).nextBytes(data);
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"),
+        DS.array(DS.name("ASCIIHexDecode"), DS.name("ASCII85Decode"), DS.name("FlateDecode")));
+    final DSStream stream = DS.stream(dict, encodeASCIIHex(encodeASCII85(deflate(data))));
+
+    final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+    filterFactory.setPipelinedDecoding(executor, 0);
+
+    // read partly, leaving the producers blocked on full pipelines, and close
+    for (int i = 0; i < 5; i++) {
+      final SeekableInputStream s = filterFactory.getInputStreamFromPDFStream(stream);
+      final byte[] buffer = new byte[1000];
+      s.readFully(buffer);
+      assertArrayEquals(Arrays.copyOf(data, buffer.length), buffer);
+      s.close();
+    }
+
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (executor.getActiveCount() > 0 && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+    assertEquals(0, executor.getActiveCount());
+
+    // the source is still usable
+    assertArrayEquals(data, readFully(filterFactory.getInputStreamFromPDFStream(stream)));
+  }
+
+  private static final class FailingInputStream extends SeekableInputStream {
+    @Override
+    public int read() throws IOException {
+      throw new IOException("broken");
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      throw new IOException("broken");
+    }
+
+    @Override
+    public long length() {
+      return -1;
+    }
+
+    @Override
+    public void seek(long pos) {
+    }
+
+    @Override
+    public long getStreamPosition() {
+      return 0;
+    }
+
+    @Override
+    public long getSizeEstimate() {
+      return 0;
+    }
+  }
+
+  private static byte[] readFully(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[7000];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
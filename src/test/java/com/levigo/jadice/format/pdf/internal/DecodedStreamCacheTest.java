@@ -0,0 +1,169 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteBufferSeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory.Filter;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+
+public class DecodedStreamCacheTest {
+
+  private static final Filter[] FLATE = new Filter[]{
+      Filter.FLATE
+  };
+
+  @Test
+  void testEvictionByWeight() throws IOException {
+    final DecodedStreamCache cache = new DecodedStreamCache(100, 60, false);
+    cache.put(1, 0, FLATE, createData(40), 40);
+    cache.put(2, 0, FLATE, createData(40), 40);
+    assertEquals(80, cache.getSize());
+
+    // touch the first entry, making the second one the least recently used
+    assertNotNull(cache.get(1, 0, FLATE));
+    cache.put(3, 0, FLATE, createData(40), 40);
+
+    assertNull(cache.get(2, 0, FLATE));
+    assertArrayEquals(createData(40), readAll(cache.get(1, 0, FLATE)));
+    assertNotNull(cache.get(3, 0, FLATE));
+    assertEquals(2, cache.getEntryCount());
+    assertEquals(80, cache.getSize());
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(40, cache.getEvictedBytes());
+    assertEquals(3, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    // the least recently used entries are evicted until the total size fits again
+    cache.put(4, 0, FLATE, createData(60), 60);
+    assertNull(cache.get(1, 0, FLATE));
+    assertEquals(2, cache.getEntryCount());
+    assertEquals(100, cache.getSize());
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals(80, cache.getEvictedBytes());
+
+    // the generation number and the filters are part of the key
+    assertNull(cache.get(4, 1, FLATE));
+    assertNull(cache.get(4, 0, new Filter[]{
+        Filter.LZW
+    }));
+
+    cache.clear();
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getSize());
+    assertEquals(2, cache.getEvictionCount());
+  }
+
+  @Test
+  void testMaxEntrySize() {
+    final DecodedStreamCache cache = new DecodedStreamCache(100, 60, false);
+    cache.put(1, 0, FLATE, createData(61), 61);
+    assertEquals(0, cache.getEntryCount());
+
+    // only the given length counts
+    cache.put(1, 0, FLATE, createData(100), 60);
+    assertEquals(60, cache.getSize());
+
+    // no entry may exceed the capacity
+    assertEquals(10, new DecodedStreamCache(10, 100, false).getMaxEntrySize());
+  }
+
+  @Test
+  void testOffHeap() throws IOException {
+    final DecodedStreamCache cache = new DecodedStreamCache(100, 60, true);
+    assertTrue(cache.isOffHeap());
+
+    final byte[] data = createData(50);
+    final byte[] expected = Arrays.copyOf(data, 40);
+    cache.put(1, 0, FLATE, data, 40);
+    data[0]++;
+    assertEquals(40, cache.getSize());
+
+    final SeekableInputStream cached = cache.get(1, 0, FLATE);
+    assertTrue(cached instanceof ByteBufferSeekableInputStream);
+    assertArrayEquals(expected, readAll(cached));
+
+    // every stream has its own position
+    assertArrayEquals(expected, readAll(cache.get(1, 0, FLATE)));
+  }
+
+  @Test
+  void testCachedDecoding() throws IOException {
+    final DecodedStreamCache cache = new DecodedStreamCache();
+    final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+    filterFactory.setDecodedStreamCache(cache);
+
+    final byte[] data = createData(100000);
+    assertArrayEquals(data, readAll(filterFactory.getInputStreamFromPDFStream(flateStream(data, 5))));
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getEntryCount());
+
+    assertArrayEquals(data, readAll(filterFactory.getInputStreamFromPDFStream(flateStream(data, 5))));
+    assertEquals(1, cache.getHitCount());
+
+    // streams decoding to more than an entry may hold are decoded again every time
+    final byte[] large = new byte[DecodedStreamCache.DEFAULT_MAX_ENTRY_SIZE + 1];
+    assertArrayEquals(large, readAll(filterFactory.getInputStreamFromPDFStream(flateStream(large, 6))));
+    assertArrayEquals(large, readAll(filterFactory.getInputStreamFromPDFStream(flateStream(large, 6))));
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(3, cache.getMissCount());
+
+    // streams without an object number are not looked up at all
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    assertArrayEquals(data, readAll(filterFactory.getInputStreamFromPDFStream(DS.stream(dict, deflate(data)))));
+    assertEquals(3, cache.getMissCount());
+  }
+
+  @Test
+  void testUnlimitedEntrySize() throws IOException {
+    final DecodedStreamCache cache = new DecodedStreamCache(Long.MAX_VALUE, Integer.MAX_VALUE, false);
+    final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+    filterFactory.setDecodedStreamCache(cache);
+
+    final byte[] data = createData(100000);
+    assertArrayEquals(data, readAll(filterFactory.getInputStreamFromPDFStream(flateStream(data, 5))));
+    assertEquals(data.length, cache.getSize());
+    assertArrayEquals(data, readAll(filterFactory.getInputStreamFromPDFStream(flateStream(data, 5))));
+    assertEquals(1, cache.getHitCount());
+  }
+
+  private static DSStream flateStream(byte[] data, long objectNumber) {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    dict.setThisObjectsObjectNumber(objectNumber);
+    final DSStream stream = DS.stream(dict, deflate(data));
+    stream.setThisObjectsObjectNumber(objectNumber);
+    return stream;
+  }
+
+  private static byte[] createData(int length) {
+    final byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+
+  private static byte[] readAll(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,179 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.format.pdf.internal.HeapFootprint.Category;
+import com.levigo.jadice.format.pdf.internal.HeapFootprint.ObjectFootprint;
+import com.levigo.jadice.format.pdf.internal.crypt.NoSecurityHandler;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSCommonDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSCompactDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+import com.levigo.jadice.format.pdf.internal.parsing.CrossReferenceTable;
+import com.levigo.jadice.format.pdf.internal.parsing.IObjectLocator.Location;
+import com.levigo.jadice.format.pdf.internal.parsing.PDFDocumentStructureParser.IncrementalUpdate;
+import com.levigo.jadice.format.pdf.internal.parsing.PDFDocumentStructureParser.PDFDocumentStructure;
+import com.levigo.jadice.format.pdf.internal.struct.Trailer;
+
+public class HeapFootprintEstimatorTest {
+
+  private final CrossReferenceTable xref = new CrossReferenceTable(16);
+  private final MapReferenceResolver resolver = new MapReferenceResolver();
+
+  private DSReference add(long objectNumber, DSObject object) {
+    resolver.put(objectNumber, object);
+    xref.add(objectNumber, 0, new Location(objectNumber * 100));
+    return xref.getReference(objectNumber, 0);
+  }
+
+  private PDFDocument document() {
+    // a catalog, a page tree with three pages and one large array
+    final List<DSObject> kids = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final DSDictionary page = DS.dict();
+      page.addNamedEntry(DS.name("Type"), DS.name("Page"));
+      page.addNamedEntry(DS.name("Contents"), DS.literalText("page " + i));
+      kids.add(add(10 + i, page));
+    }
+    final DSDictionary pages = DS.dict();
+    pages.addNamedEntry(DS.name("Type"), DS.name("Pages"));
+    pages.addNamedEntry(DS.name("Kids"), DS.array(kids));
+    pages.addNamedEntry(DS.name("Count"), DS.num(3));
+
+    // unregistered names, shared like the parser's name cache does
+    final DSObject[] names = new DSObject[10];
+    for (int i = 0; i < names.length; i++)
+      names[i] = DS.name("Unregistered" + i);
+    final List<DSObject> big = new ArrayList<>();
+    for (int i = 0; i < 1000; i++)
+      big.add(names[i % names.length]);
+
+    final DSDictionary catalog = DS.dict();
+    catalog.addNamedEntry(DS.name("Type"), DS.name("Catalog"));
+    catalog.addNamedEntry(DS.name("Pages"), add(2, pages));
+    catalog.addNamedEntry(DS.name("Big"), add(3, DS.array(big)));
+
+    final DSDictionary trailerDict = DS.dict();
+    trailerDict.addNamedEntry(DS.name("Root"), add(1, catalog));
+    trailerDict.addNamedEntry(DS.name("Size"), DS.num(13));
+
+    final PDFDocumentStructure structure = new PDFDocumentStructure(null, 0,
+        new IncrementalUpdate(xref, new Trailer(trailerDict)));
+    return new PDFDocument(resolver, new PDFFilterFactory(resolver), new NoSecurityHandler(),
+        new Trailer(trailerDict), catalog, structure);
+  }
+
+  @Test
+  void testEstimate() {
+    final PDFDocument document = document();
+    document.getPageTree().getPageDictionary(1);
+
+    final HeapFootprint footprint = HeapFootprintEstimator.estimate(document, 2);
+
+    final Category objs = footprint.getObjects();
+    assertEquals(6, objs.getCount());
+    long typeTotal = 0;
+    for (final Category c : footprint.getByType().values())
+      typeTotal += c.getBytes();
+    assertEquals(objs.getBytes(), typeTotal);
+
+    long histogramTotal = 0;
+    for (final long n : objs.getHistogram())
+      histogramTotal += n;
+    assertEquals(6, histogramTotal);
+
+    // the unregistered names are counted once each, /Big being the eleventh
+    assertEquals(11, footprint.getByType().get("DSNameObject").getCount());
+    assertEquals(3, footprint.getByType().get("DSLiteralString").getCount());
+
+    final List<ObjectFootprint> largest = footprint.getLargest();
+    assertEquals(2, largest.size());
+    assertEquals(3, largest.get(0).getReference().getReferencedObjectNumber());
+    assertTrue(largest.get(0).getBytes() >= largest.get(1).getBytes());
+
+    assertEquals(1, footprint.getByUpdate().size());
+    assertEquals(6, footprint.getByUpdate().get(0).getCount());
+    assertEquals(1, footprint.getByCache().get("page tree").getCount());
+
+    // the table of pages only counts once it has been built
+    final long pageTree = footprint.getByCache().get("page tree").getBytes();
+    document.getPageTree().buildIndex(Runnable::run).join();
+    assertTrue(HeapFootprintEstimator.estimate(document, 2).getByCache().get("page tree").getBytes() > pageTree);
+
+    assertTrue(footprint.getTotalBytes() > objs.getBytes());
+    assertTrue(footprint.toString().contains("DSArray"));
+  }
+
+  @Test
+  void testCanonicalReferences() {
+    // references to objects of older updates are the instances of their tables, too
+    final CrossReferenceTable older = new CrossReferenceTable(4);
+    older.add(20, 0, new Location(2000));
+    resolver.put(20, DS.num(100000));
+    xref.setPrev(older);
+    final PDFDocument document = document();
+    document.getCatalog().addNamedEntry(DS.name("Old"), older.getReference(20, 0));
+    assertNull(HeapFootprintEstimator.estimate(document, 2).getByType().get("DSReference"));
+
+    // other instances are not
+    document.getCatalog().addNamedEntry(DS.name("Copy"), DS.ref(20));
+    assertEquals(1, HeapFootprintEstimator.estimate(document, 2).getByType().get("DSReference").getCount());
+  }
+
+  @Test
+  void testSharedInstances() {
+    // small integers, booleans, registered names and null are shared
+    final DSDictionary dict = DS.dict();
+    final long empty = HeapFootprintEstimator.sizeOf(dict);
+    dict.addNamedEntry(DS.name("Type"), DS.num(1));
+    dict.addNamedEntry(DS.name("Subtype"), DS.nullObj());
+    assertEquals(empty, HeapFootprintEstimator.sizeOf(dict));
+
+    // larger integers are not
+    dict.addNamedEntry(DS.name("Width"), DS.num(100000));
+    assertTrue(HeapFootprintEstimator.sizeOf(dict) > empty);
+  }
+
+  @Test
+  void testDictionarySizes() {
+    // registered names and null are shared, only the dictionaries count
+    final String[] keys = {
+        "Type", "Filter", "BitsPerComponent", "ColorSpace", "Decode", "DecodeParms", "Height", "Width", "DeviceGray",
+        "DeviceRGB", "DeviceCMYK", "Indexed", "ICCBased", "ASCIIHexDecode", "ASCII85Decode", "LZWDecode", "FlateDecode"
+    };
+
+    // the object and two arrays of four, then sixteen slots, then a hash map of 64 slots and a node per entry
+    final DSDictionary compact = new DSCompactDictionary();
+    final DSDictionary common = new DSCommonDictionary();
+    for (int i = 0; i < keys.length; i++) {
+      compact.addNamedEntry(DS.name(keys[i]), DS.nullObj());
+      common.addNamedEntry(DS.name(keys[i]), DS.nullObj());
+      if (i == 2)
+        assertEquals(48 + 2 * 32, HeapFootprintEstimator.sizeOf(compact));
+      if (i == 8)
+        assertEquals(48 + 2 * 80, HeapFootprintEstimator.sizeOf(compact));
+    }
+    assertEquals(48 + 48 + 272 + 17 * 32, HeapFootprintEstimator.sizeOf(compact));
+
+    // the object and a hash map of 32 slots with a node per entry
+    assertEquals(32 + 48 + 144 + 17 * 32, HeapFootprintEstimator.sizeOf(common));
+  }
+
+  @Test
+  void testHistogramBuckets() {
+    assertEquals(0, HeapFootprint.bucketOf(0));
+    assertEquals(1, HeapFootprint.bucketOf(1));
+    assertEquals(6, HeapFootprint.bucketOf(32));
+    assertEquals(6, HeapFootprint.bucketOf(63));
+    assertEquals(7, HeapFootprint.bucketOf(64));
+  }
+}
@@ -0,0 +1,48 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+
+/**
+ * A {@link ReferenceResolver} for tests, resolving references by their object number from a map
+ * and counting the resolutions. Objects must be added before resolving concurrently.
+ */
+public class MapReferenceResolver implements ReferenceResolver {
+
+  private final Map<Long, DSObject> objects = new HashMap<>();
+  private final AtomicInteger resolutions = new AtomicInteger();
+
+  /**
+   * Register the object resolved for references with the given object number.
+   *
+   * @param objectNumber the object number
+   * @param object the object
+   */
+  public void put(long objectNumber, DSObject object) {
+    objects.put(objectNumber, object);
+  }
+
+  /**
+   * @return the number of references resolved since the last {@link #resetResolutions()}
+   */
+  public int getResolutions() {
+    return resolutions.get();
+  }
+
+  public void resetResolutions() {
+    resolutions.set(0);
+  }
+
+  @Override
+  public DSObject resolve(DSObject obj) {
+    if (obj instanceof DSReference) {
+      resolutions.incrementAndGet();
+      return objects.get(((DSReference) obj).getReferencedObjectNumber());
+    }
+    return obj;
+  }
+}
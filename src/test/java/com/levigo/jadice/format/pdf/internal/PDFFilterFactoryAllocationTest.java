@@ -0,0 +1,156 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCII85;
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeASCIIHex;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+
+/**
+ * The lexer and the cross reference stream parser consume decoded data byte by byte. Make sure that
+ * doing so doesn't produce garbage proportional to the amount of data.
+ */
+public class PDFFilterFactoryAllocationTest {
+
+  private static final int SIZE = 4 * 1024 * 1024;
+
+  /**
+   * a generous allowance for one-time allocations, e.g. when a decoder grows a buffer
+   */
+  private static final long MAX_ALLOCATION = 64 * 1024;
+
+  private final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+
+  @Test
+  void testObjectStream() throws IOException {
+    // a typical object stream: flate with PNG prediction
+    final int columns = 16;
+    final byte[] rows = createData(SIZE / columns * (columns + 1));
+    for (int i = 0; i < rows.length; i += columns + 1)
+      rows[i] = (byte) (i % 5);
+
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Type"), DS.name("ObjStm"));
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    dict.addNamedEntry(DS.name("DecodeParms"), predictorParms(12, 1, 8, columns));
+    assertReadBytewiseWithoutGarbage(DS.stream(dict, deflate(rows)), SIZE);
+  }
+
+  @Test
+  void testFlate() throws IOException {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    assertReadBytewiseWithoutGarbage(DS.stream(dict, deflate(createData(SIZE))), SIZE);
+  }
+
+  @Test
+  void testTIFFPredictor() throws IOException {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    dict.addNamedEntry(DS.name("DecodeParms"), predictorParms(2, 4, 16, 128));
+    assertReadBytewiseWithoutGarbage(DS.stream(dict, deflate(createData(SIZE))), SIZE);
+  }
+
+  @Test
+  void testASCII85() throws IOException {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("ASCII85Decode"));
+    assertReadBytewiseWithoutGarbage(DS.stream(dict, encodeASCII85(createData(SIZE))), SIZE);
+  }
+
+  @Test
+  void testASCIIHex() throws IOException {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("ASCIIHexDecode"));
+    assertReadBytewiseWithoutGarbage(DS.stream(dict, encodeASCIIHex(createData(SIZE))), SIZE);
+  }
+
+  @Test
+  void testRunLength() throws IOException {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("RunLengthDecode"));
+    assertReadBytewiseWithoutGarbage(DS.stream(dict, encodeRunLength(createData(SIZE))), SIZE);
+  }
+
+  private void assertReadBytewiseWithoutGarbage(DSStream stream, int expectedLength) throws IOException {
+    final com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+
+    final SeekableInputStream s = filterFactory.getInputStreamFromPDFStream(stream);
+
+    final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+    long length = 0;
+    long checksum = 0;
+    int b;
+    while ((b = s.read()) >= 0) {
+      length++;
+      checksum += b;
+    }
+    final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+    assertEquals(expectedLength, length);
+    assertTrue(checksum > 0);
+    assertTrue(allocated < MAX_ALLOCATION, "Reading " + length + " bytes allocated " + allocated + " bytes");
+  }
+
+  private static com.sun.management.ThreadMXBean getThreadMXBean() {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+        "Thread allocation measurement not supported");
+    final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(bean.isThreadAllocatedMemorySupported(), "Thread allocation measurement not supported");
+    bean.setThreadAllocatedMemoryEnabled(true);
+    return bean;
+  }
+
+  private static DSDictionary predictorParms(int predictor, int colors, int bpc, int columns) {
+    final DSDictionary parms = DS.dict();
+    parms.addNamedEntry(DS.name("Predictor"), DS.num(predictor));
+    parms.addNamedEntry(DS.name("Colors"), DS.num(colors));
+    parms.addNamedEntry(DS.name("BitsPerComponent"), DS.num(bpc));
+    parms.addNamedEntry(DS.name("Columns"), DS.num(columns));
+    return parms;
+  }
+
+  private static byte[] createData(int length) {
+    // compressible data containing runs
+    final Random r = new Random(length);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++)
+      data[i] = i > 0 && r.nextInt(3) == 0 ? data[i - 1] : (byte) r.nextInt(32);
+    return data;
+  }
+
+  private static byte[] encodeRunLength(byte[] data) {
+    // repeat runs of two or more, literal runs of single bytes
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int i = 0;
+    while (i < data.length) {
+      int run = 1;
+      while (i + run < data.length && run < 128 && data[i + run] == data[i])
+        run++;
+      if (run > 1) {
+        out.write(1 - run);
+        out.write(data[i]);
+      } else {
+        out.write(0);
+        out.write(data[i]);
+      }
+      i += run;
+    }
+    out.write(128);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,142 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory.PooledBufferSink;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+
+public class PDFFilterFactoryByteBufferTest {
+
+  private final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+
+  @Test
+  void testDecodeIntoHeapBuffer() throws Exception {
+    final byte[] data = createData(300000);
+    final DSStream stream = image(data, 500, 200, DS.name("DeviceRGB"));
+    assertEquals(data.length, filterFactory.getDecodedLength(stream));
+
+    final ByteBuffer buffer = ByteBuffer.allocate(data.length + 10);
+    buffer.position(5);
+    assertEquals(data.length, filterFactory.decodeInto(stream, buffer));
+    assertEquals(data.length + 5, buffer.position());
+    assertArrayEquals(data, Arrays.copyOfRange(buffer.array(), 5, 5 + data.length));
+  }
+
+  @Test
+  void testDecodeIntoDirectBuffer() throws Exception {
+    final byte[] data = createData(300000);
+    final DSStream stream = image(data, 500, 200, DS.name("DeviceRGB"));
+
+    final ByteBuffer buffer = ByteBuffer.allocateDirect((int) filterFactory.getDecodedLength(stream));
+    assertEquals(data.length, filterFactory.decodeInto(stream, buffer));
+
+    buffer.flip();
+    final byte[] decoded = new byte[buffer.remaining()];
+    buffer.get(decoded);
+    assertArrayEquals(data, decoded);
+  }
+
+  @Test
+  void testDecodeIntoTooSmallBuffer() throws Exception {
+    final byte[] data = createData(100000);
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    final DSStream stream = DS.stream(dict, deflate(data));
+    assertEquals(-1, filterFactory.getDecodedLength(stream));
+
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(1000);
+    assertEquals(1000, filterFactory.decodeInto(stream, buffer));
+    assertEquals(data[999], buffer.get(999));
+  }
+
+  @Test
+  void testPooledBufferSink() throws Exception {
+    final ByteArrayPool pool = new ByteArrayPool();
+    final byte[] data = createData(1000000);
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    final DSStream stream = DS.stream(dict, deflate(data));
+
+    try (PooledBufferSink sink = new PooledBufferSink(pool)) {
+      assertEquals(data.length, filterFactory.decode(stream, sink));
+      assertEquals(data.length, sink.getLength());
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (final ByteBuffer buffer : sink.getBuffers())
+        out.write(buffer.array(), buffer.position(), buffer.remaining());
+      assertArrayEquals(data, out.toByteArray());
+    }
+    // the last buffer is partially filled, so the end of the data is found without another one
+    assertEquals(1000000 / (64 * 1024) + 1, pool.getAllocationCount());
+    assertEquals(pool.getAllocationCount() * 64 * 1024, pool.getSize());
+  }
+
+  @Test
+  void testDecodedLength() {
+    final byte[] data = new byte[10];
+
+    final DSDictionary dl = DS.dict();
+    dl.addNamedEntry(DS.name("DL"), DS.num(12345));
+    assertEquals(12345, filterFactory.getDecodedLength(DS.stream(dl, data)));
+
+    // rows are padded to full bytes
+    final DSStream gray = image(data, 9, 10, DS.name("DeviceGray"));
+    gray.getDictionary().addNamedEntry(DS.name("BitsPerComponent"), DS.num(1));
+    assertEquals(20, filterFactory.getDecodedLength(gray));
+
+    final DSDictionary iccParms = DS.dict();
+    iccParms.addNamedEntry(DS.name("N"), DS.num(4));
+    final DSStream icc = image(data, 10, 10, DS.array(DS.name("ICCBased"), DS.stream(iccParms, data)));
+    assertEquals(400, filterFactory.getDecodedLength(icc));
+
+    final DSStream deviceN = image(data, 10, 10,
+        DS.array(DS.name("DeviceN"), DS.array(DS.name("A"), DS.name("B")), DS.name("DeviceGray")));
+    assertEquals(200, filterFactory.getDecodedLength(deviceN));
+
+    final DSStream mask = image(data, 10, 10, null);
+    mask.getDictionary().addNamedEntry(DS.name("ImageMask"), DS.bool(true));
+    assertEquals(20, filterFactory.getDecodedLength(mask));
+
+    // named color space resources are unknown
+    assertEquals(-1, filterFactory.getDecodedLength(image(data, 10, 10, DS.name("CS0"))));
+
+    // the geometry doesn't describe the output of non-streamable filters
+    final DSStream dct = image(data, 10, 10, DS.name("DeviceRGB"));
+    dct.getDictionary().addNamedEntry(DS.name("Filter"), DS.name("DCTDecode"));
+    assertEquals(-1, filterFactory.getDecodedLength(dct));
+  }
+
+  private static DSStream image(byte[] data, int width, int height, DSObject cs) {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Subtype"), DS.name("Image"));
+    dict.addNamedEntry(DS.name("Width"), DS.num(width));
+    dict.addNamedEntry(DS.name("Height"), DS.num(height));
+    if (cs != null) {
+      dict.addNamedEntry(DS.name("ColorSpace"), cs);
+      dict.addNamedEntry(DS.name("BitsPerComponent"), DS.num(8));
+      dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+      return DS.stream(dict, deflate(data));
+    }
+    return DS.stream(dict, data);
+  }
+
+  private static byte[] createData(int length) {
+    final Random r = new Random(length);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++)
+      data[i] = (byte) (i / 100 + r.nextInt(4));
+    return data;
+  }
+}
@@ -0,0 +1,115 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory.DecodedStream;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+
+public class PDFFilterFactoryDecodeAllTest {
+
+  @Test
+  void testDecodeAll() throws Exception {
+    final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+
+    final List<byte[]> data = new ArrayList<>();
+    final List<DSStream> streams = new ArrayList<>();
+    final Random r = new Random(4711);
+    for (int i = 0; i < 100; i++) {
+      final byte[] d = new byte[r.nextInt(300000)];
+      for (int j = 0; j < d.length; j++)
+        d[j] = (byte) (j / 100 + r.nextInt(4));
+      data.add(d);
+
+      final DSDictionary dict = DS.dict();
+      dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+      if (i % 2 == 0)
+        dict.addNamedEntry(DS.name("DL"), DS.num(d.length));
+      streams.add(DS.stream(dict, deflate(d)));
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int round = 0; round < 2; round++) {
+        final List<CompletableFuture<DecodedStream>> futures = filterFactory.decodeAll(streams, executor);
+        assertEquals(streams.size(), futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+          try (DecodedStream decoded = futures.get(i).get()) {
+            assertEquals(streams.get(i), decoded.getSource());
+            assertEquals(data.get(i).length, decoded.getLength());
+            assertArrayEquals(data.get(i), Arrays.copyOf(decoded.getData(), decoded.getLength()));
+
+            final SeekableInputStream s = decoded.getInputStream();
+            assertEquals(decoded.getLength(), s.length());
+          }
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // the second round reuses the buffers of the first one
+    assertTrue(filterFactory.getBufferPool().getReuseCount() > 0, filterFactory.getBufferPool().toString());
+  }
+
+  @Test
+  void testDecodeFailure() throws Exception {
+    final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("ASCIIHexDecode"));
+    final DSStream stream = DS.stream(dict, "4142xx>".getBytes(StandardCharsets.US_ASCII));
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final CompletableFuture<DecodedStream> future = filterFactory.decodeAll(Arrays.asList(stream), executor).get(
+          0);
+      final ExecutionException e = assertThrows(ExecutionException.class, future::get);
+      assertTrue(e.getCause() instanceof UncheckedIOException, String.valueOf(e.getCause()));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testBufferPool() {
+    final ByteArrayPool pool = new ByteArrayPool(64 * 1024);
+
+    final byte[] a = pool.acquire(5000);
+    assertEquals(8192, a.length);
+    assertEquals(4096, pool.acquire(0).length);
+
+    pool.release(a);
+    assertEquals(8192, pool.getSize());
+    assertTrue(a == pool.acquire(8000));
+    assertEquals(0, pool.getSize());
+
+    // beyond the capacity
+    pool.release(pool.acquire(128 * 1024));
+    assertEquals(0, pool.getSize());
+
+    // arrays of other sizes are ignored, those of the pool's sizes are retained whatever their origin
+    pool.release(new byte[5000]);
+    assertEquals(0, pool.getSize());
+    pool.release(new byte[4096]);
+    assertEquals(4096, pool.getSize());
+  }
+}
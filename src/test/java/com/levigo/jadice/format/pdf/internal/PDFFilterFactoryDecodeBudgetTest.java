@@ -0,0 +1,237 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static com.levigo.jadice.document.internal.codec.TestEncoders.encodeLZW;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.internal.codec.DecodeBudget;
+import com.levigo.jadice.document.internal.codec.DecodeBudgetExceededException;
+import com.levigo.jadice.document.internal.codec.DecodeBudgetExceededException.Limit;
+import com.levigo.jadice.document.internal.codec.DecodeMemoryAccountant;
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory.DecodedStream;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+
+public class PDFFilterFactoryDecodeBudgetTest {
+
+  private static final int BOMB_SIZE = 64 * 1024 * 1024;
+
+  private final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> o);
+
+  @Test
+  void testFlateStreamLength() {
+    final DecodeBudget budget = new DecodeBudget();
+    budget.setMaxStreamLength(10000000);
+    filterFactory.setDecodeBudget(budget);
+
+    assertLimitExceeded(Limit.STREAM_LENGTH, stream("FlateDecode", deflate(new byte[BOMB_SIZE])));
+  }
+
+  @Test
+  void testFlateExpansionRatio() throws IOException {
+    final DecodeBudget budget = new DecodeBudget();
+    budget.setMaxExpansionRatio(100);
+    filterFactory.setDecodeBudget(budget);
+
+    assertLimitExceeded(Limit.EXPANSION_RATIO, stream("FlateDecode", deflate(new byte[BOMB_SIZE])));
+
+    // the ratio is enforced for large output only
+    assertEquals(500000, readAll(stream("FlateDecode", deflate(new byte[500000]))));
+  }
+
+  @Test
+  void testFlatePNGPredictor() {
+    final DecodeBudget budget = new DecodeBudget();
+    budget.setMaxStreamLength(10000000);
+    filterFactory.setDecodeBudget(budget);
+
+    final byte[] rows = new byte[BOMB_SIZE / 64 * 65];
+    final DSStream stream = stream("FlateDecode", deflate(rows));
+    final DSDictionary parms = DS.dict();
+    parms.addNamedEntry(DS.name("Predictor"), DS.num(12));
+    parms.addNamedEntry(DS.name("Columns"), DS.num(64));
+    stream.getDictionary().addNamedEntry(DS.name("DecodeParms"), parms);
+    assertLimitExceeded(Limit.STREAM_LENGTH, stream);
+  }
+
+  @Test
+  void testLZW() throws IOException {
+    final DSStream stream = stream("LZWDecode", encodeLZW(new byte[BOMB_SIZE / 4]));
+    assertEquals(BOMB_SIZE / 4, readAll(stream));
+
+    final DecodeBudget budget = new DecodeBudget();
+    budget.setMaxStreamLength(1000000);
+    filterFactory.setDecodeBudget(budget);
+    assertLimitExceeded(Limit.STREAM_LENGTH, stream);
+  }
+
+  @Test
+  void testRetryAfterLimitExceeded() throws IOException {
+    final DecodeBudget budget = new DecodeBudget();
+    budget.setMaxStreamLength(1000000);
+    filterFactory.setDecodeBudget(budget);
+
+    assertRetryRefused(stream("FlateDecode", deflate(new byte[BOMB_SIZE / 16])));
+    assertRetryRefused(stream("LZWDecode", encodeLZW(new byte[BOMB_SIZE / 16])));
+
+    final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+    for (int i = 0; i < BOMB_SIZE / 16 / 128; i++) {
+      runs.write(-127);
+      runs.write(0);
+    }
+    assertRetryRefused(stream("RunLengthDecode", runs.toByteArray()));
+
+    final DSStream predicted = stream("FlateDecode", deflate(new byte[BOMB_SIZE / 16 / 64 * 65]));
+    final DSDictionary parms = DS.dict();
+    parms.addNamedEntry(DS.name("Predictor"), DS.num(12));
+    parms.addNamedEntry(DS.name("Columns"), DS.num(64));
+    predicted.getDictionary().addNamedEntry(DS.name("DecodeParms"), parms);
+    assertRetryRefused(predicted);
+  }
+
+  @Test
+  void testRunLengthDocumentLength() throws IOException {
+    final DecodeBudget budget = new DecodeBudget();
+    budget.setMaxDocumentLength(2500000);
+    filterFactory.setDecodeBudget(budget);
+
+    final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+    for (int i = 0; i < 1000000 / 128; i++) {
+      runs.write(-127);
+      runs.write(0);
+    }
+    runs.write(128);
+    final DSStream stream = stream("RunLengthDecode", runs.toByteArray());
+
+    // the first two streams fit into the budget of the document, the third one doesn't
+    assertEquals(1000000 / 128 * 128, readAll(stream));
+    assertEquals(1000000 / 128 * 128, readAll(stream));
+    assertLimitExceeded(Limit.DOCUMENT_LENGTH, stream);
+    assertTrue(budget.getDocumentLength() > 2500000);
+  }
+
+  @Test
+  void testStreamTime() {
+    final DecodeBudget budget = new DecodeBudget();
+    budget.setMaxStreamTime(0, TimeUnit.MILLISECONDS);
+    filterFactory.setDecodeBudget(budget);
+
+    assertLimitExceeded(Limit.STREAM_TIME, stream("FlateDecode", deflate(new byte[100000])));
+    assertTrue(budget.getDocumentTime(TimeUnit.NANOSECONDS) > 0);
+  }
+
+  @Test
+  void testPipelined() {
+    final DecodeBudget budget = new DecodeBudget();
+    // exceeded by the first stage running on the executor
+    budget.setMaxStreamLength(50000);
+    filterFactory.setDecodeBudget(budget);
+
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      filterFactory.setPipelinedDecoding(executor, 0);
+      final DSStream stream = stream("FlateDecode", deflate(deflate(new byte[BOMB_SIZE])));
+      stream.getDictionary().addNamedEntry(DS.name("Filter"), DS.array(DS.name("FlateDecode"),
+          DS.name("FlateDecode")));
+      assertLimitExceeded(Limit.STREAM_LENGTH, stream);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testMemoryAccountant() throws IOException {
+    final DecodeMemoryAccountant accountant = new DecodeMemoryAccountant(3 * 1024 * 1024);
+    final DecodeBudget budget = new DecodeBudget(accountant);
+    filterFactory.setDecodeBudget(budget);
+
+    final DSStream stream = stream("FlateDecode", deflate(new byte[1500000]));
+    try (DecodedStream decoded = filterFactory.decode(stream)) {
+      assertEquals(1500000, decoded.getLength());
+      assertEquals(decoded.getData().length, accountant.getReserved());
+
+      // a second stream doesn't fit while the first one is held
+      final DecodeBudgetExceededException e = assertThrows(DecodeBudgetExceededException.class,
+          () -> filterFactory.decode(stream));
+      assertEquals(Limit.MEMORY, e.getLimit());
+      assertEquals(decoded.getData().length, accountant.getReserved());
+    }
+    assertEquals(0, accountant.getReserved());
+
+    filterFactory.decode(stream).close();
+    assertEquals(0, accountant.getReserved());
+
+    // a derived budget shares the accountant, but not the usage
+    final DecodeBudget derived = new DecodeBudget(budget);
+    assertTrue(derived.getMemoryAccountant() == accountant);
+    assertEquals(0, derived.getDocumentLength());
+  }
+
+  private void assertLimitExceeded(Limit limit, DSStream stream) {
+    final DecodeBudgetExceededException e = assertThrows(DecodeBudgetExceededException.class,
+        () -> readAll(stream));
+    assertEquals(limit, e.getLimit(), e.getMessage());
+  }
+
+  /**
+   * Catch the exception and keep on reading: the stream must neither hand out more data than the
+   * limit of 1000000 bytes nor pretend to end.
+   */
+  private void assertRetryRefused(DSStream stream) throws IOException {
+    final SeekableInputStream s = filterFactory.getInputStreamFromPDFStream(stream);
+    try {
+      final byte[] buffer = new byte[65536];
+      long length = 0;
+      int failures = 0;
+      while (failures < 10) {
+        try {
+          final int read = s.read(buffer);
+          assertTrue(read > 0, "end of data after " + failures + " failures");
+          length += read;
+        } catch (final DecodeBudgetExceededException e) {
+          assertEquals(Limit.STREAM_LENGTH, e.getLimit(), e.getMessage());
+          failures++;
+        }
+      }
+      assertTrue(length <= 1000000, length + " bytes handed out");
+
+      assertEquals(Limit.STREAM_LENGTH, assertThrows(DecodeBudgetExceededException.class, s::read).getLimit());
+      s.seek(0);
+      assertEquals(Limit.STREAM_LENGTH, assertThrows(DecodeBudgetExceededException.class, s::read).getLimit());
+    } finally {
+      s.close();
+    }
+  }
+
+  private long readAll(DSStream stream) throws IOException {
+    final SeekableInputStream s = filterFactory.getInputStreamFromPDFStream(stream);
+    try {
+      final byte[] buffer = new byte[65536];
+      long length = 0;
+      int read;
+      while ((read = s.read(buffer)) > 0)
+        length += read;
+      return length;
+    } finally {
+      s.close();
+    }
+  }
+
+  private static DSStream stream(String filter, byte[] data) {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name(filter));
+    return DS.stream(dict, data);
+  }
+}
@@ -0,0 +1,162 @@
+package com.levigo.jadice.format.pdf.internal;
+
+import static com.levigo.jadice.document.internal.codec.TestEncoders.deflate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.internal.codec.FlatePNGPredictorInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory.Filter;
+import com.levigo.jadice.format.pdf.internal.PDFFilterFactory.FilterPipeline;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+import com.levigo.jadice.format.pdf.internal.objects.DSStream;
+
+public class PDFFilterFactoryFilterPipelineTest {
+
+  private static final int COLUMNS = 16;
+
+  private final DSDictionary decodeParms = DS.dict();
+  private final AtomicInteger resolutions = new AtomicInteger();
+  private final PDFFilterFactory filterFactory = new PDFFilterFactory(o -> {
+    resolutions.incrementAndGet();
+    return o instanceof DSReference ? decodeParms : o;
+  });
+
+  public PDFFilterFactoryFilterPipelineTest() {
+    decodeParms.addNamedEntry(DS.name("Predictor"), DS.num(12));
+    decodeParms.addNamedEntry(DS.name("Columns"), DS.num(COLUMNS));
+  }
+
+  @Test
+  void testNumberedStreamsAreCompiledOnce() throws IOException {
+    final byte[] data = new byte[100000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) (i * 7 / 3);
+
+    final DSStream stream = numberedStream(data);
+    final FilterPipeline pipeline = filterFactory.getFilterPipeline(stream);
+    assertArrayEquals(new Filter[]{
+        Filter.CRYPT, Filter.FLATE, Filter.PREDICTOR_PNG
+    }, pipeline.getFilters());
+    assertTrue(pipeline.isStreamable());
+    assertEquals(stream.getDictionary().getNamedEntryValue("Length"), DS.num(pipeline.getEncodedLength()));
+
+    // opening the stream again, even when parsed again, doesn't inspect the dictionary
+    final int before = resolutions.get();
+    for (int i = 0; i < 3; i++) {
+      final DSStream reparsed = numberedStream(data);
+      assertSame(pipeline, filterFactory.getFilterPipeline(reparsed));
+      assertArrayEquals(data, readAll(filterFactory.getInputStreamFromPDFStream(reparsed)));
+    }
+    assertEquals(before, resolutions.get());
+  }
+
+  @Test
+  void testUnnumberedStreamsAreNotCached() {
+    final DSStream stream = stream(new byte[10]);
+    assertNotSame(filterFactory.getFilterPipeline(stream), filterFactory.getFilterPipeline(stream));
+  }
+
+  @Test
+  void testPipelineCacheIsBounded() {
+    final FilterPipeline first = filterFactory.getFilterPipeline(numberedStream(new byte[10], 1));
+
+    // the generation number is part of the key, even for huge object numbers
+    final DSStream otherGeneration = numberedStream(new byte[10], 1);
+    otherGeneration.getDictionary().setThisObjectsGenerationNumber(1);
+    assertNotSame(first, filterFactory.getFilterPipeline(otherGeneration));
+    assertNotSame(filterFactory.getFilterPipeline(numberedStream(new byte[10], 1L << 48)),
+        filterFactory.getFilterPipeline(numberedStream(new byte[10], 0)));
+
+    // the least recently used pipelines are dropped
+    for (int i = 0; i < PDFFilterFactory.MAX_FILTER_PIPELINES; i++)
+      filterFactory.getFilterPipeline(numberedStream(new byte[10], 1000 + i));
+    assertNotSame(first, filterFactory.getFilterPipeline(numberedStream(new byte[10], 1)));
+  }
+
+  @Test
+  void testPipelineIsImmutable() {
+    final FilterPipeline pipeline = filterFactory.getFilterPipeline(numberedStream(new byte[10]));
+    assertThrows(UnsupportedOperationException.class, () -> pipeline.getFilterChain().clear());
+
+    pipeline.getFilters()[0] = Filter.DCT;
+    assertEquals(Filter.CRYPT, pipeline.getFilters()[0]);
+    assertFalse(pipeline.getFilterChain().isEmpty());
+  }
+
+  @Test
+  void testCheckpointsDependOnDecodedLength() throws IOException {
+    // highly compressible: the encoded length is far below the interval
+    final byte[] data = new byte[1024 * 1024];
+    filterFactory.setFlateCheckpointInterval(256 * 1024);
+
+    final DSStream fused = numberedStream(data);
+    final SeekableInputStream fusedStream = filterFactory.buildFilterStreamChain(fused, false).getStream();
+    assertTrue(fusedStream instanceof FlatePNGPredictorInputStream);
+
+    // the decoded length is known: checkpoints take priority over the fused decoder
+    final DSStream checkpointed = numberedStream(data, 43);
+    checkpointed.getDictionary().addNamedEntry(DS.name("DL"), DS.num(data.length));
+    final SeekableInputStream checkpointedStream = filterFactory.buildFilterStreamChain(checkpointed, false)
+        .getStream();
+    assertFalse(checkpointedStream instanceof FlatePNGPredictorInputStream);
+
+    assertArrayEquals(data, readAll(fusedStream));
+    assertArrayEquals(data, readAll(checkpointedStream));
+    checkpointedStream.seek(1000);
+    assertEquals(0, checkpointedStream.read());
+  }
+
+  private DSStream numberedStream(byte[] data) {
+    return numberedStream(data, 42);
+  }
+
+  private DSStream numberedStream(byte[] data, long objectNumber) {
+    final DSStream stream = stream(data);
+    stream.setThisObjectsObjectNumber(objectNumber);
+    stream.getDictionary().setThisObjectsObjectNumber(objectNumber);
+    return stream;
+  }
+
+  private static DSStream stream(byte[] data) {
+    final DSDictionary dict = DS.dict();
+    dict.addNamedEntry(DS.name("Filter"), DS.name("FlateDecode"));
+    dict.addNamedEntry(DS.name("DecodeParms"), (DSObject) DS.ref(7));
+    return DS.stream(dict, deflate(predict(data)));
+  }
+
+  /**
+   * Apply the PNG None predictor to all rows.
+   */
+  private static byte[] predict(byte[] data) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < data.length; i += COLUMNS) {
+      out.write(0);
+      out.write(data, i, Math.min(COLUMNS, data.length - i));
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readAll(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
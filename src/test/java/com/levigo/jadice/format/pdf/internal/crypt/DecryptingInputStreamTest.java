@@ -0,0 +1,125 @@
+package com.levigo.jadice.format.pdf.internal.crypt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.crypt.StandardDecryptor.Method;
+
+public class DecryptingInputStreamTest {
+
+  private static final byte[] KEY = {
+      1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16
+  };
+
+  @Test
+  void testLengths() throws Exception {
+    final Random random = new Random(1);
+    for (final int length : new int[]{
+        0, 15, 16, 17, AESInputStream.CHUNK_SIZE - 1, AESInputStream.CHUNK_SIZE, AESInputStream.CHUNK_SIZE + 16,
+        3 * AESInputStream.CHUNK_SIZE + 5
+    }) {
+      final byte[] plain = new byte[length];
+      random.nextBytes(plain);
+      for (final Method method : new Method[]{
+          Method.RC4, Method.AESV2
+      }) {
+        final byte[] encrypted = StandardSecurityHandlerTest.encrypt(method, KEY, plain, random);
+        assertArrayEquals(plain, StandardSecurityHandlerTest.readAll(open(method, encrypted)),
+            method + " length " + length);
+      }
+    }
+  }
+
+  @Test
+  void testSeek() throws Exception {
+    final Random random = new Random(2);
+    final byte[] plain = new byte[5 * AESInputStream.CHUNK_SIZE + 7];
+    random.nextBytes(plain);
+
+    for (final Method method : new Method[]{
+        Method.RC4, Method.AESV2
+    }) {
+      final SeekableInputStream s = open(method, StandardSecurityHandlerTest.encrypt(method, KEY, plain, random));
+      for (int i = 0; i < 200; i++) {
+        final int position = random.nextInt(plain.length);
+        final byte[] b = new byte[Math.min(random.nextInt(3000) + 1, plain.length - position)];
+        s.seek(position);
+        s.readFully(b);
+        assertArrayEquals(slice(plain, position, b.length), b, method + " at " + position);
+        assertEquals(position + b.length, s.getStreamPosition());
+      }
+      s.seek(plain.length);
+      assertEquals(-1, s.read());
+    }
+  }
+
+  /**
+   * Independent instances decrypt disjoint ranges of the same AES encrypted source concurrently.
+   */
+  @Test
+  void testConcurrentRanges() throws Exception {
+    final Random random = new Random(3);
+    final byte[] plain = new byte[16 * AESInputStream.CHUNK_SIZE + 100];
+    random.nextBytes(plain);
+    final ByteArraySeekableInputStream source = new ByteArraySeekableInputStream(
+        StandardSecurityHandlerTest.encrypt(Method.AESV2, KEY, plain, random));
+
+    final int ranges = 8;
+    final int rangeLength = (plain.length + ranges - 1) / ranges;
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < ranges; i++) {
+        final int start = i * rangeLength;
+        final int length = Math.min(rangeLength, plain.length - start);
+        results.add(executor.submit(() -> {
+          final AESInputStream s = new AESInputStream(source, KEY);
+          final byte[] b = new byte[length];
+          s.seek(start);
+          s.readFully(b);
+          return b;
+        }));
+      }
+      for (int i = 0; i < ranges; i++) {
+        final int start = i * rangeLength;
+        assertArrayEquals(slice(plain, start, Math.min(rangeLength, plain.length - start)), results.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testInvalidPadding() throws Exception {
+    // invalid padding is kept rather than failing
+    final byte[] data = new byte[32];
+    data[31] = 0x20;
+    assertEquals(32, AESInputStream.removePadding(data, 32));
+    data[31] = 0x02;
+    assertEquals(32, AESInputStream.removePadding(data, 32));
+    data[30] = 0x02;
+    assertEquals(30, AESInputStream.removePadding(data, 32));
+  }
+
+  private static SeekableInputStream open(Method method, byte[] encrypted) throws Exception {
+    final ByteArraySeekableInputStream source = new ByteArraySeekableInputStream(encrypted);
+    return method == Method.RC4 ? new RC4InputStream(source, KEY) : new AESInputStream(source, KEY);
+  }
+
+  private static byte[] slice(byte[] data, int offset, int length) {
+    final byte[] slice = new byte[length];
+    System.arraycopy(data, offset, slice, 0, length);
+    return slice;
+  }
+}
@@ -0,0 +1,440 @@
+package com.levigo.jadice.format.pdf.internal.crypt;
+
+import static com.levigo.jadice.format.pdf.internal.parsing.PDFLexers.hexToBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.document.io.SeekableInputStream;
+import com.levigo.jadice.format.pdf.crypt.PDFSecurityException;
+import com.levigo.jadice.format.pdf.internal.ReferenceResolver;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSHexString;
+import com.levigo.jadice.format.pdf.internal.objects.DSString;
+
+public class StandardSecurityHandlerTest {
+
+  private static final ReferenceResolver RESOLVER = o -> o;
+
+  private static final byte[] ID = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+  /**
+   * print and copy allowed, everything else denied
+   */
+  private static final int P = 0xfffff000 | 1 << 2 | 1 << 4;
+
+  /**
+   * The document ID and the plain text of the known answer tests. Their encryption dictionaries,
+   * file keys and cipher texts were computed by an implementation of ISO 32000 independent of this
+   * handler, without any of its functions.
+   */
+  private static final String KNOWN_ID = "6a1b3c8f0e2d4f5a9b7c6d5e4f3a2b1c";
+  private static final String KNOWN_STRING = "Known answer";
+  private static final String KNOWN_STREAM = "BT /F1 12 Tf 72 712 Td (Known answer) Tj ET";
+
+  @Test
+  void testRC4Revision3() throws Exception {
+    final DSDictionary encrypt = createEncryptDictionary(2, 3, 128, null, "user", "owner");
+
+    assertFalse(authenticate(encrypt, "wrong"));
+
+    final StandardSecurityHandler user = handler(encrypt, "user");
+    assertTrue(user.authenticate());
+    final StandardPermissions permissions = (StandardPermissions) user.getPermissions();
+    assertTrue(permissions.isAllowed(StandardPermissions.Permission.PRINT));
+    assertTrue(permissions.isAllowed(StandardPermissions.Permission.COPY));
+    assertFalse(permissions.isAllowed(StandardPermissions.Permission.MODIFY));
+
+    final StandardSecurityHandler owner = handler(encrypt, "owner");
+    assertTrue(owner.authenticate());
+    assertTrue(owner.getPermissions().getDenied().isEmpty());
+
+    assertDecryption(user, StandardDecryptor.Method.RC4);
+    assertDecryption(owner, StandardDecryptor.Method.RC4);
+  }
+
+  @Test
+  void testRC4Revision2() throws Exception {
+    final DSDictionary encrypt = createEncryptDictionary(1, 2, 40, null, "", "secret");
+    assertTrue(authenticate(encrypt, null));
+    assertTrue(authenticate(encrypt, "secret"));
+    assertDecryption(handler(encrypt, null), StandardDecryptor.Method.RC4);
+  }
+
+  @Test
+  void testAESV2() throws Exception {
+    final DSDictionary encrypt = createEncryptDictionary(4, 4, 128, "AESV2", "user", "owner");
+    assertFalse(authenticate(encrypt, ""));
+    assertTrue(authenticate(encrypt, "owner"));
+    assertDecryption(handler(encrypt, "user"), StandardDecryptor.Method.AESV2);
+  }
+
+  @Test
+  void testAESV3() throws Exception {
+    final DSDictionary encrypt = createEncryptDictionaryAES256("usér", "owner");
+    assertFalse(authenticate(encrypt, "user"));
+    assertTrue(authenticate(encrypt, "owner"));
+    assertDecryption(handler(encrypt, "usér"), StandardDecryptor.Method.AESV3);
+  }
+
+  @Test
+  void testKnownAnswerRevision2() throws Exception {
+    final DSDictionary encrypt = knownAnswerDictionary(1, 2, 40, null, -3904,
+        "c92422687facee686e373f10b5c7d04738053152f7e2ee30e11c69ec442576ab",
+        "0aa9b496c4e81bb9dc769bf55adc03fd9ce38533a52f24563f2f6a4539045342");
+    assertKnownAnswer(encrypt, "", "owner", "b95566362d", "3c59e2dd88b169a18407ac90",
+        "3563ad85a0a028fec5509d84ce496554ca4fd47f908bd5e83db45eca16c4fafecbcdcd3c1ad9d3db169925");
+  }
+
+  @Test
+  void testKnownAnswerRevision3() throws Exception {
+    final DSDictionary encrypt = knownAnswerDictionary(2, 3, 128, null, -1028,
+        "0ba3835f88f90388e74e54584125ce142be0de24c6b0d37746e075b891756671",
+        "d3a8b1264eada5cdcb8eda585fb579eb000102030405060708090a0b0c0d0e0f");
+    assertKnownAnswer(encrypt, "user", "owner", "40c85fd921ecfb28f238a10fccdab93e", "0ab5ef8af600c749af5e3faf",
+        "038fa0d2de118616ee090ebbc691c0c32e2704526f2c30cdf5aa23bbade9224d10cf11d78e2097550021e1");
+  }
+
+  @Test
+  void testKnownAnswerRevision4() throws Exception {
+    final DSDictionary encrypt = knownAnswerDictionary(4, 4, 128, "AESV2", -1852,
+        "0ba3835f88f90388e74e54584125ce142be0de24c6b0d37746e075b891756671",
+        "b04328364af0e10dbf67e9b5ac76e7d4000102030405060708090a0b0c0d0e0f");
+    assertKnownAnswer(encrypt, "user", "owner", "b9be564d4a9c91efcf9fb706f4bbc168",
+        "000102030405060708090a0b0c0d0e0f7ab9be9e71c9cf7b12a63e55836ea939",
+        "f0e1d2c3b4a5968778695a4b3c2d1e0f9269741709f5eb0aa68296fd12c61214"
+            + "a95dc49b5d949cd4769eb52c989726b46b5404b8fa26e7033339b8f8af9eacf0");
+  }
+
+  @Test
+  void testKnownAnswerRevision6() throws Exception {
+    final DSDictionary encrypt = knownAnswerDictionary(5, 6, 256, "AESV3", -1028,
+        "212f15b89d57d70a373ad1e1913f36131e35fdfa1f50751e053ba5774680ebc30f1e2d3c4b5a69788796a5b4c3d2e1f0",
+        "ed0752e978a90775b07e295bab20d73bebd4c9c5319ba40b618ea3972a0b7441112233445566778899aabbccddeeff00");
+    encrypt.addNamedEntry(DS.name("OE"),
+        new DSHexString(hexToBytes("20f0b1b598ed1fa0619d5d90bdb22c8cc8d6e9e5fe9a9fb4362c075ceb0ae2a7")));
+    encrypt.addNamedEntry(DS.name("UE"),
+        new DSHexString(hexToBytes("34aff15b31b219e144f0c6654f874d0ba392ad45ed3a0000c78f3b650afea713")));
+    encrypt.addNamedEntry(DS.name("Perms"), new DSHexString(hexToBytes("c0de3e4a9969d2a24937cd4446fa99e2")));
+    assertKnownAnswer(encrypt, "usér", "owner", "a7c2e95f1b3d8046f2e1c4b7a9d6053812fe4c7b9a0d3e6f5182b4c7e9d0a3f6",
+        "000102030405060708090a0b0c0d0e0fd0b8148a7ff2fb168f177b6b24f7ab9b",
+        "f0e1d2c3b4a5968778695a4b3c2d1e0f4e4f705b08fac4813e49d989cd2b4b7c"
+            + "e6ff55d0549c5323cbf5b41d5ee666b8c713b20e02afe03f7ccceed4e22cd714");
+  }
+
+  @Test
+  void testIdentityAndUnsupported() throws Exception {
+    final DSDictionary encrypt = createEncryptDictionary(4, 4, 128, "AESV2", "", "owner");
+    encrypt.addNamedEntry(DS.name("StrF"), DS.name("Identity"));
+    final StandardSecurityHandler handler = handler(encrypt, null);
+    assertThrows(PDFSecurityException.class, handler::getStreamDecryptor);
+    assertTrue(handler.authenticate());
+    final DSString s = DS.literalText("plain");
+    assertSame(s, handler.getStringDecryptor().getDecryptedString(s, 1, 0));
+    assertTrue(handler.getStreamDecryptor(DS.name("Identity")) instanceof NoopDecryptor);
+
+    encrypt.addNamedEntry(DS.name("R"), DS.num(7));
+    assertThrows(PDFSecurityException.class, () -> handler(encrypt, null));
+  }
+
+  @Test
+  void testInvalidAESStrings() throws Exception {
+    final StandardDecryptor decryptor = new StandardDecryptor(StandardDecryptor.Method.AESV2, new byte[16], true);
+
+    // strings too short to hold the initialization vector and a block or not made of whole blocks
+    for (final int length : new int[]{
+        0, 5, 16, 31, 33
+    }) {
+      final DSString s = new DSHexString(new byte[length]);
+      assertSame(s, decryptor.getDecryptedString(s, 7, 0), "string of length " + length);
+    }
+  }
+
+  @Test
+  void testObjectKeyCache() {
+    final StandardDecryptor decryptor = new StandardDecryptor(StandardDecryptor.Method.AESV2, new byte[16], true);
+    final byte[] key = decryptor.getObjectKey(12, 0);
+    assertSame(key, decryptor.getObjectKey(12, 0));
+    assertFalse(Arrays.equals(key, decryptor.getObjectKey(13, 0)));
+    assertFalse(Arrays.equals(key, decryptor.getObjectKey(12, 1)));
+    assertArrayEquals(key, decryptor.getObjectKey(12, 0));
+  }
+
+  /**
+   * Authenticate with both passwords and decrypt a string and a stream of object 12 0, comparing
+   * the file key and the plain text with the known answers.
+   */
+  private static void assertKnownAnswer(DSDictionary encrypt, String userPassword, String ownerPassword,
+      String fileKey, String string, String stream) throws Exception {
+    assertFalse(knownAnswerHandler(encrypt, "wrong").authenticate());
+    for (final String password : new String[]{
+        userPassword, ownerPassword
+    }) {
+      final StandardSecurityHandler handler = knownAnswerHandler(encrypt, password);
+      assertTrue(handler.authenticate(), password);
+      assertArrayEquals(hexToBytes(fileKey), handler.getFileKey(), password);
+
+      final DSString decrypted = handler.getStringDecryptor().getDecryptedString(
+          new DSHexString(hexToBytes(string)), 12, 0);
+      assertEquals(KNOWN_STRING, new String(decrypted.getRawData(), StandardCharsets.ISO_8859_1), password);
+
+      final DSDictionary streamDictionary = DS.dict();
+      streamDictionary.setThisObjectsObjectNumber(12);
+      streamDictionary.setThisObjectsGenerationNumber(0);
+      final SeekableInputStream s = handler.getStreamDecryptor().getDecryptedStream(streamDictionary,
+          new ByteArraySeekableInputStream(hexToBytes(stream)));
+      assertEquals(KNOWN_STREAM, new String(readAll(s), StandardCharsets.ISO_8859_1), password);
+    }
+  }
+
+  private static StandardSecurityHandler knownAnswerHandler(DSDictionary encrypt, String password)
+      throws PDFSecurityException {
+    final DSString id = new DSHexString(hexToBytes(KNOWN_ID));
+    final StandardSecurityHandler handler = new StandardSecurityHandler(encrypt, new DSString[]{
+        id, id
+    }, RESOLVER);
+    handler.setPassword(password);
+    return handler;
+  }
+
+  private static DSDictionary knownAnswerDictionary(int v, int r, int length, String cfm, int p, String o, String u) {
+    final DSDictionary encrypt = DS.dict();
+    encrypt.addNamedEntry(DS.name("Filter"), DS.name("Standard"));
+    encrypt.addNamedEntry(DS.name("V"), DS.num(v));
+    encrypt.addNamedEntry(DS.name("R"), DS.num(r));
+    encrypt.addNamedEntry(DS.name("Length"), DS.num(length));
+    encrypt.addNamedEntry(DS.name("P"), DS.num(p));
+    if (cfm != null) {
+      final DSDictionary stdCF = DS.dict();
+      stdCF.addNamedEntry(DS.name("CFM"), DS.name(cfm));
+      stdCF.addNamedEntry(DS.name("Length"), DS.num(length / 8));
+      final DSDictionary cf = DS.dict();
+      cf.addNamedEntry(DS.name("StdCF"), stdCF);
+      encrypt.addNamedEntry(DS.name("CF"), cf);
+      encrypt.addNamedEntry(DS.name("StmF"), DS.name("StdCF"));
+      encrypt.addNamedEntry(DS.name("StrF"), DS.name("StdCF"));
+    }
+    encrypt.addNamedEntry(DS.name("O"), new DSHexString(hexToBytes(o)));
+    encrypt.addNamedEntry(DS.name("U"), new DSHexString(hexToBytes(u)));
+    return encrypt;
+  }
+
+  /**
+   * Decrypt strings and streams encrypted with the object keys as derived by the specification.
+   */
+  private static void assertDecryption(StandardSecurityHandler handler, StandardDecryptor.Method method)
+      throws Exception {
+    assertTrue(handler.authenticate());
+    final StandardDecryptor decryptor = (StandardDecryptor) handler.getStringDecryptor();
+    assertEquals(method, decryptor.getMethod());
+    final byte[] fileKey = handler.getFileKey();
+
+    final Random random = new Random(42);
+    for (final int length : new int[]{
+        0, 1, 15, 16, 17, 1000
+    }) {
+      final byte[] plain = new byte[length];
+      random.nextBytes(plain);
+      final byte[] key = objectKey(fileKey, 7, 0, method);
+
+      final DSString decrypted = handler.getStringDecryptor().getDecryptedString(
+          new DSHexString(encrypt(method, key, plain, random)), 7, 0);
+      assertTrue(decrypted instanceof DSHexString);
+      assertArrayEquals(plain, decrypted.getRawData(), "string of length " + length);
+
+      final DSDictionary streamDictionary = DS.dict();
+      streamDictionary.setThisObjectsObjectNumber(7);
+      streamDictionary.setThisObjectsGenerationNumber(0);
+      final SeekableInputStream s = handler.getStreamDecryptor().getDecryptedStream(streamDictionary,
+          new ByteArraySeekableInputStream(encrypt(method, key, plain, random)));
+      assertArrayEquals(plain, readAll(s), "stream of length " + length);
+    }
+
+    // cross reference streams aren't encrypted
+    final DSDictionary xref = DS.dict();
+    xref.addNamedEntry(DS.name("Type"), DS.name("XRef"));
+    final ByteArraySeekableInputStream raw = new ByteArraySeekableInputStream(new byte[10]);
+    assertSame(raw, handler.getStreamDecryptor().getDecryptedStream(xref, raw));
+  }
+
+  static byte[] objectKey(byte[] fileKey, int objectNumber, int generationNumber, StandardDecryptor.Method method)
+      throws GeneralSecurityException {
+    if (method == StandardDecryptor.Method.AESV3)
+      return fileKey;
+    final MessageDigest md5 = MessageDigest.getInstance("MD5");
+    md5.update(fileKey);
+    md5.update(new byte[]{
+        (byte) objectNumber, (byte) (objectNumber >> 8), (byte) (objectNumber >> 16), (byte) generationNumber,
+        (byte) (generationNumber >> 8)
+    });
+    if (method == StandardDecryptor.Method.AESV2)
+      md5.update("sAlT".getBytes(StandardCharsets.US_ASCII));
+    return Arrays.copyOf(md5.digest(), Math.min(fileKey.length + 5, 16));
+  }
+
+  static byte[] encrypt(StandardDecryptor.Method method, byte[] key, byte[] plain, Random random)
+      throws GeneralSecurityException {
+    if (method == StandardDecryptor.Method.RC4) {
+      final Cipher rc4 = Cipher.getInstance("ARCFOUR");
+      rc4.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "ARCFOUR"));
+      return rc4.doFinal(plain);
+    }
+    final byte[] iv = new byte[16];
+    random.nextBytes(iv);
+    final Cipher aes = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+    final byte[] cipherText = aes.doFinal(plain);
+    final byte[] result = Arrays.copyOf(iv, 16 + cipherText.length);
+    System.arraycopy(cipherText, 0, result, 16, cipherText.length);
+    return result;
+  }
+
+  private static boolean authenticate(DSDictionary encrypt, String password) throws PDFSecurityException {
+    return handler(encrypt, password).authenticate();
+  }
+
+  private static StandardSecurityHandler handler(DSDictionary encrypt, String password) throws PDFSecurityException {
+    final StandardSecurityHandler handler = new StandardSecurityHandler(encrypt, new DSString[]{
+        new DSHexString(ID), new DSHexString(ID)
+    }, RESOLVER);
+    handler.setPassword(password);
+    return handler;
+  }
+
+  /**
+   * Create the encryption dictionary of revisions 2 to 4, computing O and U according to algorithms
+   * 3 to 5.
+   */
+  private static DSDictionary createEncryptDictionary(int v, int r, int length, String cfm, String userPassword,
+      String ownerPassword) throws Exception {
+    final DSDictionary encrypt = DS.dict();
+    encrypt.addNamedEntry(DS.name("Filter"), DS.name("Standard"));
+    encrypt.addNamedEntry(DS.name("V"), DS.num(v));
+    encrypt.addNamedEntry(DS.name("R"), DS.num(r));
+    encrypt.addNamedEntry(DS.name("Length"), DS.num(length));
+    encrypt.addNamedEntry(DS.name("P"), DS.num(P));
+    if (cfm != null) {
+      final DSDictionary stdCF = DS.dict();
+      stdCF.addNamedEntry(DS.name("CFM"), DS.name(cfm));
+      stdCF.addNamedEntry(DS.name("Length"), DS.num(length / 8));
+      final DSDictionary cf = DS.dict();
+      cf.addNamedEntry(DS.name("StdCF"), stdCF);
+      encrypt.addNamedEntry(DS.name("CF"), cf);
+      encrypt.addNamedEntry(DS.name("StmF"), DS.name("StdCF"));
+      encrypt.addNamedEntry(DS.name("StrF"), DS.name("StdCF"));
+    }
+    encrypt.addNamedEntry(DS.name("U"), new DSHexString(new byte[32]));
+    encrypt.addNamedEntry(DS.name("O"), new DSHexString(new byte[32]));
+
+    // algorithm 3
+    final StandardSecurityHandler helper = handler(encrypt, null);
+    final byte[] ownerKey = helper.computeOwnerKey(pad(ownerPassword));
+    byte[] o = StandardSecurityHandler.rc4(ownerKey, pad(userPassword));
+    if (r >= 3)
+      for (int i = 1; i <= 19; i++)
+        o = StandardSecurityHandler.rc4(xor(ownerKey, i), o);
+    encrypt.addNamedEntry(DS.name("O"), new DSHexString(o));
+
+    // algorithms 4 and 5
+    final StandardSecurityHandler withO = handler(encrypt, null);
+    final byte[] u = Arrays.copyOf(withO.computeU(withO.computeFileKey(pad(userPassword))), 32);
+    encrypt.addNamedEntry(DS.name("U"), new DSHexString(u));
+    return encrypt;
+  }
+
+  /**
+   * Create the encryption dictionary of revision 6, computing O, U, OE and UE according to
+   * algorithms 8 and 9 of ISO 32000-2.
+   */
+  private static DSDictionary createEncryptDictionaryAES256(String userPassword, String ownerPassword)
+      throws Exception {
+    final DSDictionary encrypt = DS.dict();
+    encrypt.addNamedEntry(DS.name("Filter"), DS.name("Standard"));
+    encrypt.addNamedEntry(DS.name("V"), DS.num(5));
+    encrypt.addNamedEntry(DS.name("R"), DS.num(6));
+    encrypt.addNamedEntry(DS.name("Length"), DS.num(256));
+    encrypt.addNamedEntry(DS.name("P"), DS.num(P));
+    final DSDictionary stdCF = DS.dict();
+    stdCF.addNamedEntry(DS.name("CFM"), DS.name("AESV3"));
+    stdCF.addNamedEntry(DS.name("Length"), DS.num(32));
+    final DSDictionary cf = DS.dict();
+    cf.addNamedEntry(DS.name("StdCF"), stdCF);
+    encrypt.addNamedEntry(DS.name("CF"), cf);
+    encrypt.addNamedEntry(DS.name("StmF"), DS.name("StdCF"));
+    encrypt.addNamedEntry(DS.name("StrF"), DS.name("StdCF"));
+    for (final String name : new String[]{
+        "O", "U", "OE", "UE"
+    })
+      encrypt.addNamedEntry(DS.name(name), new DSHexString(new byte[48]));
+
+    final Random random = new Random(6);
+    final byte[] fileKey = new byte[32];
+    random.nextBytes(fileKey);
+    final StandardSecurityHandler helper = handler(encrypt, null);
+
+    // algorithm 8
+    final byte[] userBytes = userPassword.getBytes(StandardCharsets.UTF_8);
+    final byte[] u = new byte[48];
+    random.nextBytes(u);
+    System.arraycopy(helper.hash(userBytes, u, 32, null), 0, u, 0, 32);
+    final byte[] ue = aes256(helper.hash(userBytes, u, 40, null), fileKey);
+
+    // algorithm 9
+    final byte[] ownerBytes = ownerPassword.getBytes(StandardCharsets.UTF_8);
+    final byte[] o = new byte[48];
+    random.nextBytes(o);
+    System.arraycopy(helper.hash(ownerBytes, o, 32, u), 0, o, 0, 32);
+    final byte[] oe = aes256(helper.hash(ownerBytes, o, 40, u), fileKey);
+
+    encrypt.addNamedEntry(DS.name("O"), new DSHexString(o));
+    encrypt.addNamedEntry(DS.name("U"), new DSHexString(u));
+    encrypt.addNamedEntry(DS.name("OE"), new DSHexString(oe));
+    encrypt.addNamedEntry(DS.name("UE"), new DSHexString(ue));
+    return encrypt;
+  }
+
+  private static byte[] aes256(byte[] key, byte[] data) throws GeneralSecurityException {
+    final Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+    aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(new byte[16]));
+    return aes.doFinal(data);
+  }
+
+  private static byte[] pad(String password) {
+    return StandardSecurityHandler.pad(password.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  private static byte[] xor(byte[] key, int value) {
+    final byte[] result = new byte[key.length];
+    for (int i = 0; i < key.length; i++)
+      result[i] = (byte) (key[i] ^ value);
+    return result;
+  }
+
+  static byte[] readAll(SeekableInputStream s) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[1000];
+    int read;
+    while ((read = s.read(buffer)) > 0)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
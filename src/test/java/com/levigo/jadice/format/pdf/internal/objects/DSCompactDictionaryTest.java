@@ -0,0 +1,97 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class DSCompactDictionaryTest {
+
+  @Test
+  void testCompact() {
+    final DSCompactDictionary d = new DSCompactDictionary();
+    final DSObject width = DS.num(100);
+    d.addNamedEntry(DS.name("Type"), DS.name("XObject"));
+    d.addNamedEntry(DS.name("Width"), width);
+    d.addNamedEntry(DS.name("Height"), DS.num(50));
+
+    assertTrue(d.isCompact());
+    assertEquals(3, d.size());
+    assertSame(width, d.getNamedEntryValue(DS.name("Width")));
+    assertSame(width, d.getNamedEntryValue("Width"));
+    assertSame(width, d.getNamedEntryValue("/Width"));
+    assertNull(d.getNamedEntryValue("Length"));
+
+    // replacing keeps the size and the position
+    final DSObject height = DS.num(60);
+    d.addNamedEntry(DS.name("Height"), height);
+    assertEquals(3, d.size());
+    assertSame(height, d.getNamedEntryValue(DSNameObject.height));
+
+    d.removeNamedEntry(DS.name("Type"));
+    assertEquals(2, d.size());
+    assertNull(d.getNamedEntryValue("Type"));
+    assertSame(width, d.getNamedEntryValue("Width"));
+
+    // iteration in insertion order
+    final Iterator<Map.Entry<DSNameObject, DSObject>> i = d.iterator();
+    assertEquals("Width", i.next().getKey().getName());
+    assertEquals("Height", i.next().getKey().getName());
+    assertFalse(i.hasNext());
+  }
+
+  @Test
+  void testPromotion() {
+    final DSCompactDictionary d = new DSCompactDictionary();
+    for (int i = 0; i < DSCompactDictionary.THRESHOLD; i++)
+      d.addNamedEntry(DS.name("Key" + i), DS.num(i));
+    assertTrue(d.isCompact());
+
+    d.addNamedEntry(DS.name("Key" + DSCompactDictionary.THRESHOLD), DS.num(DSCompactDictionary.THRESHOLD));
+    assertFalse(d.isCompact());
+    assertEquals(DSCompactDictionary.THRESHOLD + 1, d.size());
+    for (int i = 0; i <= DSCompactDictionary.THRESHOLD; i++)
+      assertEquals(DS.num(i), d.getNamedEntryValue("Key" + i));
+
+    int count = 0;
+    for (final Map.Entry<DSNameObject, DSObject> e : d) {
+      assertEquals(d.getNamedEntryValue(e.getKey()), e.getValue());
+      count++;
+    }
+    assertEquals(d.size(), count);
+
+    assertFalse(new DSCompactDictionary(100).isCompact());
+  }
+
+  @Test
+  void testIterator() {
+    final DSCompactDictionary d = new DSCompactDictionary(2);
+    for (int i = 0; i < 5; i++)
+      d.addNamedEntry(DS.name("Key" + i), DS.num(i));
+
+    final Iterator<Map.Entry<DSNameObject, DSObject>> i = d.iterator();
+    while (i.hasNext()) {
+      final Map.Entry<DSNameObject, DSObject> e = i.next();
+      if (((DSInteger) e.getValue()).getInteger() % 2 == 0)
+        i.remove();
+      else
+        e.setValue(DS.num(-1));
+    }
+    assertEquals(2, d.size());
+    assertEquals(DS.num(-1), d.getNamedEntryValue("Key1"));
+    assertEquals(DS.num(-1), d.getNamedEntryValue("Key3"));
+
+    final Iterator<Map.Entry<DSNameObject, DSObject>> fails = d.iterator();
+    fails.next();
+    d.addNamedEntry(DS.name("Other"), DS.num(0));
+    assertThrows(ConcurrentModificationException.class, fails::next);
+  }
+}
@@ -0,0 +1,107 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.Utils;
+import com.levigo.jadice.format.pdf.internal.crypt.NoSecurityHandler;
+import com.levigo.jadice.format.pdf.internal.parsing.CrossReferenceTable;
+import com.levigo.jadice.format.pdf.internal.parsing.PDFLexer;
+import com.levigo.jadice.format.pdf.internal.parsing.PDFParser;
+
+public class DSNumericArrayTest {
+
+  @Test
+  void testPack() {
+    final DSArray a = DSNumericArray.pack(DS.array(DS.num(1), DS.num(2.5), DS.num(-3)));
+    assertTrue(a instanceof DSNumericArray);
+    final DSNumericArray n = (DSNumericArray) a;
+    assertTrue(n.isPacked());
+    assertEquals(3, n.size());
+    assertEquals(2.5, n.getDouble(1));
+    assertEquals(-3, n.getInteger(2));
+    assertTrue(n.isInteger(0));
+    assertFalse(n.isInteger(1));
+    assertArrayEquals(new double[]{
+        1, 2.5, -3
+    }, n.toDoubleArray());
+
+    // the list view materializes the original types
+    assertSame(DS.num(1), n.get(0));
+    assertTrue(n.get(1) instanceof DSReal);
+    assertEquals(DS.num(2.5), n.get(1));
+    // the reals are materialized anew on every access
+    assertNotSame(n.get(1), n.get(1));
+    assertEquals(DS.num(-3), n.get(2));
+    assertThrows(IndexOutOfBoundsException.class, () -> n.get(3));
+
+    // arrays which aren't numeric, or can't be packed exactly, stay plain
+    assertFalse(DSNumericArray.pack(DS.array(DS.num(1), DS.name("A"))) instanceof DSNumericArray);
+    assertFalse(DSNumericArray.pack(DS.array(DS.num(Long.MAX_VALUE))) instanceof DSNumericArray);
+  }
+
+  @Test
+  void testModification() {
+    final DSNumericArray n = (DSNumericArray) DSNumericArray.pack(DS.array(DS.num(1), DS.num(2), DS.num(3)));
+    final Iterator<DSObject> i = n.iterator();
+    i.next();
+
+    n.add(DS.name("X"));
+    assertFalse(n.isPacked());
+    assertThrows(ConcurrentModificationException.class, i::next);
+    assertEquals(4, n.size());
+    assertEquals(2, n.getInteger(1));
+    assertEquals(DS.name("X"), n.get(3));
+
+    n.set(0, DS.num(7.5));
+    assertEquals(7.5, n.getDouble(0));
+    n.remove(3);
+    assertArrayEquals(new double[]{
+        7.5, 2, 3
+    }, n.toDoubleArray());
+  }
+
+  @Test
+  void testParser() throws IOException {
+    final byte[] data = ("<</MediaBox [0 0 612.5 792] /Matrix [2 0 0 2 10 20.5] /Kids [1 2 0 R] /Annots []"
+        + " /Mixed [1 /A]>>").getBytes(StandardCharsets.US_ASCII);
+    final PDFLexer lexer = new PDFLexer(new ByteArraySeekableInputStream(data));
+    final PDFParser parser = new PDFParser(lexer, new CrossReferenceTable(0), new NoSecurityHandler());
+    lexer.getNextToken();
+    final DSDictionary d = parser.parseDictionary(-1, -1);
+
+    final DSObject box = d.getNamedEntryValue("MediaBox");
+    assertTrue(box instanceof DSNumericArray);
+    final DSRectangle r = new DSRectangle((DSArray) box);
+    assertEquals(612.5, r.getWidth());
+    assertEquals(792, r.getHeight());
+
+    final DSObject matrix = d.getNamedEntryValue("Matrix");
+    assertTrue(matrix instanceof DSNumericArray);
+    assertEquals(new AffineTransform(2, 0, 0, 2, 10, 20.5), Utils.affineTransformFromArray((DSArray) matrix));
+
+    final DSArray kids = (DSArray) d.getNamedEntryValue("Kids");
+    assertFalse(kids instanceof DSNumericArray);
+    assertEquals(DS.ref(2), kids.get(1));
+
+    final DSArray empty = (DSArray) d.getNamedEntryValue("Annots");
+    assertFalse(empty instanceof DSNumericArray);
+    empty.add(DS.num(1));
+
+    assertFalse(d.getNamedEntryValue("Mixed") instanceof DSNumericArray);
+  }
+}
@@ -0,0 +1,120 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class FreezeTest {
+
+  @Test
+  void testDictionaries() {
+    final DSDictionary inner = new DSCommonDictionary();
+    inner.addNamedEntry(DS.name("Inner"), DS.num(1));
+    final DSDictionary d = DS.dict();
+    d.addNamedEntry(DS.name("Dict"), inner);
+    d.addNamedEntry(DS.name("Array"), DS.array(new ArrayList<>(Arrays.asList(DS.num(1.5)))));
+    d.addNamedEntry(DS.name("String"), DS.literalText("abc"));
+
+    d.freeze();
+    assertTrue(d.isFrozen());
+    assertTrue(inner.isFrozen());
+
+    // reading works as before
+    assertEquals(DS.num(1), inner.getNamedEntryValue("Inner"));
+    assertEquals(3, d.size());
+    int count = 0;
+    for (final Map.Entry<DSNameObject, DSObject> e : d)
+      if (e.getValue() != null)
+        count++;
+    assertEquals(3, count);
+
+    assertThrows(UnsupportedOperationException.class, () -> d.addNamedEntry(DS.name("X"), DS.num(0)));
+    assertThrows(UnsupportedOperationException.class, () -> d.removeNamedEntry(DS.name("Dict")));
+    assertThrows(UnsupportedOperationException.class, () -> inner.addNamedEntry(DS.name("X"), DS.num(0)));
+    assertThrows(UnsupportedOperationException.class, () -> inner.removeNamedEntry(DS.name("Inner")));
+
+    final Iterator<Map.Entry<DSNameObject, DSObject>> i = d.iterator();
+    final Map.Entry<DSNameObject, DSObject> first = i.next();
+    assertThrows(UnsupportedOperationException.class, i::remove);
+    assertThrows(UnsupportedOperationException.class, () -> first.setValue(DS.num(0)));
+    final Iterator<Map.Entry<DSNameObject, DSObject>> j = inner.iterator();
+    assertThrows(UnsupportedOperationException.class, () -> j.next().setValue(DS.num(0)));
+
+    final DSArray array = (DSArray) d.getNamedEntryValue("Array");
+    assertThrows(UnsupportedOperationException.class, () -> array.add(DS.num(0)));
+    assertThrows(UnsupportedOperationException.class, () -> array.set(0, DS.num(0)));
+    assertThrows(UnsupportedOperationException.class, array::clear);
+
+    // frozen strings hand out copies of their data
+    final DSString s = (DSString) d.getNamedEntryValue("String");
+    assertNotSame(s.getRawData(), s.getRawData());
+    assertArrayEquals(s.getRawData(), s.getRawData());
+    s.getRawData()[0] = 0;
+    assertEquals("abc", s.asTextString());
+    assertTrue(s.equals((DSObject) DS.literalText("abc")));
+    assertSame(s.rawData(), s.rawData());
+  }
+
+  @Test
+  void testImmutableTypes() {
+    // shared instances are read-only from the start, freezing a container doesn't touch them
+    for (final DSObject o : new DSObject[]{
+        DS.num(1), DS.num(1.5), DS.name("Type"), DS.ref(1), DSBoolean.TRUE, DS.nullObj()
+    }) {
+      assertTrue(o.isFrozen(), o.toString());
+      o.freeze();
+      assertTrue(o.isFrozen(), o.toString());
+      assertFalse(o instanceof DSFreezableObject, o.toString());
+    }
+    assertFalse(DS.literalText("abc").isFrozen());
+
+    // the immutable types don't carry the frozen state: object and generation number only
+    final long fields = Arrays.stream(DSObject.class.getDeclaredFields())
+        .filter(f -> !Modifier.isStatic(f.getModifiers())).count();
+    assertEquals(2, fields);
+  }
+
+  @Test
+  void testNumericArray() {
+    final DSNumericArray n = (DSNumericArray) DSNumericArray.pack(DS.array(DS.num(1), DS.num(2)));
+    n.freeze();
+    assertTrue(n.isPacked());
+    assertEquals(2, n.getInteger(1));
+    assertEquals(DS.num(1), n.get(0));
+    assertThrows(UnsupportedOperationException.class, () -> n.add(DS.num(3)));
+    assertThrows(UnsupportedOperationException.class, () -> n.set(0, DS.num(3)));
+    assertTrue(n.isPacked());
+  }
+
+  @Test
+  void testStreamAndHierarchy() {
+    final DSStream stream = DS.stream(DS.dict(), new byte[]{
+        1, 2, 3
+    });
+    stream.freeze();
+    assertTrue(stream.getDictionary().isFrozen());
+    assertThrows(UnsupportedOperationException.class,
+        () -> stream.getDictionary().addNamedEntry(DS.name("X"), DS.num(0)));
+
+    final DSDictionary parent = DS.dict();
+    parent.addNamedEntry(DS.name("Rotate"), DS.num(90));
+    final DSHierarchyAwareDictionary page = new DSHierarchyAwareDictionary(DS.dict(), parent);
+    assertFalse(page.isFrozen());
+    page.freeze();
+    assertTrue(parent.isFrozen());
+    assertEquals(DS.num(90), page.getNamedEntryValue("Rotate"));
+    assertThrows(UnsupportedOperationException.class, () -> page.removeNamedEntry(DS.name("Rotate")));
+  }
+}
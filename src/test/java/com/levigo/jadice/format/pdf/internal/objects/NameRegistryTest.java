@@ -0,0 +1,87 @@
+package com.levigo.jadice.format.pdf.internal.objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class NameRegistryTest {
+
+  @Test
+  void testRegisteredNames() {
+    for (int id = 0; id < NameRegistry.size(); id++) {
+      final String name = NameRegistry.nameOf(id);
+      assertEquals(id, NameRegistry.idOf(name));
+      final byte[] bytes = ("/" + name + " ").getBytes(StandardCharsets.US_ASCII);
+      assertEquals(id, NameRegistry.idOf(bytes, 1, bytes.length - 2));
+      assertEquals(name.hashCode(), NameRegistry.hash(bytes, 1, bytes.length - 2));
+
+      final DSNameObject canonical = DSNameObject.valueOf(id);
+      assertSame(canonical, DSNameObject.valueOf(name));
+      assertSame(canonical, DSNameObject.valueOf("/" + name));
+      assertSame(canonical, DSNameObject.valueOf(bytes, 1, bytes.length - 2));
+      assertTrue(canonical.isCanonical());
+    }
+
+    // the constants are the canonical instances
+    assertSame(DSNameObject.type, DS.name("Type"));
+    assertSame(DSNameObject.fontDescriptor, DS.name("FontDescriptor".getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  void testUnregisteredNames() {
+    assertEquals(NameRegistry.UNREGISTERED, NameRegistry.idOf("NoSuchName"));
+    assertEquals(NameRegistry.UNREGISTERED, NameRegistry.idOf("Typ"));
+    final byte[] bytes = "Types".getBytes(StandardCharsets.US_ASCII);
+    assertEquals(NameRegistry.UNREGISTERED, NameRegistry.idOf(bytes, 0, bytes.length));
+
+    final DSNameObject a = DS.name("NoSuchName");
+    final DSNameObject b = DS.name("NoSuchName");
+    assertNotSame(a, b);
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertFalse(a.isCanonical());
+    assertEquals("NoSuchName", DSNameObject.valueOf("/NoSuchName").getName());
+
+    final byte[] utf8 = "Grün".getBytes(StandardCharsets.UTF_8);
+    assertEquals("Grün", DS.name(utf8).getName());
+  }
+
+  @Test
+  void testEquality() {
+    // names created by the constructor get the registry id, too
+    final DSNameObject type = new DSNameObject("/Type");
+    assertNotSame(DSNameObject.type, type);
+    assertFalse(type.isCanonical());
+    assertEquals(DSNameObject.type, type);
+    assertEquals(DSNameObject.type.hashCode(), type.hashCode());
+    assertEquals(DSNameObject.type.getId(), type.getId());
+
+    assertNotEquals(DSNameObject.type, DSNameObject.subtype);
+    assertNotEquals(DSNameObject.type, DS.name("Typ"));
+    assertTrue(DSNameObject.type.matches("Type"));
+    assertTrue(DSNameObject.type.matches("/Type"));
+  }
+
+  @Test
+  void testDictionaryLookup() {
+    final DSDictionary compact = DS.dict();
+    final DSDictionary common = new DSCommonDictionary();
+    for (final DSDictionary d : new DSDictionary[]{
+        compact, common
+    }) {
+      d.addNamedEntry(DS.name("Type"), DS.name("Font"));
+      d.addNamedEntry(DS.name("MyKey"), DS.num(1));
+      assertSame(DSNameObject.font, d.getNamedEntryValue("Type"));
+      assertSame(DSNameObject.font, d.getNamedEntryValue(new DSNameObject("Type")));
+      assertEquals(DS.num(1), d.getNamedEntryValue("MyKey"));
+      assertEquals(DS.num(1), d.getNamedEntryValue("/MyKey"));
+    }
+  }
+}
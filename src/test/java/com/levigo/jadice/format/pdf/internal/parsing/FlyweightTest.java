@@ -0,0 +1,116 @@
+package com.levigo.jadice.format.pdf.internal.parsing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.crypt.NoSecurityHandler;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSArray;
+import com.levigo.jadice.format.pdf.internal.objects.DSBoolean;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSInteger;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+import com.levigo.jadice.format.pdf.internal.parsing.IObjectLocator.Location;
+
+public class FlyweightTest {
+
+  @Test
+  void testValueOf() {
+    assertSame(DSInteger.valueOf(0), DS.integer(0));
+    assertSame(DSInteger.valueOf(-128), DS.num(-128));
+    assertSame(DSInteger.valueOf(1023), DS.num(Integer.valueOf(1023)));
+    assertTrue(DSInteger.valueOf(42).isShared());
+
+    final DSInteger large = DSInteger.valueOf(1024);
+    assertNotSame(large, DSInteger.valueOf(1024));
+    assertEquals(large, DSInteger.valueOf(1024));
+    assertEquals(large.hashCode(), DSInteger.valueOf(1024).hashCode());
+    assertFalse(large.isShared());
+    assertFalse(new DSInteger(42).isShared());
+
+    assertSame(DSBoolean.TRUE, DSBoolean.valueOf(true));
+    assertSame(DSBoolean.FALSE, DSBoolean.valueOf(false));
+  }
+
+  @Test
+  void testCanonicalReferences() {
+    final CrossReferenceTable older = new CrossReferenceTable(10);
+    older.add(1, 0, new Location(10));
+    older.add(2, 0, new Location(20));
+    final CrossReferenceTable newer = new CrossReferenceTable(10);
+    newer.setPrev(older);
+    newer.add(2, 1, new Location(30));
+    newer.add(3, 0, new Location(40));
+
+    assertSame(older.getReference(1, 0), newer.getReference(1, 0));
+    assertSame(newer.getReference(2, 1), newer.getReference(2, 1));
+    assertSame(older.getReference(2, 0), newer.getReference(2, 0));
+    assertNotSame(newer.getReference(2, 0), newer.getReference(2, 1));
+    assertEquals(new Location(20), newer.locate(2, 0));
+    assertEquals(new Location(30), newer.locate(2, 1));
+
+    assertTrue(newer.isCanonical(newer.getReference(2, 0)));
+    assertTrue(newer.isCanonical(newer.getReference(3, 0)));
+    assertFalse(older.isCanonical(newer.getReference(3, 0)));
+    assertFalse(newer.isCanonical(DS.ref(1)));
+
+    // checking doesn't canonicalize anything
+    final DSReference free = DS.ref(0);
+    assertFalse(newer.isCanonical(free));
+    assertNotSame(free, newer.getReference(0, 0));
+
+    // free object numbers are canonicalized once requested, out of range ones are not
+    assertSame(newer.getReference(0, 0), newer.getReference(0, 0));
+    assertEquals(DS.ref(1000000), newer.getReference(1000000, 0));
+  }
+
+  @Test
+  void testParser() throws IOException {
+    final CrossReferenceTable xref = new CrossReferenceTable(10);
+    xref.add(5, 0, new Location(0));
+    final byte[] data = ("<</Kids [5 0 R 5 0 R] /Count 2 /Parent 5 0 R /Flag true /Big 100000>>\n"
+        + "7 0 obj 2 endobj\n" + "8 0 obj 5 0 R endobj")
+        .getBytes(StandardCharsets.US_ASCII);
+    final PDFLexer lexer = new PDFLexer(new ByteArraySeekableInputStream(data));
+    final PDFParser parser = new PDFParser(lexer, xref, new NoSecurityHandler());
+
+    lexer.getNextToken();
+    final DSDictionary d = parser.parseDictionary(-1, -1);
+    final DSArray kids = (DSArray) d.getNamedEntryValue("Kids");
+    final DSReference ref = xref.getReference(5, 0);
+    assertSame(ref, kids.get(0));
+    assertSame(ref, kids.get(1));
+    assertSame(ref, d.getNamedEntryValue("Parent"));
+    assertSame(DSInteger.valueOf(2), d.getNamedEntryValue("Count"));
+    assertSame(DSBoolean.TRUE, d.getNamedEntryValue("Flag"));
+    assertEquals(DS.num(100000), d.getNamedEntryValue("Big"));
+
+    // indirect objects get a private copy, leaving the shared instances unnumbered
+    lexer.getNextToken();
+    lexer.getNextToken();
+    lexer.getNextToken();
+    final DSObject seven = parser.parseObjectBody(7, 0);
+    assertEquals(DS.num(2), seven);
+    assertNotSame(DSInteger.valueOf(2), seven);
+    assertEquals(7, seven.objectNumber());
+    assertEquals(-1, DSInteger.valueOf(2).objectNumber());
+
+    lexer.getNextToken();
+    lexer.getNextToken();
+    lexer.getNextToken();
+    final DSObject eight = parser.parseObjectBody(8, 0);
+    assertEquals(ref, eight);
+    assertNotSame(ref, eight);
+    assertEquals(-1, ref.objectNumber());
+  }
+}
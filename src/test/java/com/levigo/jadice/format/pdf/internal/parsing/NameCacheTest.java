@@ -0,0 +1,69 @@
+package com.levigo.jadice.format.pdf.internal.parsing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.document.io.ByteArraySeekableInputStream;
+import com.levigo.jadice.format.pdf.internal.objects.DSNameObject;
+import com.levigo.jadice.format.pdf.internal.objects.NameRegistry;
+import com.levigo.jadice.format.ps.internal.Token;
+
+public class NameCacheTest {
+
+  @Test
+  void testCache() {
+    final NameCache cache = new NameCache(64);
+    final DSNameObject a = get(cache, "MyName");
+    assertSame(a, get(cache, "MyName"));
+    assertEquals("MyName", a.getName());
+
+    // registered names resolve to the canonical instance
+    assertSame(DSNameObject.type, get(cache, "Type"));
+
+    // long names aren't cached, but still equal
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100; i++)
+      sb.append('x');
+    final DSNameObject longName = get(cache, sb.toString());
+    assertNotSame(longName, get(cache, sb.toString()));
+    assertEquals(longName, get(cache, sb.toString()));
+
+    // the cache is bounded: lots of names evict each other, but stay correct
+    for (int i = 0; i < 1000; i++)
+      assertEquals("Name" + i, get(cache, "Name" + i).getName());
+  }
+
+  @Test
+  void testLexer() throws IOException {
+    final byte[] data = "/Type /MyName/MyName /A#20B /Gr#C3#BCn /#zz [/Font]".getBytes(StandardCharsets.US_ASCII);
+    final PDFLexer lexer = new PDFLexer(new ByteArraySeekableInputStream(data));
+    lexer.setNameCache(new NameCache(16));
+
+    assertSame(DSNameObject.type, name(lexer.getNextToken()));
+    final DSNameObject myName = name(lexer.getNextToken());
+    assertEquals("MyName", myName.getName());
+    assertSame(myName, name(lexer.getNextToken()));
+    assertEquals("A B", name(lexer.getNextToken()).getName());
+    assertEquals("Grün", name(lexer.getNextToken()).getName());
+    assertEquals("#zz", name(lexer.getNextToken()).getName());
+    assertTrue(lexer.getNextToken().isOfType(TokenTypesPDF.ARRAY_BEGIN));
+    assertSame(DSNameObject.font, name(lexer.getNextToken()));
+  }
+
+  private static DSNameObject name(Token token) {
+    assertTrue(token.isOfType(TokenTypesPDF.NAME));
+    return ((AbstractPDFLexer.NameToken) token).getName();
+  }
+
+  private static DSNameObject get(NameCache cache, String name) {
+    final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    return cache.get(bytes, bytes.length, NameRegistry.hash(bytes, 0, bytes.length));
+  }
+}
@@ -0,0 +1,93 @@
+package com.levigo.jadice.format.pdf.internal.struct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.format.pdf.internal.MapReferenceResolver;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+
+public class PageAttributeResolverTest {
+
+  private final MapReferenceResolver resolver = new MapReferenceResolver();
+
+  private DSDictionary node(long objectNumber, Long parent) {
+    final DSDictionary d = DS.dict();
+    if (parent != null)
+      d.addNamedEntry(DS.name("Parent"), DS.ref(parent));
+    resolver.put(objectNumber, d);
+    return d;
+  }
+
+  @Test
+  void testInheritance() {
+    final DSDictionary resources = DS.dict();
+    resolver.put(100L, resources);
+
+    final DSDictionary root = node(1, null);
+    root.addNamedEntry(DS.name("Resources"), DS.ref(100));
+    root.addNamedEntry(DS.name("MediaBox"), DS.array(DS.num(0), DS.num(0), DS.num(595), DS.num(842)));
+    root.addNamedEntry(DS.name("Rotate"), DS.num(-90));
+    final DSDictionary middle = node(2, 1L);
+    middle.addNamedEntry(DS.name("CropBox"), DS.array(DS.num(10), DS.num(10), DS.num(100), DS.num(100)));
+
+    final DSDictionary first = node(10, 2L);
+    final DSDictionary second = node(11, 2L);
+    second.addNamedEntry(DS.name("Rotate"), DS.num(450));
+    second.addNamedEntry(DS.name("Resources"), DS.dict());
+
+    final PageAttributeResolver pages = new PageAttributeResolver(resolver);
+    final Page p1 = pages.getPage(first);
+    assertSame(first, p1.getDictionary());
+    assertSame(resources, p1.getResources());
+    assertEquals(595, p1.getMediaBox().getWidth());
+    assertEquals(90, p1.getCropBox().getWidth());
+    assertEquals(270, p1.getRotate());
+    p1.getMediaBox().getUpperRight().x = 0;
+    p1.getCropBox().getLowerLeft().x = 0;
+
+    final Page p2 = pages.getPage(second);
+    assertEquals(90, p2.getRotate());
+    assertSame(second.getNamedEntryValue("Resources"), p2.getResources());
+    assertEquals(842, p2.getMediaBox().getHeight());
+    assertEquals(595, p2.getMediaBox().getWidth());
+    assertEquals(90, p2.getCropBox().getWidth());
+
+    // the intermediate nodes are resolved once only
+    assertEquals(2, pages.getCachedNodeCount());
+    final int count = resolver.getResolutions();
+    pages.getPage(first);
+    pages.getPage(second);
+    assertEquals(count, resolver.getResolutions());
+  }
+
+  @Test
+  void testDefaultsAndCycles() {
+    final DSDictionary a = node(1, 2L);
+    node(2, 1L);
+    final Page page = pages().getPage(a);
+    assertEquals(PageAttributeResolver.DEFAULT_WIDTH, page.getMediaBox().getWidth());
+    assertEquals(PageAttributeResolver.DEFAULT_HEIGHT, page.getMediaBox().getHeight());
+    assertEquals(page.getMediaBox().getWidth(), page.getCropBox().getWidth());
+    assertEquals(page.getMediaBox().getHeight(), page.getCropBox().getHeight());
+
+    // changing one page's boxes doesn't affect any other page
+    page.getMediaBox().getUpperRight().x = 100;
+    page.getCropBox().getUpperRight().y = 100;
+    assertEquals(PageAttributeResolver.DEFAULT_WIDTH, pages().getPage(a).getMediaBox().getWidth());
+    assertEquals(PageAttributeResolver.DEFAULT_HEIGHT, page.getMediaBox().getHeight());
+    assertNull(page.getResources());
+    assertEquals(0, page.getRotate());
+
+    // a dangling parent
+    assertEquals(0, pages().getPage(node(3, 99L)).getRotate());
+  }
+
+  private PageAttributeResolver pages() {
+    return new PageAttributeResolver(resolver);
+  }
+}
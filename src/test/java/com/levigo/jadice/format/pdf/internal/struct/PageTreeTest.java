@@ -0,0 +1,219 @@
+package com.levigo.jadice.format.pdf.internal.struct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.levigo.jadice.format.pdf.internal.MapReferenceResolver;
+import com.levigo.jadice.format.pdf.internal.objects.DS;
+import com.levigo.jadice.format.pdf.internal.objects.DSDictionary;
+import com.levigo.jadice.format.pdf.internal.objects.DSNumber;
+import com.levigo.jadice.format.pdf.internal.objects.DSObject;
+import com.levigo.jadice.format.pdf.internal.objects.DSReference;
+
+public class PageTreeTest {
+
+  private final MapReferenceResolver resolver = new MapReferenceResolver();
+
+  private long nextObjectNumber = 1;
+
+  /**
+   * Create a tree of the given fan out and depth, page dictionaries carry their index as /Index.
+   */
+  private DSReference tree(int fanOut, int depth, AtomicInteger pageIndex, int countError) {
+    final long objectNumber = nextObjectNumber++;
+    final DSDictionary d = DS.dict();
+    resolver.put(objectNumber, d);
+    if (depth == 0) {
+      d.addNamedEntry(DS.name("Type"), DS.name("Page"));
+      d.addNamedEntry(DS.name("Index"), DS.num(pageIndex.getAndIncrement()));
+    } else {
+      final List<DSObject> kids = new ArrayList<>();
+      for (int i = 0; i < fanOut; i++)
+        kids.add(tree(fanOut, depth - 1, pageIndex, countError));
+      d.addNamedEntry(DS.name("Type"), DS.name("Pages"));
+      d.addNamedEntry(DS.name("Kids"), DS.array(kids));
+      d.addNamedEntry(DS.name("Count"), DS.num((int) Math.pow(fanOut, depth) + countError));
+    }
+    return DS.ref(objectNumber);
+  }
+
+  private PageTree pageTree(int fanOut, int depth, int countError) {
+    final DSDictionary catalog = DS.dict();
+    catalog.addNamedEntry(DS.name("Pages"), tree(fanOut, depth, new AtomicInteger(), countError));
+    return new PageTree(resolver, catalog, new PageAttributeResolver(resolver));
+  }
+
+  private static int indexOf(DSDictionary page) {
+    return ((DSNumber) page.getNamedEntryValue("Index")).getInteger();
+  }
+
+  @Test
+  void testLookup() {
+    final PageTree tree = pageTree(10, 4, 0);
+    assertEquals(10000, tree.getPageCount());
+
+    resolver.resetResolutions();
+    assertEquals(7345, indexOf(tree.getPageDictionary(7345)));
+    // the four nodes on the path, their kids, and the page itself: no sibling subtrees
+    assertTrue(resolver.getResolutions() <= 4 * (1 + 10) + 1, "resolutions: " + resolver.getResolutions());
+
+    // the path is cached: a neighbour only costs the page
+    resolver.resetResolutions();
+    assertEquals(7346, indexOf(tree.getPageDictionary(7346)));
+    assertEquals(1, resolver.getResolutions());
+
+    for (final int i : new int[]{
+        0, 9, 10, 999, 1000, 9999
+    })
+      assertEquals(i, indexOf(tree.getPage(i).getDictionary()));
+
+    assertThrows(IndexOutOfBoundsException.class, () -> tree.getPageDictionary(10000));
+    assertThrows(IndexOutOfBoundsException.class, () -> tree.getPageDictionary(-1));
+  }
+
+  @Test
+  void testIndex() {
+    final PageTree tree = pageTree(7, 3, 0);
+    assertFalse(tree.isIndexComplete());
+    tree.buildIndex(Runnable::run).join();
+    assertTrue(tree.isIndexComplete());
+
+    resolver.resetResolutions();
+    for (int i = 0; i < tree.getPageCount(); i++)
+      assertTrue(tree.getPageReference(i).isValid());
+    assertEquals(0, resolver.getResolutions());
+    assertEquals(200, indexOf(tree.getPageDictionary(200)));
+  }
+
+  @Test
+  void testInconsistentCounts() {
+    // every intermediate node claims one page more than it has
+    final PageTree tree = pageTree(3, 2, 1);
+    assertEquals(10, tree.getPageCount());
+    // the first kid doesn't hold its fourth page
+    assertEquals(3, indexOf(tree.getPageDictionary(3)));
+    assertTrue(tree.isIndexComplete());
+    assertEquals(9, tree.getIndexSize());
+    assertEquals(8, indexOf(tree.getPageDictionary(8)));
+    assertNull(tree.getPageDictionary(9));
+  }
+
+  @Test
+  void testInconsistentSubtree() {
+    // the root's count is consistent with those of its kids, but the first kid lacks a page
+    final AtomicInteger pageIndex = new AtomicInteger();
+    final DSReference a = tree(3, 1, pageIndex, 1);
+    final DSReference b = tree(2, 1, pageIndex, 0);
+    final DSDictionary root = DS.dict();
+    root.addNamedEntry(DS.name("Kids"), DS.array(a, b));
+    root.addNamedEntry(DS.name("Count"), DS.num(6));
+    resolver.put(nextObjectNumber, root);
+    final DSDictionary catalog = DS.dict();
+    catalog.addNamedEntry(DS.name("Pages"), DS.ref(nextObjectNumber));
+    final PageTree tree = new PageTree(resolver, catalog, new PageAttributeResolver(resolver));
+
+    assertEquals(6, tree.getPageCount());
+    // the pages in front of the missing one are found by the counts
+    assertEquals(1, indexOf(tree.getPageDictionary(1)));
+    assertFalse(tree.isIndexComplete());
+    assertEquals(0, tree.getIndexSize());
+
+    // the pages of the second kid are where the walk found them, not where the counts put them
+    assertEquals(3, indexOf(tree.getPageDictionary(3)));
+    assertTrue(tree.isIndexComplete());
+    assertEquals(5, tree.getIndexSize());
+    assertEquals(4, indexOf(tree.getPageDictionary(4)));
+    assertNull(tree.getPageDictionary(5));
+  }
+
+  @Test
+  void testFlatKids() {
+    final List<DSObject> pages = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      final DSDictionary page = DS.dict();
+      page.addNamedEntry(DS.name("Index"), DS.num(i));
+      resolver.put(nextObjectNumber, page);
+      pages.add(DS.ref(nextObjectNumber++));
+    }
+    final PageTree tree = pageTree(pages, 100000);
+    assertEquals(100000, tree.getPageCount());
+
+    // the kids are taken to be pages without resolving them
+    resolver.resetResolutions();
+    assertEquals(99999, indexOf(tree.getPageDictionary(99999)));
+    assertEquals(1, resolver.getResolutions());
+    assertFalse(tree.isIndexComplete());
+  }
+
+  @Test
+  void testLazySiblings() {
+    final AtomicInteger pageIndex = new AtomicInteger();
+    final List<DSObject> kids = new ArrayList<>();
+    for (int i = 0; i < 1000; i++)
+      kids.add(tree(10, 1, pageIndex, 0));
+    final PageTree tree = pageTree(kids, 10000);
+    assertEquals(10000, tree.getPageCount());
+
+    // the kids in front of the one holding the page only: the first kid, twice, and the page
+    resolver.resetResolutions();
+    assertEquals(5, indexOf(tree.getPageDictionary(5)));
+    assertEquals(3, resolver.getResolutions());
+
+    resolver.resetResolutions();
+    assertEquals(2345, indexOf(tree.getPageDictionary(2345)));
+    assertTrue(resolver.getResolutions() <= 235 + 1 + 1, "resolutions: " + resolver.getResolutions());
+
+    // the resolved kids are cached
+    resolver.resetResolutions();
+    assertEquals(1234, indexOf(tree.getPageDictionary(1234)));
+    assertEquals(2, resolver.getResolutions());
+  }
+
+  @Test
+  void testFlatKidsInconsistent() {
+    // as many pages as kids, but the second kid is a node of two pages
+    final AtomicInteger pageIndex = new AtomicInteger();
+    final PageTree tree = pageTree(Arrays.asList(tree(1, 0, pageIndex, 0), tree(2, 1, pageIndex, 0),
+        tree(1, 0, pageIndex, 0)), 3);
+
+    assertEquals(0, indexOf(tree.getPageDictionary(0)));
+    assertFalse(tree.isIndexComplete());
+    assertEquals(1, indexOf(tree.getPageDictionary(1)));
+    assertTrue(tree.isIndexComplete());
+    assertEquals(2, indexOf(tree.getPageDictionary(2)));
+  }
+
+  /**
+   * Create a page tree whose root holds the given kids.
+   */
+  private PageTree pageTree(List<DSObject> kids, int count) {
+    final DSDictionary root = DS.dict();
+    root.addNamedEntry(DS.name("Type"), DS.name("Pages"));
+    root.addNamedEntry(DS.name("Kids"), DS.array(kids));
+    root.addNamedEntry(DS.name("Count"), DS.num(count));
+    resolver.put(nextObjectNumber, root);
+    final DSDictionary catalog = DS.dict();
+    catalog.addNamedEntry(DS.name("Pages"), DS.ref(nextObjectNumber++));
+    return new PageTree(resolver, catalog, new PageAttributeResolver(resolver));
+  }
+
+  @Test
+  void testHugeCount() {
+    // a bogus count costs neither time nor memory
+    final PageTree tree = pageTree(2, 1, Integer.MAX_VALUE - 2);
+    assertEquals(Integer.MAX_VALUE, tree.getPageCount());
+    assertEquals(1, indexOf(tree.getPageDictionary(1)));
+    assertNull(tree.getPageDictionary(Integer.MAX_VALUE - 1));
+    assertEquals(2, tree.getIndexSize());
+  }
+}